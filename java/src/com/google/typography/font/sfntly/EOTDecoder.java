@@ -0,0 +1,127 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+
+import java.io.IOException;
+
+/**
+ * Unwraps the sfnt font data of an Embedded OpenType (EOT) font.
+ *
+ * Only EOT fonts that hold the sfnt data itself, possibly XOR obfuscated, are
+ * supported. Fonts compressed with MicroType Express are rejected.
+ */
+final class EOTDecoder {
+
+  private static final int MAGIC_NUMBER = 0x504C;
+  private static final long VERSION_1 = 0x00010000;
+  private static final long VERSION_2_1 = 0x00020001;
+  private static final long VERSION_2_2 = 0x00020002;
+  private static final long FLAGS_TT_COMPRESSED = 0x4;
+  private static final long FLAGS_XOR_ENCRYPT_DATA = 0x10000000;
+  private static final int XOR_KEY = 0x50;
+
+  // all values are little-endian
+  private enum Offset {
+    eotSize(0),
+    fontDataSize(4),
+    version(8),
+    flags(12),
+    magicNumber(34),
+    // the end of Padding1, where the size prefixed name strings start
+    fixedHeaderSize(82);
+
+    private final int offset;
+
+    private Offset(int offset) {
+      this.offset = offset;
+    }
+  }
+
+  private EOTDecoder() {
+    // Prevent construction.
+  }
+
+  static boolean isEOT(ReadableFontData data) {
+    // only the start of the data may be available when checking a stream
+    if (data.length() < Offset.magicNumber.offset + FontData.DataSize.USHORT.size()
+        || data.readUShortLE(Offset.magicNumber.offset) != MAGIC_NUMBER) {
+      return false;
+    }
+    long version = data.readULongLE(Offset.version.offset);
+    return version == VERSION_1 || version == VERSION_2_1 || version == VERSION_2_2;
+  }
+
+  /**
+   * Get the sfnt font data held in the EOT font data.
+   *
+   * @param data the EOT font data
+   * @return the sfnt font data
+   * @throws IOException if the EOT data is invalid or compressed
+   */
+  static WritableFontData decode(WritableFontData data) throws IOException {
+    if (!isEOT(data) || data.length() < Offset.fixedHeaderSize.offset
+        || data.readULongLE(Offset.eotSize.offset) > data.length()) {
+      throw new IOException("Invalid EOT header.");
+    }
+    long version = data.readULongLE(Offset.version.offset);
+    long flags = data.readULongLE(Offset.flags.offset);
+    if ((flags & FLAGS_TT_COMPRESSED) != 0) {
+      throw new IOException("MicroType Express compressed EOT fonts are not supported.");
+    }
+    long fontDataSize = data.readULongLE(Offset.fontDataSize.offset);
+
+    int index = Offset.fixedHeaderSize.offset;
+    // FamilyName, StyleName, VersionName and FullName, with padding between
+    for (int i = 0; i < 4; i++) {
+      if (i > 0) {
+        index += 2;
+      }
+      index += 2 + data.readUShortLE(index);
+    }
+    if (version != VERSION_1) {
+      index += 2; // Padding5
+      index += 2 + data.readUShortLE(index); // RootString
+    }
+    if (version == VERSION_2_2) {
+      index += 4 + 4 + 2; // RootStringCheckSum, EUDCCodePage, Padding6
+      index += 2 + data.readUShortLE(index); // Signature
+      index += 4; // EUDCFlags
+      long eudcSize = data.readULongLE(index); // EUDCFontData
+      if (eudcSize > data.length() - index - 4) {
+        throw new IOException("EOT EUDC font data is outside of the EOT data.");
+      }
+      index += 4 + (int) eudcSize;
+    }
+    if (index + fontDataSize > data.length()) {
+      throw new IOException("EOT font data is outside of the EOT data.");
+    }
+
+    WritableFontData fontData = data.slice(index, (int) fontDataSize);
+    if ((flags & FLAGS_XOR_ENCRYPT_DATA) != 0) {
+      WritableFontData decrypted = WritableFontData.createWritableFontData(fontData.length());
+      for (int i = 0; i < fontData.length(); i++) {
+        decrypted.writeByte(i, (byte) (fontData.readUByte(i) ^ XOR_KEY));
+      }
+      fontData = decrypted;
+    }
+    return fontData;
+  }
+}
@@ -31,7 +31,11 @@ import com.google.typography.font.sfntly.table.truetype.LocaTable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -45,6 +49,9 @@ public class Font {
   private static final Logger logger =
     Logger.getLogger(Font.class.getCanonicalName());
 
+  // zeros to pad the tables to 4 byte boundaries with
+  private static final byte[] PADDING = new byte[3];
+
   /**
    * Offsets to specific elements in the underlying data. These offsets are relative to the
    * start of the table or the start of sub-blocks within the table.
@@ -64,7 +71,11 @@ public class Font {
     tableCheckSum(4),
     tableOffset(8),
     tableLength(12),
-    tableRecordSize(16);
+    tableRecordSize(16),
+
+    // Offsets within the collection header
+    ttcOffsetTable(12),
+    ttcOffsetSize(4);
 
     private final int offset;
 
@@ -306,7 +317,7 @@ public class Font {
 
   private final int sfntVersion;
   private final byte[] digest;
-  private long checksum;
+  private volatile long checksum = -1;
 
   private Map<Integer, ? extends Table> tables; // these get set in the builder
 
@@ -346,12 +357,22 @@ public class Font {
   }
 
   /**
-   * Get the checksum for this font.
+   * Get the checksum for this font. The checksum is calculated from the
+   * tables the first time it is asked for.
    *
    * @return the font checksum
    */
   public long checksum() {
-    return this.checksum;
+    long checksum = this.checksum;
+    if (checksum < 0) {
+      checksum = 0;
+      for (Table table : this.tables.values()) {
+        checksum += table.calculatedChecksum();
+      }
+      checksum &= 0xffffffffL;
+      this.checksum = checksum;
+    }
+    return checksum;
   }
 
   /**
@@ -447,6 +468,139 @@ public class Font {
     this.serializeTables(fos, tableRecords);
   }
 
+  /**
+   * Serialize the font to a channel. The header is built in a single buffer
+   * and the tables are written with a gathering write of buffers that share
+   * the storage of the table data, so the data isn't copied on the way.
+   *
+   * @param channel the destination for the font serialization
+   * @param tableOrdering the table ordering to apply
+   * @throws IOException
+   */
+  void serialize(WritableByteChannel channel, List<Integer> tableOrdering) throws IOException {
+    List<Integer> finalTableOrdering = this.generateTableOrdering(tableOrdering);
+    List<Header> tableRecords = buildTableHeadersForSerialization(finalTableOrdering);
+    List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(2 * tableRecords.size() + 1);
+    buffers.add(this.headerBuffer(tableRecords));
+    for (Header record : tableRecords) {
+      Table table = this.getTable(record.tag());
+      if (table == null) {
+        throw new IOException("Table out of sync with font header.");
+      }
+      ReadableFontData data = table.readFontData();
+      data.addByteBuffers(buffers);
+      int fillerSize = ((data.length() + 3) & ~3) - data.length();
+      if (fillerSize > 0) {
+        buffers.add(ByteBuffer.wrap(PADDING, 0, fillerSize));
+      }
+    }
+
+    ByteBuffer[] bufferArray = buffers.toArray(new ByteBuffer[buffers.size()]);
+    if (channel instanceof GatheringByteChannel) {
+      GatheringByteChannel gatheringChannel = (GatheringByteChannel) channel;
+      int first = 0;
+      while (first < bufferArray.length) {
+        gatheringChannel.write(bufferArray, first, bufferArray.length - first);
+        while (first < bufferArray.length && !bufferArray[first].hasRemaining()) {
+          first++;
+        }
+      }
+    } else {
+      for (ByteBuffer buffer : bufferArray) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    }
+  }
+
+  /**
+   * Serialize fonts as a TrueType Collection. A table whose data is the same
+   * as a table of another of the fonts, or of the same font, is written once
+   * and the table records of all of the fonts point at that copy.
+   *
+   * @param fonts the fonts of the collection
+   * @param os the destination for the collection serialization
+   * @param tableOrdering the table ordering to apply to each font
+   * @throws IOException
+   */
+  static void serializeCollection(List<Font> fonts, OutputStream os, List<Integer> tableOrdering)
+      throws IOException {
+    int offset = Offset.ttcOffsetTable.offset + fonts.size() * Offset.ttcOffsetSize.offset;
+    int[] fontOffsets = new int[fonts.size()];
+    for (int i = 0; i < fonts.size(); i++) {
+      fontOffsets[i] = offset;
+      offset += Offset.tableRecordBegin.offset
+          + fonts.get(i).numTables() * Offset.tableRecordSize.offset;
+    }
+
+    List<List<Header>> fontTableHeaders = new ArrayList<List<Header>>(fonts.size());
+    Map<TableContent, Integer> tableOffsets = new HashMap<TableContent, Integer>();
+    List<Table> uniqueTables = new ArrayList<Table>();
+    for (Font font : fonts) {
+      List<Header> tableHeaders = new ArrayList<Header>(font.numTables());
+      for (Integer tag : font.generateTableOrdering(tableOrdering)) {
+        Table table = font.tables.get(tag);
+        TableContent content = new TableContent(table.readFontData());
+        Integer tableOffset = tableOffsets.get(content);
+        if (tableOffset == null) {
+          tableOffset = offset;
+          tableOffsets.put(content, tableOffset);
+          uniqueTables.add(table);
+          // write on boundary of 4 bytes
+          offset += (table.dataLength() + 3) & ~3;
+        }
+        tableHeaders.add(
+            new Header(tag, table.calculatedChecksum(), tableOffset, table.header().length()));
+      }
+      fontTableHeaders.add(tableHeaders);
+    }
+
+    FontOutputStream fos = new FontOutputStream(os);
+    fos.writeULong(Tag.ttcf);
+    fos.writeFixed(Fixed1616.fixed(1, 0));
+    fos.writeULong(fonts.size());
+    for (int fontOffset : fontOffsets) {
+      fos.writeULong(fontOffset);
+    }
+    for (int i = 0; i < fonts.size(); i++) {
+      fonts.get(i).serializeHeader(fos, fontTableHeaders.get(i));
+    }
+    for (Table table : uniqueTables) {
+      int tableSize = table.serialize(fos);
+      int fillerSize = ((tableSize + 3) & ~3) - tableSize;
+      fos.write(PADDING, 0, fillerSize);
+    }
+  }
+
+  /**
+   * The data of a table, compared by content. The hash is of the whole data so
+   * that tables that differ are rarely compared byte by byte.
+   */
+  private static final class TableContent {
+    private final ReadableFontData data;
+    private final int hash;
+
+    TableContent(ReadableFontData data) {
+      this.data = data;
+      this.hash = data.contentHashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof TableContent)) {
+        return false;
+      }
+      TableContent other = (TableContent) obj;
+      return this.hash == other.hash && this.data.contentEquals(other.data);
+    }
+  }
+
   /**
    * Build the table headers to be used for serialization. These headers will be
    * filled out with the data required for serialization. The headers will be
@@ -484,23 +638,38 @@ public class Font {
    */
   private void serializeHeader(FontOutputStream fos, List<Header> tableHeaders)
       throws IOException {
-    fos.writeFixed(this.sfntVersion);
-    fos.writeUShort(tableHeaders.size());
+    ByteBuffer header = this.headerBuffer(tableHeaders);
+    fos.write(header.array(), header.arrayOffset(), header.remaining());
+  }
+
+  /**
+   * Build the sfnt header and table records in a buffer.
+   *
+   * @param tableHeaders the headers to serialize
+   * @return the buffer, ready to be read
+   */
+  private ByteBuffer headerBuffer(List<Header> tableHeaders) {
+    ByteBuffer header = ByteBuffer.allocate(
+        Offset.tableRecordBegin.offset + tableHeaders.size() * Offset.tableRecordSize.offset);
+    header.putInt(this.sfntVersion);
+    header.putShort((short) tableHeaders.size());
     int log2OfMaxPowerOf2 = FontMath.log2(tableHeaders.size());
     int searchRange = 2 << (log2OfMaxPowerOf2 - 1 + 4);
-    fos.writeUShort(searchRange);
-    fos.writeUShort(log2OfMaxPowerOf2);
-    fos.writeUShort((tableHeaders.size() * 16) - searchRange);
+    header.putShort((short) searchRange);
+    header.putShort((short) log2OfMaxPowerOf2);
+    header.putShort((short) ((tableHeaders.size() * 16) - searchRange));
 
     List<Header> sortedHeaders = new ArrayList<Header>(tableHeaders);
     Collections.sort(sortedHeaders, Header.COMPARATOR_BY_TAG);
 
     for (Header record : sortedHeaders) {
-      fos.writeULong(record.tag());
-      fos.writeULong(record.checksum());
-      fos.writeULong(record.offset());
-      fos.writeULong(record.length());
+      header.putInt(record.tag());
+      header.putInt((int) record.checksum());
+      header.putInt(record.offset());
+      header.putInt(record.length());
     }
+    header.flip();
+    return header;
   }
 
   /**
@@ -520,9 +689,7 @@ public class Font {
       }
       int tableSize = table.serialize(fos);
       int fillerSize = ((tableSize + 3) & ~3) - tableSize;
-      for (int i = 0; i < fillerSize; i++) {
-        fos.write(0);
-      }
+      fos.write(PADDING, 0, fillerSize);
     }
   }
 
@@ -578,6 +745,10 @@ public class Font {
    * usable. To create a further {@link Font} object new builder will be
    * required.
    *
+   * Table builders for different tables may be added, fetched and removed
+   * from several threads at once, such as by table subsetters running in
+   * parallel; everything else must be done from one thread.
+   *
    * @author Stuart Gill
    *
    */
@@ -595,10 +766,11 @@ public class Font {
     private int rangeShift;
     private Map<Header, WritableFontData> dataBlocks;
     private byte[] digest;
+    private TableBuildListener tableBuildListener;
 
     private Builder(FontFactory factory) {
       this.factory = factory;
-      this.tableBuilders = new HashMap<Integer, Table.Builder<? extends Table>>();
+      this.tableBuilders = new ConcurrentHashMap<Integer, Table.Builder<? extends Table>>();
     }
 
     private void loadFont(InputStream is) throws IOException {
@@ -608,9 +780,8 @@ public class Font {
       FontInputStream fontIS = null;
       try {
         fontIS = new FontInputStream(is);
-        SortedSet<Header> records = readHeader(fontIS);
-        this.dataBlocks = loadTableData(records, fontIS);
-        this.tableBuilders = buildAllTableBuilders(this.dataBlocks);
+        TableDirectory directory = readHeader(fontIS);
+        this.tableBuilders = loadTableBuilders(directory, fontIS);
       } finally {
         fontIS.close();
       }
@@ -620,8 +791,14 @@ public class Font {
       if (wfd == null) {
         throw new IOException("No data for font.");
       }
-      SortedSet<Header> records = readHeader(wfd, offsetToOffsetTable);
-      this.dataBlocks = loadTableData(records, wfd);
+      TableDirectory directory = readHeader(wfd, offsetToOffsetTable);
+      this.tableBuilders = loadTableBuilders(directory, wfd);
+    }
+
+    private void loadFont(int sfntVersion, Map<Header, WritableFontData> tableData) {
+      this.sfntVersion = sfntVersion;
+      this.numTables = tableData.size();
+      this.dataBlocks = tableData;
       this.tableBuilders = buildAllTableBuilders(this.dataBlocks);
     }
 
@@ -639,6 +816,17 @@ public class Font {
       return builder;
     }
 
+    /**
+     * Get a builder for a font whose tables have already been separated out
+     * from the font data, such as the tables of a decoded WOFF font.
+     */
+    static final Builder getOTFBuilder(
+        FontFactory factory, int sfntVersion, Map<Header, WritableFontData> tableData) {
+      Builder builder = new Builder(factory);
+      builder.loadFont(sfntVersion, tableData);
+      return builder;
+    }
+
     static final Builder getOTFBuilder(FontFactory factory) {
       return new Builder(factory);
     }
@@ -683,7 +871,8 @@ public class Font {
       Font font = new Font(this.sfntVersion, this.digest);
 
       if (this.tableBuilders.size() > 0) {
-        tables = buildTablesFromBuilders(font, this.tableBuilders);
+        tables = buildTablesFromBuilders(
+            font, this.tableBuilders, null, this.tableBuildListener);
       }
       font.tables = tables;
       this.tableBuilders = null;
@@ -691,6 +880,69 @@ public class Font {
       return font;
     }
 
+    /**
+     * Build a member font of a collection straight from the collection data.
+     * Tables that another font already built from the same location are taken
+     * from the shared tables without making builders for them; builders are
+     * only made for the other tables and the tables they depend on.
+     *
+     * @param factory the font factory
+     * @param wfd the collection data
+     * @param offsetToOffsetTable the offset of the font's offset table
+     * @param sharedTables the tables built for the collection so far
+     * @return the font
+     */
+    static Font buildCollectionFont(FontFactory factory, WritableFontData wfd,
+        int offsetToOffsetTable, Map<FontCollection.TableKey, Table> sharedTables) {
+      Builder builder = new Builder(factory);
+      TableDirectory directory = builder.readHeader(wfd, offsetToOffsetTable);
+      Map<Integer, Integer> offsetsByTag = new HashMap<Integer, Integer>(directory.size());
+      for (int i = 0; i < directory.size(); i++) {
+        offsetsByTag.put(directory.tags[i], directory.offsets[i]);
+      }
+
+      Map<Integer, Table> tables = new TagMap<Table>(directory.size());
+      Set<Integer> builderTags = new HashSet<Integer>();
+      for (int i = 0; i < directory.size(); i++) {
+        int tag = directory.tags[i];
+        int[] dependencies = tableDependencies(tag);
+        int[] dependencyOffsets = new int[dependencies.length];
+        for (int d = 0; d < dependencies.length; d++) {
+          Integer offset = offsetsByTag.get(dependencies[d]);
+          dependencyOffsets[d] = offset == null ? -1 : offset;
+        }
+        Table table = sharedTables.get(
+            new FontCollection.TableKey(directory.header(i), dependencyOffsets));
+        if (table != null) {
+          tables.put(tag, table);
+        } else {
+          builderTags.add(tag);
+          for (int dependency : dependencies) {
+            if (offsetsByTag.containsKey(dependency)) {
+              builderTags.add(dependency);
+            }
+          }
+        }
+      }
+
+      Map<Integer, Table.Builder<? extends Table>> builderMap =
+          new ConcurrentHashMap<Integer, Table.Builder<? extends Table>>(builderTags.size());
+      for (int i = 0; i < directory.size(); i++) {
+        if (builderTags.contains(directory.tags[i])) {
+          WritableFontData data = wfd.slice(directory.offsets[i], directory.lengths[i]);
+          builderMap.put(directory.tags[i], builder.getTableBuilder(directory.header(i), data));
+        }
+      }
+
+      Font font = new Font(builder.sfntVersion, builder.digest);
+      if (builderMap.size() > 0) {
+        // the dependencies that are shared come from the shared tables again
+        tables.putAll(buildTablesFromBuilders(font, builderMap, sharedTables, null));
+      }
+      font.tables = tables;
+      return font;
+    }
+
     /**
      * Set a unique fingerprint for the font object.
      *
@@ -700,6 +952,16 @@ public class Font {
       this.digest = digest;
     }
 
+    /**
+     * Set a listener that is told the time taken and the size of each table
+     * when the font is built.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setTableBuildListener(TableBuildListener listener) {
+      this.tableBuildListener = listener;
+    }
+
     /**
      * Clear all table builders.
      */
@@ -811,8 +1073,8 @@ public class Font {
 
     private Map<Integer, Table.Builder<? extends Table>> buildAllTableBuilders(
         Map<Header, WritableFontData> tableData) {
-      Map<Integer, Table.Builder<? extends Table>> builderMap = 
-        new HashMap<Integer, Table.Builder<? extends Table>>();
+      Map<Integer, Table.Builder<? extends Table>> builderMap =
+        new ConcurrentHashMap<Integer, Table.Builder<? extends Table>>();
       Set<Header> records = tableData.keySet();
       for (Header record : records) {
         Table.Builder<? extends Table> builder = getTableBuilder(record, tableData.get(record));
@@ -828,12 +1090,12 @@ public class Font {
     }
 
     private static Map<Integer, Table> buildTablesFromBuilders(Font font,
-        Map<Integer, Table.Builder<? extends Table>> builderMap) {
-      Map<Integer, Table> tableMap = new TreeMap<Integer, Table>();
+        Map<Integer, Table.Builder<? extends Table>> builderMap,
+        Map<FontCollection.TableKey, Table> sharedTables, TableBuildListener listener) {
+      Map<Integer, Table> tableMap = new TagMap<Table>(builderMap.size());
 
       interRelateBuilders(builderMap);
 
-      long fontChecksum = 0;
       boolean tablesChanged = false;
       FontHeaderTable.Builder headerTableBuilder = null;
       
@@ -844,15 +1106,11 @@ public class Font {
           headerTableBuilder = (FontHeaderTable.Builder) builder;
           continue;
         }
-        if (builder.readyToBuild()) {
-          tablesChanged |= builder.changed();
-          table = builder.build();
-        }
+        tablesChanged |= builder.changed();
+        table = buildTable(builder, builderMap, sharedTables, listener);
         if (table == null) {
           throw new RuntimeException("Unable to build table - " + builder);
         }
-        long tableChecksum = table.calculatedChecksum();
-        fontChecksum += tableChecksum;
         tableMap.put(table.header().tag(), table);
       }
       
@@ -860,23 +1118,111 @@ public class Font {
       Table headerTable = null;
       if (headerTableBuilder != null) {
         if (tablesChanged) {
+          // only a changed font needs its checksum up front, so that the
+          // table data of an unchanged font isn't all read when it is built
+          long fontChecksum = 0;
+          for (Table table : tableMap.values()) {
+            fontChecksum += table.calculatedChecksum();
+          }
           headerTableBuilder.setFontChecksum(fontChecksum);
         }
-        if (headerTableBuilder.readyToBuild()) {
-          tablesChanged |= headerTableBuilder.changed();
-          headerTable = headerTableBuilder.build();
-        }
+        tablesChanged |= headerTableBuilder.changed();
+        headerTable = buildTable(headerTableBuilder, builderMap, sharedTables, listener);
         if (headerTable == null) {
           throw new RuntimeException("Unable to build table - " + headerTableBuilder);
         }
-        fontChecksum += headerTable.calculatedChecksum();
         tableMap.put(headerTable.header().tag(), headerTable);
       }
       
-      font.checksum = fontChecksum & 0xffffffffL;
       return tableMap;
     }
 
+    /**
+     * Build the table and calculate its checksum, telling the listener, if
+     * there is one, how long each took.
+     */
+    private static Table buildTable(Table.Builder<? extends Table> builder,
+        Map<Integer, Table.Builder<? extends Table>> builderMap,
+        Map<FontCollection.TableKey, Table> sharedTables, TableBuildListener listener) {
+      if (listener == null) {
+        return buildTable(builder, builderMap, sharedTables);
+      }
+      int bytesIn = builder.header().length();
+      long start = System.nanoTime();
+      Table table = buildTable(builder, builderMap, sharedTables);
+      if (table == null) {
+        return null;
+      }
+      long built = System.nanoTime();
+      table.calculatedChecksum();
+      listener.tableBuilt(builder.header().tag(), bytesIn, table.dataLength(), built - start,
+          System.nanoTime() - built);
+      return table;
+    }
+
+    private static Table buildTable(Table.Builder<? extends Table> builder,
+        Map<Integer, Table.Builder<? extends Table>> builderMap,
+        Map<FontCollection.TableKey, Table> sharedTables) {
+      FontCollection.TableKey key = null;
+      if (sharedTables != null) {
+        key = sharedTableKey(builder, builderMap);
+        Table table = key == null ? null : sharedTables.get(key);
+        if (table != null) {
+          return table;
+        }
+      }
+      if (!builder.readyToBuild()) {
+        return null;
+      }
+      Table table = builder.build();
+      if (key != null && table != null) {
+        sharedTables.put(key, table);
+      }
+      return table;
+    }
+
+    /**
+     * Get the key under which the table is shared with other fonts of a
+     * collection. The key includes the locations of the tables whose data is
+     * used in building the table, as set up in {@link #interRelateBuilders(Map)}.
+     *
+     * @return the key, or null if the table wasn't loaded from the collection
+     *         data or it or a table it depends on has been changed
+     */
+    private static FontCollection.TableKey sharedTableKey(
+        Table.Builder<? extends Table> builder,
+        Map<Integer, Table.Builder<? extends Table>> builderMap) {
+      if (builder.changed() || !builder.header().offsetValid()) {
+        return null;
+      }
+      int[] dependencies = tableDependencies(builder.header().tag());
+      int[] offsets = new int[dependencies.length];
+      for (int i = 0; i < dependencies.length; i++) {
+        Table.Builder<? extends Table> dependency = builderMap.get(dependencies[i]);
+        if (dependency != null
+            && (dependency.changed() || !dependency.header().offsetValid())) {
+          return null;
+        }
+        offsets[i] = dependency == null ? -1 : dependency.header().offset();
+      }
+      return new FontCollection.TableKey(builder.header(), offsets);
+    }
+
+    /**
+     * Get the tables whose data is used in building a table, as set up in
+     * {@link #interRelateBuilders(Map)}.
+     */
+    private static int[] tableDependencies(int tag) {
+      if (tag == Tag.hmtx) {
+        return new int[] {Tag.maxp, Tag.hhea};
+      } else if (tag == Tag.loca) {
+        return new int[] {Tag.maxp, Tag.head};
+      } else if (tag == Tag.hdmx) {
+        return new int[] {Tag.maxp};
+      }
+      return new int[0];
+    }
+
     private static void
     interRelateBuilders(Map<Integer, Table.Builder<? extends Table>> builderMap) {
       FontHeaderTable.Builder headerTableBuilder =
@@ -919,80 +1265,147 @@ public class Font {
       }      
     }
 
-    private SortedSet<Header> readHeader(FontInputStream is) throws IOException {
-      SortedSet<Header> records =
-          new TreeSet<Header>(Header.COMPARATOR_BY_OFFSET);
+    /**
+     * The table records of a font's offset table, kept in parallel arrays.
+     */
+    private static final class TableDirectory {
+      private final int[] tags;
+      private final long[] checksums;
+      private final int[] offsets;
+      private final int[] lengths;
+
+      TableDirectory(int numTables) {
+        this.tags = new int[numTables];
+        this.checksums = new long[numTables];
+        this.offsets = new int[numTables];
+        this.lengths = new int[numTables];
+      }
+
+      int size() {
+        return this.tags.length;
+      }
+
+      Header header(int i) {
+        return new Header(this.tags[i], this.checksums[i], this.offsets[i], this.lengths[i]);
+      }
+
+      /**
+       * Get the indexes of the tables in the order of their offsets. Tables
+       * with the same offset are in the order of their records.
+       */
+      int[] offsetOrder() {
+        long[] keys = new long[size()];
+        for (int i = 0; i < keys.length; i++) {
+          keys[i] = (this.offsets[i] & 0xffffffffL) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+          order[i] = (int) keys[i];
+        }
+        return order;
+      }
+    }
+
+    private void readOffsetTableHeader(int sfntVersion, int numTables, int searchRange,
+        int entrySelector, int rangeShift) {
+      this.sfntVersion = sfntVersion;
+      this.numTables = numTables;
+      this.searchRange = searchRange;
+      this.entrySelector = entrySelector;
+      this.rangeShift = rangeShift;
+    }
 
-      this.sfntVersion = is.readFixed();
-      this.numTables = is.readUShort();
-      this.searchRange = is.readUShort();
-      this.entrySelector = is.readUShort();
-      this.rangeShift = is.readUShort();
+    private TableDirectory readHeader(FontInputStream is) throws IOException {
+      readOffsetTableHeader(is.readFixed(), is.readUShort(), is.readUShort(), is.readUShort(),
+          is.readUShort());
 
+      TableDirectory directory = new TableDirectory(this.numTables);
       for (int tableNumber = 0; tableNumber < this.numTables; tableNumber++) {
-        Header table = new Header(is.readULongAsInt(), // safe since the tag is ASCII
-            is.readULong(),         // checksum
-            is.readULongAsInt(),    // offset
-            is.readULongAsInt());   // length
-        records.add(table);
+        directory.tags[tableNumber] = is.readULongAsInt(); // safe since the tag is ASCII
+        directory.checksums[tableNumber] = is.readULong();
+        directory.offsets[tableNumber] = is.readULongAsInt();
+        directory.lengths[tableNumber] = is.readULongAsInt();
       }
-      return records;
+      return directory;
     }
 
-    private Map<Header, WritableFontData> loadTableData(
-        SortedSet<Header> headers, FontInputStream is) throws IOException {
-      Map<Header, WritableFontData> tableData =
-          new HashMap<Header, WritableFontData>(headers.size());
+    private Map<Integer, Table.Builder<? extends Table>> loadTableBuilders(
+        TableDirectory directory, FontInputStream is) throws IOException {
+      Map<Integer, Table.Builder<? extends Table>> builderMap =
+          new ConcurrentHashMap<Integer, Table.Builder<? extends Table>>(directory.size());
       logger.fine("########  Reading Table Data");
-      for (Header tableHeader : headers) {
-        is.skip(tableHeader.offset() - is.position());
-        logger.finer("\t" + tableHeader);
-        logger.finest("\t\tStream Position = " + Integer.toHexString((int) is.position()));
-        // don't close this or the whole stream is gone
-        FontInputStream tableIS = new FontInputStream(is, tableHeader.length());
-        // TODO(stuartg): start tracking bad tables and other errors
-        WritableFontData data = WritableFontData.createWritableFontData(tableHeader.length());
-        data.copyFrom(tableIS, tableHeader.length());
-        tableData.put(tableHeader, data);
-      }
-      return tableData;
-    }
-
-    private SortedSet<Header> readHeader(ReadableFontData fd, int offset) {
-      SortedSet<Header> records =
-          new TreeSet<Header>(Header.COMPARATOR_BY_OFFSET);
-
-      this.sfntVersion = fd.readFixed(offset + Offset.sfntVersion.offset);
-      this.numTables = fd.readUShort(offset + Offset.numTables.offset);
-      this.searchRange = fd.readUShort(offset + Offset.searchRange.offset);
-      this.entrySelector = fd.readUShort(offset + Offset.entrySelector.offset);
-      this.rangeShift = fd.readUShort(offset + Offset.rangeShift.offset);
+      // the stream can only go forward so read the tables in offset order
+      int[] order = directory.offsetOrder();
+      // the tables read from the stream, in the same order
+      int[] readIndexes = new int[order.length];
+      WritableFontData[] readData = new WritableFontData[order.length];
+      int readCount = 0;
+      for (int i : order) {
+        int offset = directory.offsets[i];
+        int length = directory.lengths[i];
+        WritableFontData data = null;
+        if (offset < is.position() && length > 0) {
+          // an alias of a table already read, such as bdat and EBDT, or a
+          // table inside one
+          for (int r = readCount - 1; r >= 0 && data == null; r--) {
+            int readOffset = directory.offsets[readIndexes[r]];
+            if (readOffset <= offset
+                && (long) offset + length <= (long) readOffset + readData[r].length()) {
+              data = readData[r].slice(offset - readOffset, length);
+            }
+          }
+          if (data == null) {
+            // TODO(stuartg): start tracking bad tables and other errors
+            throw new IOException("Overlapping tables in font stream.");
+          }
+        } else {
+          is.skip(Math.max(0, offset - is.position()));
+          // don't close this or the whole stream is gone
+          FontInputStream tableIS = new FontInputStream(is, length);
+          data = WritableFontData.createWritableFontData(length);
+          data.copyFrom(tableIS, length);
+          readIndexes[readCount] = i;
+          readData[readCount++] = data;
+        }
+        builderMap.put(directory.tags[i], getTableBuilder(directory.header(i), data));
+      }
+      interRelateBuilders(builderMap);
+      return builderMap;
+    }
+
+    private TableDirectory readHeader(ReadableFontData fd, int offset) {
+      readOffsetTableHeader(fd.readFixed(offset + Offset.sfntVersion.offset),
+          fd.readUShort(offset + Offset.numTables.offset),
+          fd.readUShort(offset + Offset.searchRange.offset),
+          fd.readUShort(offset + Offset.entrySelector.offset),
+          fd.readUShort(offset + Offset.rangeShift.offset));
 
+      TableDirectory directory = new TableDirectory(this.numTables);
       int tableOffset = offset + Offset.tableRecordBegin.offset;
       for (int tableNumber = 0;
       tableNumber < this.numTables;
       tableNumber++, tableOffset += Offset.tableRecordSize.offset) {
-        Header table =
         // safe since the tag is ASCII
-            new Header(fd.readULongAsInt(tableOffset + Offset.tableTag.offset),
-                fd.readULong(tableOffset + Offset.tableCheckSum.offset), // checksum
-            fd.readULongAsInt(tableOffset + Offset.tableOffset.offset), // offset
-            fd.readULongAsInt(tableOffset + Offset.tableLength.offset)); // length
-        records.add(table);
+        directory.tags[tableNumber] = fd.readULongAsInt(tableOffset + Offset.tableTag.offset);
+        directory.checksums[tableNumber] = fd.readULong(tableOffset + Offset.tableCheckSum.offset);
+        directory.offsets[tableNumber] = fd.readULongAsInt(tableOffset + Offset.tableOffset.offset);
+        directory.lengths[tableNumber] = fd.readULongAsInt(tableOffset + Offset.tableLength.offset);
       }
-      return records;
+      return directory;
     }
 
-    private Map<Header, WritableFontData> loadTableData(
-        SortedSet<Header> headers, WritableFontData fd) {
-      Map<Header, WritableFontData> tableData =
-          new HashMap<Header, WritableFontData>(headers.size());
+    private Map<Integer, Table.Builder<? extends Table>> loadTableBuilders(
+        TableDirectory directory, WritableFontData fd) {
+      Map<Integer, Table.Builder<? extends Table>> builderMap =
+          new ConcurrentHashMap<Integer, Table.Builder<? extends Table>>(directory.size());
       logger.fine("########  Reading Table Data");
-      for (Header tableHeader : headers) {
-        WritableFontData data = fd.slice(tableHeader.offset(), tableHeader.length());
-        tableData.put(tableHeader, data);
+      for (int i = 0; i < directory.size(); i++) {
+        WritableFontData data = fd.slice(directory.offsets[i], directory.lengths[i]);
+        builderMap.put(directory.tags[i], getTableBuilder(directory.header(i), data));
       }
-      return tableData;
+      interRelateBuilders(builderMap);
+      return builderMap;
     }
   }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The fonts of a TrueType Collection. Each font is loaded the first time it is
+ * asked for, and a table that several fonts share in the collection data is
+ * built only once and shared by all of them.
+ *
+ * This object is thread safe.
+ */
+public final class FontCollection {
+
+  /**
+   * Identifies a table in the collection data. Tables that are built with data
+   * from other tables of their font, such as the loca and hmtx tables, include
+   * the locations of those tables, since fonts that share one table may not
+   * share the others.
+   */
+  static final class TableKey {
+    private final int offset;
+    private final int length;
+    private final int tag;
+    private final int[] dependencyOffsets;
+
+    TableKey(Header header, int[] dependencyOffsets) {
+      this.offset = header.offset();
+      this.length = header.length();
+      this.tag = header.tag();
+      this.dependencyOffsets = dependencyOffsets;
+    }
+
+    @Override
+    public int hashCode() {
+      return (this.offset * 31 + this.tag) * 31 + Arrays.hashCode(this.dependencyOffsets);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof TableKey)) {
+        return false;
+      }
+      TableKey other = (TableKey) obj;
+      return this.offset == other.offset && this.length == other.length
+          && this.tag == other.tag
+          && Arrays.equals(this.dependencyOffsets, other.dependencyOffsets);
+    }
+  }
+
+  private final FontFactory factory;
+  private final WritableFontData data;
+  private final int[] offsetTableOffsets;
+  private final Font[] fonts;
+  private final Map<TableKey, Table> sharedTables = new HashMap<TableKey, Table>();
+
+  FontCollection(FontFactory factory, WritableFontData data, int[] offsetTableOffsets) {
+    this.factory = factory;
+    this.data = data;
+    this.offsetTableOffsets = offsetTableOffsets;
+    this.fonts = new Font[offsetTableOffsets.length];
+  }
+
+  /**
+   * Get the number of fonts in the collection.
+   *
+   * @return the number of fonts
+   */
+  public int size() {
+    return this.fonts.length;
+  }
+
+  /**
+   * Get a font from the collection, loading it if it hasn't been loaded yet.
+   *
+   * @param index the index of the font in the collection
+   * @return the font
+   * @throws IOException if the font data can't be read
+   */
+  public synchronized Font font(int index) throws IOException {
+    if (index < 0 || index >= this.fonts.length) {
+      throw new IndexOutOfBoundsException("Font index is outside of the collection.");
+    }
+    if (this.fonts[index] == null) {
+      this.fonts[index] = Font.Builder.buildCollectionFont(
+          this.factory, this.data, this.offsetTableOffsets[index], this.sharedTables);
+    }
+    return this.fonts[index];
+  }
+
+  /**
+   * Get all fonts of the collection, loading those that haven't been loaded
+   * yet.
+   *
+   * @return the fonts
+   * @throws IOException if the font data can't be read
+   */
+  public synchronized Font[] fonts() throws IOException {
+    Font[] result = new Font[this.fonts.length];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = font(i);
+    }
+    return result;
+  }
+
+  /**
+   * Get a new builder for a font of the collection. Builders are not shared
+   * since they can be edited.
+   *
+   * @param index the index of the font in the collection
+   * @return a font builder
+   * @throws IOException if the font data can't be read
+   */
+  public Font.Builder fontBuilder(int index) throws IOException {
+    return Font.Builder.getOTFBuilder(this.factory, this.data, this.offsetTableOffsets[index]);
+  }
+}
@@ -22,10 +22,12 @@ import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.data.WritableFontData;
 
 import java.io.*;
+import java.nio.channels.WritableByteChannel;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -34,7 +36,7 @@ import java.util.List;
  * @author Stuart Gill
  */
 public final class FontFactory {
-  private static final int LOOKAHEAD_SIZE = 4;
+  private static final int LOOKAHEAD_SIZE = 36;
 
   // font building settings
   private boolean fingerprint = false;
@@ -123,9 +125,13 @@ public final class FontFactory {
   public Font[] loadFonts(InputStream is) throws IOException {
     PushbackInputStream pbis =
       new PushbackInputStream(new BufferedInputStream(is), FontFactory.LOOKAHEAD_SIZE);
-    if (isCollection(pbis)) {
+    ReadableFontData header = peekHeader(pbis);
+    if (isCollection(header)) {
       return loadCollection(pbis);
     }
+    if (isWebFont(header)) {
+      return new Font[] {loadWebFontForBuilding(readCollection(pbis)).build()};
+    }
     return new Font[] {loadSingleOTF(pbis) };
   }
 
@@ -144,9 +150,13 @@ public final class FontFactory {
   public Builder[] loadFontsForBuilding(InputStream is) throws IOException {
     PushbackInputStream pbis =
       new PushbackInputStream(new BufferedInputStream(is), FontFactory.LOOKAHEAD_SIZE);
-    if (isCollection(pbis)) {
+    ReadableFontData header = peekHeader(pbis);
+    if (isCollection(header)) {
       return loadCollectionForBuilding(pbis);
     }
+    if (isWebFont(header)) {
+      return new Builder[] {loadWebFontForBuilding(readCollection(pbis))};
+    }
     return new Builder[] {loadSingleOTFForBuilding(pbis) };
   }
 
@@ -155,12 +165,7 @@ public final class FontFactory {
   }
 
   private Font[] loadCollection(InputStream is) throws IOException {
-    Font.Builder[] builders = loadCollectionForBuilding(is);
-    Font[] fonts = new Font[builders.length];
-    for (int i = 0; i < fonts.length; i++) {
-      fonts[i] = builders[i].build();
-    }
-    return fonts;
+    return loadCollection(readCollection(is));
   }
 
   private Font.Builder loadSingleOTFForBuilding(InputStream is) throws IOException {
@@ -182,17 +187,36 @@ public final class FontFactory {
   }
 
   private Font.Builder[] loadCollectionForBuilding(InputStream is) throws IOException {
-    WritableFontData wfd = WritableFontData.createWritableFontData(is.available());
+    return loadCollectionForBuilding(readCollection(is));
+  }
+
+  /**
+   * Reads all of the stream. The offsets in a collection can point anywhere in
+   * it so it can't be loaded while streaming.
+   */
+  private static WritableFontData readCollection(InputStream is) throws IOException {
+    // a zero size creates growable data; available() is only an estimate
+    WritableFontData wfd = WritableFontData.createWritableFontData(0);
     wfd.copyFrom(is);
-    // TOOD(stuartg): add collection loading from a stream
-    return loadCollectionForBuilding(wfd);
+    return wfd;
   }
 
-  static private boolean isCollection(PushbackInputStream pbis) throws IOException {
-    byte[] tag = new byte[4];
-    pbis.read(tag);
-    pbis.unread(tag);
-    return Tag.ttcf == Tag.intValue(tag);
+  /**
+   * Reads the start of the stream, enough to tell which format the font data
+   * is in, and pushes it back.
+   */
+  static private ReadableFontData peekHeader(PushbackInputStream pbis) throws IOException {
+    byte[] header = new byte[LOOKAHEAD_SIZE];
+    int length = 0;
+    while (length < header.length) {
+      int read = pbis.read(header, length, header.length - length);
+      if (read < 0) {
+        break;
+      }
+      length += read;
+    }
+    pbis.unread(header, 0, length);
+    return ReadableFontData.createReadableFontData(Arrays.copyOf(header, length));
   }
 
   // ByteArray font loading
@@ -215,6 +239,9 @@ public final class FontFactory {
     if (isCollection(rfd)) {
       return loadCollection(rfd);
     }
+    if (isWebFont(rfd)) {
+      return new Font[] {loadWebFontForBuilding(rfd).build()};
+    }
     return new Font[] {loadSingleOTF(rfd)};
   }
 
@@ -235,6 +262,9 @@ public final class FontFactory {
     if (isCollection(wfd)) {
       return loadCollectionForBuilding(wfd);
     }
+    if (isWebFont(wfd)) {
+      return new Font.Builder[] {loadWebFontForBuilding(wfd)};
+    }
     return new Font.Builder[] {loadSingleOTFForBuilding(wfd, 0)};
   }
 
@@ -243,12 +273,7 @@ public final class FontFactory {
   }
 
   private Font[] loadCollection(WritableFontData wfd) throws IOException {
-    Font.Builder[] builders = loadCollectionForBuilding(wfd);
-    Font[] fonts = new Font[builders.length];
-    for (int i = 0; i < fonts.length; i++) {
-      fonts[i] = builders[i].build();
-    }
-    return fonts;
+    return newFontCollection(wfd).fonts();
   }
 
   private Font.Builder loadSingleOTFForBuilding(WritableFontData wfd, int offsetToOffsetTable)
@@ -261,27 +286,87 @@ public final class FontFactory {
     return builder;
   }
 
+  /**
+   * Loads a WOFF or EOT font. The tables of a WOFF font are inflated when it
+   * is loaded, each one into its own font data.
+   */
+  private Font.Builder loadWebFontForBuilding(WritableFontData wfd) throws IOException {
+    if (WoffDecoder.isWoff(wfd)) {
+      return WoffDecoder.decode(this, wfd);
+    }
+    return loadSingleOTFForBuilding(EOTDecoder.decode(wfd), 0);
+  }
+
   private Font.Builder[] loadCollectionForBuilding(WritableFontData wfd) throws IOException {
-    int ttcTag = wfd.readULongAsInt(Offset.TTCTag.offset);
-    long version = wfd.readFixed(Offset.Version.offset);
-    int numFonts = wfd.readULongAsInt(Offset.numFonts.offset);
+    FontCollection collection = newFontCollection(wfd);
+    Font.Builder[] builders = new Font.Builder[collection.size()];
+    for (int fontNumber = 0; fontNumber < builders.length; fontNumber++) {
+      builders[fontNumber] = collection.fontBuilder(fontNumber);
+    }
+    return builders;
+  }
 
-    Font.Builder[] builders = new Font.Builder[numFonts];
+  private FontCollection newFontCollection(WritableFontData wfd) {
+    int numFonts = wfd.readULongAsInt(Offset.numFonts.offset);
+    int[] offsets = new int[numFonts];
     int offsetTableOffset = Offset.OffsetTable.offset;
     for (int fontNumber = 0; fontNumber < numFonts; fontNumber++,
         offsetTableOffset += FontData.DataSize.ULONG.size()) {
-      int offset = wfd.readULongAsInt(offsetTableOffset);
-      builders[fontNumber] = this.loadSingleOTFForBuilding(wfd, offset);
+      offsets[fontNumber] = wfd.readULongAsInt(offsetTableOffset);
     }
-    return builders;
+    return new FontCollection(this, wfd, offsets);
+  }
+
+  // lazy collection loading
+
+  /**
+   * Open a font collection from the input stream without loading any of its
+   * fonts. Fonts are loaded when they are first asked for and share the tables
+   * that they have in common. A stream with a single font gives a collection
+   * of that one font.
+   *
+   * @param is the input stream font data
+   * @return the font collection
+   * @throws IOException
+   */
+  public FontCollection loadFontCollection(InputStream is) throws IOException {
+    return loadFontCollection(readCollection(is));
+  }
+
+  /**
+   * Open a font collection from the byte array without loading any of its
+   * fonts. Fonts are loaded when they are first asked for and share the tables
+   * that they have in common. A byte array with a single font gives a
+   * collection of that one font.
+   *
+   * @param b the font data
+   * @return the font collection
+   * @throws IOException
+   */
+  public FontCollection loadFontCollection(byte[] b) throws IOException {
+    return loadFontCollection(WritableFontData.createWritableFontData(b));
+  }
+
+  private FontCollection loadFontCollection(WritableFontData wfd) {
+    if (isCollection(wfd)) {
+      return newFontCollection(wfd);
+    }
+    return new FontCollection(this, wfd, new int[] {0});
   }
 
   static private boolean isCollection(ReadableFontData rfd) {
+    if (rfd.length() < 4) {
+      return false;
+    }
     byte[] tag = new byte[4];
     rfd.readBytes(0, tag, 0, tag.length);
     return Tag.ttcf == Tag.intValue(tag);
   }
 
+  static private boolean isWebFont(ReadableFontData rfd) {
+    return WoffDecoder.isWoff(rfd) || EOTDecoder.isEOT(rfd);
+  }
+
   // font serialization
 
   /**
@@ -296,6 +381,31 @@ public final class FontFactory {
     font.serialize(os, tableOrdering);
   }
 
+  /**
+   * Serialize the font to a channel, writing the table data straight from its
+   * storage with a gathering write when the channel supports one.
+   *
+   * @param font the font to serialize
+   * @param channel the destination channel for the font
+   * @throws IOException
+   */
+  public void serializeFont(Font font, WritableByteChannel channel) throws IOException {
+    font.serialize(channel, tableOrdering);
+  }
+
+  /**
+   * Serialize fonts as a TrueType Collection. Tables that are the same in more
+   * than one of the fonts are stored once, and fonts loaded from the collection
+   * share them.
+   *
+   * @param fonts the fonts to serialize
+   * @param os the destination stream for the collection
+   * @throws IOException
+   */
+  public void serializeFontCollection(List<Font> fonts, OutputStream os) throws IOException {
+    Font.serializeCollection(fonts, os, tableOrdering);
+  }
+
   /**
    * Set the table ordering to be used in serializing a font. The table ordering
    * is an ordered list of table ids and tables will be serialized in the order
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+/**
+ * A listener for the building of the tables of a font, to find out which
+ * tables are expensive to build.
+ *
+ * @see Font.Builder#setTableBuildListener(TableBuildListener)
+ */
+public interface TableBuildListener {
+
+  /**
+   * Called after a table has been built and its checksum calculated.
+   *
+   * @param tag the table tag
+   * @param bytesIn the length of the data the table builder was created with;
+   *        zero for a table built from scratch
+   * @param bytesOut the length of the built table
+   * @param buildNanos the wall time taken to build the table, in nanoseconds
+   * @param checksumNanos the wall time taken to calculate the checksum of the
+   *        table, in nanoseconds
+   */
+  void tableBuilt(int tag, int bytesIn, int bytesOut, long buildNanos, long checksumNanos);
+}
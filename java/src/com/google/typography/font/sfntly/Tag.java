@@ -68,6 +68,16 @@ public final class Tag {
   public static final int GSUB = Tag.intValue(new byte[]{'G', 'S', 'U', 'B'});
   public static final int JSTF = Tag.intValue(new byte[]{'J', 'S', 'T', 'F'});
 
+  // font variations
+  public static final int avar = Tag.intValue(new byte[]{'a', 'v', 'a', 'r'});
+  public static final int cvar = Tag.intValue(new byte[]{'c', 'v', 'a', 'r'});
+  public static final int fvar = Tag.intValue(new byte[]{'f', 'v', 'a', 'r'});
+  public static final int gvar = Tag.intValue(new byte[]{'g', 'v', 'a', 'r'});
+  public static final int HVAR = Tag.intValue(new byte[]{'H', 'V', 'A', 'R'});
+  public static final int MVAR = Tag.intValue(new byte[]{'M', 'V', 'A', 'R'});
+  public static final int STAT = Tag.intValue(new byte[]{'S', 'T', 'A', 'T'});
+  public static final int VVAR = Tag.intValue(new byte[]{'V', 'V', 'A', 'R'});
+
   // other
   public static final int DSIG = Tag.intValue(new byte[]{'D', 'S', 'I', 'G'});
   public static final int gasp = Tag.intValue(new byte[]{'g', 'a', 's', 'p'});
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A small map keyed by table tag. The tags are kept in a sorted int array
+ * beside an array of the values, so lookups are a binary search without any
+ * boxing and iteration is in tag order. Fonts have few tables, so insertion by
+ * shifting the arrays is cheap.
+ *
+ * This map is not thread safe and doesn't allow null values.
+ *
+ * @param <V> the type of the values
+ */
+final class TagMap<V> extends AbstractMap<Integer, V> {
+
+  private int[] tags;
+  private Object[] values;
+  private int size;
+
+  TagMap(int capacity) {
+    this.tags = new int[Math.max(capacity, 1)];
+    this.values = new Object[this.tags.length];
+  }
+
+  private int indexOf(Object key) {
+    if (!(key instanceof Integer)) {
+      return -1;
+    }
+    return Arrays.binarySearch(this.tags, 0, this.size, (Integer) key);
+  }
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public V get(Object key) {
+    int index = indexOf(key);
+    return index < 0 ? null : (V) this.values[index];
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public V put(Integer tag, V value) {
+    if (value == null) {
+      throw new NullPointerException("Null values are not allowed.");
+    }
+    int index = Arrays.binarySearch(this.tags, 0, this.size, tag);
+    if (index >= 0) {
+      V old = (V) this.values[index];
+      this.values[index] = value;
+      return old;
+    }
+    index = -index - 1;
+    if (this.size == this.tags.length) {
+      this.tags = Arrays.copyOf(this.tags, 2 * this.size);
+      this.values = Arrays.copyOf(this.values, 2 * this.size);
+    }
+    System.arraycopy(this.tags, index, this.tags, index + 1, this.size - index);
+    System.arraycopy(this.values, index, this.values, index + 1, this.size - index);
+    this.tags[index] = tag;
+    this.values[index] = value;
+    this.size++;
+    return null;
+  }
+
+  @Override
+  public Set<Map.Entry<Integer, V>> entrySet() {
+    return new AbstractSet<Map.Entry<Integer, V>>() {
+      @Override
+      public int size() {
+        return TagMap.this.size;
+      }
+
+      @Override
+      public Iterator<Map.Entry<Integer, V>> iterator() {
+        return new Iterator<Map.Entry<Integer, V>>() {
+          private int index = 0;
+
+          @Override
+          public boolean hasNext() {
+            return this.index < TagMap.this.size;
+          }
+
+          @SuppressWarnings("unchecked")
+          @Override
+          public Map.Entry<Integer, V> next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            Map.Entry<Integer, V> entry = new AbstractMap.SimpleImmutableEntry<Integer, V>(
+                TagMap.this.tags[this.index], (V) TagMap.this.values[this.index]);
+            this.index++;
+            return entry;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes a WOFF 1.0 font. Each table gets its own font data so the sfnt file
+ * that the WOFF was made from is never put back together. A compressed table
+ * is only inflated the first time its data is read, so tables that are never
+ * used stay compressed. Tables that the font builder relates to each other on
+ * load, such as head, maxp, loca and hhea, are inflated then.
+ *
+ * <p>Since inflation is deferred, invalid compressed data in a table is only
+ * found when that table is read, and is reported then as an
+ * {@link IllegalStateException} rather than an {@link IOException} from
+ * {@link #decode}.
+ */
+final class WoffDecoder {
+
+  static final int SIGNATURE = 0x774F4646; // wOFF
+
+  private enum Offset {
+    // header
+    signature(0),
+    flavor(4),
+    length(8),
+    numTables(12),
+    headerSize(44),
+
+    // table directory entry
+    entryTag(0),
+    entryOffset(4),
+    entryCompLength(8),
+    entryOrigLength(12),
+    entryOrigChecksum(16),
+    entrySize(20);
+
+    private final int offset;
+
+    private Offset(int offset) {
+      this.offset = offset;
+    }
+  }
+
+  private WoffDecoder() {
+    // Prevent construction.
+  }
+
+  static boolean isWoff(ReadableFontData data) {
+    return data.length() >= FontData.DataSize.ULONG.size()
+        && data.readULong(Offset.signature.offset) == (SIGNATURE & 0xffffffffL);
+  }
+
+  /**
+   * Create a font builder from the WOFF font data.
+   *
+   * @param factory the factory to create the builder for
+   * @param data the WOFF font data
+   * @return a font builder with the tables of the font
+   * @throws IOException if the WOFF header or table directory is invalid
+   */
+  static Font.Builder decode(FontFactory factory, WritableFontData data) throws IOException {
+    if (!isWoff(data) || data.length() < Offset.headerSize.offset
+        || data.readULong(Offset.length.offset) > data.length()) {
+      throw new IOException("Invalid WOFF header.");
+    }
+    int flavor = (int) data.readULong(Offset.flavor.offset);
+    int numTables = data.readUShort(Offset.numTables.offset);
+    if (Offset.headerSize.offset + (long) numTables * Offset.entrySize.offset > data.length()) {
+      throw new IOException("Invalid WOFF table directory.");
+    }
+
+    Map<Header, WritableFontData> tableData = new HashMap<Header, WritableFontData>(numTables);
+    for (int i = 0; i < numTables; i++) {
+      int entry = Offset.headerSize.offset + i * Offset.entrySize.offset;
+      int tag = (int) data.readULong(entry + Offset.entryTag.offset);
+      // the offsets and lengths are unsigned, so read them as longs to reject
+      // the ones that don't fit in the data instead of failing on them
+      long offset = data.readULong(entry + Offset.entryOffset.offset);
+      long compLength = data.readULong(entry + Offset.entryCompLength.offset);
+      long origLength = data.readULong(entry + Offset.entryOrigLength.offset);
+      long checksum = data.readULong(entry + Offset.entryOrigChecksum.offset);
+      if (compLength > origLength || offset + compLength > data.length()
+          || origLength > Integer.MAX_VALUE) {
+        throw new IOException("Invalid WOFF table directory entry for " + Tag.stringValue(tag));
+      }
+      WritableFontData table;
+      if (compLength == origLength) {
+        table = data.slice((int) offset, (int) origLength);
+      } else {
+        table = WritableFontData.createInflatingFontData(
+            data.slice((int) offset, (int) compLength), (int) origLength);
+      }
+      // the offset in the WOFF data identifies the table since there is no sfnt offset
+      tableData.put(new Header(tag, checksum, (int) offset, (int) origLength), table);
+    }
+    return Font.Builder.getOTFBuilder(factory, flavor, tableData);
+  }
+}
@@ -19,6 +19,8 @@ package com.google.typography.font.sfntly.data;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * An abstraction to a contiguous array of bytes.
@@ -271,6 +273,22 @@ abstract class ByteArray<T extends ByteArray<T>> {
     return index;
   }
 
+  /**
+   * Adds views of a range of this ByteArray to a list of buffers for a
+   * gathering write to a channel. Implementations that can share their
+   * storage with the views do so, in which case the ByteArray must not be
+   * changed until the buffers have been written.
+   *
+   * @param buffers the list to add the views to
+   * @param offset the start of the range
+   * @param length the length of the range
+   */
+  public void addByteBuffers(List<ByteBuffer> buffers, int offset, int length) {
+    byte[] b = new byte[length];
+    this.get(offset, b, 0, length);
+    buffers.add(ByteBuffer.wrap(b));
+  }
+
   /**
    * Copies from the InputStream into this ByteArray.
    *
@@ -86,6 +86,7 @@ import java.io.OutputStream;
  */
 public class FontOutputStream extends OutputStream {
   private final OutputStream out;
+  private final byte[] scratch = new byte[4];
   private long position;
 
   /**
@@ -143,8 +144,9 @@ public class FontOutputStream extends OutputStream {
    * @throws IOException
    */
   public void writeUShort(int us) throws IOException {
-    this.write((byte) ((us >> 8) & 0xff));
-    this.write((byte) (us & 0xff));
+    this.scratch[0] = (byte) ((us >> 8) & 0xff);
+    this.scratch[1] = (byte) (us & 0xff);
+    this.write(this.scratch, 0, 2);
   }
 
   /**
@@ -164,9 +166,10 @@ public class FontOutputStream extends OutputStream {
    * @throws IOException
    */
   public void writeUInt24(int ui) throws IOException {
-    this.write((byte) ((ui >> 16) & 0xff));
-    this.write((byte) ((ui >> 8) & 0xff));
-    this.write((byte) (ui & 0xff));
+    this.scratch[0] = (byte) ((ui >> 16) & 0xff);
+    this.scratch[1] = (byte) ((ui >> 8) & 0xff);
+    this.scratch[2] = (byte) (ui & 0xff);
+    this.write(this.scratch, 0, 3);
   }
 
   /**
@@ -176,10 +179,11 @@ public class FontOutputStream extends OutputStream {
    * @throws IOException
    */
   public void writeULong(long ul) throws IOException {
-    this.write((byte) ((ul >> 24) & 0xff));
-    this.write((byte) ((ul >> 16) & 0xff));
-    this.write((byte) ((ul >> 8) & 0xff));
-    this.write((byte) (ul & 0xff));
+    this.scratch[0] = (byte) ((ul >> 24) & 0xff);
+    this.scratch[1] = (byte) ((ul >> 16) & 0xff);
+    this.scratch[2] = (byte) ((ul >> 8) & 0xff);
+    this.scratch[3] = (byte) (ul & 0xff);
+    this.write(this.scratch, 0, 4);
   }
 
   /**
@@ -18,6 +18,8 @@ package com.google.typography.font.sfntly.data;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * A growable memory implementation of the ByteArray interface.
@@ -70,6 +72,11 @@ final class GrowableMemoryByteArray extends ByteArray<GrowableMemoryByteArray> {
     return length;
   }
 
+  @Override
+  public void addByteBuffers(List<ByteBuffer> buffers, int offset, int length) {
+    buffers.add(ByteBuffer.wrap(this.b, offset, length));
+  }
+
   private void growTo(int newSize) {
     if (newSize <= b.length) {
       return;
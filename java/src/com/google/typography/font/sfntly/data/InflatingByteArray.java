@@ -0,0 +1,137 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A fixed size memory implementation of the ByteArray interface whose bytes
+ * are zlib compressed data that is inflated the first time any of them is
+ * read or written. Until then only the compressed data is held.
+ */
+final class InflatingByteArray extends ByteArray<InflatingByteArray> {
+
+  private ReadableFontData compressed;
+  private volatile byte[] b;
+
+  /**
+   * Construct a new InflatingByteArray for the compressed data.
+   *
+   * @param compressed the zlib compressed data, which must not be changed
+   * @param length the length of the data once it is inflated
+   */
+  InflatingByteArray(ReadableFontData compressed, int length) {
+    super(length, length);
+    this.compressed = compressed;
+  }
+
+  /**
+   * Gets the inflated data, inflating it if this is the first time.
+   *
+   * @throws IllegalStateException if the compressed data is invalid or
+   *         doesn't inflate to the length of the array, or if the array has
+   *         been closed
+   */
+  private byte[] bytes() {
+    byte[] result = this.b;
+    if (result == null) {
+      synchronized (this) {
+        result = this.b;
+        if (result == null) {
+          // the compressed data is only let go of once it's inflated or closed
+          if (this.compressed == null) {
+            throw new IllegalStateException("The byte array has been closed.");
+          }
+          result = inflate();
+          this.b = result;
+          this.compressed = null;
+        }
+      }
+    }
+    return result;
+  }
+
+  private byte[] inflate() {
+    byte[] input = new byte[this.compressed.length()];
+    this.compressed.readBytes(0, input, 0, input.length);
+    byte[] output = new byte[this.length()];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(input);
+      int length = 0;
+      while (length < output.length && !inflater.finished()) {
+        int n = inflater.inflate(output, length, output.length - length);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        length += n;
+      }
+      if (length != output.length || !inflater.finished()) {
+        throw new IllegalStateException("Compressed data doesn't inflate to its original length.");
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("Invalid compressed data.", e);
+    } finally {
+      inflater.end();
+    }
+    return output;
+  }
+
+  @Override
+  protected void internalPut(int index, byte b) {
+    this.bytes()[index] = b;
+  }
+
+  @Override
+  protected int internalPut(int index, byte[] b, int offset, int length) {
+    System.arraycopy(b, offset, this.bytes(), index, length);
+    return length;
+  }
+
+  @Override
+  protected int internalGet(int index) {
+    return this.bytes()[index];
+  }
+
+  @Override
+  protected int internalGet(int index, byte[] b, int offset, int length) {
+    System.arraycopy(this.bytes(), index, b, offset, length);
+    return length;
+  }
+
+  @Override
+  public synchronized void close() {
+    this.compressed = null;
+    this.b = null;
+  }
+
+  @Override
+  public int copyTo(OutputStream os, int offset, int length) throws IOException {
+    os.write(this.bytes(), offset, length);
+    return length;
+  }
+
+  @Override
+  public void addByteBuffers(List<ByteBuffer> buffers, int offset, int length) {
+    buffers.add(ByteBuffer.wrap(this.bytes(), offset, length));
+  }
+}
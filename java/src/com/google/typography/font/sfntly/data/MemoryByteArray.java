@@ -18,6 +18,8 @@ package com.google.typography.font.sfntly.data;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * A fixed size memory implementation of the ByteArray interface.
@@ -97,4 +99,9 @@ final class MemoryByteArray extends ByteArray<MemoryByteArray> {
     os.write(b, offset, length);
     return length;
   }
+
+  @Override
+  public void addByteBuffers(List<ByteBuffer> buffers, int offset, int length) {
+    buffers.add(ByteBuffer.wrap(this.b, offset, length));
+  }
 }
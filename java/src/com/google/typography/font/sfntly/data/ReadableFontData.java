@@ -19,8 +19,10 @@ package com.google.typography.font.sfntly.data;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 
 /**
@@ -91,6 +93,9 @@ import java.util.Date;
  */
 public class ReadableFontData extends FontData {
 
+  // the size of the blocks that data is read in to compare or hash it
+  private static final int COMPARE_BUFFER_SIZE = 4096;
+
   public static ReadableFontData createReadableFontData(byte[] b) {
     ByteArray<?> ba = new MemoryByteArray(b);
     return new ReadableFontData(ba);
@@ -439,6 +444,17 @@ public class ReadableFontData extends FontData {
     return (int) ulong;
   }
 
+  /**
+   * Reads the USHORT at the given index, little-endian variant.
+   *
+   * @param index index into the font data
+   * @return the USHORT
+   * @throws IndexOutOfBoundsException if index is outside the FontData's range
+   */
+  public int readUShortLE(int index) {
+    return 0xffff & (this.readUByte(index) | this.readUByte(index + 1) << 8);
+  }
+
   /**
    * Reads the ULONG at the given index, little-endian variant.
    *
@@ -540,6 +556,54 @@ public class ReadableFontData extends FontData {
     return this.readUShort(index);
   }
 
+  /**
+   * Gets a hash of the bytes of the data. Data with the same bytes has the
+   * same hash, wherever it is stored.
+   *
+   * @return the hash
+   */
+  public int contentHashCode() {
+    byte[] buffer = new byte[Math.min(this.length(), COMPARE_BUFFER_SIZE)];
+    int hash = this.length();
+    for (int index = 0; index < this.length(); index += buffer.length) {
+      int length = Math.min(buffer.length, this.length() - index);
+      this.readBytes(index, buffer, 0, length);
+      for (int i = 0; i < length; i++) {
+        hash = 31 * hash + buffer[i];
+      }
+    }
+    return hash;
+  }
+
+  /**
+   * Checks whether the data has the same bytes as other data. The bytes are
+   * compared a block at a time, so neither is copied whole.
+   *
+   * @param other the other data
+   * @return true if the lengths and the bytes are the same
+   */
+  public boolean contentEquals(ReadableFontData other) {
+    if (this == other) {
+      return true;
+    }
+    if (this.length() != other.length()) {
+      return false;
+    }
+    byte[] buffer = new byte[Math.min(this.length(), COMPARE_BUFFER_SIZE)];
+    byte[] otherBuffer = new byte[buffer.length];
+    for (int index = 0; index < this.length(); index += buffer.length) {
+      int length = Math.min(buffer.length, this.length() - index);
+      this.readBytes(index, buffer, 0, length);
+      other.readBytes(index, otherBuffer, 0, length);
+      for (int i = 0; i < length; i++) {
+        if (buffer[i] != otherBuffer[i]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   /**
    * Copy the FontData to an OutputStream.
    *
@@ -551,6 +615,19 @@ public class ReadableFontData extends FontData {
     return this.array.copyTo(os, this.boundOffset(0), this.length());
   }
 
+  /**
+   * Adds views of the FontData to a list of buffers for a gathering write to a
+   * channel. The views share the backing storage where they can, so the data
+   * must not be changed until the buffers have been written.
+   *
+   * @param buffers the list to add the views to
+   */
+  public void addByteBuffers(List<ByteBuffer> buffers) {
+    if (this.length() > 0) {
+      this.array.addByteBuffers(buffers, this.boundOffset(0), this.length());
+    }
+  }
+
   /**
    * Copies the FontData to a WritableFontData.
    *
@@ -18,6 +18,7 @@ package com.google.typography.font.sfntly.data;
 
 import com.google.typography.font.sfntly.math.FontMath;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -108,6 +109,19 @@ final class SegmentedGrowableMemoryByteArray extends ByteArray<SegmentedGrowable
     return copyCount;
   }
 
+  @Override
+  public void addByteBuffers(List<ByteBuffer> buffers, int offset, int length) {
+    int index = offset;
+    while (index < offset + length) {
+      int bufferIndex = this.bufferIndex(index);
+      int bufferOffset = this.bufferOffset(bufferIndex, index);
+      byte[] buffer = this.buffer(bufferIndex);
+      int copyLength = Math.min(offset + length - index, buffer.length - bufferOffset);
+      buffers.add(ByteBuffer.wrap(buffer, bufferOffset, copyLength));
+      index += copyLength;
+    }
+  }
+
   @Override
   public void close() {
     this.buffers = null;
@@ -63,6 +63,25 @@ public final class WritableFontData extends ReadableFontData {
     return wfd;
   }
   
+  /**
+   * Constructs a fixed length writable font data object over zlib compressed
+   * data. The data is only inflated the first time any of it is read or
+   * written, so until then just the compressed data is held. The compressed
+   * data is shared and should not be changed by the caller.
+   *
+   * @param compressed the zlib compressed data
+   * @param length the length of the data once it is inflated
+   * @return a new writable font data
+   * @throws IllegalStateException on first access if the compressed data is
+   *         invalid or doesn't inflate to exactly <code>length</code> bytes
+   */
+  public static final WritableFontData createInflatingFontData(
+      ReadableFontData compressed, int length) {
+    ByteArray<?> ba = new InflatingByteArray(compressed, length);
+    WritableFontData wfd = new WritableFontData(ba);
+    return wfd;
+  }
+
   /**
    * Constructs a writable font data object. The new font data object will wrap
    * a copy of the the data used by the original writable font data object passed in.
@@ -22,12 +22,17 @@ import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.bitmap.EbdtTable;
 import com.google.typography.font.sfntly.table.bitmap.EblcTable;
 import com.google.typography.font.sfntly.table.bitmap.EbscTable;
+import com.google.typography.font.sfntly.table.cff.CffTable;
 import com.google.typography.font.sfntly.table.core.*;
 import com.google.typography.font.sfntly.table.opentype.GSubTable;
 import com.google.typography.font.sfntly.table.truetype.ControlProgramTable;
 import com.google.typography.font.sfntly.table.truetype.ControlValueTable;
 import com.google.typography.font.sfntly.table.truetype.GlyphTable;
 import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.table.variations.AxisVariationsTable;
+import com.google.typography.font.sfntly.table.variations.FontVariationsTable;
+import com.google.typography.font.sfntly.table.variations.GlyphVariationsTable;
+import com.google.typography.font.sfntly.table.variations.HorizontalMetricsVariationsTable;
 
 
 /**
@@ -203,8 +208,8 @@ public class Table extends FontDataTable {
         return LocaTable.Builder.createBuilder(header, tableData);
       } else if (tag == Tag.prep) {
         return ControlProgramTable.Builder.createBuilder(header, tableData);
-        // } else if (tag == CFF) {
-        // break;
+      } else if (tag == Tag.CFF) {
+        return CffTable.Builder.createBuilder(header, tableData);
         // } else if (tag == VORG) {
         // break;
       } else if (tag == Tag.EBDT) {
@@ -243,6 +248,14 @@ public class Table extends FontDataTable {
         // break;
         // } else if (tag == vmtx) {
         // break;
+      } else if (tag == Tag.avar) {
+        return AxisVariationsTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.fvar) {
+        return FontVariationsTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.gvar) {
+        return GlyphVariationsTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.HVAR) {
+        return HorizontalMetricsVariationsTable.Builder.createBuilder(header, tableData);
       } else if (tag == Tag.bhed) {
         return FontHeaderTable.Builder.createBuilder(header, tableData);
       } else if (tag == Tag.bdat) {
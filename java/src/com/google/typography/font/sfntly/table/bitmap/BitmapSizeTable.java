@@ -26,12 +26,14 @@ import com.google.typography.font.sfntly.table.bitmap.EblcTable.Offset;
 import java.util.*;
 
 public final class BitmapSizeTable extends SubTable {
-  // binary search would be faster but many fonts have index subtables that
-  // aren't sorted
+  // the builder searches its subtables linearly since they may be edited
+  // and many fonts have index subtables that aren't sorted
   private static final boolean USE_BINARY_SEARCH = false;
 
   private final Object indexSubTablesLock = new Object();
   private volatile List<IndexSubTable> indexSubTables = null;
+  // set before indexSubTables is published
+  private SubTableIndex subTableIndex;
 
   protected BitmapSizeTable(ReadableFontData data, ReadableFontData masterData) {
     super(data, masterData);
@@ -104,6 +106,27 @@ public final class BitmapSizeTable extends SubTable {
     return subTable.glyphInfo(glyphId);
   }
 
+  /**
+   * Gets the location of the glyph's bitmap with a single search of the index
+   * subtables.
+   *
+   * @param glyphId the glyph id
+   * @return the absolute glyph info, with the offset from the start of the
+   *         EBDT table, or null if the strike has no bitmap for the glyph
+   */
+  public BitmapGlyphInfo glyphLocation(int glyphId) {
+    IndexSubTable subTable = searchIndexSubTables(glyphId);
+    if (subTable == null) {
+      return null;
+    }
+    int startOffset = subTable.glyphStartOffset(glyphId);
+    if (startOffset == -1) {
+      return null;
+    }
+    return new BitmapGlyphInfo(glyphId, subTable.imageDataOffset() + startOffset,
+        subTable.glyphLength(glyphId), subTable.imageFormat());
+  }
+
   public int glyphOffset(int glyphId) {
     IndexSubTable subTable = searchIndexSubTables(glyphId);
     if (subTable == null) {
@@ -129,43 +152,78 @@ public final class BitmapSizeTable extends SubTable {
   }
 
   private IndexSubTable searchIndexSubTables(int glyphId) {
-    // would be faster to binary search but too many size tables don't have
-    // sorted subtables
-    if (USE_BINARY_SEARCH) {
-      return binarySearchIndexSubTables(glyphId);
-    }
-    return linearSearchIndexSubTables(glyphId);
+    List<IndexSubTable> subTableList = getIndexSubTableList();
+    int index = this.subTableIndex.search(glyphId);
+    return index < 0 ? null : subTableList.get(index);
   }
 
-  private IndexSubTable linearSearchIndexSubTables(int glyphId) {
-    for (IndexSubTable subTable : this.getIndexSubTableList()) {
-      if (subTable.firstGlyphIndex() <= glyphId && subTable.lastGlyphIndex() >= glyphId) {
-        return subTable;
+  /**
+   * The glyph ranges of the index subtables, sorted by first glyph so that
+   * the subtable for a glyph can be found with a binary search even though
+   * many fonts don't store the subtables in glyph order.
+   */
+  private static final class SubTableIndex {
+    private final int[] firstGlyphs;
+    private final int[] lastGlyphs;
+    private final int[] subTables;
+    // whether some ranges overlap, which the spec doesn't allow but which
+    // requires the subtables to be searched in their original order
+    private final boolean overlapping;
+
+    SubTableIndex(List<IndexSubTable> subTableList) {
+      Integer[] order = new Integer[subTableList.size()];
+      int count = 0;
+      for (int i = 0; i < order.length; i++) {
+        if (subTableList.get(i) != null) {
+          order[count++] = i;
+        }
       }
+      final List<IndexSubTable> list = subTableList;
+      Arrays.sort(order, 0, count, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+          return list.get(o1).firstGlyphIndex() - list.get(o2).firstGlyphIndex();
+        }
+      });
+      this.firstGlyphs = new int[count];
+      this.lastGlyphs = new int[count];
+      this.subTables = new int[count];
+      boolean overlap = false;
+      for (int i = 0; i < count; i++) {
+        IndexSubTable subTable = subTableList.get(order[i]);
+        this.firstGlyphs[i] = subTable.firstGlyphIndex();
+        this.lastGlyphs[i] = subTable.lastGlyphIndex();
+        this.subTables[i] = order[i];
+        overlap |= i > 0 && this.firstGlyphs[i] <= this.lastGlyphs[i - 1];
+      }
+      this.overlapping = overlap;
     }
-    return null;
-  }
 
-  private IndexSubTable binarySearchIndexSubTables(int glyphId) {
-    List<IndexSubTable> subTableList = getIndexSubTableList();
-    int index = 0;
-    int bottom = 0;
-    int top = subTableList.size();
-    while (top != bottom) {
-      index = (top + bottom) / 2;
-      IndexSubTable subTable = subTableList.get(index);
-      if (glyphId < subTable.firstGlyphIndex()) {
-        // location below current location
-        top = index;
-      } else {
-        if (glyphId <= subTable.lastGlyphIndex()) {
-          return subTable;
+    /**
+     * Returns the index of the first subtable in the strike that covers the
+     * glyph, or -1 if none does.
+     */
+    int search(int glyphId) {
+      if (this.overlapping) {
+        int result = -1;
+        for (int i = 0; i < this.subTables.length; i++) {
+          if (this.firstGlyphs[i] <= glyphId && glyphId <= this.lastGlyphs[i]
+              && (result < 0 || this.subTables[i] < result)) {
+            result = this.subTables[i];
+          }
         }
-        // location is above the current location
-        bottom = index + 1;
+        return result;
+      }
+      int i = Arrays.binarySearch(this.firstGlyphs, glyphId);
+      if (i < 0) {
+        // the last range that starts before the glyph
+        i = -i - 2;
+      }
+      if (i < 0 || glyphId > this.lastGlyphs[i]) {
+        return -1;
       }
+      return this.subTables[i];
     }
-    return null;
   }
 
   private IndexSubTable createIndexSubTable(int index) {
@@ -182,6 +240,7 @@ public final class BitmapSizeTable extends SubTable {
           for (int i = 0; i < this.numberOfIndexSubTables(); i++) {
             subTables.add(this.createIndexSubTable(i));
           }
+          this.subTableIndex = new SubTableIndex(subTables);
           this.indexSubTables = subTables;
         }
       }
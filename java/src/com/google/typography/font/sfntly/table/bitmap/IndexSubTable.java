@@ -85,11 +85,12 @@ public abstract class IndexSubTable extends SubTable {
     if (loca == -1) {
       return null;
     }
-    if (this.glyphStartOffset(glyphId) == -1) {
+    int glyphStartOffset = this.glyphStartOffset(glyphId);
+    if (glyphStartOffset == -1) {
       return null;
     }
 
-    return new BitmapGlyphInfo(glyphId, this.imageDataOffset(), this.glyphStartOffset(glyphId),
+    return new BitmapGlyphInfo(glyphId, this.imageDataOffset(), glyphStartOffset,
         this.glyphLength(glyphId), this.imageFormat());
   }
 
@@ -55,8 +55,8 @@ public final class IndexSubTableFormat1 extends IndexSubTable {
   }
 
   private int loca(int loca) {
-    return this.imageDataOffset() + this.data.readULongAsInt(
-        Offset.indexSubTable1_offsetArray.offset + loca * FontData.DataSize.ULONG.size());    
+    return this.data.readULongAsInt(
+        Offset.indexSubTable1_offsetArray.offset + loca * FontData.DataSize.ULONG.size());
   }
 
   public static final class Builder extends IndexSubTable.Builder<IndexSubTableFormat1> {
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.cff;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A CFF DICT: a list of operators, each with the operands that come before it.
+ * The raw bytes of each entry's operands are kept so that a DICT can be written
+ * back with only some entries changed and no loss in the others.
+ *
+ * Two byte operators are given as {@code 12 << 8 | second byte}.
+ *
+ * This object is immutable.
+ */
+public final class CffDict {
+
+  // Top DICT operators
+  public static final int CHARSET = 15;
+  public static final int ENCODING = 16;
+  public static final int CHARSTRINGS = 17;
+  public static final int PRIVATE = 18;
+  public static final int CHARSTRING_TYPE = escape(6);
+  public static final int ROS = escape(30);
+  public static final int CID_COUNT = escape(34);
+  public static final int FD_ARRAY = escape(36);
+  public static final int FD_SELECT = escape(37);
+
+  // Private DICT operators
+  public static final int SUBRS = 19;
+
+  private static final int ESCAPE = 12;
+  private static final int SHORT_INT = 28;
+  private static final int LONG_INT = 29;
+  private static final int REAL = 30;
+  private static final String[] REAL_NIBBLES =
+      { "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", ".", "E", "E-", "", "-", "" };
+
+  private static final class Entry {
+    final int operator;
+    final ReadableFontData operandData;
+    final double[] operands;
+
+    Entry(int operator, ReadableFontData operandData, double[] operands) {
+      this.operator = operator;
+      this.operandData = operandData;
+      this.operands = operands;
+    }
+  }
+
+  private final List<Entry> entries;
+
+  private CffDict(List<Entry> entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * Gets the code of a two byte operator.
+   *
+   * @param secondByte the byte after the escape byte
+   * @return the operator
+   */
+  public static int escape(int secondByte) {
+    return ESCAPE << 8 | secondByte;
+  }
+
+  /**
+   * Parses a DICT.
+   *
+   * @param data the DICT data, and nothing else
+   * @return the DICT
+   * @throws IllegalArgumentException if the DICT is malformed
+   */
+  public static CffDict read(ReadableFontData data) {
+    List<Entry> entries = new ArrayList<Entry>();
+    List<Double> operands = new ArrayList<Double>();
+    int operandStart = 0;
+    int index = 0;
+    while (index < data.length()) {
+      int b0 = data.readUByte(index);
+      if (b0 <= 21) {
+        int operator = b0;
+        int next = index + 1;
+        if (b0 == ESCAPE) {
+          operator = escape(data.readUByte(index + 1));
+          next++;
+        }
+        double[] values = new double[operands.size()];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = operands.get(i);
+        }
+        entries.add(
+            new Entry(operator, data.slice(operandStart, index - operandStart), values));
+        operands.clear();
+        index = next;
+        operandStart = next;
+      } else if (b0 == REAL) {
+        int end = index + 1;
+        StringBuilder real = new StringBuilder();
+        boolean done = false;
+        while (!done) {
+          int b = data.readUByte(end++);
+          for (int nibble : new int[] { b >> 4, b & 0xf }) {
+            if (nibble == 0xf) {
+              done = true;
+              break;
+            }
+            real.append(REAL_NIBBLES[nibble]);
+          }
+        }
+        operands.add(parseReal(real.toString()));
+        index = end;
+      } else {
+        operands.add((double) readInteger(data, index));
+        index += integerLength(b0);
+      }
+    }
+    if (!operands.isEmpty()) {
+      throw new IllegalArgumentException("CFF DICT ends with operands and no operator.");
+    }
+    return new CffDict(Collections.unmodifiableList(entries));
+  }
+
+  private static double parseReal(String real) {
+    try {
+      return real.isEmpty() ? 0 : Double.parseDouble(real);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid CFF real number " + real + ".");
+    }
+  }
+
+  /**
+   * Reads an integer operand in the encoding shared by DICTs and Type 2
+   * charstrings. Charstrings use 28 the same way but 29 is not an integer.
+   *
+   * @param data the data
+   * @param index the offset of the first byte of the integer
+   * @return the integer
+   */
+  static int readInteger(ReadableFontData data, int index) {
+    int b0 = data.readUByte(index);
+    if (b0 == SHORT_INT) {
+      return data.readShort(index + 1);
+    } else if (b0 == LONG_INT) {
+      return data.readLong(index + 1);
+    } else if (b0 >= 32 && b0 <= 246) {
+      return b0 - 139;
+    } else if (b0 >= 247 && b0 <= 250) {
+      return (b0 - 247) * 256 + data.readUByte(index + 1) + 108;
+    } else if (b0 >= 251 && b0 <= 254) {
+      return -(b0 - 251) * 256 - data.readUByte(index + 1) - 108;
+    }
+    throw new IllegalArgumentException("Invalid CFF DICT operand byte " + b0 + ".");
+  }
+
+  static int integerLength(int b0) {
+    if (b0 == SHORT_INT) {
+      return 3;
+    } else if (b0 == LONG_INT) {
+      return 5;
+    } else if (b0 >= 247 && b0 <= 254) {
+      return 2;
+    }
+    return 1;
+  }
+
+  /**
+   * @param operator the operator
+   * @return true if the DICT has the operator
+   */
+  public boolean has(int operator) {
+    return entry(operator) != null;
+  }
+
+  /**
+   * Gets the operands of an operator.
+   *
+   * @param operator the operator
+   * @return a new array of the operands, or null if the DICT doesn't have the
+   *         operator
+   */
+  public double[] operands(int operator) {
+    Entry entry = entry(operator);
+    return entry == null ? null : entry.operands.clone();
+  }
+
+  /**
+   * Gets an integer operand of an operator.
+   *
+   * @param operator the operator
+   * @param index the index of the operand
+   * @param defaultValue the value if the DICT doesn't have the operator
+   * @return the operand
+   */
+  public int intOperand(int operator, int index, int defaultValue) {
+    Entry entry = entry(operator);
+    if (entry == null) {
+      return defaultValue;
+    }
+    if (index >= entry.operands.length) {
+      throw new IllegalArgumentException("CFF DICT operator " + operator + " has only "
+          + entry.operands.length + " operands.");
+    }
+    return (int) entry.operands[index];
+  }
+
+  /**
+   * @return the operators in the order they are in the DICT
+   */
+  public List<Integer> operators() {
+    List<Integer> operators = new ArrayList<Integer>(this.entries.size());
+    for (Entry entry : this.entries) {
+      operators.add(entry.operator);
+    }
+    return operators;
+  }
+
+  private Entry entry(int operator) {
+    for (Entry entry : this.entries) {
+      if (entry.operator == operator) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Writes the DICT with some of its operators given new integer operands.
+   * The new operands are always written in the five byte form so that the
+   * length of the DICT doesn't depend on their values, which lets offsets to
+   * data after the DICT be worked out before they are written. An operator
+   * given no operands is left out, and an operator the DICT doesn't have is
+   * added at the end.
+   *
+   * @param replacements the new operands of operators, in the order to add
+   *        any that are new
+   * @return the DICT data
+   */
+  public byte[] serialize(Map<Integer, int[]> replacements) {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    Map<Integer, int[]> remaining = new LinkedHashMap<Integer, int[]>(replacements);
+    for (Entry entry : this.entries) {
+      int[] operands = remaining.remove(entry.operator);
+      if (operands == null) {
+        byte[] b = new byte[entry.operandData.length()];
+        entry.operandData.readBytes(0, b, 0, b.length);
+        os.write(b, 0, b.length);
+        writeOperator(os, entry.operator);
+      } else if (operands.length > 0) {
+        writeEntry(os, entry.operator, operands);
+      }
+    }
+    for (Map.Entry<Integer, int[]> entry : remaining.entrySet()) {
+      if (entry.getValue().length > 0) {
+        writeEntry(os, entry.getKey(), entry.getValue());
+      }
+    }
+    return os.toByteArray();
+  }
+
+  private static void writeEntry(ByteArrayOutputStream os, int operator, int[] operands) {
+    for (int operand : operands) {
+      os.write(LONG_INT);
+      os.write(operand >> 24);
+      os.write(operand >> 16);
+      os.write(operand >> 8);
+      os.write(operand);
+    }
+    writeOperator(os, operator);
+  }
+
+  private static void writeOperator(ByteArrayOutputStream os, int operator) {
+    if (operator > 0xff) {
+      os.write(ESCAPE);
+    }
+    os.write(operator & 0xff);
+  }
+}
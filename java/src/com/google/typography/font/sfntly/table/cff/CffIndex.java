@@ -0,0 +1,218 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.cff;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+
+import java.util.List;
+
+/**
+ * A CFF INDEX: a count, an offset size, an array of offsets and the data of
+ * the objects that the offsets point into. The offsets are 1-based from the
+ * byte before the object data.
+ *
+ * This object is immutable.
+ */
+public final class CffIndex {
+
+  private final ReadableFontData data;
+  private final int count;
+  private final int offSize;
+  private final int length;
+
+  private CffIndex(ReadableFontData data, int count, int offSize, int length) {
+    this.data = data;
+    this.count = count;
+    this.offSize = offSize;
+    this.length = length;
+  }
+
+  /**
+   * Reads the INDEX at an offset.
+   *
+   * @param data the data the INDEX is in
+   * @param offset the offset of the INDEX in the data
+   * @return the INDEX
+   * @throws IllegalArgumentException if the INDEX is malformed
+   */
+  public static CffIndex read(ReadableFontData data, int offset) {
+    int count = data.readUShort(offset);
+    if (count == 0) {
+      return new CffIndex(data.slice(offset, 2), 0, 0, 2);
+    }
+    int offSize = data.readUByte(offset + 2);
+    if (offSize < 1 || offSize > 4) {
+      throw new IllegalArgumentException("Invalid CFF INDEX offset size " + offSize + ".");
+    }
+    int last = readOffset(data, offset + 3 + count * offSize, offSize);
+    int length = 3 + (count + 1) * offSize + last - 1;
+    if (last < 1 || offset + length > data.length()) {
+      throw new IllegalArgumentException("CFF INDEX extends past the end of the data.");
+    }
+    return new CffIndex(data.slice(offset, length), count, offSize, length);
+  }
+
+  /**
+   * @return the number of objects in the INDEX
+   */
+  public int count() {
+    return this.count;
+  }
+
+  /**
+   * @return the number of bytes the whole INDEX takes
+   */
+  public int length() {
+    return this.length;
+  }
+
+  /**
+   * @return the data of the whole INDEX
+   */
+  public ReadableFontData readFontData() {
+    return this.data;
+  }
+
+  /**
+   * Gets the data of an object.
+   *
+   * @param index the index of the object
+   * @return the object data
+   */
+  public ReadableFontData data(int index) {
+    int start = offset(index);
+    int end = offset(index + 1);
+    if (end < start) {
+      throw new IllegalArgumentException("CFF INDEX offsets are not in order.");
+    }
+    return this.data.slice(dataStart() + start, end - start);
+  }
+
+  /**
+   * Gets the length of an object.
+   *
+   * @param index the index of the object
+   * @return the object length
+   */
+  public int dataLength(int index) {
+    return offset(index + 1) - offset(index);
+  }
+
+  private int dataStart() {
+    return 3 + (this.count + 1) * this.offSize - 1;
+  }
+
+  private int offset(int index) {
+    if (index < 0 || index > this.count) {
+      throw new IndexOutOfBoundsException("CFF INDEX object " + index + " is out of range.");
+    }
+    return readOffset(this.data, 3 + index * this.offSize, this.offSize);
+  }
+
+  static int readOffset(ReadableFontData data, int offset, int offSize) {
+    switch (offSize) {
+      case 1:
+        return data.readUByte(offset);
+      case 2:
+        return data.readUShort(offset);
+      case 3:
+        return data.readUInt24(offset);
+      default:
+        return data.readULongAsInt(offset);
+    }
+  }
+
+  private static int offSize(int lastOffset) {
+    if (lastOffset <= 0xff) {
+      return 1;
+    } else if (lastOffset <= 0xffff) {
+      return 2;
+    } else if (lastOffset <= 0xffffff) {
+      return 3;
+    }
+    return 4;
+  }
+
+  private static int dataLength(List<ReadableFontData> objects) {
+    int length = 0;
+    for (ReadableFontData object : objects) {
+      length += object.length();
+    }
+    return length;
+  }
+
+  /**
+   * Gets the number of bytes an INDEX of the objects takes, using the smallest
+   * offset size that fits.
+   *
+   * @param objects the objects
+   * @return the INDEX length
+   */
+  public static int serializedLength(List<ReadableFontData> objects) {
+    if (objects.isEmpty()) {
+      return 2;
+    }
+    int dataLength = dataLength(objects);
+    return 3 + (objects.size() + 1) * offSize(dataLength + 1) + dataLength;
+  }
+
+  /**
+   * Writes an INDEX of the objects.
+   *
+   * @param objects the objects
+   * @param data the data to write to
+   * @param offset the offset in the data to write the INDEX at
+   * @return the number of bytes written
+   */
+  public static int serialize(List<ReadableFontData> objects, WritableFontData data, int offset) {
+    data.writeUShort(offset, objects.size());
+    if (objects.isEmpty()) {
+      return 2;
+    }
+    int offSize = offSize(dataLength(objects) + 1);
+    data.writeByte(offset + 2, (byte) offSize);
+    int offsetArray = offset + 3;
+    int dataStart = offsetArray + (objects.size() + 1) * offSize;
+    int objectOffset = 1;
+    for (int i = 0; i <= objects.size(); i++) {
+      writeOffset(data, offsetArray + i * offSize, offSize, objectOffset);
+      if (i < objects.size()) {
+        ReadableFontData object = objects.get(i);
+        object.copyTo(data.slice(dataStart + objectOffset - 1, object.length()));
+        objectOffset += object.length();
+      }
+    }
+    return dataStart + objectOffset - 1 - offset;
+  }
+
+  private static void writeOffset(WritableFontData data, int offset, int offSize, int value) {
+    switch (offSize) {
+      case 1:
+        data.writeByte(offset, (byte) value);
+        break;
+      case 2:
+        data.writeUShort(offset, value);
+        break;
+      case 3:
+        data.writeUInt24(offset, value);
+        break;
+      default:
+        data.writeULong(offset, value);
+    }
+  }
+}
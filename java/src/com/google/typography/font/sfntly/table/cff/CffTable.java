@@ -0,0 +1,397 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.cff;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.ByteArrayTableBuilder;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+
+/**
+ * A Compact Font Format table - 'CFF '. Only fonts with a single Top DICT, as
+ * OpenType requires, are supported.
+ *
+ * The INDEXes and the DICTs are read the first time any of them is needed, and
+ * the charset and the FDSelect the first time they are needed, so a table this
+ * class doesn't support still loads and is written out unchanged. Its
+ * accessors throw an IllegalArgumentException; see {@link #isSupported()}.
+ */
+public final class CffTable extends Table {
+
+  private enum Offset {
+    major(0),
+    minor(1),
+    hdrSize(2),
+    offSize(3);
+
+    private final int offset;
+
+    private Offset(int offset) {
+      this.offset = offset;
+    }
+  }
+
+  // predefined charsets
+  private static final int CHARSET_ISO_ADOBE = 0;
+  private static final int CHARSET_EXPERT_SUBSET = 2;
+
+  private volatile Structure structure;
+  private volatile int[] charset;
+  private volatile int[] fdSelect;
+
+  /**
+   * The INDEXes and DICTs of the table, which are read together the first
+   * time any of them is needed.
+   */
+  private static final class Structure {
+    final CffIndex nameIndex;
+    final CffIndex topDictIndex;
+    final CffIndex stringIndex;
+    final CffIndex globalSubrs;
+    final CffDict topDict;
+    final CffIndex charStrings;
+    // for CID fonts the Font DICTs, otherwise just the Top DICT
+    final CffDict[] fontDicts;
+    final CffDict[] privateDicts;
+    final int[] privateOffsets;
+    final CffIndex[] localSubrs;
+
+    Structure(ReadableFontData data) {
+      int major = data.readUByte(Offset.major.offset);
+      if (major != 1) {
+        throw new IllegalArgumentException("Unsupported CFF version " + major + ".");
+      }
+      int offset = data.readUByte(Offset.hdrSize.offset);
+      this.nameIndex = CffIndex.read(data, offset);
+      offset += this.nameIndex.length();
+      this.topDictIndex = CffIndex.read(data, offset);
+      offset += this.topDictIndex.length();
+      this.stringIndex = CffIndex.read(data, offset);
+      offset += this.stringIndex.length();
+      this.globalSubrs = CffIndex.read(data, offset);
+      if (this.topDictIndex.count() != 1) {
+        throw new IllegalArgumentException("CFF table must have exactly one font.");
+      }
+
+      this.topDict = CffDict.read(this.topDictIndex.data(0));
+      if (this.topDict.intOperand(CffDict.CHARSTRING_TYPE, 0, 2) != 2) {
+        throw new IllegalArgumentException("Only Type 2 charstrings are supported.");
+      }
+      int charStringsOffset = this.topDict.intOperand(CffDict.CHARSTRINGS, 0, -1);
+      if (charStringsOffset < 0) {
+        throw new IllegalArgumentException("CFF font has no CharStrings.");
+      }
+      this.charStrings = CffIndex.read(data, charStringsOffset);
+
+      if (this.topDict.has(CffDict.ROS)) {
+        CffIndex fdArray = CffIndex.read(data, this.topDict.intOperand(CffDict.FD_ARRAY, 0, 0));
+        this.fontDicts = new CffDict[fdArray.count()];
+        for (int fd = 0; fd < this.fontDicts.length; fd++) {
+          this.fontDicts[fd] = CffDict.read(fdArray.data(fd));
+        }
+      } else {
+        this.fontDicts = new CffDict[] { this.topDict };
+      }
+      this.privateDicts = new CffDict[this.fontDicts.length];
+      this.privateOffsets = new int[this.fontDicts.length];
+      this.localSubrs = new CffIndex[this.fontDicts.length];
+      for (int fd = 0; fd < this.fontDicts.length; fd++) {
+        CffDict fontDict = this.fontDicts[fd];
+        if (!fontDict.has(CffDict.PRIVATE)) {
+          continue;
+        }
+        int size = fontDict.intOperand(CffDict.PRIVATE, 0, 0);
+        int privateOffset = fontDict.intOperand(CffDict.PRIVATE, 1, 0);
+        this.privateOffsets[fd] = privateOffset;
+        this.privateDicts[fd] = CffDict.read(data.slice(privateOffset, size));
+        int subrs = this.privateDicts[fd].intOperand(CffDict.SUBRS, 0, 0);
+        if (subrs > 0) {
+          this.localSubrs[fd] = CffIndex.read(data, privateOffset + subrs);
+        }
+      }
+    }
+  }
+
+  private CffTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  /**
+   * Gets the INDEXes and DICTs of the table, reading them if this is the
+   * first time they are needed.
+   *
+   * @return the structure of the table
+   * @throws IllegalArgumentException if the table is not a supported CFF
+   *         table
+   */
+  private Structure structure() {
+    Structure result = this.structure;
+    if (result == null) {
+      result = new Structure(this.data);
+      this.structure = result;
+    }
+    return result;
+  }
+
+  /**
+   * Checks whether the table can be read by this class: a CFF version 1
+   * table with a single font of Type 2 charstrings.
+   *
+   * @return true if the table is supported
+   */
+  public boolean isSupported() {
+    try {
+      structure();
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    } catch (IndexOutOfBoundsException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Gets the subroutine number bias for a subroutine INDEX of the given size.
+   * A charstring calls subroutine {@code i} with the operand {@code i - bias}.
+   *
+   * @param count the number of subroutines
+   * @return the bias
+   */
+  public static int subrBias(int count) {
+    if (count < 1240) {
+      return 107;
+    } else if (count < 33900) {
+      return 1131;
+    }
+    return 32768;
+  }
+
+  /**
+   * @return the size of the header, which is where the Name INDEX starts
+   */
+  public int headerSize() {
+    return this.data.readUByte(Offset.hdrSize.offset);
+  }
+
+  public CffIndex nameIndex() {
+    return structure().nameIndex;
+  }
+
+  public CffIndex stringIndex() {
+    return structure().stringIndex;
+  }
+
+  public CffIndex globalSubrs() {
+    return structure().globalSubrs;
+  }
+
+  public CffIndex charStrings() {
+    return structure().charStrings;
+  }
+
+  public CffDict topDict() {
+    return structure().topDict;
+  }
+
+  /**
+   * @return true if the font is CID-keyed
+   */
+  public boolean isCid() {
+    return structure().topDict.has(CffDict.ROS);
+  }
+
+  public int numGlyphs() {
+    return structure().charStrings.count();
+  }
+
+  /**
+   * Gets the number of Font DICTs. A font that isn't CID-keyed has one, which
+   * is its Top DICT.
+   *
+   * @return the number of Font DICTs
+   */
+  public int numFontDicts() {
+    return structure().fontDicts.length;
+  }
+
+  public CffDict fontDict(int fd) {
+    return structure().fontDicts[fd];
+  }
+
+  /**
+   * @param fd the index of the Font DICT
+   * @return the Private DICT of the Font DICT, or null if it has none
+   */
+  public CffDict privateDict(int fd) {
+    return structure().privateDicts[fd];
+  }
+
+  /**
+   * @param fd the index of the Font DICT
+   * @return the offset of the Private DICT in the table
+   */
+  public int privateDictOffset(int fd) {
+    return structure().privateOffsets[fd];
+  }
+
+  /**
+   * @param fd the index of the Font DICT
+   * @return the local subroutines of the Font DICT, or null if it has none
+   */
+  public CffIndex localSubrs(int fd) {
+    return structure().localSubrs[fd];
+  }
+
+  /**
+   * Gets the Font DICT that a glyph uses.
+   *
+   * @param glyphId the glyph id
+   * @return the index of the Font DICT
+   */
+  public int fdIndex(int glyphId) {
+    if (!isCid()) {
+      return 0;
+    }
+    return fdSelect()[glyphId];
+  }
+
+  /**
+   * Gets the charset: for each glyph its SID, or its CID if the font is
+   * CID-keyed. Glyph 0 is always .notdef, which is 0.
+   *
+   * @return the charset, which must not be changed
+   * @throws UnsupportedOperationException if the font uses one of the
+   *         predefined Expert charsets
+   */
+  public int[] charset() {
+    int[] result = this.charset;
+    if (result == null) {
+      result = readCharset();
+      this.charset = result;
+    }
+    return result;
+  }
+
+  private int[] readCharset() {
+    int numGlyphs = numGlyphs();
+    int[] sids = new int[numGlyphs];
+    int offset = topDict().intOperand(CffDict.CHARSET, 0, CHARSET_ISO_ADOBE);
+    if (offset == CHARSET_ISO_ADOBE) {
+      // the ISOAdobe charset is SIDs 1 to 228 in order
+      for (int gid = 1; gid < numGlyphs; gid++) {
+        sids[gid] = gid;
+      }
+      return sids;
+    }
+    if (offset <= CHARSET_EXPERT_SUBSET) {
+      throw new UnsupportedOperationException("Predefined Expert charsets are not supported.");
+    }
+    int format = this.data.readUByte(offset);
+    int index = offset + 1;
+    int gid = 1;
+    if (format == 0) {
+      for (; gid < numGlyphs; gid++, index += 2) {
+        sids[gid] = this.data.readUShort(index);
+      }
+    } else if (format == 1 || format == 2) {
+      while (gid < numGlyphs) {
+        int first = this.data.readUShort(index);
+        int nLeft = format == 1
+            ? this.data.readUByte(index + 2) : this.data.readUShort(index + 2);
+        index += format == 1 ? 3 : 4;
+        for (int i = 0; i <= nLeft && gid < numGlyphs; i++) {
+          sids[gid++] = first + i;
+        }
+      }
+    } else {
+      throw new IllegalArgumentException("Unknown CFF charset format " + format + ".");
+    }
+    return sids;
+  }
+
+  private int[] fdSelect() {
+    int[] result = this.fdSelect;
+    if (result == null) {
+      result = readFdSelect();
+      this.fdSelect = result;
+    }
+    return result;
+  }
+
+  private int[] readFdSelect() {
+    int numGlyphs = numGlyphs();
+    int[] fds = new int[numGlyphs];
+    int offset = topDict().intOperand(CffDict.FD_SELECT, 0, 0);
+    int format = this.data.readUByte(offset);
+    if (format == 0) {
+      for (int gid = 0; gid < numGlyphs; gid++) {
+        fds[gid] = this.data.readUByte(offset + 1 + gid);
+      }
+    } else if (format == 3) {
+      int nRanges = this.data.readUShort(offset + 1);
+      int range = offset + 3;
+      for (int i = 0; i < nRanges; i++, range += 3) {
+        int first = this.data.readUShort(range);
+        int fd = this.data.readUByte(range + 2);
+        // the next range's first glyph, or the sentinel after the last range
+        int end = Math.min(this.data.readUShort(range + 3), numGlyphs);
+        for (int gid = first; gid < end; gid++) {
+          fds[gid] = fd;
+        }
+      }
+    } else {
+      throw new IllegalArgumentException("Unknown CFF FDSelect format " + format + ".");
+    }
+    for (int fd : fds) {
+      if (fd >= numFontDicts()) {
+        throw new IllegalArgumentException("CFF FDSelect refers to a missing Font DICT.");
+      }
+    }
+    return fds;
+  }
+
+  /**
+   * Builder for a CFF table.
+   */
+  public static class Builder extends ByteArrayTableBuilder<CffTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected CffTable subBuildTable(ReadableFontData data) {
+      return new CffTable(this.header(), data);
+    }
+  }
+}
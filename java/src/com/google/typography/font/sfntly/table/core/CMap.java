@@ -35,6 +35,7 @@ import java.util.NoSuchElementException;
 public abstract class CMap extends SubTable implements Iterable<Integer> {
   protected final int format;
   protected final CMapId cmapId;
+  private volatile CMapReverseIndex reverseIndex;
 
   /**
    * CMap subtable formats.
@@ -205,6 +206,21 @@ public abstract class CMap extends SubTable implements Iterable<Integer> {
    */
   public abstract int glyphId(int character);
 
+  /**
+   * Gets the reverse index of this cmap that gives the characters mapped to
+   * each glyph. The index is built on first use.
+   *
+   * @return the reverse index
+   */
+  public CMapReverseIndex reverseIndex() {
+    CMapReverseIndex result = this.reverseIndex;
+    if (result == null) {
+      result = CMapReverseIndex.build(this);
+      this.reverseIndex = result;
+    }
+    return result;
+  }
+
   @Override
   public String toString() {
     StringBuilder builder = new StringBuilder();
@@ -347,6 +363,8 @@ public abstract class CMap extends SubTable implements Iterable<Integer> {
           return new CMapFormat0.Builder(null, 0, cmapId);
         case Format4:
           return new CMapFormat4.Builder(null, 0, cmapId);
+        case Format12:
+          return new CMapFormat12.Builder(null, 0, cmapId);
         default:
           break;
       }
@@ -1,11 +1,14 @@
 package com.google.typography.font.sfntly.table.core;
 
+import com.google.typography.font.sfntly.data.FontData;
 import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.core.CMapTable.CMapId;
 import com.google.typography.font.sfntly.table.core.CMapTable.Offset;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -20,19 +23,47 @@ public final class CMapFormat12 extends CMap {
     this.numberOfGroups = this.data.readULongAsInt(Offset.format12nGroups.offset);
   }
 
-  private int groupStartChar(int groupIndex) {
+  /**
+   * Gets the number of sequential map groups.
+   *
+   * @return the number of groups
+   */
+  public int getNumberOfGroups() {
+    return this.numberOfGroups;
+  }
+
+  /**
+   * Gets the first character of a group.
+   *
+   * @param groupIndex the group
+   * @return the first character code of the group
+   */
+  public int groupStartChar(int groupIndex) {
     return this.data.readULongAsInt(
         Offset.format12Groups.offset + groupIndex * Offset.format12Groups_structLength.offset
             + Offset.format12_startCharCode.offset);
   }
 
-  private int groupEndChar(int groupIndex) {
+  /**
+   * Gets the last character of a group.
+   *
+   * @param groupIndex the group
+   * @return the last character code of the group
+   */
+  public int groupEndChar(int groupIndex) {
     return this.data.readULongAsInt(
         Offset.format12Groups.offset + groupIndex * Offset.format12Groups_structLength.offset
             + Offset.format12_endCharCode.offset);
   }
 
-  private int groupStartGlyph(int groupIndex) {
+  /**
+   * Gets the glyph that the first character of a group maps to; the others
+   * map to the glyphs that follow it.
+   *
+   * @param groupIndex the group
+   * @return the glyph id of the first character of the group
+   */
+  public int groupStartGlyph(int groupIndex) {
     return this.data.readULongAsInt(
         Offset.format12Groups.offset + groupIndex * Offset.format12Groups_structLength.offset
             + Offset.format12_startGlyphId.offset);
@@ -117,6 +148,42 @@ public final class CMapFormat12 extends CMap {
   }
 
   public static class Builder extends CMap.Builder<CMapFormat12> {
+    /**
+     * A sequential map group: a range of characters that map to consecutive
+     * glyph ids.
+     */
+    public static class Group {
+      private final int startCharCode;
+      private final int endCharCode;
+      private final int startGlyphId;
+
+      public Group(int startCharCode, int endCharCode, int startGlyphId) {
+        this.startCharCode = startCharCode;
+        this.endCharCode = endCharCode;
+        this.startGlyphId = startGlyphId;
+      }
+
+      public int getStartCharCode() {
+        return startCharCode;
+      }
+
+      public int getEndCharCode() {
+        return endCharCode;
+      }
+
+      public int getStartGlyphId() {
+        return startGlyphId;
+      }
+
+      @Override
+      public String toString() {
+        return String.format("[0x%06x - 0x%06x, startGlyphId = %d]",
+            this.startCharCode, this.endCharCode, this.startGlyphId);
+      }
+    }
+
+    private List<Builder.Group> groups;
+
     protected Builder(WritableFontData data, int offset, CMapId cmapId) {
       super(data == null ? null : data.slice(
           offset, data.readULongAsInt(offset + Offset.format12Length.offset)),
@@ -129,9 +196,84 @@ public final class CMapFormat12 extends CMap {
           CMapFormat.Format12, cmapId);
     }
 
+    private void initialize(ReadableFontData data) {
+      this.groups = new ArrayList<Builder.Group>();
+
+      if (data == null || data.length() == 0) {
+        return;
+      }
+
+      int numberOfGroups = data.readULongAsInt(Offset.format12nGroups.offset);
+      for (int index = 0; index < numberOfGroups; index++) {
+        int groupOffset =
+            Offset.format12Groups.offset + index * Offset.format12Groups_structLength.offset;
+        this.groups.add(new Group(
+            data.readULongAsInt(groupOffset + Offset.format12_startCharCode.offset),
+            data.readULongAsInt(groupOffset + Offset.format12_endCharCode.offset),
+            data.readULongAsInt(groupOffset + Offset.format12_startGlyphId.offset)));
+      }
+    }
+
+    public List<Builder.Group> getGroups() {
+      if (this.groups == null) {
+        this.initialize(this.internalReadData());
+        this.setModelChanged();
+      }
+      return this.groups;
+    }
+
+    public void setGroups(List<Builder.Group> groups) {
+      this.groups = new ArrayList<Builder.Group>(groups);
+      this.setModelChanged();
+    }
+
     @Override
     protected CMapFormat12 subBuildTable(ReadableFontData data) {
       return new CMapFormat12(data, this.cmapId());
     }
+
+    @Override
+    protected void subDataSet() {
+      this.groups = null;
+      super.setModelChanged(false);
+    }
+
+    @Override
+    protected int subDataSizeToSerialize() {
+      if (!this.modelChanged()) {
+        return super.subDataSizeToSerialize();
+      }
+      return Offset.format12Groups.offset
+          + this.groups.size() * Offset.format12Groups_structLength.offset;
+    }
+
+    @Override
+    protected boolean subReadyToSerialize() {
+      if (!this.modelChanged()) {
+        return super.subReadyToSerialize();
+      }
+      return this.groups != null;
+    }
+
+    @Override
+    protected int subSerialize(WritableFontData newData) {
+      if (!this.modelChanged()) {
+        return super.subSerialize(newData);
+      }
+
+      int index = 0;
+      index += newData.writeUShort(index, CMapFormat.Format12.value());
+      index += FontData.DataSize.USHORT.size(); // reserved
+      index += FontData.DataSize.ULONG.size(); // length - write this at the end
+      index += newData.writeULong(index, this.language());
+      index += newData.writeULong(index, this.groups.size());
+      for (Builder.Group group : this.groups) {
+        index += newData.writeULong(index, group.getStartCharCode());
+        index += newData.writeULong(index, group.getEndCharCode());
+        index += newData.writeULong(index, group.getStartGlyphId());
+      }
+      newData.writeULong(Offset.format12Length.offset, index);
+      return index;
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,140 @@
+package com.google.typography.font.sfntly.table.core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A reverse index of a cmap that gives the characters mapped to each glyph.
+ *
+ * The characters are kept in a single array ordered by glyph id and then by
+ * character, with a second array giving the start of each glyph's characters.
+ * Glyphs are only included for characters that map to something other than
+ * .notdef.
+ *
+ * This object is immutable.
+ */
+public final class CMapReverseIndex {
+  private static final int[] EMPTY = new int[0];
+
+  // characters of glyph g are at characters[starts[g]] .. characters[starts[g + 1] - 1]
+  private final int[] starts;
+  private final int[] characters;
+
+  private CMapReverseIndex(int[] starts, int[] characters) {
+    this.starts = starts;
+    this.characters = characters;
+  }
+
+  /**
+   * Builds the reverse index for the cmap.
+   *
+   * @param cmap the cmap to index
+   * @return the reverse index
+   */
+  public static CMapReverseIndex build(CMap cmap) {
+    int[] mappedCharacters = new int[256];
+    int[] mappedGlyphs = new int[256];
+    int count = 0;
+    int maxGlyph = -1;
+    Iterator<Integer> iterator = cmap.iterator();
+    while (iterator != null && iterator.hasNext()) {
+      int character = iterator.next();
+      int glyph = cmap.glyphId(character);
+      if (glyph <= CMapTable.NOTDEF) {
+        continue;
+      }
+      if (count == mappedCharacters.length) {
+        mappedCharacters = Arrays.copyOf(mappedCharacters, 2 * count);
+        mappedGlyphs = Arrays.copyOf(mappedGlyphs, 2 * count);
+      }
+      mappedCharacters[count] = character;
+      mappedGlyphs[count] = glyph;
+      count++;
+      maxGlyph = Math.max(maxGlyph, glyph);
+    }
+
+    // counting sort by glyph, which keeps the iteration order of the
+    // characters within each glyph
+    int[] starts = new int[maxGlyph + 2];
+    for (int i = 0; i < count; i++) {
+      starts[mappedGlyphs[i] + 1]++;
+    }
+    for (int glyph = 0; glyph <= maxGlyph; glyph++) {
+      starts[glyph + 1] += starts[glyph];
+    }
+    int[] next = Arrays.copyOf(starts, maxGlyph + 1);
+    int[] characters = new int[count];
+    for (int i = 0; i < count; i++) {
+      characters[next[mappedGlyphs[i]]++] = mappedCharacters[i];
+    }
+    for (int glyph = 0; glyph <= maxGlyph; glyph++) {
+      if (starts[glyph + 1] - starts[glyph] > 1) {
+        Arrays.sort(characters, starts[glyph], starts[glyph + 1]);
+      }
+    }
+    return new CMapReverseIndex(starts, characters);
+  }
+
+  /**
+   * Gets the number of glyph ids covered by the index. This is one more than
+   * the largest glyph id that any character maps to.
+   *
+   * @return the number of glyph ids
+   */
+  public int numGlyphs() {
+    return this.starts.length - 1;
+  }
+
+  /**
+   * Gets the total number of characters that are mapped to a glyph.
+   *
+   * @return the number of characters
+   */
+  public int numCharacters() {
+    return this.characters.length;
+  }
+
+  /**
+   * Gets the number of characters that map to the glyph.
+   *
+   * @param glyphId the glyph id
+   * @return the number of characters
+   */
+  public int characterCount(int glyphId) {
+    if (glyphId < 0 || glyphId >= numGlyphs()) {
+      return 0;
+    }
+    return this.starts[glyphId + 1] - this.starts[glyphId];
+  }
+
+  /**
+   * Gets one of the characters that map to the glyph. The characters of a
+   * glyph are in increasing order.
+   *
+   * @param glyphId the glyph id
+   * @param index the index of the character, less than
+   *        {@link #characterCount(int)}
+   * @return the character
+   */
+  public int character(int glyphId, int index) {
+    if (index < 0 || index >= characterCount(glyphId)) {
+      throw new IndexOutOfBoundsException("Character index is out of range for the glyph.");
+    }
+    return this.characters[this.starts[glyphId] + index];
+  }
+
+  /**
+   * Gets the characters that map to the glyph in increasing order.
+   *
+   * @param glyphId the glyph id
+   * @return a new array of the characters
+   */
+  public int[] characters(int glyphId) {
+    int count = characterCount(glyphId);
+    if (count == 0) {
+      return EMPTY;
+    }
+    int start = this.starts[glyphId];
+    return Arrays.copyOfRange(this.characters, start, start + count);
+  }
+}
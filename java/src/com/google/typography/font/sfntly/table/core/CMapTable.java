@@ -30,6 +30,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A CMap table.
@@ -43,6 +44,10 @@ public final class CMapTable extends SubTableContainerTable implements Iterable<
    */
   public static final int NOTDEF = 0;
 
+  // the cmaps built so far, by index, so that each one and the reverse index
+  // cached on it are shared by all users of the table
+  private final AtomicReferenceArray<CMap> cmaps;
+
   /**
    * Offsets to specific elements in the underlying data. These offsets are relative to the
    * start of the table or the start of sub-blocks within the table.
@@ -228,6 +233,7 @@ public final class CMapTable extends SubTableContainerTable implements Iterable<
    */
   private CMapTable(Header header, ReadableFontData data) {
     super(header, data);
+    this.cmaps = new AtomicReferenceArray<CMap>(this.numCMaps());
   }
 
   /**
@@ -436,9 +442,14 @@ public final class CMapTable extends SubTableContainerTable implements Iterable<
    * @throws IOException
    */
   public CMap cmap(int index) throws IOException {
-    CMap.Builder<? extends CMap> builder =
-        CMapTable.Builder.cmapBuilder(this.readFontData(), index);
-    return builder.build();
+    CMap cmap = this.cmaps.get(index);
+    if (cmap == null) {
+      CMap.Builder<? extends CMap> builder =
+          CMapTable.Builder.cmapBuilder(this.readFontData(), index);
+      this.cmaps.compareAndSet(index, null, builder.build());
+      cmap = this.cmaps.get(index);
+    }
+    return cmap;
   }
 
   /**
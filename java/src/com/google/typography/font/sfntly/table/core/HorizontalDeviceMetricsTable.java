@@ -90,6 +90,21 @@ public class HorizontalDeviceMetricsTable extends Table {
         Offset.deviceRecordWidths.offset + glyphNum);
   }
   
+  /**
+   * Read the widths of all glyphs in a device record.
+   *
+   * @param recordIx the index of the device record
+   * @param widths the array to read the widths into; the widths are unsigned
+   *        and it must have room for the widths of all glyphs
+   */
+  public void widths(int recordIx, byte[] widths) {
+    if (recordIx < 0 || recordIx >= numRecords() || widths.length < numGlyphs) {
+      throw new IndexOutOfBoundsException();
+    }
+    data.readBytes(Offset.records.offset + recordIx * recordSize()
+        + Offset.deviceRecordWidths.offset, widths, 0, numGlyphs);
+  }
+
   /**
    * Builder for a Horizontal Device Metrics Table - 'hdmx'.
    */
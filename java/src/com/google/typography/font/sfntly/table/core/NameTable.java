@@ -28,9 +28,14 @@ import com.ibm.icu.charset.CharsetICU;
 
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 // TODO(stuartg): support format 1 name tables
 /**
@@ -533,6 +538,9 @@ public final class NameTable extends SubTableContainerTable implements Iterable<
     }
   }
 
+  // record index for each combination of ids, built on first lookup
+  private volatile Map<Long, Integer> nameIndex;
+
   private NameTable(Header header, ReadableFontData data) {
     super(header, data);
   }
@@ -712,22 +720,35 @@ public final class NameTable extends SubTableContainerTable implements Iterable<
    * @param nameId the name id
    * @return the name entry
    */
-  public NameEntry nameEntry(
-      final int platformId, final int encodingId, final int languageId, final int nameId) {
-    Iterator<NameEntry> nameEntryIter = this.iterator(new NameEntryFilter() {
-      @Override
-      public boolean accept(int pid, int eid, int lid, int nid) {
-        if (pid == platformId && eid == encodingId && lid == languageId && nid == nameId) {
-          return true;
+  public NameEntry nameEntry(int platformId, int encodingId, int languageId, int nameId) {
+    Integer index = this.nameIndex().get(nameKey(platformId, encodingId, languageId, nameId));
+    if (index == null) {
+      return null;
+    }
+    return this.nameEntry(index);
+  }
+
+  private static long nameKey(int platformId, int encodingId, int languageId, int nameId) {
+    return ((long) platformId << 48) | ((long) encodingId << 32) | ((long) languageId << 16)
+        | nameId;
+  }
+
+  private Map<Long, Integer> nameIndex() {
+    Map<Long, Integer> index = this.nameIndex;
+    if (index == null) {
+      int count = this.nameCount();
+      index = new HashMap<Long, Integer>(2 * count);
+      for (int i = 0; i < count; i++) {
+        Long key = nameKey(this.platformId(i), this.encodingId(i), this.languageId(i),
+            this.nameId(i));
+        // there should only be one name for each set of ids but keep the first
+        if (!index.containsKey(key)) {
+          index.put(key, i);
         }
-        return false;
       }
-    });
-    // can only be one name for each set of ids
-    if (nameEntryIter.hasNext()) {
-      return nameEntryIter.next();
+      this.nameIndex = index;
     }
-    return null;
+    return index;
   }
 
   /**
@@ -1241,8 +1262,45 @@ public final class NameTable extends SubTableContainerTable implements Iterable<
     return encodingName;
   }
 
-  // TODO: caching of charsets?
+  /**
+   * A resolved charset, which is null if the encoding has no charset.
+   */
+  private static final class CharsetEntry {
+    private final Charset charset;
+
+    CharsetEntry(Charset charset) {
+      this.charset = charset;
+    }
+  }
+
+  // keyed by platform and encoding id
+  private static final ConcurrentMap<Integer, CharsetEntry> charsets =
+      new ConcurrentHashMap<Integer, CharsetEntry>();
+
+  // decoders aren't thread safe so each thread keeps its own
+  private static final ThreadLocal<Map<Integer, CharsetDecoder>> decoders =
+      new ThreadLocal<Map<Integer, CharsetDecoder>>() {
+        @Override
+        protected Map<Integer, CharsetDecoder> initialValue() {
+          return new HashMap<Integer, CharsetDecoder>();
+        }
+      };
+
+  private static int charsetKey(int platformId, int encodingId) {
+    return (platformId << 16) | encodingId;
+  }
+
   private static Charset getCharset(int platformId, int encodingId) {
+    int key = charsetKey(platformId, encodingId);
+    CharsetEntry entry = charsets.get(key);
+    if (entry == null) {
+      entry = new CharsetEntry(lookupCharset(platformId, encodingId));
+      charsets.putIfAbsent(key, entry);
+    }
+    return entry.charset;
+  }
+
+  private static Charset lookupCharset(int platformId, int encodingId) {
     String encodingName = NameTable.getEncodingName(platformId, encodingId);
     if (encodingName == null) {
       return null;
@@ -1256,6 +1314,24 @@ public final class NameTable extends SubTableContainerTable implements Iterable<
     return charset;
   }
 
+  private static CharsetDecoder getDecoder(int platformId, int encodingId) {
+    int key = charsetKey(platformId, encodingId);
+    Map<Integer, CharsetDecoder> threadDecoders = decoders.get();
+    CharsetDecoder decoder = threadDecoders.get(key);
+    if (decoder == null) {
+      Charset cs = NameTable.getCharset(platformId, encodingId);
+      if (cs == null) {
+        return null;
+      }
+      // the same error handling as Charset.decode()
+      decoder = cs.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      threadDecoders.put(key, decoder);
+    }
+    return decoder;
+  }
+
   // TODO(stuartg):
   // do the conversion by hand to detect conversion failures (i.e. no character in the encoding)
   private static byte[] convertToNameBytes(String name, int platformId, int encodingId) {
@@ -1272,12 +1348,17 @@ public final class NameTable extends SubTableContainerTable implements Iterable<
   }
 
   private static String convertFromNameBytes(ByteBuffer nameBytes, int platformId, int encodingId) {
-    Charset cs = NameTable.getCharset(platformId, encodingId);
-    if (cs == null) {
+    CharsetDecoder decoder = NameTable.getDecoder(platformId, encodingId);
+    if (decoder == null) {
       return Integer.toHexString(platformId);
     }
-    CharBuffer cb = cs.decode(nameBytes);
-    return cb.toString();
+    try {
+      CharBuffer cb = decoder.decode(nameBytes);
+      return cb.toString();
+    } catch (CharacterCodingException e) {
+      // can't happen since errors are replaced
+      throw new IllegalStateException(e);
+    }
   }
 
   public static class Builder extends SubTableContainerTable.Builder<NameTable> {
@@ -3,12 +3,14 @@ package com.google.typography.font.sfntly.table.opentype;
 import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.opentype.classdef.InnerArrayFmt1;
+import com.google.typography.font.sfntly.table.opentype.component.ClassDefIndex;
 import com.google.typography.font.sfntly.table.opentype.component.RangeRecordTable;
 import com.google.typography.font.sfntly.table.opentype.component.RecordsTable;
 
 public class ClassDefTable extends SubstSubtable {
   public final RecordsTable<?> array;
   private boolean dataIsCanonical;
+  private volatile ClassDefIndex index;
 
   // //////////////
   // Constructors
@@ -50,6 +52,35 @@ public class ClassDefTable extends SubstSubtable {
     }
   }
 
+  /**
+   * Returns the compiled lookup index for this class definition, building it
+   * on first use.
+   */
+  public ClassDefIndex index() {
+    ClassDefIndex result = index;
+    if (result == null) {
+      switch (format) {
+      case 1:
+        InnerArrayFmt1 fmt1 = fmt1Table();
+        result = ClassDefIndex.fromClassArray(
+            fmt1.getField(InnerArrayFmt1.START_GLYPH_INDEX), fmt1);
+        break;
+      default:
+        result = ClassDefIndex.fromRanges(fmt2Table());
+        break;
+      }
+      index = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the class of the glyph, 0 if the glyph is not assigned a class.
+   */
+  public int glyphClass(int glyphId) {
+    return index().glyphClass(glyphId);
+  }
+
   public static class Builder extends SubstSubtable.Builder<ClassDefTable> {
     private final RecordsTable.Builder<?, ?> arrayBuilder;
 
@@ -2,12 +2,14 @@ package com.google.typography.font.sfntly.table.opentype;
 
 import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.opentype.component.CoverageIndex;
 import com.google.typography.font.sfntly.table.opentype.component.NumRecordTable;
 import com.google.typography.font.sfntly.table.opentype.component.RangeRecordTable;
 import com.google.typography.font.sfntly.table.opentype.component.RecordsTable;
 
 public class CoverageTable extends SubstSubtable {
   public final RecordsTable<?> array;
+  private volatile CoverageIndex index;
 
   // //////////////
   // Constructors
@@ -47,6 +49,37 @@ public class CoverageTable extends SubstSubtable {
     }
   }
 
+  /**
+   * Returns the compiled lookup index for this coverage, building it on first
+   * use.
+   */
+  public CoverageIndex index() {
+    CoverageIndex result = index;
+    if (result == null) {
+      switch (format) {
+      case 1:
+        result = CoverageIndex.fromGlyphArray(fmt1Table());
+        break;
+      default:
+        result = CoverageIndex.fromRanges(fmt2Table());
+        break;
+      }
+      index = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the coverage index of the glyph, or -1 if it is not covered.
+   */
+  public int coverageIndex(int glyphId) {
+    return index().coverageIndex(glyphId);
+  }
+
+  public boolean covers(int glyphId) {
+    return index().contains(glyphId);
+  }
+
   public static class Builder extends SubstSubtable.Builder<CoverageTable> {
     private final RecordsTable.Builder<?, ?> arrayBuilder;
 
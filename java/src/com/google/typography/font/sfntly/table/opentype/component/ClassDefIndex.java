@@ -0,0 +1,91 @@
+package com.google.typography.font.sfntly.table.opentype.component;
+
+/**
+ * An immutable, compiled form of a class definition table. Classes are held in
+ * a dense array covering the glyph ids from the lowest to the highest glyph
+ * given a class, so the class of a glyph is a single array read. Glyphs
+ * outside of that span are in class 0.
+ */
+public final class ClassDefIndex {
+  private final int firstGlyph;
+  private final short[] classes;
+  private final int maxClass;
+
+  private ClassDefIndex(int firstGlyph, short[] classes) {
+    this.firstGlyph = firstGlyph;
+    this.classes = classes;
+    int max = 0;
+    for (short glyphClass : classes) {
+      max = Math.max(max, glyphClass & 0xffff);
+    }
+    this.maxClass = max;
+  }
+
+  /**
+   * Compiles a format 1 class definition: consecutive class values starting at
+   * {@code startGlyph}.
+   */
+  public static ClassDefIndex fromClassArray(int startGlyph, RecordsTable<NumRecord> table) {
+    short[] classes = new short[table.recordList.count()];
+    int i = 0;
+    for (NumRecord record : table) {
+      classes[i++] = (short) record.value;
+    }
+    return new ClassDefIndex(startGlyph, classes);
+  }
+
+  /**
+   * Compiles a format 2 class definition, a list of glyph ranges each with a
+   * class value.
+   */
+  public static ClassDefIndex fromRanges(RangeRecordTable table) {
+    int first = Integer.MAX_VALUE;
+    int last = -1;
+    for (RangeRecord record : table) {
+      if (record.end < record.start) {
+        continue;
+      }
+      first = Math.min(first, record.start);
+      last = Math.max(last, record.end);
+    }
+    if (last < 0) {
+      return new ClassDefIndex(0, new short[0]);
+    }
+    short[] classes = new short[last - first + 1];
+    for (RangeRecord record : table) {
+      for (int glyph = record.start; glyph <= record.end; glyph++) {
+        classes[glyph - first] = (short) record.property;
+      }
+    }
+    return new ClassDefIndex(first, classes);
+  }
+
+  /**
+   * Returns the class of the glyph, 0 if the glyph is not assigned a class.
+   */
+  public int glyphClass(int glyphId) {
+    int index = glyphId - firstGlyph;
+    if (index < 0 || index >= classes.length) {
+      return 0;
+    }
+    return classes[index] & 0xffff;
+  }
+
+  /**
+   * Returns the lowest glyph id covered by the index.
+   */
+  public int firstGlyph() {
+    return firstGlyph;
+  }
+
+  /**
+   * Returns one past the highest glyph id covered by the index.
+   */
+  public int limitGlyph() {
+    return firstGlyph + classes.length;
+  }
+
+  public int maxClass() {
+    return maxClass;
+  }
+}
@@ -0,0 +1,124 @@
+package com.google.typography.font.sfntly.table.opentype.component;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, compiled form of a coverage table. The covered glyph ids are
+ * held in a sorted array so that the coverage index of a glyph is found with a
+ * binary search rather than a scan over the records.
+ *
+ * <p>The coverage indices are always those of the table, in the order its
+ * records list the glyphs. Well formed tables list them in increasing order;
+ * for the rare table that doesn't, the sorted glyph ids are kept alongside
+ * their coverage indices, and a glyph listed more than once has the index of
+ * its first occurrence.
+ */
+public final class CoverageIndex {
+  // the glyph ids in coverage index order
+  private final int[] glyphs;
+  // the distinct glyph ids in sorted order, and their coverage indices; the
+  // same as glyphs, with null indices, when those are already sorted
+  private final int[] sortedGlyphs;
+  private final int[] sortedIndices;
+
+  private CoverageIndex(int[] glyphs) {
+    this.glyphs = glyphs;
+    if (isStrictlyIncreasing(glyphs)) {
+      this.sortedGlyphs = glyphs;
+      this.sortedIndices = null;
+      return;
+    }
+    // sort by glyph id and then by coverage index, so the first of any
+    // duplicates is the lowest index
+    long[] keys = new long[glyphs.length];
+    for (int i = 0; i < glyphs.length; i++) {
+      keys[i] = ((long) glyphs[i] << 32) | i;
+    }
+    Arrays.sort(keys);
+    int[] sorted = new int[keys.length];
+    int[] indices = new int[keys.length];
+    int count = 0;
+    for (long key : keys) {
+      int glyph = (int) (key >>> 32);
+      if (count > 0 && sorted[count - 1] == glyph) {
+        continue;
+      }
+      sorted[count] = glyph;
+      indices[count] = (int) key;
+      count++;
+    }
+    this.sortedGlyphs = Arrays.copyOf(sorted, count);
+    this.sortedIndices = Arrays.copyOf(indices, count);
+  }
+
+  /**
+   * Compiles a format 1 coverage table, a list of glyph ids.
+   */
+  public static CoverageIndex fromGlyphArray(RecordsTable<NumRecord> table) {
+    int[] glyphs = new int[table.recordList.count()];
+    int i = 0;
+    for (NumRecord record : table) {
+      glyphs[i++] = record.value;
+    }
+    return new CoverageIndex(glyphs);
+  }
+
+  /**
+   * Compiles a format 2 coverage table, a list of glyph ranges.
+   */
+  public static CoverageIndex fromRanges(RangeRecordTable table) {
+    int size = 0;
+    for (RangeRecord record : table) {
+      if (record.end >= record.start) {
+        size += record.end - record.start + 1;
+      }
+    }
+    int[] glyphs = new int[size];
+    int i = 0;
+    for (RangeRecord record : table) {
+      for (int glyph = record.start; glyph <= record.end; glyph++) {
+        glyphs[i++] = glyph;
+      }
+    }
+    return new CoverageIndex(glyphs);
+  }
+
+  private static boolean isStrictlyIncreasing(int[] glyphs) {
+    for (int i = 1; i < glyphs.length; i++) {
+      if (glyphs[i] <= glyphs[i - 1]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the coverage index of the glyph, or -1 if it is not covered.
+   */
+  public int coverageIndex(int glyphId) {
+    int index = Arrays.binarySearch(sortedGlyphs, glyphId);
+    if (index < 0) {
+      return -1;
+    }
+    return sortedIndices == null ? index : sortedIndices[index];
+  }
+
+  public boolean contains(int glyphId) {
+    return Arrays.binarySearch(sortedGlyphs, glyphId) >= 0;
+  }
+
+  public int size() {
+    return glyphs.length;
+  }
+
+  public int glyphAt(int coverageIndex) {
+    return glyphs[coverageIndex];
+  }
+
+  /**
+   * Returns a copy of the covered glyph ids in coverage index order.
+   */
+  public int[] toArray() {
+    return glyphs.clone();
+  }
+}
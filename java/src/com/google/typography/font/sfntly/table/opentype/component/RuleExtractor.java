@@ -25,21 +25,12 @@ class RuleExtractor {
   }
 
   private static GlyphList extract(CoverageTable table) {
-    switch (table.format) {
-    case 1:
-      return extract(table.fmt1Table());
-    case 2:
-      RangeRecordTable array = table.fmt2Table();
-      Map<Integer, GlyphGroup> map = extract(array);
-      Collection<GlyphGroup> groups = map.values();
-      GlyphList result = new GlyphList();
-      for (GlyphGroup glyphIds : groups) {
-        glyphIds.copyTo(result);
-      }
-      return result;
-    default:
-      throw new IllegalArgumentException("unimplemented format " + table.format);
+    CoverageIndex index = table.index();
+    GlyphList result = new GlyphList();
+    for (int i = 0; i < index.size(); i++) {
+      result.add(index.glyphAt(i));
     }
+    return result;
   }
 
   private static GlyphList extract(RecordsTable<NumRecord> table) {
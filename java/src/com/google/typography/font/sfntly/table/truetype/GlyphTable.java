@@ -21,8 +21,11 @@ import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.Header;
 import com.google.typography.font.sfntly.table.SubTableContainerTable;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A Glyph table.
@@ -74,8 +77,15 @@ public final class GlyphTable extends SubTableContainerTable {
 
   public static class Builder extends SubTableContainerTable.Builder<GlyphTable> {
 
+    // the size of a composite glyph with one component at a byte offset, the
+    // glyph header being followed by the flags, glyph index and two offset bytes
+    private static final int REFERENCE_GLYPH_SIZE = Offset.simpleEndPtsOfCountours.offset + 6;
+
     private List<Glyph.Builder<? extends Glyph>> glyphBuilders;
     private List<Integer> loca;
+    // the most points and contours of a glyph replaced by a reference
+    private int maxDeduplicatedPoints;
+    private int maxDeduplicatedContours;
 
     /**
      * Create a new builder using the header information and data provided.
@@ -202,6 +212,92 @@ public final class GlyphTable extends SubTableContainerTable {
       this.setModelChanged();
     }
 
+    /**
+     * Replaces each simple glyph whose data is the same as that of an earlier
+     * simple glyph with a composite glyph that has the earlier glyph as its
+     * only component. The loca table can't point two glyphs at the same data,
+     * since the length of each glyph is taken from the next loca entry, but a
+     * reference to the first copy is all that has to be stored for the others.
+     * Glyphs that are no larger than such a reference are left alone.
+     *
+     * The glyphs are compared by the hash of their data and then by the data.
+     * If any glyph is replaced, the maxp table of the font must allow composite
+     * glyphs with at least one element and a depth of at least one, and with
+     * at least {@link #maxDeduplicatedPoints()} points and
+     * {@link #maxDeduplicatedContours()} contours.
+     *
+     * @return the number of glyphs that were replaced
+     */
+    public int deduplicateGlyphs() {
+      List<Glyph.Builder<? extends Glyph>> builders = this.getGlyphBuilders();
+      Map<ByteBuffer, Integer> firstGlyphs = new HashMap<ByteBuffer, Integer>();
+      int replaced = 0;
+      for (int glyphId = 0; glyphId < builders.size(); glyphId++) {
+        Glyph.Builder<? extends Glyph> builder = builders.get(glyphId);
+        int size = builder.subDataSizeToSerialize();
+        if (size <= REFERENCE_GLYPH_SIZE) {
+          continue;
+        }
+        byte[] bytes = new byte[size];
+        builder.subSerialize(WritableFontData.createWritableFontData(bytes));
+        ReadableFontData data = ReadableFontData.createReadableFontData(bytes);
+        if (data.readShort(Offset.numberOfContours.offset) < 0) {
+          continue;
+        }
+        Integer firstGlyph = firstGlyphs.get(ByteBuffer.wrap(bytes));
+        if (firstGlyph == null) {
+          firstGlyphs.put(ByteBuffer.wrap(bytes), glyphId);
+          continue;
+        }
+        builders.set(glyphId, this.glyphBuilder(referenceGlyph(data, firstGlyph)));
+        replaced++;
+        int contours = data.readShort(Offset.numberOfContours.offset);
+        int points = contours == 0 ? 0 : data.readUShort(
+            Offset.simpleEndPtsOfCountours.offset + 2 * (contours - 1)) + 1;
+        this.maxDeduplicatedContours = Math.max(this.maxDeduplicatedContours, contours);
+        this.maxDeduplicatedPoints = Math.max(this.maxDeduplicatedPoints, points);
+      }
+      if (replaced > 0) {
+        this.setModelChanged();
+      }
+      return replaced;
+    }
+
+    /**
+     * @return the most points of a glyph replaced by
+     *         {@link #deduplicateGlyphs()}, which the composite glyph that
+     *         replaced it has too
+     */
+    public int maxDeduplicatedPoints() {
+      return this.maxDeduplicatedPoints;
+    }
+
+    /**
+     * @return the most contours of a glyph replaced by
+     *         {@link #deduplicateGlyphs()}
+     */
+    public int maxDeduplicatedContours() {
+      return this.maxDeduplicatedContours;
+    }
+
+    /**
+     * Creates a composite glyph with the same bounding box as a glyph that has
+     * another glyph, with no offset, as its only component.
+     */
+    private static ReadableFontData referenceGlyph(ReadableFontData glyph, int glyphId) {
+      WritableFontData data = WritableFontData.createWritableFontData(REFERENCE_GLYPH_SIZE);
+      data.writeShort(Offset.numberOfContours.offset, -1);
+      glyph.slice(Offset.xMin.offset, Offset.simpleEndPtsOfCountours.offset - Offset.xMin.offset)
+          .copyTo(data.slice(Offset.xMin.offset));
+      int index = Offset.simpleEndPtsOfCountours.offset;
+      index += data.writeUShort(index + Offset.compositeFlags.offset,
+          CompositeGlyph.FLAG_ARGS_ARE_XY_VALUES);
+      index += data.writeUShort(index, glyphId);
+      data.writeByte(index, (byte) 0);
+      data.writeByte(index + 1, (byte) 0);
+      return data;
+    }
+
     // glyph builder factories
 
     public Glyph.Builder<? extends Glyph> glyphBuilder(ReadableFontData data) {
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.ByteArrayTableBuilder;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+
+/**
+ * An Axis Variations table - 'avar'. It changes the normalized coordinates of
+ * the axes with piecewise linear maps, so that a variation can progress
+ * unevenly along an axis.
+ */
+public final class AxisVariationsTable extends Table {
+
+  private enum Offset {
+    majorVersion(0),
+    minorVersion(2),
+    axisCount(6),
+    axisSegmentMaps(8),
+
+    // Segment Map
+    positionMapCount(0),
+    axisValueMaps(2),
+    axisValueMapSize(4);
+
+    private final int offset;
+
+    private Offset(int offset) {
+      this.offset = offset;
+    }
+  }
+
+  // the offset of the segment map of each axis
+  private final int[] segmentMaps;
+
+  private AxisVariationsTable(Header header, ReadableFontData data) {
+    super(header, data);
+    this.segmentMaps = new int[data.readUShort(Offset.axisCount.offset)];
+    int offset = Offset.axisSegmentMaps.offset;
+    for (int axis = 0; axis < this.segmentMaps.length; axis++) {
+      this.segmentMaps[axis] = offset;
+      offset += Offset.axisValueMaps.offset
+          + data.readUShort(offset) * Offset.axisValueMapSize.offset;
+    }
+  }
+
+  public int axisCount() {
+    return this.segmentMaps.length;
+  }
+
+  /**
+   * Maps a normalized coordinate.
+   *
+   * @param axis the axis
+   * @param coordinate the normalized coordinate from
+   *        {@link FontVariationsTable#normalize(int, float)}
+   * @return the mapped coordinate
+   */
+  public float map(int axis, float coordinate) {
+    if (axis >= this.segmentMaps.length) {
+      return coordinate;
+    }
+    int offset = this.segmentMaps[axis];
+    int count = this.data.readUShort(offset + Offset.positionMapCount.offset);
+    int maps = offset + Offset.axisValueMaps.offset;
+    if (count == 0) {
+      return coordinate;
+    }
+    float previousFrom = from(maps, 0);
+    float previousTo = to(maps, 0);
+    if (coordinate <= previousFrom) {
+      return coordinate + previousTo - previousFrom;
+    }
+    for (int i = 1; i < count; i++) {
+      float from = from(maps, i);
+      float to = to(maps, i);
+      if (coordinate <= from) {
+        if (from == previousFrom) {
+          return to;
+        }
+        return previousTo + (to - previousTo) * (coordinate - previousFrom) / (from - previousFrom);
+      }
+      previousFrom = from;
+      previousTo = to;
+    }
+    return coordinate + previousTo - previousFrom;
+  }
+
+  private float from(int maps, int i) {
+    return this.data.readShort(maps + i * Offset.axisValueMapSize.offset) / 16384f;
+  }
+
+  private float to(int maps, int i) {
+    return this.data.readShort(maps + i * Offset.axisValueMapSize.offset + 2) / 16384f;
+  }
+
+  /**
+   * Builder for an Axis Variations table.
+   */
+  public static class Builder extends ByteArrayTableBuilder<AxisVariationsTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected AxisVariationsTable subBuildTable(ReadableFontData data) {
+      return new AxisVariationsTable(this.header(), data);
+    }
+  }
+}
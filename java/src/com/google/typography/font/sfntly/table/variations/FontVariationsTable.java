@@ -0,0 +1,184 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.ByteArrayTableBuilder;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+
+/**
+ * A Font Variations table - 'fvar'. It defines the axes of a variable font
+ * and its named instances.
+ */
+public final class FontVariationsTable extends Table {
+
+  private enum Offset {
+    majorVersion(0),
+    minorVersion(2),
+    axesArrayOffset(4),
+    axisCount(8),
+    axisSize(10),
+    instanceCount(12),
+    instanceSize(14),
+
+    // Variation Axis Record
+    axisTag(0),
+    minValue(4),
+    defaultValue(8),
+    maxValue(12),
+    flags(16),
+    axisNameID(18),
+
+    // Instance Record
+    subfamilyNameID(0),
+    instanceFlags(2),
+    coordinates(4);
+
+    private final int offset;
+
+    private Offset(int offset) {
+      this.offset = offset;
+    }
+  }
+
+  private FontVariationsTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int axisCount() {
+    return this.data.readUShort(Offset.axisCount.offset);
+  }
+
+  public int axisTag(int axis) {
+    return this.data.readULongAsInt(axisOffset(axis) + Offset.axisTag.offset);
+  }
+
+  /**
+   * Gets the index of an axis.
+   *
+   * @param tag the axis tag
+   * @return the index of the axis, or -1 if the font has no such axis
+   */
+  public int axisIndex(int tag) {
+    for (int axis = 0; axis < axisCount(); axis++) {
+      if (axisTag(axis) == tag) {
+        return axis;
+      }
+    }
+    return -1;
+  }
+
+  public float axisMinValue(int axis) {
+    return fixed(axisOffset(axis) + Offset.minValue.offset);
+  }
+
+  public float axisDefaultValue(int axis) {
+    return fixed(axisOffset(axis) + Offset.defaultValue.offset);
+  }
+
+  public float axisMaxValue(int axis) {
+    return fixed(axisOffset(axis) + Offset.maxValue.offset);
+  }
+
+  public int axisFlags(int axis) {
+    return this.data.readUShort(axisOffset(axis) + Offset.flags.offset);
+  }
+
+  public int axisNameId(int axis) {
+    return this.data.readUShort(axisOffset(axis) + Offset.axisNameID.offset);
+  }
+
+  public int instanceCount() {
+    return this.data.readUShort(Offset.instanceCount.offset);
+  }
+
+  public int instanceSubfamilyNameId(int instance) {
+    return this.data.readUShort(instanceOffset(instance) + Offset.subfamilyNameID.offset);
+  }
+
+  public float instanceCoordinate(int instance, int axis) {
+    return fixed(instanceOffset(instance) + Offset.coordinates.offset + 4 * axis);
+  }
+
+  /**
+   * Normalizes a coordinate on an axis to the range -1 to 1 that the variation
+   * tables use, with the default value at 0. Values outside the range of the
+   * axis are clamped. The mapping of the avar table, if the font has one, must
+   * be applied to the result.
+   *
+   * @param axis the axis
+   * @param value the coordinate in the units of the axis
+   * @return the normalized coordinate
+   */
+  public float normalize(int axis, float value) {
+    float min = axisMinValue(axis);
+    float defaultValue = axisDefaultValue(axis);
+    float max = axisMaxValue(axis);
+    value = Math.max(min, Math.min(max, value));
+    if (value < defaultValue) {
+      return -(defaultValue - value) / (defaultValue - min);
+    } else if (value > defaultValue) {
+      return (value - defaultValue) / (max - defaultValue);
+    }
+    return 0;
+  }
+
+  private int axisOffset(int axis) {
+    return this.data.readUShort(Offset.axesArrayOffset.offset)
+        + axis * this.data.readUShort(Offset.axisSize.offset);
+  }
+
+  private int instanceOffset(int instance) {
+    return axisOffset(axisCount()) + instance * this.data.readUShort(Offset.instanceSize.offset);
+  }
+
+  private float fixed(int index) {
+    return this.data.readFixed(index) / 65536f;
+  }
+
+  /**
+   * Builder for a Font Variations table.
+   */
+  public static class Builder extends ByteArrayTableBuilder<FontVariationsTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected FontVariationsTable subBuildTable(ReadableFontData data) {
+      return new FontVariationsTable(this.header(), data);
+    }
+  }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.ByteArrayTableBuilder;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Glyph Variations table - 'gvar'. For each glyph it holds the tuple
+ * variations that move the points of the glyph's outline in the glyf table,
+ * followed by its four phantom points, away from their default positions.
+ * The points of a composite glyph are the offsets of its components.
+ */
+public final class GlyphVariationsTable extends Table {
+
+  /**
+   * The number of phantom points after the points of each glyph.
+   */
+  public static final int PHANTOM_POINTS = 4;
+
+  /**
+   * Flag of the header for 32 bit offsets to the glyph variation data.
+   */
+  public static final int FLAG_LONG_OFFSETS = 0x0001;
+
+  private enum Offset {
+    majorVersion(0),
+    minorVersion(2),
+    axisCount(4),
+    sharedTupleCount(6),
+    sharedTuplesOffset(8),
+    glyphCount(12),
+    flags(14),
+    glyphVariationDataArrayOffset(16),
+    glyphVariationDataOffsets(20),
+
+    // Glyph Variation Data
+    tupleVariationCount(0),
+    dataOffset(2),
+    tupleVariationHeaders(4),
+
+    // Tuple Variation Header
+    variationDataSize(0),
+    tupleIndex(2),
+    peakTuple(4);
+
+    private final int offset;
+
+    private Offset(int offset) {
+      this.offset = offset;
+    }
+  }
+
+  private static final int SHARED_POINT_NUMBERS = 0x8000;
+  private static final int COUNT_MASK = 0x0fff;
+  private static final int EMBEDDED_PEAK_TUPLE = 0x8000;
+  private static final int INTERMEDIATE_REGION = 0x4000;
+  private static final int PRIVATE_POINT_NUMBERS = 0x2000;
+  private static final int TUPLE_INDEX_MASK = 0x0fff;
+
+  private static final int POINTS_ARE_WORDS = 0x80;
+  private static final int POINT_RUN_COUNT_MASK = 0x7f;
+  private static final int DELTAS_ARE_ZERO = 0x80;
+  private static final int DELTAS_ARE_WORDS = 0x40;
+  private static final int DELTA_RUN_COUNT_MASK = 0x3f;
+
+  /**
+   * One tuple variation of a glyph: the deltas of some or all of its points,
+   * which apply fully at the peak of a region of the design space and less
+   * towards its edges.
+   */
+  public static final class TupleVariation {
+    private final float[] peak;
+    private final float[] start;
+    private final float[] end;
+    private final int[] points;
+    private final int[] xDeltas;
+    private final int[] yDeltas;
+
+    TupleVariation(float[] peak, float[] start, float[] end, int[] points, int[] xDeltas,
+        int[] yDeltas) {
+      this.peak = peak;
+      this.start = start;
+      this.end = end;
+      this.points = points;
+      this.xDeltas = xDeltas;
+      this.yDeltas = yDeltas;
+    }
+
+    /**
+     * Gets how much of the variation applies at a location.
+     *
+     * @param coordinates the normalized coordinates of the location
+     * @return the scalar, from 0 to 1
+     */
+    public float scalar(float[] coordinates) {
+      float scalar = 1;
+      for (int axis = 0; axis < this.peak.length; axis++) {
+        float peak = this.peak[axis];
+        float start = this.start == null ? Math.min(peak, 0) : this.start[axis];
+        float end = this.end == null ? Math.max(peak, 0) : this.end[axis];
+        scalar *= ItemVariationStore.axisScalar(
+            start, peak, end, axis < coordinates.length ? coordinates[axis] : 0);
+        if (scalar == 0) {
+          return 0;
+        }
+      }
+      return scalar;
+    }
+
+    /**
+     * @return the number of points that have deltas
+     */
+    public int numberOfDeltas() {
+      return this.xDeltas.length;
+    }
+
+    /**
+     * @param index the index of the delta
+     * @return the number of the point, counting the phantom points after the
+     *         points of the glyph
+     */
+    public int point(int index) {
+      return this.points == null ? index : this.points[index];
+    }
+
+    /**
+     * @return true if every point has a delta; if not, the deltas of the other
+     *         points of a simple glyph are interpolated
+     */
+    public boolean allPoints() {
+      return this.points == null;
+    }
+
+    public int xDelta(int index) {
+      return this.xDeltas[index];
+    }
+
+    public int yDelta(int index) {
+      return this.yDeltas[index];
+    }
+  }
+
+  private GlyphVariationsTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int axisCount() {
+    return this.data.readUShort(Offset.axisCount.offset);
+  }
+
+  public int sharedTupleCount() {
+    return this.data.readUShort(Offset.sharedTupleCount.offset);
+  }
+
+  /**
+   * @return the shared tuples, which the tuple variations of all glyphs can
+   *         refer to
+   */
+  public ReadableFontData sharedTuples() {
+    return this.data.slice(this.data.readULongAsInt(Offset.sharedTuplesOffset.offset),
+        sharedTupleCount() * axisCount() * 2);
+  }
+
+  public int glyphCount() {
+    return this.data.readUShort(Offset.glyphCount.offset);
+  }
+
+  public int flags() {
+    return this.data.readUShort(Offset.flags.offset);
+  }
+
+  /**
+   * Gets the variation data of a glyph, which is self-contained apart from
+   * its references to the shared tuples.
+   *
+   * @param glyphId the glyph id
+   * @return the glyph variation data, which is empty if the glyph doesn't
+   *         vary
+   */
+  public ReadableFontData glyphVariationData(int glyphId) {
+    if (glyphId < 0 || glyphId >= glyphCount()) {
+      return this.data.slice(0, 0);
+    }
+    int start = glyphVariationDataOffset(glyphId);
+    int end = glyphVariationDataOffset(glyphId + 1);
+    int arrayOffset = this.data.readULongAsInt(Offset.glyphVariationDataArrayOffset.offset);
+    return this.data.slice(arrayOffset + start, Math.max(0, end - start));
+  }
+
+  private int glyphVariationDataOffset(int index) {
+    if ((flags() & FLAG_LONG_OFFSETS) != 0) {
+      return this.data.readULongAsInt(Offset.glyphVariationDataOffsets.offset + 4 * index);
+    }
+    return 2 * this.data.readUShort(Offset.glyphVariationDataOffsets.offset + 2 * index);
+  }
+
+  /**
+   * Reads the tuple variations of a glyph.
+   *
+   * @param glyphId the glyph id
+   * @param numberOfPoints the number of points of the glyph, including the
+   *        phantom points
+   * @return the tuple variations
+   */
+  public List<TupleVariation> tupleVariations(int glyphId, int numberOfPoints) {
+    List<TupleVariation> variations = new ArrayList<TupleVariation>();
+    ReadableFontData data = glyphVariationData(glyphId);
+    if (data.length() == 0) {
+      return variations;
+    }
+    int axisCount = axisCount();
+    int tupleVariationCount = data.readUShort(Offset.tupleVariationCount.offset);
+    int serialized = data.readUShort(Offset.dataOffset.offset);
+    int[] sharedPoints = null;
+    if ((tupleVariationCount & SHARED_POINT_NUMBERS) != 0) {
+      int[] cursor = { serialized };
+      sharedPoints = readPoints(data, cursor, numberOfPoints);
+      serialized = cursor[0];
+    }
+
+    int header = Offset.tupleVariationHeaders.offset;
+    for (int i = 0; i < (tupleVariationCount & COUNT_MASK); i++) {
+      int size = data.readUShort(header + Offset.variationDataSize.offset);
+      int tupleIndex = data.readUShort(header + Offset.tupleIndex.offset);
+      int index = header + Offset.peakTuple.offset;
+      float[] peak;
+      if ((tupleIndex & EMBEDDED_PEAK_TUPLE) != 0) {
+        peak = readTuple(data, index, axisCount);
+        index += 2 * axisCount;
+      } else {
+        peak = readTuple(sharedTuples(), 2 * axisCount * (tupleIndex & TUPLE_INDEX_MASK),
+            axisCount);
+      }
+      float[] start = null;
+      float[] end = null;
+      if ((tupleIndex & INTERMEDIATE_REGION) != 0) {
+        start = readTuple(data, index, axisCount);
+        end = readTuple(data, index + 2 * axisCount, axisCount);
+        index += 4 * axisCount;
+      }
+      header = index;
+
+      int[] cursor = { serialized };
+      int[] points = sharedPoints;
+      if ((tupleIndex & PRIVATE_POINT_NUMBERS) != 0) {
+        points = readPoints(data, cursor, numberOfPoints);
+      }
+      int count = points == null ? numberOfPoints : points.length;
+      int[] xDeltas = readDeltas(data, cursor, count);
+      int[] yDeltas = readDeltas(data, cursor, count);
+      serialized += size;
+      variations.add(new TupleVariation(peak, start, end, points, xDeltas, yDeltas));
+    }
+    return variations;
+  }
+
+  private static float[] readTuple(ReadableFontData data, int index, int axisCount) {
+    float[] tuple = new float[axisCount];
+    for (int axis = 0; axis < axisCount; axis++) {
+      tuple[axis] = data.readShort(index + 2 * axis) / 16384f;
+    }
+    return tuple;
+  }
+
+  /**
+   * Reads packed point numbers.
+   *
+   * @return the point numbers, or null for all points
+   */
+  private static int[] readPoints(ReadableFontData data, int[] cursor, int numberOfPoints) {
+    int index = cursor[0];
+    int count = data.readUByte(index++);
+    if (count == 0) {
+      cursor[0] = index;
+      return null;
+    }
+    if ((count & POINTS_ARE_WORDS) != 0) {
+      count = (count & POINT_RUN_COUNT_MASK) << 8 | data.readUByte(index++);
+    }
+    int[] points = new int[count];
+    int point = 0;
+    int i = 0;
+    while (i < count) {
+      int control = data.readUByte(index++);
+      int runCount = (control & POINT_RUN_COUNT_MASK) + 1;
+      for (int j = 0; j < runCount && i < count; j++) {
+        if ((control & POINTS_ARE_WORDS) != 0) {
+          point += data.readUShort(index);
+          index += 2;
+        } else {
+          point += data.readUByte(index++);
+        }
+        if (point >= numberOfPoints) {
+          throw new IllegalArgumentException("Glyph variation refers to a missing point.");
+        }
+        points[i++] = point;
+      }
+    }
+    cursor[0] = index;
+    return points;
+  }
+
+  private static int[] readDeltas(ReadableFontData data, int[] cursor, int count) {
+    int index = cursor[0];
+    int[] deltas = new int[count];
+    int i = 0;
+    while (i < count) {
+      int control = data.readUByte(index++);
+      int runCount = (control & DELTA_RUN_COUNT_MASK) + 1;
+      for (int j = 0; j < runCount && i < count; j++) {
+        if ((control & DELTAS_ARE_ZERO) != 0) {
+          deltas[i++] = 0;
+        } else if ((control & DELTAS_ARE_WORDS) != 0) {
+          deltas[i++] = data.readShort(index);
+          index += 2;
+        } else {
+          deltas[i++] = data.readByte(index++);
+        }
+      }
+    }
+    cursor[0] = index;
+    return deltas;
+  }
+
+  /**
+   * Builder for a Glyph Variations table.
+   */
+  public static class Builder extends ByteArrayTableBuilder<GlyphVariationsTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected GlyphVariationsTable subBuildTable(ReadableFontData data) {
+      return new GlyphVariationsTable(this.header(), data);
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.ByteArrayTableBuilder;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+
+/**
+ * A Horizontal Metrics Variations table - 'HVAR'. It holds the deltas of the
+ * advance widths of the glyphs, and optionally of their side bearings, in an
+ * {@link ItemVariationStore}. A glyph's deltas are found through a delta set
+ * index map, or, without one, at the inner index of the glyph id in the first
+ * Item Variation Data subtable.
+ */
+public final class HorizontalMetricsVariationsTable extends Table {
+
+  private enum Offset {
+    majorVersion(0),
+    minorVersion(2),
+    itemVariationStoreOffset(4),
+    advanceWidthMappingOffset(8),
+    lsbMappingOffset(12),
+    rsbMappingOffset(16),
+
+    // Delta Set Index Map
+    mapFormat(0),
+    entryFormat(1),
+    mapCount(2);
+
+    private final int offset;
+
+    private Offset(int offset) {
+      this.offset = offset;
+    }
+  }
+
+  private static final int INNER_INDEX_BIT_COUNT_MASK = 0x0f;
+  private static final int MAP_ENTRY_SIZE_MASK = 0x30;
+
+  private final ItemVariationStore itemVariationStore;
+
+  private HorizontalMetricsVariationsTable(Header header, ReadableFontData data) {
+    super(header, data);
+    this.itemVariationStore = new ItemVariationStore(
+        data.slice(data.readULongAsInt(Offset.itemVariationStoreOffset.offset)));
+  }
+
+  public ItemVariationStore itemVariationStore() {
+    return this.itemVariationStore;
+  }
+
+  /**
+   * @return true if the table has a delta set index map for the advance
+   *         widths, rather than using the glyph ids as inner indices
+   */
+  public boolean hasAdvanceWidthMapping() {
+    return this.data.readULongAsInt(Offset.advanceWidthMappingOffset.offset) != 0;
+  }
+
+  public boolean hasLsbMapping() {
+    return this.data.readULongAsInt(Offset.lsbMappingOffset.offset) != 0;
+  }
+
+  public boolean hasRsbMapping() {
+    return this.data.readULongAsInt(Offset.rsbMappingOffset.offset) != 0;
+  }
+
+  /**
+   * Gets the outer and inner index of the advance width deltas of a glyph.
+   *
+   * @param glyphId the glyph id
+   * @return the outer index in the high 16 bits and the inner index in the
+   *         low 16 bits
+   */
+  public int advanceWidthIndex(int glyphId) {
+    int mapping = this.data.readULongAsInt(Offset.advanceWidthMappingOffset.offset);
+    if (mapping == 0) {
+      return glyphId;
+    }
+    int format = this.data.readUByte(mapping + Offset.mapFormat.offset);
+    int entryFormat = this.data.readUByte(mapping + Offset.entryFormat.offset);
+    int mapCount;
+    int entries;
+    if (format == 0) {
+      mapCount = this.data.readUShort(mapping + Offset.mapCount.offset);
+      entries = mapping + Offset.mapCount.offset + 2;
+    } else if (format == 1) {
+      mapCount = this.data.readULongAsInt(mapping + Offset.mapCount.offset);
+      entries = mapping + Offset.mapCount.offset + 4;
+    } else {
+      throw new IllegalArgumentException("Unknown delta set index map format " + format + ".");
+    }
+    if (mapCount == 0) {
+      return glyphId;
+    }
+    int entrySize = ((entryFormat & MAP_ENTRY_SIZE_MASK) >> 4) + 1;
+    int innerBits = (entryFormat & INNER_INDEX_BIT_COUNT_MASK) + 1;
+    int index = entries + Math.min(glyphId, mapCount - 1) * entrySize;
+    int entry = 0;
+    for (int i = 0; i < entrySize; i++) {
+      entry = entry << 8 | this.data.readUByte(index + i);
+    }
+    return (entry >>> innerBits) << 16 | (entry & ((1 << innerBits) - 1));
+  }
+
+  /**
+   * Gets the delta of the advance width of a glyph at a location in the
+   * design space.
+   *
+   * @param glyphId the glyph id
+   * @param coordinates the normalized coordinates of the location
+   * @return the delta
+   */
+  public float advanceWidthDelta(int glyphId, float[] coordinates) {
+    int index = advanceWidthIndex(glyphId);
+    return this.itemVariationStore.delta(index >>> 16, index & 0xffff, coordinates);
+  }
+
+  /**
+   * Builder for a Horizontal Metrics Variations table.
+   */
+  public static class Builder extends ByteArrayTableBuilder<HorizontalMetricsVariationsTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected HorizontalMetricsVariationsTable subBuildTable(ReadableFontData data) {
+      return new HorizontalMetricsVariationsTable(this.header(), data);
+    }
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+
+/**
+ * An Item Variation Store, which holds the deltas of the variable values of a
+ * table such as HVAR. A value is identified by an outer index, which selects
+ * an Item Variation Data subtable, and an inner index, which selects the delta
+ * set in it.
+ */
+public final class ItemVariationStore {
+
+  private enum Offset {
+    format(0),
+    variationRegionListOffset(2),
+    itemVariationDataCount(6),
+    itemVariationDataOffsets(8),
+
+    // Variation Region List
+    regionAxisCount(0),
+    regionCount(2),
+    regions(4),
+    regionAxisCoordinatesSize(6),
+
+    // Item Variation Data
+    itemCount(0),
+    wordDeltaCount(2),
+    regionIndexCount(4),
+    regionIndexes(6);
+
+    private final int offset;
+
+    private Offset(int offset) {
+      this.offset = offset;
+    }
+  }
+
+  private static final int LONG_WORDS = 0x8000;
+  private static final int WORD_DELTA_COUNT_MASK = 0x7fff;
+
+  private final ReadableFontData data;
+  private final ReadableFontData regionList;
+  private final int axisCount;
+  private final int regionCount;
+  private final ReadableFontData[] itemVariationData;
+
+  /**
+   * Constructor.
+   *
+   * @param data the data starting at the Item Variation Store
+   */
+  public ItemVariationStore(ReadableFontData data) {
+    this.data = data;
+    if (data.readUShort(Offset.format.offset) != 1) {
+      throw new IllegalArgumentException(
+          "Unknown item variation store format " + data.readUShort(Offset.format.offset) + ".");
+    }
+    int regionListOffset = data.readULongAsInt(Offset.variationRegionListOffset.offset);
+    this.axisCount = data.readUShort(regionListOffset + Offset.regionAxisCount.offset);
+    this.regionCount = data.readUShort(regionListOffset + Offset.regionCount.offset);
+    this.regionList = data.slice(regionListOffset, Offset.regions.offset
+        + this.regionCount * this.axisCount * Offset.regionAxisCoordinatesSize.offset);
+    int count = data.readUShort(Offset.itemVariationDataCount.offset);
+    this.itemVariationData = new ReadableFontData[count];
+    for (int i = 0; i < count; i++) {
+      this.itemVariationData[i] = data.slice(
+          data.readULongAsInt(Offset.itemVariationDataOffsets.offset + 4 * i));
+    }
+  }
+
+  public int axisCount() {
+    return this.axisCount;
+  }
+
+  public int regionCount() {
+    return this.regionCount;
+  }
+
+  /**
+   * @return the Variation Region List, which doesn't depend on the items
+   */
+  public ReadableFontData regionList() {
+    return this.regionList;
+  }
+
+  /**
+   * @return the number of Item Variation Data subtables, the outer indices
+   */
+  public int itemVariationDataCount() {
+    return this.itemVariationData.length;
+  }
+
+  /**
+   * @param outer the outer index
+   * @return the number of delta sets in the Item Variation Data subtable
+   */
+  public int itemCount(int outer) {
+    return this.itemVariationData[outer].readUShort(Offset.itemCount.offset);
+  }
+
+  /**
+   * Gets the header of an Item Variation Data subtable, with its region
+   * indices, which is followed by its delta sets.
+   *
+   * @param outer the outer index
+   * @return the header
+   */
+  public ReadableFontData itemVariationDataHeader(int outer) {
+    ReadableFontData data = this.itemVariationData[outer];
+    return data.slice(0, deltaSetsOffset(data));
+  }
+
+  /**
+   * Gets the data of a delta set. All the delta sets of an Item Variation Data
+   * subtable are the same size.
+   *
+   * @param outer the outer index
+   * @param inner the inner index
+   * @return the delta set
+   */
+  public ReadableFontData deltaSet(int outer, int inner) {
+    ReadableFontData data = this.itemVariationData[outer];
+    int size = deltaSetSize(data);
+    return data.slice(deltaSetsOffset(data) + inner * size, size);
+  }
+
+  /**
+   * Gets the delta of a value at a location in the design space.
+   *
+   * @param outer the outer index
+   * @param inner the inner index
+   * @param coordinates the normalized coordinates of the location
+   * @return the delta
+   */
+  public float delta(int outer, int inner, float[] coordinates) {
+    if (outer >= this.itemVariationData.length || inner >= itemCount(outer)) {
+      return 0;
+    }
+    ReadableFontData data = this.itemVariationData[outer];
+    int wordDeltaCount = data.readUShort(Offset.wordDeltaCount.offset);
+    boolean longWords = (wordDeltaCount & LONG_WORDS) != 0;
+    wordDeltaCount &= WORD_DELTA_COUNT_MASK;
+    int regionIndexCount = data.readUShort(Offset.regionIndexCount.offset);
+    int index = deltaSetsOffset(data) + inner * deltaSetSize(data);
+    float delta = 0;
+    for (int i = 0; i < regionIndexCount; i++) {
+      int value;
+      if (i < wordDeltaCount) {
+        value = longWords ? data.readLong(index) : data.readShort(index);
+        index += longWords ? 4 : 2;
+      } else {
+        value = longWords ? data.readShort(index) : data.readByte(index);
+        index += longWords ? 2 : 1;
+      }
+      if (value != 0) {
+        int region = data.readUShort(Offset.regionIndexes.offset + 2 * i);
+        delta += value * regionScalar(region, coordinates);
+      }
+    }
+    return delta;
+  }
+
+  private float regionScalar(int region, float[] coordinates) {
+    float scalar = 1;
+    int index = Offset.regions.offset
+        + region * this.axisCount * Offset.regionAxisCoordinatesSize.offset;
+    for (int axis = 0; axis < this.axisCount; axis++, index += 6) {
+      float start = this.regionList.readShort(index) / 16384f;
+      float peak = this.regionList.readShort(index + 2) / 16384f;
+      float end = this.regionList.readShort(index + 4) / 16384f;
+      scalar *= axisScalar(start, peak, end, axis < coordinates.length ? coordinates[axis] : 0);
+      if (scalar == 0) {
+        return 0;
+      }
+    }
+    return scalar;
+  }
+
+  /**
+   * Gets how much of a variation applies on one axis, for a variation that has
+   * its peak at one coordinate and falls off to nothing at the start and end
+   * coordinates.
+   *
+   * @param start the start coordinate
+   * @param peak the peak coordinate, or 0 if the variation doesn't depend on
+   *        the axis
+   * @param end the end coordinate
+   * @param coordinate the normalized coordinate on the axis
+   * @return the scalar, from 0 to 1
+   */
+  static float axisScalar(float start, float peak, float end, float coordinate) {
+    if (peak == 0 || start > peak || peak > end || (start < 0 && end > 0)) {
+      return 1;
+    }
+    if (coordinate == peak) {
+      return 1;
+    }
+    if (coordinate <= start || coordinate >= end) {
+      return 0;
+    }
+    if (coordinate < peak) {
+      return (coordinate - start) / (peak - start);
+    }
+    return (end - coordinate) / (end - peak);
+  }
+
+  private static int deltaSetsOffset(ReadableFontData data) {
+    return Offset.regionIndexes.offset + 2 * data.readUShort(Offset.regionIndexCount.offset);
+  }
+
+  private static int deltaSetSize(ReadableFontData data) {
+    int wordDeltaCount = data.readUShort(Offset.wordDeltaCount.offset);
+    int wordSize = (wordDeltaCount & LONG_WORDS) != 0 ? 4 : 2;
+    wordDeltaCount &= WORD_DELTA_COUNT_MASK;
+    int regionIndexCount = data.readUShort(Offset.regionIndexCount.offset);
+    return wordDeltaCount * wordSize + (regionIndexCount - wordDeltaCount) * (wordSize / 2);
+  }
+}
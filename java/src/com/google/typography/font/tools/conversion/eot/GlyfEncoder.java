@@ -26,6 +26,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * @author Raph Levien
@@ -34,6 +36,10 @@ import java.util.List;
  */
 public class GlyfEncoder {
 
+  // glyphs are encoded in parallel in ranges of at least this size
+  private static final int MIN_RANGE_SIZE = 256;
+  private static final int RANGES_PER_THREAD = 4;
+
   private final boolean doPush;
   
   private final ByteArrayOutputStream glyfStream;
@@ -53,10 +59,85 @@ public class GlyfEncoder {
 
   public void encode(Font sourceFont) {
     LocaTable loca = sourceFont.getTable(Tag.loca);
-    int nGlyphs = loca.numGlyphs();
     GlyphTable glyf = sourceFont.getTable(Tag.glyf);
+    encodeRange(glyf, loca, 0, loca.numGlyphs());
+  }
+
+  /**
+   * Encode the glyphs using the pool. The glyphs are split into contiguous
+   * ranges that are encoded into separate buffers and then concatenated in
+   * order, so the result is the same as from {@link #encode(Font)}.
+   *
+   * @param sourceFont the font to encode
+   * @param pool the pool to encode the glyph ranges on
+   */
+  public void encode(Font sourceFont, ForkJoinPool pool) {
+    LocaTable loca = sourceFont.getTable(Tag.loca);
+    GlyphTable glyf = sourceFont.getTable(Tag.glyf);
+    int nGlyphs = loca.numGlyphs();
+    int rangeSize = Math.max(MIN_RANGE_SIZE,
+        (nGlyphs + RANGES_PER_THREAD * pool.getParallelism() - 1)
+        / (RANGES_PER_THREAD * pool.getParallelism()));
+    int nRanges = (nGlyphs + rangeSize - 1) / rangeSize;
+    if (nRanges <= 1) {
+      encodeRange(glyf, loca, 0, nGlyphs);
+      return;
+    }
+
+    GlyfEncoder[] rangeEncoders = new GlyfEncoder[nRanges];
+    pool.invoke(new RangeTask(glyf, loca, rangeSize, rangeEncoders, 0, nRanges));
+    for (GlyfEncoder rangeEncoder : rangeEncoders) {
+      try {
+        rangeEncoder.glyfStream.writeTo(glyfStream);
+        rangeEncoder.pushStream.writeTo(pushStream);
+        rangeEncoder.codeStream.writeTo(codeStream);
+      } catch (IOException e) {
+        throw new RuntimeException("unexpected IOException writing glyph data", e);
+      }
+    }
+  }
+
+  /**
+   * Encodes the glyph ranges from start to end, each into a new encoder.
+   */
+  private final class RangeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final GlyphTable glyf;
+    private final LocaTable loca;
+    private final int rangeSize;
+    private final GlyfEncoder[] rangeEncoders;
+    private final int start;
+    private final int end;
+
+    RangeTask(GlyphTable glyf, LocaTable loca, int rangeSize, GlyfEncoder[] rangeEncoders,
+        int start, int end) {
+      this.glyf = glyf;
+      this.loca = loca;
+      this.rangeSize = rangeSize;
+      this.rangeEncoders = rangeEncoders;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > 1) {
+        int mid = (start + end) >>> 1;
+        invokeAll(new RangeTask(glyf, loca, rangeSize, rangeEncoders, start, mid),
+            new RangeTask(glyf, loca, rangeSize, rangeEncoders, mid, end));
+        return;
+      }
+      GlyfEncoder rangeEncoder = new GlyfEncoder(doPush);
+      int firstGlyph = start * rangeSize;
+      rangeEncoder.encodeRange(
+          glyf, loca, firstGlyph, Math.min(firstGlyph + rangeSize, loca.numGlyphs()));
+      rangeEncoders[start] = rangeEncoder;
+    }
+  }
 
-    for (int glyphId = 0; glyphId < nGlyphs; glyphId++) {
+  private void encodeRange(GlyphTable glyf, LocaTable loca, int firstGlyph, int endGlyph) {
+    for (int glyphId = firstGlyph; glyphId < endGlyph; glyphId++) {
       int sourceOffset = loca.glyphOffset(glyphId);
       int length = loca.glyphLength(glyphId);
       Glyph glyph = glyf.glyph(sourceOffset, length);
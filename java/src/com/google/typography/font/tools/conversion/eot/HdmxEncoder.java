@@ -24,6 +24,8 @@ import com.google.typography.font.sfntly.table.core.HorizontalDeviceMetricsTable
 import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
 import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
 
+import java.util.Arrays;
+
 /**
  * Implementation of compression of CTF horizontal device metrics data, as per
  * section 5.4 of the MicroType Express spec.
@@ -42,19 +44,36 @@ public class HdmxEncoder {
     int unitsPerEm = head.unitsPerEm();
     int numRecords = hdmx.numRecords();
     int numGlyphs = maxp.numGlyphs();
+
+    // Read the advance widths once. Most glyphs share one of a few advance widths, so the
+    // rounded advances are computed once per distinct advance width for each record.
+    int[] advanceWidths = new int[numGlyphs];
+    for (int j = 0; j < numGlyphs; j++) {
+      advanceWidths[j] = hmtx.advanceWidth(j);
+    }
+    int[] distinctWidths = distinctValues(advanceWidths);
+    int[] advanceIndex = new int[numGlyphs];
+    for (int j = 0; j < numGlyphs; j++) {
+      advanceIndex[j] = Arrays.binarySearch(distinctWidths, advanceWidths[j]);
+    }
+    int[] roundedWidths = new int[distinctWidths.length];
+    byte[] widths = new byte[numGlyphs];
+
     MagnitudeDependentWriter magWriter = new MagnitudeDependentWriter();
     for (int i = 0; i < numRecords; i++) {
       int ppem = hdmx.pixelSize(i);
+      for (int k = 0; k < distinctWidths.length; k++) {
+        roundedWidths[k] =
+            ((64 * ppem * distinctWidths[k] + unitsPerEm / 2) / unitsPerEm + 32) / 64;
+      }
+      hdmx.widths(i, widths);
       for (int j = 0; j < numGlyphs; j++) {
-        int roundedTtAw =
-            ((64 * ppem * hmtx.advanceWidth(j) + unitsPerEm / 2) / unitsPerEm + 32) / 64;
-        int surprise = hdmx.width(i, j) - roundedTtAw;
+        int surprise = (widths[j] & 0xff) - roundedWidths[advanceIndex[j]];
         magWriter.writeValue(surprise);
       }
     }
     magWriter.flush();
-    byte[] magBytes = magWriter.toByteArray();
-    int resultSize = magBytes.length + HEADER_SIZE + RECORD_SIZE * numRecords;
+    int resultSize = magWriter.size() + HEADER_SIZE + RECORD_SIZE * numRecords;
     WritableFontData result = WritableFontData.createWritableFontData(resultSize);
     result.writeUShort(0, 0);
     result.writeUShort(2, numRecords);
@@ -63,7 +82,19 @@ public class HdmxEncoder {
       result.writeByte(HEADER_SIZE + RECORD_SIZE * i, (byte) hdmx.pixelSize(i));
       result.writeByte(HEADER_SIZE + RECORD_SIZE * i + 1, (byte) hdmx.maxWidth(i));
     }
-    result.writeBytes(HEADER_SIZE + RECORD_SIZE * numRecords, magBytes);
+    magWriter.writeTo(result, HEADER_SIZE + RECORD_SIZE * numRecords);
     return result;
   }
+
+  private static int[] distinctValues(int[] values) {
+    int[] sorted = values.clone();
+    Arrays.sort(sorted);
+    int count = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || sorted[i] != sorted[count - 1]) {
+        sorted[count++] = sorted[i];
+      }
+    }
+    return Arrays.copyOf(sorted, count);
+  }
 }
@@ -16,43 +16,69 @@
 
 package com.google.typography.font.tools.conversion.eot;
 
-import java.io.ByteArrayOutputStream;
+import com.google.typography.font.sfntly.data.WritableFontData;
+
+import java.util.Arrays;
 
 /**
  * Write a stream of values using magnitude dependent encoding, as per section 5.3 of the spec.
  * 
+ * The writer can be reused for another stream after a call to {@link #reset()}, which keeps
+ * the buffer that has been allocated.
+ *
  * @author Raph Levien
  */
 public class MagnitudeDependentWriter {
 
-  private final ByteArrayOutputStream buf;
-  private byte byteBuf;
+  private byte[] buf;
+  private int size;
+  private int byteBuf;
   private int bitCount;
   
   public MagnitudeDependentWriter() {
-    buf = new ByteArrayOutputStream();
+    buf = new byte[256];
+    size = 0;
     bitCount = 0;
     byteBuf = 0;
   }
+
+  private void writeByte(int value) {
+    if (size == buf.length) {
+      buf = Arrays.copyOf(buf, 2 * size);
+    }
+    buf[size++] = (byte) value;
+  }
   
   private void writeBit(int bit) {
     byteBuf |= (bit << bitCount);
     bitCount++;
     if (bitCount == 8) {
-      buf.write(byteBuf);
+      writeByte(byteBuf);
       byteBuf = 0;
       bitCount = 0;
     }
   }
 
+  // writes the run of one bits a byte at a time
+  private void writeOnes(int count) {
+    while (count > 0) {
+      int n = Math.min(count, 8 - bitCount);
+      byteBuf |= ((1 << n) - 1) << bitCount;
+      bitCount += n;
+      count -= n;
+      if (bitCount == 8) {
+        writeByte(byteBuf);
+        byteBuf = 0;
+        bitCount = 0;
+      }
+    }
+  }
+
   public void writeValue(int value) {
     if (value == 0) {
       writeBit(0);
     } else {
-      int absValue = Math.abs(value);
-      for (int i = 0; i < absValue; i++) {
-        writeBit(1);
-      }
+      writeOnes(Math.abs(value));
       writeBit(0);
       writeBit(value > 0 ? 0 : 1);
     }
@@ -60,13 +86,40 @@ public class MagnitudeDependentWriter {
 
   public void flush() {
     if (bitCount > 0) {
-      buf.write(byteBuf);
+      writeByte(byteBuf);
       byteBuf = 0;
       bitCount = 0;
     }
   }
+
+  /**
+   * Discard everything written so that the writer can be used for a new stream.
+   */
+  public void reset() {
+    size = 0;
+    byteBuf = 0;
+    bitCount = 0;
+  }
+
+  /**
+   * @return the number of bytes written, including a partial byte only after a flush
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Copy the bytes written to the font data.
+   *
+   * @param data the font data to write to
+   * @param index the index in the font data to start writing at
+   * @return the number of bytes written
+   */
+  public int writeTo(WritableFontData data, int index) {
+    return data.writeBytes(index, buf, 0, size);
+  }
   
   public byte[] toByteArray() {
-    return buf.toByteArray();
+    return Arrays.copyOf(buf, size);
   }
 }
@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Raph Levien
@@ -58,7 +59,7 @@ public class MtxWriter {
     fontBuilder.getHeadBuilder().initFrom(srcHead);
 
     GlyfEncoder glyfEncoder = new GlyfEncoder();
-    glyfEncoder.encode(sfntlyFont);
+    glyfEncoder.encode(sfntlyFont, ForkJoinPool.commonPool());
     fontBuilder.addTableBytes(Tag.glyf, glyfEncoder.getGlyfBytes());
     fontBuilder.addTable(Tag.loca, null);
 
@@ -19,13 +19,16 @@ package com.google.typography.font.tools.conversion.woff;
 import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.Table;
 import com.google.typography.font.sfntly.table.core.FontHeaderTable;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 import java.util.zip.Deflater;
 
@@ -40,6 +43,43 @@ public class WoffWriter {
   private static final int WOFF_HEADER_SIZE =
       (9 * FontData.DataSize.ULONG.size()) + (4 * FontData.DataSize.USHORT.size());
 
+  // the font that was loaded from a WOFF file and its table directory entries
+  private Font sourceFont;
+  private Map<Integer, SourceTableEntry> sourceTables = new HashMap<Integer, SourceTableEntry>();
+
+  /**
+   * Checks for the WOFF signature at the start of the data.
+   *
+   * @param data the font data
+   * @return true if the data is a WOFF font
+   */
+  public static boolean isWoff(ReadableFontData data) {
+    return data.length() >= WOFF_HEADER_SIZE && data.readULong(0) == SIGNATURE;
+  }
+
+  /**
+   * Set the WOFF font that the converted fonts were made from, such as the
+   * font that a subset was made of. Tables of a converted font that are the
+   * same as in the source font use the compressed data and checksum of the
+   * source WOFF font instead of being compressed again.
+   *
+   * @param font the font loaded from the WOFF data
+   * @param woffData the WOFF data
+   */
+  public void setSource(Font font, ReadableFontData woffData) {
+    if (!isWoff(woffData)) {
+      throw new IllegalArgumentException("Source data is not a WOFF font.");
+    }
+    this.sourceFont = font;
+    this.sourceTables.clear();
+    int numTables = woffData.readUShort(3 * FontData.DataSize.ULONG.size());
+    for (int i = 0; i < numTables; i++) {
+      SourceTableEntry entry =
+          new SourceTableEntry(woffData, WOFF_HEADER_SIZE + i * TableDirectoryEntry.ENTRY_SIZE);
+      this.sourceTables.put(entry.tag, entry);
+    }
+  }
+
   public WritableFontData convert(Font font) {
     List<TableDirectoryEntry> tableDirectoryEntries = createTableDirectoryEntries(font);
     int length =
@@ -163,13 +203,38 @@ public class WoffWriter {
       TableDirectoryEntry tableDirectoryEntry = new TableDirectoryEntry();
       tableDirectoryEntry.setTag(tag);
       tableDirectoryEntry.setOrigLength(table.dataLength());
-      tableDirectoryEntry.setOrigChecksum(table.calculatedChecksum());
-      setCompressedTableData(tableDirectoryEntry, table);
+      SourceTableEntry source = unchangedSourceTable(table);
+      if (source != null) {
+        tableDirectoryEntry.setOrigChecksum(source.origChecksum);
+        tableDirectoryEntry.setCompTable(source.compTable());
+      } else {
+        tableDirectoryEntry.setOrigChecksum(table.calculatedChecksum());
+        setCompressedTableData(tableDirectoryEntry, table);
+      }
       tableDirectoryEntries.add(tableDirectoryEntry);
     }
     return tableDirectoryEntries;
   }
 
+  /**
+   * Gets the source WOFF entry for the table if the table has the same data
+   * as the source font's table.
+   */
+  private SourceTableEntry unchangedSourceTable(Table table) {
+    SourceTableEntry source = this.sourceTables.get(table.headerTag());
+    if (source == null || source.origLength != table.dataLength()) {
+      return null;
+    }
+    Table sourceTable = this.sourceFont.getTable(table.headerTag());
+    if (sourceTable == null || sourceTable.dataLength() != table.dataLength()) {
+      return null;
+    }
+    if (!table.readFontData().contentEquals(sourceTable.readFontData())) {
+      return null;
+    }
+    return source;
+  }
+
   private void setCompressedTableData(TableDirectoryEntry tableDirectoryEntry, Table table) {
     int length = table.dataLength();
     byte[] input = new byte[length];
@@ -188,6 +253,31 @@ public class WoffWriter {
     }
   }
 
+  private static class SourceTableEntry {
+    private final ReadableFontData woffData;
+    private final int tag;
+    private final int offset;
+    private final int compLength;
+    private final int origLength;
+    private final long origChecksum;
+
+    SourceTableEntry(ReadableFontData woffData, int entryOffset) {
+      this.woffData = woffData;
+      // tag, offset, compLength, origLength and origChecksum
+      this.tag = woffData.readULongAsInt(entryOffset);
+      this.offset = woffData.readULongAsInt(entryOffset + 4);
+      this.compLength = woffData.readULongAsInt(entryOffset + 8);
+      this.origLength = woffData.readULongAsInt(entryOffset + 12);
+      this.origChecksum = woffData.readULong(entryOffset + 16);
+    }
+
+    byte[] compTable() {
+      byte[] compTable = new byte[this.compLength];
+      this.woffData.readBytes(this.offset, compTable, 0, this.compLength);
+      return compTable;
+    }
+  }
+
   private static class TableDirectoryEntry {
 
     public static final int ENTRY_SIZE = 5 * FontData.DataSize.ULONG.size();
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.coverage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Command line tool that builds a coverage index for a font library and finds
+ * the fonts that cover some text.
+ */
+public class CoverageIndexTool {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      printUsage();
+      System.exit(1);
+    }
+    File indexFile = new File(args[1]);
+    switch (args[0]) {
+      case "build" -> {
+        FontCoverageIndexBuilder builder = new FontCoverageIndexBuilder();
+        for (int i = 2; i < args.length; i++) {
+          addFonts(builder, new File(args[i]));
+        }
+        builder.write(indexFile);
+        System.out.println("Indexed " + builder.size() + " fonts");
+      }
+      case "query" -> {
+        FontCoverageIndex index = FontCoverageIndex.open(indexFile);
+        for (int font : index.fontsCovering(args[2])) {
+          System.out.println(index.path(font)
+              + (index.collectionIndex(font) == 0 ? "" : " #" + index.collectionIndex(font)));
+        }
+      }
+      default -> {
+        printUsage();
+        System.exit(1);
+      }
+    }
+  }
+
+  private static void printUsage() {
+    System.out.println("CoverageIndexTool build indexfile fontfile|directory...");
+    System.out.println("CoverageIndexTool query indexfile text");
+    System.out.println("Build a coverage index of fonts or list the indexed fonts that cover text");
+  }
+
+  private static void addFonts(FontCoverageIndexBuilder builder, File file) {
+    if (file.isDirectory()) {
+      File[] files = file.listFiles();
+      if (files != null) {
+        Arrays.sort(files);
+        for (File child : files) {
+          addFonts(builder, child);
+        }
+      }
+      return;
+    }
+    String name = file.getName().toLowerCase();
+    if (!name.endsWith(".ttf") && !name.endsWith(".otf") && !name.endsWith(".ttc")) {
+      return;
+    }
+    try {
+      builder.addFontFile(file);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Skipping " + file + ": " + e.getMessage());
+    }
+  }
+}
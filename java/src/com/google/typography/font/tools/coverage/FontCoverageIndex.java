@@ -0,0 +1,312 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.coverage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A memory-mapped index of the characters covered by each font of a font
+ * library. Queries read the mapped file directly and never load a font.
+ *
+ * The file is big-endian and is laid out as:
+ *
+ * <pre>
+ * header       magic 'scvi', version, number of fonts, reserved (4 x uint32)
+ * font records one per font (RECORD_SIZE bytes each):
+ *                path offset, path length, index in collection,
+ *                ranges offset, number of ranges, number of characters
+ *                (6 x uint32), SHA-256 digest of the font file (32 bytes),
+ *                bitmap of the BMP pages of 256 characters that have any
+ *                coverage (32 bytes)
+ * ranges       for each font, sorted disjoint pairs of first and last
+ *                characters (2 x uint32 each)
+ * paths        for each font, the UTF-8 path of its file
+ * </pre>
+ *
+ * A query first checks the page bitmap for BMP characters and only then does
+ * a binary search of the font's ranges.
+ *
+ * This object is immutable and thread safe.
+ *
+ * @see FontCoverageIndexBuilder
+ */
+public final class FontCoverageIndex {
+  static final int MAGIC = 0x73637669; // 'scvi'
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 16;
+  static final int DIGEST_LENGTH = 32;
+  static final int PAGES_LENGTH = 32;
+  static final int RECORD_SIZE = 24 + DIGEST_LENGTH + PAGES_LENGTH;
+
+  private enum Offset {
+    // header
+    numFonts(8),
+
+    // font record
+    pathOffset(0),
+    pathLength(4),
+    collectionIndex(8),
+    rangesOffset(12),
+    numRanges(16),
+    numChars(20),
+    digest(24),
+    pages(24 + DIGEST_LENGTH);
+
+    private final int offset;
+
+    private Offset(int offset) {
+      this.offset = offset;
+    }
+  }
+
+  private final ByteBuffer data;
+  private final int numFonts;
+
+  private FontCoverageIndex(ByteBuffer data) throws IOException {
+    this.data = data;
+    if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+      throw new IOException("Not a coverage index.");
+    }
+    if (data.getInt(4) != VERSION) {
+      throw new IOException("Unsupported coverage index version " + data.getInt(4) + ".");
+    }
+    this.numFonts = data.getInt(Offset.numFonts.offset);
+    if (this.numFonts < 0
+        || (long) HEADER_SIZE + (long) this.numFonts * RECORD_SIZE > data.capacity()) {
+      throw new IOException("Coverage index is truncated.");
+    }
+    for (int font = 0; font < this.numFonts; font++) {
+      int record = record(font);
+      checkBounds(data.getInt(record + Offset.rangesOffset.offset),
+          8L * data.getInt(record + Offset.numRanges.offset));
+      checkBounds(data.getInt(record + Offset.pathOffset.offset),
+          data.getInt(record + Offset.pathLength.offset));
+    }
+  }
+
+  private void checkBounds(int offset, long length) throws IOException {
+    if (offset < 0 || length < 0 || offset + length > this.data.capacity()) {
+      throw new IOException("Coverage index is truncated.");
+    }
+  }
+
+  /**
+   * Opens an index file by mapping it into memory.
+   *
+   * @param file the index file
+   * @return the index
+   * @throws IOException if the file can't be read or isn't a coverage index
+   */
+  public static FontCoverageIndex open(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      // the mapping stays valid after the channel is closed
+      return new FontCoverageIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Wraps index data that is already in memory.
+   *
+   * @param data the index data
+   * @return the index
+   * @throws IOException if the data isn't a coverage index
+   */
+  public static FontCoverageIndex wrap(ByteBuffer data) throws IOException {
+    return new FontCoverageIndex(data.slice());
+  }
+
+  /**
+   * @return the number of fonts in the index
+   */
+  public int numFonts() {
+    return this.numFonts;
+  }
+
+  /**
+   * Gets the path of the file the font was loaded from.
+   *
+   * @param font the index of the font
+   * @return the path
+   */
+  public String path(int font) {
+    int record = record(font);
+    byte[] b = new byte[this.data.getInt(record + Offset.pathLength.offset)];
+    int offset = this.data.getInt(record + Offset.pathOffset.offset);
+    for (int i = 0; i < b.length; i++) {
+      b[i] = this.data.get(offset + i);
+    }
+    return new String(b, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Gets the index of the font within its file, which is 0 unless the file is
+   * a collection.
+   *
+   * @param font the index of the font
+   * @return the index in the collection
+   */
+  public int collectionIndex(int font) {
+    return this.data.getInt(record(font) + Offset.collectionIndex.offset);
+  }
+
+  /**
+   * Gets the SHA-256 digest of the font file when the index was built, which
+   * can be used to find entries that are out of date.
+   *
+   * @param font the index of the font
+   * @return a new array with the digest
+   */
+  public byte[] digest(int font) {
+    int offset = record(font) + Offset.digest.offset;
+    byte[] digest = new byte[DIGEST_LENGTH];
+    for (int i = 0; i < DIGEST_LENGTH; i++) {
+      digest[i] = this.data.get(offset + i);
+    }
+    return digest;
+  }
+
+  /**
+   * Gets the number of characters the font maps to a glyph.
+   *
+   * @param font the index of the font
+   * @return the number of characters
+   */
+  public int numChars(int font) {
+    return this.data.getInt(record(font) + Offset.numChars.offset);
+  }
+
+  /**
+   * Checks whether the font maps the character to a glyph other than .notdef.
+   *
+   * @param font the index of the font
+   * @param codePoint the character
+   * @return true if the font covers the character
+   */
+  public boolean covers(int font, int codePoint) {
+    return covers(record(font), codePoint, false);
+  }
+
+  /**
+   * Gets the number of the characters that the font covers.
+   *
+   * @param font the index of the font
+   * @param codePoints the characters
+   * @return the number of characters covered
+   */
+  public int countCovered(int font, int[] codePoints) {
+    int record = record(font);
+    int count = 0;
+    for (int codePoint : codePoints) {
+      if (covers(record, codePoint, false)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Gets the fonts that cover every character of the text.
+   *
+   * @param text the text
+   * @return the indexes of the fonts in increasing order
+   */
+  public int[] fontsCovering(CharSequence text) {
+    return fontsCovering(codePoints(text));
+  }
+
+  /**
+   * Gets the fonts that cover every one of the characters.
+   *
+   * @param codePoints the characters
+   * @return the indexes of the fonts in increasing order
+   */
+  public int[] fontsCovering(int[] codePoints) {
+    int[] fonts = new int[this.numFonts];
+    int count = 0;
+    for (int font = 0; font < this.numFonts; font++) {
+      int record = record(font);
+      boolean covered = true;
+      // check all the page bits before any of the ranges
+      for (int i = 0; covered && i < codePoints.length; i++) {
+        covered = covers(record, codePoints[i], true);
+      }
+      for (int i = 0; covered && i < codePoints.length; i++) {
+        covered = covers(record, codePoints[i], false);
+      }
+      if (covered) {
+        fonts[count++] = font;
+      }
+    }
+    return Arrays.copyOf(fonts, count);
+  }
+
+  /**
+   * Gets the distinct characters of the text in increasing order.
+   *
+   * @param text the text
+   * @return the characters
+   */
+  public static int[] codePoints(CharSequence text) {
+    return text.codePoints().sorted().distinct().toArray();
+  }
+
+  private int record(int font) {
+    if (font < 0 || font >= this.numFonts) {
+      throw new IndexOutOfBoundsException("Font index " + font + " is out of range.");
+    }
+    return HEADER_SIZE + font * RECORD_SIZE;
+  }
+
+  private boolean covers(int record, int codePoint, boolean pagesOnly) {
+    if (codePoint <= 0xffff) {
+      int page = codePoint >> 8;
+      if ((this.data.get(record + Offset.pages.offset + (page >> 3)) & (0x80 >> (page & 7))) == 0) {
+        return false;
+      }
+    }
+    if (pagesOnly) {
+      return true;
+    }
+
+    // find the last range that starts at or before the character
+    int ranges = this.data.getInt(record + Offset.rangesOffset.offset);
+    int low = 0;
+    int high = this.data.getInt(record + Offset.numRanges.offset) - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int start = this.data.getInt(ranges + 8 * mid);
+      if (codePoint < start) {
+        high = mid - 1;
+      } else if (codePoint > this.data.getInt(ranges + 8 * mid + 4)) {
+        low = mid + 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.coverage;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontCollection;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.tools.fontinfo.CharacterCoverage;
+import com.google.typography.font.tools.fontinfo.UnicodeRangeData;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a {@link FontCoverageIndex} file from the cmaps of a set of fonts.
+ *
+ * Fonts are added one at a time and the index is written once all of them have
+ * been added. Only the ranges of characters that each font maps are kept in
+ * memory, so the fonts themselves can be discarded as soon as they are added.
+ *
+ * @see FontCoverageIndex for the file format
+ */
+public final class FontCoverageIndexBuilder {
+  private static final int[] EMPTY = new int[0];
+
+  private final FontFactory factory = FontFactory.getInstance();
+  private final List<Entry> entries = new ArrayList<Entry>();
+
+  private static final class Entry {
+    final String path;
+    final int collectionIndex;
+    final byte[] digest;
+    final int[] ranges;
+
+    Entry(String path, int collectionIndex, byte[] digest, int[] ranges) {
+      this.path = path;
+      this.collectionIndex = collectionIndex;
+      this.digest = digest;
+      this.ranges = ranges;
+    }
+  }
+
+  /**
+   * Gets the number of fonts added so far.
+   *
+   * @return the number of fonts
+   */
+  public int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * Adds every font in a font file. All of the fonts of a collection are added,
+   * each with its index in the collection. A font without a Unicode cmap is
+   * added with no coverage.
+   *
+   * @param file the font file
+   * @throws IOException if the file can't be read or isn't a font
+   */
+  public void addFontFile(File file) throws IOException {
+    byte[] b = Files.readAllBytes(file.toPath());
+    byte[] digest = digest(b);
+    FontCollection collection = this.factory.loadFontCollection(b);
+    for (int i = 0; i < collection.size(); i++) {
+      addFont(file.getPath(), i, digest, unicodeCMap(collection.font(i)));
+    }
+  }
+
+  /**
+   * Adds a font with the characters of its cmap.
+   *
+   * @param path the path that identifies the font file
+   * @param collectionIndex the index of the font in its file
+   * @param digest the SHA-256 digest of the font file
+   * @param cmap the cmap of the font, or null if it has none
+   */
+  public void addFont(String path, int collectionIndex, byte[] digest, CMap cmap) {
+    if (digest.length != FontCoverageIndex.DIGEST_LENGTH) {
+      throw new IllegalArgumentException("Digest must be " + FontCoverageIndex.DIGEST_LENGTH
+          + " bytes.");
+    }
+    int[] ranges = cmap == null ? EMPTY : CharacterCoverage.fromCMap(cmap).ranges();
+    this.entries.add(new Entry(path, collectionIndex, digest.clone(), ranges));
+  }
+
+  /**
+   * Writes the index to a file.
+   *
+   * @param file the index file
+   * @throws IOException if the file can't be written
+   */
+  public void write(File file) throws IOException {
+    OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      write(os);
+    } finally {
+      os.close();
+    }
+  }
+
+  /**
+   * Writes the index to a stream.
+   *
+   * @param os the stream
+   * @throws IOException if the stream can't be written
+   */
+  public void write(OutputStream os) throws IOException {
+    int numFonts = this.entries.size();
+    byte[][] paths = new byte[numFonts][];
+    int rangesOffset = FontCoverageIndex.HEADER_SIZE + numFonts * FontCoverageIndex.RECORD_SIZE;
+    int pathsOffset = rangesOffset;
+    for (int i = 0; i < numFonts; i++) {
+      Entry entry = this.entries.get(i);
+      paths[i] = entry.path.getBytes(StandardCharsets.UTF_8);
+      pathsOffset += entry.ranges.length * 4;
+    }
+
+    DataOutputStream out = new DataOutputStream(os);
+    out.writeInt(FontCoverageIndex.MAGIC);
+    out.writeInt(FontCoverageIndex.VERSION);
+    out.writeInt(numFonts);
+    out.writeInt(0);
+
+    int nextRange = rangesOffset;
+    int nextPath = pathsOffset;
+    for (int i = 0; i < numFonts; i++) {
+      Entry entry = this.entries.get(i);
+      out.writeInt(nextPath);
+      out.writeInt(paths[i].length);
+      out.writeInt(entry.collectionIndex);
+      out.writeInt(nextRange);
+      out.writeInt(entry.ranges.length / 2);
+      out.writeInt(UnicodeRangeData.size(entry.ranges));
+      out.write(entry.digest);
+      out.write(bmpPages(entry.ranges));
+      nextRange += entry.ranges.length * 4;
+      nextPath += paths[i].length;
+    }
+    for (Entry entry : this.entries) {
+      for (int value : entry.ranges) {
+        out.writeInt(value);
+      }
+    }
+    for (byte[] path : paths) {
+      out.write(path);
+    }
+    out.flush();
+  }
+
+  /**
+   * Gets the Unicode cmap of a font: the Windows UCS-4 cmap if there is one and
+   * otherwise the Windows BMP cmap.
+   *
+   * @param font the font
+   * @return the cmap, or null if the font has neither
+   */
+  static CMap unicodeCMap(Font font) {
+    CMapTable cmapTable = font.getTable(Tag.cmap);
+    if (cmapTable == null) {
+      return null;
+    }
+    CMap cmap = cmapTable.cmap(CMapTable.CMapId.WINDOWS_UCS4);
+    if (cmap == null) {
+      cmap = cmapTable.cmap(CMapTable.CMapId.WINDOWS_BMP);
+    }
+    return cmap;
+  }
+
+  // one bit for each page of 256 characters in the BMP that has any coverage
+  private static byte[] bmpPages(int[] ranges) {
+    byte[] pages = new byte[FontCoverageIndex.PAGES_LENGTH];
+    for (int i = 0; i < ranges.length && ranges[i] <= 0xffff; i += 2) {
+      int last = Math.min(ranges[i + 1], 0xffff) >> 8;
+      for (int page = ranges[i] >> 8; page <= last; page++) {
+        pages[page >> 3] |= 0x80 >> (page & 7);
+      }
+    }
+    return pages;
+  }
+
+  private static byte[] digest(byte[] b) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(b);
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.fontinfo;
+
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapFormat12;
+import com.google.typography.font.sfntly.table.core.CMapFormat4;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The characters of a cmap that map to a glyph other than .notdef, kept as
+ * sorted ranges so that the number of them within a set of ranges can be found
+ * without looking at each character.
+ */
+public final class CharacterCoverage {
+  private final int[] starts;
+  private final int[] ends;
+  // the number of characters in the ranges before each range
+  private final int[] before;
+  private final int size;
+
+  private CharacterCoverage(int[] starts, int[] ends, int[] before, int size) {
+    this.starts = starts;
+    this.ends = ends;
+    this.before = before;
+    this.size = size;
+  }
+
+  /**
+   * Gets the coverage of a cmap. The ranges are taken from the segments of a
+   * format 4 cmap and the groups of a format 12 cmap, leaving out the
+   * characters that map to .notdef; other cmaps are iterated once.
+   *
+   * @param cmap
+   *          the cmap
+   * @return the characters of the cmap that map to a valid glyph
+   */
+  public static CharacterCoverage fromCMap(CMap cmap) {
+    RangeList ranges = new RangeList();
+    if (cmap instanceof CMapFormat4) {
+      addSegments((CMapFormat4) cmap, ranges);
+    } else if (cmap instanceof CMapFormat12) {
+      addGroups((CMapFormat12) cmap, ranges);
+    } else {
+      for (int charId : cmap) {
+        if (cmap.glyphId(charId) != CMapTable.NOTDEF) {
+          ranges.add(charId, charId);
+        }
+      }
+    }
+    return ranges.toCoverage();
+  }
+
+  private static void addSegments(CMapFormat4 cmap, RangeList ranges) {
+    for (int segment = 0; segment < cmap.getSegCount(); segment++) {
+      int start = cmap.startCode(segment);
+      int end = cmap.endCode(segment);
+      if (start > end) {
+        continue;
+      }
+      if (cmap.idRangeOffset(segment) == 0) {
+        // the characters map to consecutive glyphs, so at most one of them
+        // maps to .notdef
+        int notdef = -cmap.idDelta(segment) & 0xffff;
+        if (notdef < start || notdef > end) {
+          ranges.add(start, end);
+        } else {
+          ranges.add(start, notdef - 1);
+          ranges.add(notdef + 1, end);
+        }
+        continue;
+      }
+      // the glyphs come from the glyph id array, which has a glyph for each
+      // character of the segment
+      int first = -1;
+      for (int charId = start; charId <= end; charId++) {
+        boolean mapped = cmap.retrieveGlyphId(segment, start, charId) != CMapTable.NOTDEF;
+        if (mapped && first < 0) {
+          first = charId;
+        } else if (!mapped && first >= 0) {
+          ranges.add(first, charId - 1);
+          first = -1;
+        }
+      }
+      if (first >= 0) {
+        ranges.add(first, end);
+      }
+    }
+  }
+
+  private static void addGroups(CMapFormat12 cmap, RangeList ranges) {
+    for (int group = 0; group < cmap.getNumberOfGroups(); group++) {
+      int start = cmap.groupStartChar(group);
+      int end = cmap.groupEndChar(group);
+      // only the first character of a group can map to .notdef
+      if (cmap.groupStartGlyph(group) == CMapTable.NOTDEF) {
+        start++;
+      }
+      ranges.add(start, end);
+    }
+  }
+
+  /**
+   * The ranges of a cmap as they are found, which may be out of order or
+   * overlap.
+   */
+  private static final class RangeList {
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int count;
+    private boolean sorted = true;
+
+    void add(int start, int end) {
+      if (start > end) {
+        return;
+      }
+      if (this.count == this.starts.length) {
+        this.starts = Arrays.copyOf(this.starts, 2 * this.count);
+        this.ends = Arrays.copyOf(this.ends, 2 * this.count);
+      }
+      this.sorted &= this.count == 0 || this.starts[this.count - 1] < start;
+      this.starts[this.count] = start;
+      this.ends[this.count] = end;
+      this.count++;
+    }
+
+    CharacterCoverage toCoverage() {
+      Integer[] order = new Integer[this.count];
+      for (int i = 0; i < this.count; i++) {
+        order[i] = i;
+      }
+      if (!this.sorted) {
+        Arrays.sort(order, new Comparator<Integer>() {
+          @Override
+          public int compare(Integer a, Integer b) {
+            return Integer.compare(starts[a], starts[b]);
+          }
+        });
+      }
+
+      // merge the ranges that overlap or touch
+      int[] mergedStarts = new int[this.count];
+      int[] mergedEnds = new int[this.count];
+      int[] before = new int[this.count];
+      int numRanges = 0;
+      int size = 0;
+      for (int i : order) {
+        int start = this.starts[i];
+        int end = this.ends[i];
+        if (numRanges > 0 && start <= mergedEnds[numRanges - 1] + 1) {
+          if (end > mergedEnds[numRanges - 1]) {
+            size += end - mergedEnds[numRanges - 1];
+            mergedEnds[numRanges - 1] = end;
+          }
+          continue;
+        }
+        mergedStarts[numRanges] = start;
+        mergedEnds[numRanges] = end;
+        before[numRanges] = size;
+        numRanges++;
+        size += end - start + 1;
+      }
+      return new CharacterCoverage(Arrays.copyOf(mergedStarts, numRanges),
+          Arrays.copyOf(mergedEnds, numRanges), Arrays.copyOf(before, numRanges), size);
+    }
+  }
+
+  /**
+   * @return the number of characters covered
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return the covered characters as sorted, disjoint pairs of first and last
+   *         code points
+   */
+  public int[] ranges() {
+    int[] ranges = new int[2 * this.starts.length];
+    for (int i = 0; i < this.starts.length; i++) {
+      ranges[2 * i] = this.starts[i];
+      ranges[2 * i + 1] = this.ends[i];
+    }
+    return ranges;
+  }
+
+  /**
+   * @param codePoint
+   *          the code point
+   * @return true if the code point is covered
+   */
+  boolean contains(int codePoint) {
+    int range = rangeAtOrBefore(codePoint);
+    return range >= 0 && codePoint <= this.ends[range];
+  }
+
+  /**
+   * Gets the number of covered characters in the range.
+   *
+   * @param start
+   *          the first code point of the range
+   * @param end
+   *          the last code point of the range
+   * @return the number of covered characters
+   */
+  int count(int start, int end) {
+    if (end < start) {
+      return 0;
+    }
+    return countUpTo(end) - countUpTo(start - 1);
+  }
+
+  /**
+   * Gets the number of covered characters in a set of ranges.
+   *
+   * @param ranges
+   *          the ranges as pairs of first and last code points
+   * @return the number of covered characters
+   */
+  int count(int[] ranges) {
+    int count = 0;
+    for (int i = 0; i < ranges.length; i += 2) {
+      count += count(ranges[i], ranges[i + 1]);
+    }
+    return count;
+  }
+
+  // the number of covered characters less than or equal to the code point
+  private int countUpTo(int codePoint) {
+    int range = rangeAtOrBefore(codePoint);
+    if (range < 0) {
+      return 0;
+    }
+    return this.before[range] + Math.min(codePoint, this.ends[range]) - this.starts[range] + 1;
+  }
+
+  // the last range that starts at or before the code point, or -1
+  private int rangeAtOrBefore(int codePoint) {
+    int index = Arrays.binarySearch(this.starts, codePoint);
+    return index >= 0 ? index : -index - 2;
+  }
+}
@@ -18,10 +18,8 @@ import com.google.typography.font.sfntly.table.truetype.Glyph.GlyphType;
 import com.google.typography.font.sfntly.table.truetype.GlyphTable;
 import com.google.typography.font.sfntly.table.truetype.LocaTable;
 import com.google.typography.font.tools.fontinfo.DataDisplayTable.Align;
-import com.ibm.icu.impl.IllegalIcuArgumentException;
 import com.ibm.icu.lang.UCharacter;
 import com.ibm.icu.lang.UScript;
-import com.ibm.icu.text.UnicodeSet;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
@@ -287,47 +285,32 @@ public class FontInfo {
    *          the source font
    * @return a list of Unicode blocks covered by the font
    */
-  // FIXME Find more elegant method of retrieving block data
   public static DataDisplayTable listCharBlockCoverage(Font font) {
     String[] header = { "Block", "Coverage" };
     Align[] displayAlignment = { Align.Left, Align.Right };
     DataDisplayTable table = new DataDisplayTable(Arrays.asList(header));
     table.setAlignment(Arrays.asList(displayAlignment));
 
-    // Iterate through each block to check for coverage
-    CMap cmap = FontUtils.getUCSCMap(font);
+    // Intersect the characters of the cmap with the ranges of each block
+    CharacterCoverage coverage = CharacterCoverage.fromCMap(FontUtils.getUCSCMap(font));
+    UnicodeRangeData unicode = UnicodeRangeData.getInstance();
     int totalCount = 0;
     for (int i = 0; i < UnicodeBlockData.numBlocks(); i++) {
-      String block = UnicodeBlockData.getBlockName(i);
-      UnicodeSet set = null;
-      try {
-        set = new UnicodeSet("[[:Block=" + block + ":]-[:gc=Unassigned:]-[:gc=Control:]]");
-      } catch (IllegalIcuArgumentException e) {
-        continue;
-      }
-      int count = 0;
-      for (String charStr : set) {
-        if (cmap.glyphId(UCharacter.codePointAt(charStr, 0)) > 0) {
-          count++;
-        }
-      }
+      int[] ranges = unicode.blockRanges(i);
+      int count = coverage.count(ranges);
       if (count > 0) {
         table.add(Arrays.asList(new String[] { String.format(
-            "%s [%s, %s]", block, UnicodeBlockData.getBlockStartCode(i),
-            UnicodeBlockData.getBlockEndCode(i)), String.format("%d / %d", count, set.size()) }));
+            "%s [%s, %s]", UnicodeBlockData.getBlockName(i), UnicodeBlockData.getBlockStartCode(i),
+            UnicodeBlockData.getBlockEndCode(i)),
+            String.format("%d / %d", count, UnicodeRangeData.size(ranges)) }));
       }
       totalCount += count;
     }
 
     // Add control code points with valid glyphs to find the total number of
     // unicode characters with valid glyphs
-    UnicodeSet controlSet = new UnicodeSet("[[:gc=Control:]]");
-    for (String charStr : controlSet) {
-      if (cmap.glyphId(UCharacter.codePointAt(charStr, 0)) > 0) {
-        totalCount++;
-      }
-    }
-    int nonUnicodeCount = numChars(font) - totalCount;
+    totalCount += coverage.count(unicode.controlRanges());
+    int nonUnicodeCount = coverage.size() - totalCount;
     if (nonUnicodeCount > 0) {
       table.add(Arrays.asList(new String[] { "Unknown", String.format("%d", nonUnicodeCount) }));
     }
@@ -348,40 +331,17 @@ public class FontInfo {
     Align[] displayAlignment = { Align.Left, Align.Right };
     DataDisplayTable table = new DataDisplayTable(Arrays.asList(header));
     table.setAlignment(Arrays.asList(displayAlignment));
-    HashMap<Integer, Integer> coveredScripts = new HashMap<Integer, Integer>();
 
-    // Add to script count for the script each code point belongs to
-    CMap cmap = FontUtils.getUCSCMap(font);
-    for (int charId : cmap) {
-      if (cmap.glyphId(charId) != CMapTable.NOTDEF) {
-        int scriptCode = UScript.getScript(charId);
-        int scriptCount = 1;
-        if (coveredScripts.containsKey(scriptCode)) {
-          scriptCount += coveredScripts.get(scriptCode);
-        }
-        coveredScripts.put(scriptCode, scriptCount);
-      }
-    }
-
-    // For each covered script, find the total size of the script and add
-    // coverage to table
-    Set<Integer> sortedScripts = new TreeSet<Integer>(coveredScripts.keySet());
-    int unknown = 0;
-    for (Integer scriptCode : sortedScripts) {
-      UnicodeSet scriptSet = null;
-      String scriptName = UScript.getName(scriptCode);
-      try {
-        scriptSet = new UnicodeSet("[[:" + scriptName + ":]]");
-      } catch (IllegalIcuArgumentException e) {
-        unknown += coveredScripts.get(scriptCode);
-        continue;
+    // Intersect the characters of the cmap with the ranges of each script,
+    // which are in script code order
+    CharacterCoverage coverage = CharacterCoverage.fromCMap(FontUtils.getUCSCMap(font));
+    for (Map.Entry<Integer, int[]> script : UnicodeRangeData.getInstance().scriptRanges()
+        .entrySet()) {
+      int count = coverage.count(script.getValue());
+      if (count > 0) {
+        table.add(Arrays.asList(new String[] { UScript.getName(script.getKey()),
+            String.format("%d / %d", count, UnicodeRangeData.size(script.getValue())) }));
       }
-
-      table.add(Arrays.asList(new String[] { scriptName,
-          String.format("%d / %d", coveredScripts.get(scriptCode), scriptSet.size()) }));
-    }
-    if (unknown > 0) {
-      table.add(Arrays.asList(new String[] { "Unsupported script", String.format("%d", unknown) }));
     }
 
     return table;
@@ -401,44 +361,26 @@ public class FontInfo {
     Align[] displayAlignment = { Align.Left, Align.Right, Align.Left };
     DataDisplayTable table = new DataDisplayTable(Arrays.asList(header));
     table.setAlignment(Arrays.asList(displayAlignment));
-    HashMap<Integer, UnicodeSet> coveredScripts = new HashMap<Integer, UnicodeSet>();
 
-    // Iterate through each set
-    CMap cmap = FontUtils.getUCSCMap(font);
-    for (int charId : cmap) {
-      if (cmap.glyphId(charId) != CMapTable.NOTDEF) {
-        int scriptCode = UScript.getScript(charId);
-        if (scriptCode == UScript.UNKNOWN) {
-          continue;
-        }
-
-        UnicodeSet scriptSet = null;
-        if (!coveredScripts.containsKey(scriptCode)) {
-          // New covered script found, create set
-          try {
-            scriptSet = new UnicodeSet(
-                "[[:" + UScript.getName(scriptCode) + ":]-[:gc=Unassigned:]-[:gc=Control:]]");
-          } catch (IllegalIcuArgumentException e) {
-            continue;
+    // For each covered script in order, list the assigned characters that
+    // aren't covered
+    CharacterCoverage coverage = CharacterCoverage.fromCMap(FontUtils.getUCSCMap(font));
+    UnicodeRangeData unicode = UnicodeRangeData.getInstance();
+    for (Map.Entry<Integer, int[]> script : unicode.scriptRanges().entrySet()) {
+      int scriptCode = script.getKey();
+      if (scriptCode == UScript.UNKNOWN || coverage.count(script.getValue()) == 0) {
+        continue;
+      }
+      String scriptName = UScript.getName(scriptCode);
+      int[] ranges = unicode.assignedScriptRanges(scriptCode);
+      for (int i = 0; i < ranges.length; i += 2) {
+        for (int codePoint = ranges[i]; codePoint <= ranges[i + 1]; codePoint++) {
+          if (!coverage.contains(codePoint)) {
+            table.add(Arrays.asList(new String[] { scriptName,
+                FontUtils.getFormattedCodePointString(codePoint),
+                UCharacter.getExtendedName(codePoint) }));
           }
-          coveredScripts.put(scriptCode, scriptSet);
-        } else {
-          // Set for script already exists, retrieve for character removal
-          scriptSet = coveredScripts.get(scriptCode);
         }
-        scriptSet.remove(UCharacter.toString(charId));
-      }
-    }
-
-    // Insert into table in order
-    Set<Integer> sortedScripts = new TreeSet<Integer>(coveredScripts.keySet());
-    for (Integer scriptCode : sortedScripts) {
-      UnicodeSet uSet = coveredScripts.get(scriptCode);
-      for (String charStr : uSet) {
-        int codePoint = UCharacter.codePointAt(charStr, 0);
-        table.add(Arrays.asList(new String[] { String.format("%s", UScript.getName(scriptCode)),
-            FontUtils.getFormattedCodePointString(codePoint),
-            UCharacter.getExtendedName(codePoint) }));
       }
     }
 
@@ -671,6 +671,18 @@ public class UnicodeBlockData {
       "U+FFFFF",
       "U+10FFFF", };
 
+  // the start and end codes as code points, in the same order
+  private static int[] blockStarts = parseCodes(blockStartCode);
+  private static int[] blockEnds = parseCodes(blockEndCode);
+
+  private static int[] parseCodes(String[] codes) {
+    int[] codePoints = new int[codes.length];
+    for (int i = 0; i < codes.length; i++) {
+      codePoints[i] = Integer.parseInt(codes[i].substring(2), 16);
+    }
+    return codePoints;
+  }
+
   public static String getBlockName(int block) {
     return blockNames[block];
   }
@@ -683,6 +695,38 @@ public class UnicodeBlockData {
     return blockEndCode[block];
   }
 
+  public static int getBlockStart(int block) {
+    return blockStarts[block];
+  }
+
+  public static int getBlockEnd(int block) {
+    return blockEnds[block];
+  }
+
+  /**
+   * Gets the block containing a code point. The blocks are in code point
+   * order, so this is a binary search.
+   *
+   * @param codePoint
+   *          the code point
+   * @return the index of the block, or -1 if the code point is in no block
+   */
+  public static int blockOf(int codePoint) {
+    int low = 0;
+    int high = blockStarts.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (codePoint < blockStarts[mid]) {
+        high = mid - 1;
+      } else if (codePoint > blockEnds[mid]) {
+        low = mid + 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
   public static int numBlocks() {
     return blockNames.length;
   }
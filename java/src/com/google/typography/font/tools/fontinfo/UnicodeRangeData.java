@@ -0,0 +1,191 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.fontinfo;
+
+import com.ibm.icu.lang.UCharacter;
+import com.ibm.icu.lang.UScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sorted code point ranges of the Unicode blocks and scripts. The ranges are
+ * given as arrays of pairs of first and last code points.
+ *
+ * The tables are computed once, in a single pass over all code points, the
+ * first time they are needed and are then shared.
+ */
+public final class UnicodeRangeData {
+  private static volatile UnicodeRangeData instance;
+
+  // for each block, the assigned code points of the block that aren't controls
+  private final int[][] blockRanges;
+  private final int[] controlRanges;
+  // for each script, all of the code points with that script
+  private final Map<Integer, int[]> scriptRanges;
+  // for each script, the assigned code points of the script that aren't controls
+  private final Map<Integer, int[]> assignedScriptRanges;
+
+  private UnicodeRangeData() {
+    RangeBuilder[] blocks = new RangeBuilder[UnicodeBlockData.numBlocks()];
+    for (int i = 0; i < blocks.length; i++) {
+      blocks[i] = new RangeBuilder();
+    }
+    RangeBuilder controls = new RangeBuilder();
+    Map<Integer, RangeBuilder> scripts = new TreeMap<Integer, RangeBuilder>();
+    Map<Integer, RangeBuilder> assignedScripts = new TreeMap<Integer, RangeBuilder>();
+
+    int block = -1;
+    for (int codePoint = UCharacter.MIN_CODE_POINT; codePoint <= UCharacter.MAX_CODE_POINT;
+        codePoint++) {
+      int scriptCode = UScript.getScript(codePoint);
+      builder(scripts, scriptCode).add(codePoint);
+
+      int type = UCharacter.getType(codePoint);
+      if (type == UCharacter.CONTROL) {
+        controls.add(codePoint);
+        continue;
+      }
+      if (type == UCharacter.UNASSIGNED) {
+        continue;
+      }
+      builder(assignedScripts, scriptCode).add(codePoint);
+      if (block < 0 || codePoint > UnicodeBlockData.getBlockEnd(block)) {
+        block = UnicodeBlockData.blockOf(codePoint);
+      }
+      if (block >= 0) {
+        blocks[block].add(codePoint);
+      }
+    }
+
+    this.blockRanges = new int[blocks.length][];
+    for (int i = 0; i < blocks.length; i++) {
+      this.blockRanges[i] = blocks[i].toArray();
+    }
+    this.controlRanges = controls.toArray();
+    this.scriptRanges = toArrays(scripts);
+    this.assignedScriptRanges = toArrays(assignedScripts);
+  }
+
+  /**
+   * @return the shared range tables, computing them if needed
+   */
+  static UnicodeRangeData getInstance() {
+    UnicodeRangeData data = instance;
+    if (data == null) {
+      synchronized (UnicodeRangeData.class) {
+        data = instance;
+        if (data == null) {
+          data = new UnicodeRangeData();
+          instance = data;
+        }
+      }
+    }
+    return data;
+  }
+
+  /**
+   * @param block
+   *          the index of the block in {@link UnicodeBlockData}
+   * @return the assigned, non-control code points of the block
+   */
+  int[] blockRanges(int block) {
+    return this.blockRanges[block];
+  }
+
+  /**
+   * @return the control code points
+   */
+  int[] controlRanges() {
+    return this.controlRanges;
+  }
+
+  /**
+   * @return the code points of each script, in script code order
+   */
+  Map<Integer, int[]> scriptRanges() {
+    return this.scriptRanges;
+  }
+
+  /**
+   * @param scriptCode
+   *          the script code
+   * @return the assigned, non-control code points of the script
+   */
+  int[] assignedScriptRanges(int scriptCode) {
+    int[] ranges = this.assignedScriptRanges.get(scriptCode);
+    return ranges == null ? RangeBuilder.EMPTY : ranges;
+  }
+
+  /**
+   * @param ranges
+   *          the ranges as pairs of first and last code points
+   * @return the number of code points in the ranges
+   */
+  public static int size(int[] ranges) {
+    int size = 0;
+    for (int i = 0; i < ranges.length; i += 2) {
+      size += ranges[i + 1] - ranges[i] + 1;
+    }
+    return size;
+  }
+
+  private static RangeBuilder builder(Map<Integer, RangeBuilder> builders, int key) {
+    RangeBuilder builder = builders.get(key);
+    if (builder == null) {
+      builder = new RangeBuilder();
+      builders.put(key, builder);
+    }
+    return builder;
+  }
+
+  private static Map<Integer, int[]> toArrays(Map<Integer, RangeBuilder> builders) {
+    Map<Integer, int[]> ranges = new TreeMap<Integer, int[]>();
+    for (Map.Entry<Integer, RangeBuilder> entry : builders.entrySet()) {
+      ranges.put(entry.getKey(), entry.getValue().toArray());
+    }
+    return Collections.unmodifiableMap(ranges);
+  }
+
+  /**
+   * Collects code points added in increasing order into ranges.
+   */
+  private static final class RangeBuilder {
+    static final int[] EMPTY = new int[0];
+
+    private int[] ranges = new int[8];
+    private int length;
+
+    void add(int codePoint) {
+      if (this.length > 0 && this.ranges[this.length - 1] == codePoint - 1) {
+        this.ranges[this.length - 1] = codePoint;
+        return;
+      }
+      if (this.length == this.ranges.length) {
+        this.ranges = Arrays.copyOf(this.ranges, 2 * this.length);
+      }
+      this.ranges[this.length++] = codePoint;
+      this.ranges[this.length++] = codePoint;
+    }
+
+    int[] toArray() {
+      return this.length == 0 ? EMPTY : Arrays.copyOf(this.ranges, this.length);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.server;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The fonts served by a {@link FontServer}. The fonts are parsed once and kept
+ * in memory, so that a request only has to subset. Each font is known by a
+ * family name, which for fonts loaded from a directory is the file name
+ * without its extension.
+ *
+ * Every font must have a {@link Font#digest()}, which identifies it in the
+ * ETags of the subsets made from it. Fonts loaded from a file are given the
+ * SHA-256 digest of the file, so the ETags stay the same across restarts.
+ */
+public class FontLibrary {
+
+  private final FontFactory fontFactory;
+  private final Map<String, Font> fonts = new ConcurrentHashMap<String, Font>();
+
+  public FontLibrary() {
+    this.fontFactory = FontFactory.getInstance();
+  }
+
+  public FontFactory fontFactory() {
+    return this.fontFactory;
+  }
+
+  /**
+   * Adds the TrueType and OpenType fonts in a directory. A font collection
+   * adds its first font. Files that can't be loaded are skipped.
+   *
+   * @param directory the directory
+   * @return the number of fonts added
+   */
+  public int addDirectory(File directory) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return 0;
+    }
+    Arrays.sort(files);
+    int added = 0;
+    for (File file : files) {
+      String name = file.getName();
+      int dot = name.lastIndexOf('.');
+      if (!file.isFile() || dot <= 0) {
+        continue;
+      }
+      String extension = name.substring(dot + 1).toLowerCase();
+      if (!extension.equals("ttf") && !extension.equals("otf") && !extension.equals("ttc")) {
+        continue;
+      }
+      try {
+        addFont(name.substring(0, dot), file);
+        added++;
+      } catch (IOException | RuntimeException e) {
+        System.err.println("Skipping " + file + ": " + e.getMessage());
+      }
+    }
+    return added;
+  }
+
+  /**
+   * Adds the font in a file.
+   *
+   * @param family the family name to serve the font as
+   * @param file the font file
+   * @throws IOException if the file can't be read or holds no font
+   */
+  public void addFont(String family, File file) throws IOException {
+    byte[] b = Files.readAllBytes(file.toPath());
+    Font.Builder[] loaded = this.fontFactory.loadFontsForBuilding(b);
+    if (loaded.length == 0) {
+      throw new IOException("No font in " + file);
+    }
+    loaded[0].setDigest(digest(b));
+    addFont(family, loaded[0].build());
+  }
+
+  /**
+   * Adds a font.
+   *
+   * @param family the family name to serve the font as
+   * @param font the font
+   * @throws IllegalArgumentException if the font has no digest
+   */
+  public void addFont(String family, Font font) {
+    if (font.digest() == null) {
+      throw new IllegalArgumentException("The font for " + family + " has no digest.");
+    }
+    this.fonts.put(family, font);
+  }
+
+  /**
+   * Gets a font.
+   *
+   * @param family the family name
+   * @return the font, or null if there is no font with the name
+   */
+  public Font font(String family) {
+    return this.fonts.get(family);
+  }
+
+  public Set<String> families() {
+    return new TreeSet<String>(this.fonts.keySet());
+  }
+
+  private static byte[] digest(byte[] b) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(b);
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.server;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.tools.conversion.eot.EOTWriter;
+import com.google.typography.font.tools.conversion.woff.WoffWriter;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+import com.google.typography.font.tools.subsetter.RenumberingSubsetter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An HTTP server that subsets the fonts of a {@link FontLibrary} for the text
+ * of a page. A subset is requested with
+ *
+ * <pre>
+ * GET /subset?family=Roboto-Regular&amp;text=Hello&amp;format=woff
+ * </pre>
+ *
+ * where the format is one of woff, eot or ttf. Without a format the server
+ * sends WOFF to clients that accept it and TrueType to the others.
+ *
+ * The ETag of a subset is a hash of the font digest, the format and the glyphs
+ * of the subset, so it is known before subsetting. A request whose
+ * If-None-Match header has the ETag is answered with 304 Not Modified without
+ * subsetting, and recently made subsets are kept in a cache of limited size.
+ * The latencies of the requests for each format are kept in histograms that
+ * are served at {@code /metrics}.
+ *
+ * Each request is handled on its own virtual thread when the Java runtime has
+ * them, and on a thread of a cached thread pool otherwise.
+ */
+public class FontServer {
+
+  /**
+   * The formats that subsets are served in.
+   */
+  public enum Format {
+    TTF("font/ttf"),
+    WOFF("font/woff"),
+    EOT("application/vnd.ms-fontobject");
+
+    private final String contentType;
+
+    private Format(String contentType) {
+      this.contentType = contentType;
+    }
+
+    public String contentType() {
+      return this.contentType;
+    }
+  }
+
+  private static final int DEFAULT_PORT = 8080;
+  private static final long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
+
+  private final FontLibrary library;
+  private final Set<Integer> removeTables = new HashSet<Integer>();
+  private final Map<Format, LatencyHistogram> latencies =
+      new EnumMap<Format, LatencyHistogram>(Format.class);
+  private final ResponseCache cache;
+  private HttpServer server;
+  private ExecutorService executor;
+
+  public FontServer(FontLibrary library) {
+    this(library, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param library the fonts to serve
+   * @param cacheSize the most bytes of subsets to keep in memory
+   */
+  public FontServer(FontLibrary library, long cacheSize) {
+    this.library = library;
+    this.cache = new ResponseCache(cacheSize);
+    for (Format format : Format.values()) {
+      this.latencies.put(format, new LatencyHistogram());
+    }
+    // the tables that SfntTool removes, which aren't renumbered by the subsetter
+    this.removeTables.add(Tag.kern);
+    this.removeTables.add(Tag.hdmx);
+    this.removeTables.add(Tag.vmtx);
+    this.removeTables.add(Tag.VDMX);
+    this.removeTables.add(Tag.LTSH);
+    this.removeTables.add(Tag.DSIG);
+    this.removeTables.add(Tag.vhea);
+    this.removeTables.add(Tag.intValue(new byte[] {'m', 'o', 'r', 't'}));
+    this.removeTables.add(Tag.intValue(new byte[] {'m', 'o', 'r', 'x'}));
+  }
+
+  /**
+   * Starts the server.
+   *
+   * @param address the address to listen on, with port 0 for any free port
+   * @throws IOException if the server can't listen on the address
+   */
+  public synchronized void start(InetSocketAddress address) throws IOException {
+    if (this.server != null) {
+      throw new IllegalStateException("Server is already started.");
+    }
+    this.server = HttpServer.create(address, 0);
+    this.server.createContext("/subset", this::handleSubset);
+    this.server.createContext("/metrics", this::handleMetrics);
+    this.executor = newExecutor();
+    this.server.setExecutor(this.executor);
+    this.server.start();
+  }
+
+  /**
+   * Stops the server, waiting at most a second for the requests being handled
+   * to finish.
+   */
+  public synchronized void stop() {
+    if (this.server == null) {
+      return;
+    }
+    this.server.stop(1);
+    this.executor.shutdown();
+    this.server = null;
+    this.executor = null;
+  }
+
+  public synchronized int port() {
+    if (this.server == null) {
+      throw new IllegalStateException("Server isn't started.");
+    }
+    return this.server.getAddress().getPort();
+  }
+
+  public LatencyHistogram latency(Format format) {
+    return this.latencies.get(format);
+  }
+
+  /**
+   * Makes an executor that runs each task on a new virtual thread. Virtual
+   * threads are looked up reflectively so that the server also runs on Java
+   * versions without them, on a cached thread pool.
+   */
+  private static ExecutorService newExecutor() {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  void handleSubset(HttpExchange exchange) throws IOException {
+    long start = System.nanoTime();
+    try {
+      if (!exchange.getRequestMethod().equals("GET")) {
+        exchange.getResponseHeaders().set("Allow", "GET");
+        sendError(exchange, 405, "Only GET is supported.");
+        return;
+      }
+      Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+      String family = query.get("family");
+      String text = query.get("text");
+      if (family == null || text == null || text.isEmpty()) {
+        sendError(exchange, 400, "The family and text parameters are required.");
+        return;
+      }
+      Format format = format(query.get("format"), exchange.getRequestHeaders().getFirst("Accept"));
+      if (format == null) {
+        sendError(exchange, 400, "Unknown format " + query.get("format") + ".");
+        return;
+      }
+      if (query.get("format") == null) {
+        exchange.getResponseHeaders().set("Vary", "Accept");
+      }
+      Font font = this.library.font(family);
+      if (font == null) {
+        sendError(exchange, 404, "Unknown family " + family + ".");
+        return;
+      }
+
+      List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(font, text);
+      String etag = etag(font, format, glyphs);
+      exchange.getResponseHeaders().set("ETag", etag);
+      exchange.getResponseHeaders().set("Cache-Control", "public, max-age=31536000");
+      exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+      if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+        exchange.sendResponseHeaders(304, -1);
+        this.latencies.get(format).record(System.nanoTime() - start);
+        return;
+      }
+      byte[] body = this.cache.get(etag);
+      if (body == null) {
+        body = subset(font, glyphs, format);
+        this.cache.put(etag, body);
+      }
+      exchange.getResponseHeaders().set("Content-Type", format.contentType());
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+      this.latencies.get(format).record(System.nanoTime() - start);
+    } catch (IOException | RuntimeException e) {
+      // once the headers are sent the status can't change, so a failure while
+      // writing the body just closes the exchange
+      if (exchange.getResponseCode() < 0) {
+        sendError(exchange, 500, "Subsetting failed: " + e.getMessage());
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void handleMetrics(HttpExchange exchange) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (Format format : Format.values()) {
+      sb.append(format.name().toLowerCase()).append(' ')
+          .append(this.latencies.get(format)).append('\n');
+    }
+    sb.append("cache entries=").append(this.cache.entries())
+        .append(" bytes=").append(this.cache.size())
+        .append(" hits=").append(this.cache.hits())
+        .append(" misses=").append(this.cache.misses()).append('\n');
+    byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(body);
+    }
+  }
+
+  /**
+   * Makes a subset and converts it to a format.
+   */
+  private byte[] subset(Font font, List<Integer> glyphs, Format format) throws IOException {
+    RenumberingSubsetter subsetter = new RenumberingSubsetter(font, this.library.fontFactory());
+    List<CMapTable.CMapId> cmapIds = new ArrayList<CMapTable.CMapId>();
+    cmapIds.add(CMapTable.CMapId.WINDOWS_BMP);
+    subsetter.setCMaps(cmapIds, 1);
+    subsetter.setGlyphs(glyphs);
+    subsetter.setRemoveTables(this.removeTables);
+    Font subset = subsetter.subset().build();
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    switch (format) {
+      case WOFF -> {
+        WritableFontData data = new WoffWriter().convert(subset);
+        data.copyTo(os);
+      }
+      case EOT -> {
+        WritableFontData data = new EOTWriter(true).convert(subset);
+        data.copyTo(os);
+      }
+      default -> this.library.fontFactory().serializeFont(subset, os);
+    }
+    return os.toByteArray();
+  }
+
+  /**
+   * Gets the format to send, from the format parameter if there is one and
+   * from the Accept header otherwise.
+   *
+   * @return the format, or null if the format parameter isn't known
+   */
+  private static Format format(String name, String accept) {
+    if (name == null) {
+      return accept != null && accept.contains(Format.WOFF.contentType())
+          ? Format.WOFF : Format.TTF;
+    }
+    for (Format format : Format.values()) {
+      if (format.name().equalsIgnoreCase(name)) {
+        return format;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Makes the ETag of a subset from the font digest, the format and the glyph
+   * ids, which determine the subset.
+   */
+  private static String etag(Font font, Format format, List<Integer> glyphs) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    byte[] fontDigest = font.digest();
+    if (fontDigest == null) {
+      // the library only holds fonts with a digest
+      throw new IllegalStateException("Font has no digest.");
+    }
+    digest.update(fontDigest);
+    digest.update((byte) format.ordinal());
+    for (int glyph : glyphs) {
+      digest.update((byte) (glyph >> 8));
+      digest.update((byte) glyph);
+    }
+    StringBuilder sb = new StringBuilder("\"");
+    for (byte b : digest.digest()) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.append('"').toString();
+  }
+
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if (candidate.equals("*") || candidate.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery) {
+    Map<String, String> query = new HashMap<String, String>();
+    if (rawQuery == null) {
+      return query;
+    }
+    for (String parameter : rawQuery.split("&")) {
+      int equals = parameter.indexOf('=');
+      String name = equals < 0 ? parameter : parameter.substring(0, equals);
+      String value = equals < 0 ? "" : parameter.substring(equals + 1);
+      query.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+          URLDecoder.decode(value, StandardCharsets.UTF_8));
+    }
+    return query;
+  }
+
+  private static void sendError(HttpExchange exchange, int status, String message)
+      throws IOException {
+    byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().remove("ETag");
+    exchange.getResponseHeaders().remove("Cache-Control");
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(body);
+    }
+  }
+
+  /**
+   * A cache of the subsets most recently sent, by ETag, that holds at most a
+   * number of bytes.
+   */
+  private static final class ResponseCache {
+    private final long maxSize;
+    private final LinkedHashMap<String, byte[]> entries =
+        new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private long size;
+    private long hits;
+    private long misses;
+
+    ResponseCache(long maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    synchronized byte[] get(String etag) {
+      byte[] body = this.entries.get(etag);
+      if (body == null) {
+        this.misses++;
+      } else {
+        this.hits++;
+      }
+      return body;
+    }
+
+    synchronized void put(String etag, byte[] body) {
+      if (body.length > this.maxSize) {
+        return;
+      }
+      byte[] old = this.entries.put(etag, body);
+      this.size += body.length - (old == null ? 0 : old.length);
+      Iterator<byte[]> eldest = this.entries.values().iterator();
+      while (this.size > this.maxSize) {
+        this.size -= eldest.next().length;
+        eldest.remove();
+      }
+    }
+
+    synchronized int entries() {
+      return this.entries.size();
+    }
+
+    synchronized long size() {
+      return this.size;
+    }
+
+    synchronized long hits() {
+      return this.hits;
+    }
+
+    synchronized long misses() {
+      return this.misses;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = DEFAULT_PORT;
+    long cacheSize = DEFAULT_CACHE_SIZE;
+    File directory = null;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "-port" -> port = Integer.parseInt(args[++i]);
+        case "-cache" -> cacheSize = Long.parseLong(args[++i]);
+        default -> {
+          if (args[i].startsWith("-") || directory != null) {
+            printUsage();
+            System.exit(1);
+          }
+          directory = new File(args[i]);
+        }
+      }
+    }
+    if (directory == null) {
+      printUsage();
+      System.exit(1);
+    }
+    FontLibrary library = new FontLibrary();
+    int added = library.addDirectory(directory);
+    FontServer server = new FontServer(library, cacheSize);
+    server.start(new InetSocketAddress(port));
+    System.out.println("Serving " + added + " fonts on port " + server.port());
+  }
+
+  private static void printUsage() {
+    System.out.println("FontServer [-port port] [-cache bytes] fontdirectory");
+    System.out.println("Serve subsets of the fonts in a directory over HTTP");
+    System.out.println("\t-port\t the port to listen on, 8080 by default");
+    System.out.println("\t-cache\t the most bytes of subsets to keep in memory");
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of request latencies that can be recorded to from many threads
+ * without locking. The latencies are counted in buckets of powers of two
+ * microseconds, so a percentile is reported as the upper bound of the bucket
+ * it falls in and is at most twice the real value.
+ */
+public class LatencyHistogram {
+
+  // bucket i holds the latencies of less than 2^i microseconds
+  private static final int BUCKETS = 40;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    long micros = Math.max(0, nanos / 1000);
+    int bucket = Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros));
+    this.counts.incrementAndGet(bucket);
+    this.count.incrementAndGet();
+    this.totalMicros.addAndGet(micros);
+    long max;
+    do {
+      max = this.maxMicros.get();
+    } while (micros > max && !this.maxMicros.compareAndSet(max, micros));
+  }
+
+  public long count() {
+    return this.count.get();
+  }
+
+  public long maxMicros() {
+    return this.maxMicros.get();
+  }
+
+  public long meanMicros() {
+    long count = this.count.get();
+    return count == 0 ? 0 : this.totalMicros.get() / count;
+  }
+
+  /**
+   * Gets a percentile of the recorded latencies.
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @return the upper bound in microseconds of the bucket that the percentile
+   *         falls in, or 0 if nothing was recorded
+   */
+  public long percentileMicros(double percentile) {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = this.counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(1L << i, this.maxMicros.get());
+      }
+    }
+    return this.maxMicros.get();
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + count() + " mean=" + meanMicros() + "us p50=" + percentileMicros(50)
+        + "us p90=" + percentileMicros(90) + "us p99=" + percentileMicros(99)
+        + "us max=" + maxMicros() + "us";
+  }
+}
@@ -19,11 +19,15 @@ package com.google.typography.font.tools.sfnttool;
 import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.FontFactory;
 import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.core.CMapTable;
 import com.google.typography.font.tools.conversion.eot.EOTWriter;
 import com.google.typography.font.tools.conversion.woff.WoffWriter;
 import com.google.typography.font.tools.subsetter.HintStripper;
+import com.google.typography.font.tools.subsetter.HintStrippingGlyphTransform;
+import com.google.typography.font.tools.subsetter.Instancer;
+import com.google.typography.font.tools.subsetter.OutlineSimilarityGlyphOrder;
 import com.google.typography.font.tools.subsetter.RenumberingSubsetter;
 import com.google.typography.font.tools.subsetter.Subsetter;
 
@@ -33,9 +37,12 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Raph Levien
@@ -46,6 +53,10 @@ public class SfntTool {
     private boolean woff = false;
     private boolean eot = false;
     private boolean mtx = false;
+    private boolean metrics = false;
+    private boolean metricsJson = false;
+    private boolean order = false;
+    private Map<Integer, Float> instance = null;
 
     private static final long SIZE_THRESHOLD = 2_048_000L;
     private static final int BIG_FILE_SIZE_THRESHOLD = 16_384;
@@ -81,6 +92,13 @@ public class SfntTool {
                     case "w", "woff" -> tool.woff = true;
                     case "e", "eot" -> tool.eot = true;
                     case "x", "mtx" -> tool.mtx = true;
+                    case "m", "metrics" -> tool.metrics = true;
+                    case "metrics-json" -> tool.metricsJson = true;
+                    case "o", "order" -> tool.order = true;
+                    case "i", "instance" -> {
+                        tool.instance = parseLocation(args[i + 1]);
+                        i++;
+                    }
                     default -> {
                         printUsage();
                         System.exit(1);
@@ -102,7 +120,13 @@ public class SfntTool {
         }
 
         if (fontFile != null && outputFile != null) {
-            tool.subsetFontFile(fontFile, outputFile, nIters);
+            try {
+                tool.subsetFontFile(fontFile, outputFile, nIters);
+            } catch (IllegalArgumentException e) {
+                // e.g. an instance of a variable font without TrueType outlines
+                System.out.println(e.getMessage());
+                System.exit(1);
+            }
         } else {
             printUsage();
         }
@@ -118,6 +142,28 @@ public class SfntTool {
         System.out.println("\t-w,-woff\t Output WOFF format");
         System.out.println("\t-e,-eot\t Output EOT format");
         System.out.println("\t-x,-mtx\t Enable Microtype Express compression for EOT format");
+        System.out.println("\t-m,-metrics\t Print per table subsetting time and sizes");
+        System.out.println("\t-metrics-json\t Print per table subsetting time and sizes as JSON");
+        System.out.println("\t-o,-order\t Group glyphs with similar outlines to compress better");
+        System.out.println("\t-i,-instance\t Instance a variable font at a location, e.g. wght=700,wdth=100");
+    }
+
+    /**
+     * Parse a location in the design space of a variable font.
+     * @param location axis values such as "wght=700,wdth=100"
+     * @return the value of each axis, by axis tag
+     */
+    private static Map<Integer, Float> parseLocation(String location) {
+        Map<Integer, Float> values = new HashMap<Integer, Float>();
+        for (String axis : location.split(",")) {
+            int equals = axis.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Axis value is not tag=value: " + axis);
+            }
+            String tag = (axis.substring(0, equals).trim() + "    ").substring(0, 4);
+            values.put(Tag.intValue(tag), Float.parseFloat(axis.substring(equals + 1).trim()));
+        }
+        return values;
     }
 
     public void subsetFontFile(File fontFile, File outputFile, int nIters)
@@ -132,18 +178,30 @@ public class SfntTool {
             List<CMapTable.CMapId> cmapIds = new ArrayList<CMapTable.CMapId>();
             cmapIds.add(CMapTable.CMapId.WINDOWS_BMP);
             byte[] newFontData = null;
+            SubsetMetricsReport report = null;
+            if (metrics || metricsJson) {
+                report = new SubsetMetricsReport();
+            }
             for (int i = 0; i < nIters; i++) {
                 Font newFont = font;
+                if (instance != null) {
+                    // the instance keeps all of the glyphs, so it's subset like a static font
+                    Instancer instancer = new Instancer(newFont, fontFactory);
+                    instancer.setLocation(instance);
+                    instancer.setMetrics(report);
+                    newFont = instancer.subset().build();
+                }
                 if (subsetString != null) {
-                    Subsetter subsetter = new RenumberingSubsetter(newFont, fontFactory);
+                    RenumberingSubsetter subsetter = new RenumberingSubsetter(newFont, fontFactory);
                     subsetter.setCMaps(cmapIds, 1);
+                    if (order) {
+                        subsetter.setGlyphOrder(new OutlineSimilarityGlyphOrder());
+                    }
                     List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(font, subsetString);
                     subsetter.setGlyphs(glyphs);
                     Set<Integer> removeTables = new HashSet<Integer>();
-                    // Most of the following are valid tables, but we don't renumber them yet, so strip
-                    removeTables.add(Tag.GDEF);
-                    removeTables.add(Tag.GPOS);
-                    removeTables.add(Tag.GSUB);
+                    // The layout tables are renumbered, but these aren't yet, so strip them;
+                    // DSIG is invalidated by any change
                     removeTables.add(Tag.kern);
                     removeTables.add(Tag.hdmx);
                     removeTables.add(Tag.vmtx);
@@ -154,27 +212,44 @@ public class SfntTool {
                     // AAT tables, not yet defined in sfntly Tag class
                     removeTables.add(Tag.intValue(new byte[]{'m', 'o', 'r', 't'}));
                     removeTables.add(Tag.intValue(new byte[]{'m', 'o', 'r', 'x'}));
+                    if (strip) {
+                        // strip the hints in the same pass instead of rebuilding the subset font
+                        subsetter.addGlyphTransform(new HintStrippingGlyphTransform());
+                        removeTables.add(Tag.fpgm);
+                        removeTables.add(Tag.prep);
+                        removeTables.add(Tag.cvt);
+                        removeTables.add(Tag.cvar);
+                    }
                     subsetter.setRemoveTables(removeTables);
+                    subsetter.setMetrics(report);
+                    subsetter.setForkJoinPool(ForkJoinPool.commonPool());
                     newFont = subsetter.subset().build();
-                }
-                if (strip) {
+                } else if (strip) {
                     Subsetter hintStripper = new HintStripper(newFont, fontFactory);
                     Set<Integer> removeTables = new HashSet<Integer>();
                     removeTables.add(Tag.fpgm);
                     removeTables.add(Tag.prep);
                     removeTables.add(Tag.cvt);
+                    removeTables.add(Tag.cvar);
                     removeTables.add(Tag.hdmx);
                     removeTables.add(Tag.VDMX);
                     removeTables.add(Tag.LTSH);
                     removeTables.add(Tag.DSIG);
                     removeTables.add(Tag.vhea);
                     hintStripper.setRemoveTables(removeTables);
+                    hintStripper.setMetrics(report);
                     newFont = hintStripper.subset().build();
                 }
 
                 FileOutputStream fos = new FileOutputStream(outputFile);
                 if (woff) {
-                    WritableFontData woffData = new WoffWriter().convert(newFont);
+                    WoffWriter woffWriter = new WoffWriter();
+                    ReadableFontData sourceData = ReadableFontData.createReadableFontData(fontBytes);
+                    if (WoffWriter.isWoff(sourceData)) {
+                        // don't compress the tables that are unchanged from the source again
+                        woffWriter.setSource(font, sourceData);
+                    }
+                    WritableFontData woffData = woffWriter.convert(newFont);
                     woffData.copyTo(fos);
                 } else if (eot) {
                     WritableFontData eotData = new EOTWriter(mtx).convert(newFont);
@@ -183,6 +258,11 @@ public class SfntTool {
                     fontFactory.serializeFont(newFont, fos);
                 }
             }
+            if (metricsJson) {
+                System.out.println(report.toJson());
+            } else if (metrics) {
+                System.out.print(report.toText());
+            }
         }
     }
 
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.sfnttool;
+
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.tools.subsetter.SubsetMetrics;
+import com.google.typography.font.tools.subsetter.TableSubsetter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the metrics of subsetting fonts and reports them as text or JSON.
+ * The metrics are totalled per table subsetter class and per table tag, so
+ * one report can cover many subsets.
+ */
+public class SubsetMetricsReport implements SubsetMetrics {
+
+  private static class SubsetterTotals {
+    private final Set<Integer> tags;
+    private int count;
+    private long bytesIn;
+    private long glyphBuilders;
+    private long nanos;
+
+    SubsetterTotals(Set<Integer> tags) {
+      this.tags = tags;
+    }
+  }
+
+  private static class TableTotals {
+    private int count;
+    private long bytesIn;
+    private long bytesOut;
+    private long buildNanos;
+    private long checksumNanos;
+  }
+
+  private final Map<String, SubsetterTotals> subsetters =
+      new LinkedHashMap<String, SubsetterTotals>();
+  private final Map<Integer, TableTotals> tables = new LinkedHashMap<Integer, TableTotals>();
+
+  @Override
+  public synchronized void tableSubsetted(
+      TableSubsetter tableSubsetter, int bytesIn, int glyphBuilders, long nanos) {
+    String name = tableSubsetter.getClass().getSimpleName();
+    SubsetterTotals totals = this.subsetters.get(name);
+    if (totals == null) {
+      totals = new SubsetterTotals(tableSubsetter.tagsHandled());
+      this.subsetters.put(name, totals);
+    }
+    totals.count++;
+    totals.bytesIn += bytesIn;
+    totals.glyphBuilders += glyphBuilders;
+    totals.nanos += nanos;
+  }
+
+  @Override
+  public synchronized void tableBuilt(
+      int tag, int bytesIn, int bytesOut, long buildNanos, long checksumNanos) {
+    TableTotals totals = this.tables.get(tag);
+    if (totals == null) {
+      totals = new TableTotals();
+      this.tables.put(tag, totals);
+    }
+    totals.count++;
+    totals.bytesIn += bytesIn;
+    totals.bytesOut += bytesOut;
+    totals.buildNanos += buildNanos;
+    totals.checksumNanos += checksumNanos;
+  }
+
+  /**
+   * The output size of a table subsetter is the size of the tables it handles
+   * when they are built.
+   */
+  private long bytesOut(SubsetterTotals subsetter) {
+    long bytesOut = 0;
+    for (int tag : subsetter.tags) {
+      TableTotals table = this.tables.get(tag);
+      if (table != null) {
+        bytesOut += table.bytesOut;
+      }
+    }
+    return bytesOut;
+  }
+
+  private static String millis(long nanos) {
+    return String.format("%.3fms", nanos / 1e6);
+  }
+
+  /**
+   * Get the report as text, one line for each table subsetter and table.
+   *
+   * @return the report
+   */
+  public synchronized String toText() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, SubsetterTotals> entry : this.subsetters.entrySet()) {
+      SubsetterTotals totals = entry.getValue();
+      sb.append(String.format("subsetter %-36s runs=%d in=%d out=%d glyphBuilders=%d time=%s%n",
+          entry.getKey(), totals.count, totals.bytesIn, bytesOut(totals), totals.glyphBuilders,
+          millis(totals.nanos)));
+    }
+    for (Map.Entry<Integer, TableTotals> entry : this.tables.entrySet()) {
+      TableTotals totals = entry.getValue();
+      sb.append(String.format("table %-4s builds=%d in=%d out=%d build=%s checksum=%s%n",
+          Tag.stringValue(entry.getKey()), totals.count, totals.bytesIn, totals.bytesOut,
+          millis(totals.buildNanos), millis(totals.checksumNanos)));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Get the report as a JSON object with a "subsetters" and a "tables" array.
+   * Times are in nanoseconds.
+   *
+   * @return the report
+   */
+  public synchronized String toJson() {
+    StringBuilder sb = new StringBuilder("{\"subsetters\":[");
+    String separator = "";
+    for (Map.Entry<String, SubsetterTotals> entry : this.subsetters.entrySet()) {
+      SubsetterTotals totals = entry.getValue();
+      sb.append(separator).append("{\"name\":");
+      appendJsonString(sb, entry.getKey());
+      sb.append(",\"tags\":[");
+      String tagSeparator = "";
+      for (int tag : totals.tags) {
+        sb.append(tagSeparator);
+        appendJsonString(sb, Tag.stringValue(tag));
+        tagSeparator = ",";
+      }
+      sb.append("],\"runs\":").append(totals.count)
+          .append(",\"bytesIn\":").append(totals.bytesIn)
+          .append(",\"bytesOut\":").append(bytesOut(totals))
+          .append(",\"glyphBuilders\":").append(totals.glyphBuilders)
+          .append(",\"nanos\":").append(totals.nanos).append('}');
+      separator = ",";
+    }
+    sb.append("],\"tables\":[");
+    separator = "";
+    for (Map.Entry<Integer, TableTotals> entry : this.tables.entrySet()) {
+      TableTotals totals = entry.getValue();
+      sb.append(separator).append("{\"tag\":");
+      appendJsonString(sb, Tag.stringValue(entry.getKey()));
+      sb.append(",\"builds\":").append(totals.count)
+          .append(",\"bytesIn\":").append(totals.bytesIn)
+          .append(",\"bytesOut\":").append(totals.bytesOut)
+          .append(",\"buildNanos\":").append(totals.buildNanos)
+          .append(",\"checksumNanos\":").append(totals.checksumNanos).append('}');
+      separator = ",";
+    }
+    return sb.append("]}").toString();
+  }
+
+  private static void appendJsonString(StringBuilder sb, String s) {
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20 || c >= 0x7f) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    sb.append('"');
+  }
+}
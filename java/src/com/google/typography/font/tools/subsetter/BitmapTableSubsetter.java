@@ -0,0 +1,365 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.bitmap.BitmapSizeTable;
+import com.google.typography.font.sfntly.table.bitmap.EbdtTable;
+import com.google.typography.font.sfntly.table.bitmap.EblcTable;
+import com.google.typography.font.sfntly.table.bitmap.IndexSubTable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Subsets the embedded bitmap tables. Every strike keeps the bitmaps of the
+ * glyphs in the subset under their new glyph ids, and the index subtables are
+ * rebuilt with the smallest format for each run of glyphs. The strikes
+ * themselves are all kept so that the EBSC table stays valid unchanged.
+ */
+public class BitmapTableSubsetter extends TableSubsetterImpl {
+
+  private static final int HEADER_SIZE = 8;
+  private static final int SIZE_TABLE_SIZE = 48;
+  private static final int SUBTABLE_ENTRY_SIZE = 8;
+  private static final int SUBTABLE_HEADER_SIZE = 8;
+  // imageSize and bigGlyphMetrics, shared by all glyphs of format 2 and 5 subtables
+  private static final int CONSTANT_METRICS_SIZE = 12;
+
+  // composite image formats, which refer to other glyphs by id
+  private static final int IMAGE_FORMAT_COMPOSITE_SMALL = 8;
+  private static final int IMAGE_FORMAT_COMPOSITE_BIG = 9;
+
+  /**
+   * The bitmap of one glyph in a strike.
+   */
+  private static final class Image {
+    final int glyphId;
+    final int imageFormat;
+    final byte[] data;
+    // null if the metrics are in the image data
+    final byte[] constantMetrics;
+
+    Image(int glyphId, int imageFormat, byte[] data, byte[] constantMetrics) {
+      this.glyphId = glyphId;
+      this.imageFormat = imageFormat;
+      this.data = data;
+      this.constantMetrics = constantMetrics;
+    }
+
+    boolean sameBlock(Image other) {
+      return this.imageFormat == other.imageFormat
+          && Arrays.equals(this.constantMetrics, other.constantMetrics);
+    }
+  }
+
+  /**
+   * A run of images, sorted by glyph id, written as one index subtable.
+   */
+  private static final class Run {
+    final List<Image> images = new ArrayList<Image>();
+    int indexFormat;
+    int dataLength;
+
+    int firstGlyph() {
+      return this.images.get(0).glyphId;
+    }
+
+    int lastGlyph() {
+      return this.images.get(this.images.size() - 1).glyphId;
+    }
+
+    int rangeLength() {
+      return lastGlyph() - firstGlyph() + 1;
+    }
+
+    /**
+     * Picks the smallest index format for the run and returns the size of the
+     * index subtable.
+     */
+    int chooseFormat() {
+      this.dataLength = 0;
+      for (Image image : this.images) {
+        this.dataLength += image.data.length;
+      }
+      if (this.images.get(0).constantMetrics != null) {
+        if (rangeLength() == this.images.size()) {
+          this.indexFormat = IndexSubTable.Format.FORMAT_2;
+          return SUBTABLE_HEADER_SIZE + CONSTANT_METRICS_SIZE;
+        }
+        this.indexFormat = IndexSubTable.Format.FORMAT_5;
+        return SUBTABLE_HEADER_SIZE + CONSTANT_METRICS_SIZE + 4 + 2 * this.images.size();
+      }
+      int format1 = SUBTABLE_HEADER_SIZE + 4 * (rangeLength() + 1);
+      int format3 = this.dataLength <= 0xffff
+          ? SUBTABLE_HEADER_SIZE + 2 * (rangeLength() + 1) : Integer.MAX_VALUE;
+      int format4 = this.dataLength <= 0xffff
+          ? SUBTABLE_HEADER_SIZE + 4 + 4 * (this.images.size() + 1) : Integer.MAX_VALUE;
+      if (format3 <= format1 && format3 <= format4) {
+        this.indexFormat = IndexSubTable.Format.FORMAT_3;
+        return format3;
+      }
+      if (format4 < format1) {
+        this.indexFormat = IndexSubTable.Format.FORMAT_4;
+        return format4;
+      }
+      this.indexFormat = IndexSubTable.Format.FORMAT_1;
+      return format1;
+    }
+  }
+
+  public BitmapTableSubsetter() {
+    super(Tag.EBLC, Tag.EBDT);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder)
+      throws IOException {
+    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    if (permutationTable == null) {
+      return false;
+    }
+    EblcTable eblcTable = font.getTable(Tag.EBLC);
+    EbdtTable ebdtTable = font.getTable(Tag.EBDT);
+    if (eblcTable == null || ebdtTable == null) {
+      return false;
+    }
+    Map<Integer, Integer> inverseMap = subsetter.getInverseMapping();
+    ReadableFontData ebdtData = ebdtTable.readFontData();
+
+    List<List<Run>> strikes = new ArrayList<List<Run>>();
+    int ebdtSize = 4;
+    int eblcSize = HEADER_SIZE + eblcTable.numSizes() * SIZE_TABLE_SIZE;
+    for (int i = 0; i < eblcTable.numSizes(); i++) {
+      List<Run> runs = runs(strikeImages(
+          eblcTable.bitmapSizeTable(i), ebdtData, permutationTable, inverseMap));
+      for (Run run : runs) {
+        eblcSize += SUBTABLE_ENTRY_SIZE + padded(run.chooseFormat());
+        ebdtSize += run.dataLength;
+      }
+      strikes.add(runs);
+    }
+
+    WritableFontData newEblc = WritableFontData.createWritableFontData(eblcSize);
+    WritableFontData newEbdt = WritableFontData.createWritableFontData(ebdtSize);
+    newEblc.writeFixed(0, eblcTable.version());
+    newEblc.writeULong(4, eblcTable.numSizes());
+    newEbdt.writeFixed(0, ebdtTable.version());
+
+    int ebdtOffset = 4;
+    int arrayOffset = HEADER_SIZE + eblcTable.numSizes() * SIZE_TABLE_SIZE;
+    for (int i = 0; i < strikes.size(); i++) {
+      List<Run> runs = strikes.get(i);
+      int sizeTableOffset = HEADER_SIZE + i * SIZE_TABLE_SIZE;
+      eblcTable.bitmapSizeTable(i).readFontData().slice(0, SIZE_TABLE_SIZE).copyTo(
+          newEblc.slice(sizeTableOffset, SIZE_TABLE_SIZE));
+
+      int subTableOffset = arrayOffset + runs.size() * SUBTABLE_ENTRY_SIZE;
+      for (int r = 0; r < runs.size(); r++) {
+        Run run = runs.get(r);
+        int entry = arrayOffset + r * SUBTABLE_ENTRY_SIZE;
+        newEblc.writeUShort(entry, run.firstGlyph());
+        newEblc.writeUShort(entry + 2, run.lastGlyph());
+        newEblc.writeULong(entry + 4, subTableOffset - arrayOffset);
+        subTableOffset += padded(writeSubTable(run, newEblc, subTableOffset, ebdtOffset));
+        for (Image image : run.images) {
+          ebdtOffset += newEbdt.writeBytes(ebdtOffset, image.data);
+        }
+      }
+      newEblc.writeULong(sizeTableOffset, arrayOffset);
+      newEblc.writeULong(sizeTableOffset + 4, subTableOffset - arrayOffset);
+      newEblc.writeULong(sizeTableOffset + 8, runs.size());
+      newEblc.writeUShort(sizeTableOffset + 40, runs.isEmpty() ? 0 : runs.get(0).firstGlyph());
+      newEblc.writeUShort(
+          sizeTableOffset + 42, runs.isEmpty() ? 0 : runs.get(runs.size() - 1).lastGlyph());
+      arrayOffset = subTableOffset;
+    }
+
+    fontBuilder.newTableBuilder(Tag.EBLC, newEblc);
+    fontBuilder.newTableBuilder(Tag.EBDT, newEbdt);
+    return true;
+  }
+
+  private static int padded(int size) {
+    return (size + 3) & ~3;
+  }
+
+  /**
+   * Collects the images of the strike for the glyphs in the subset, indexed by
+   * new glyph id.
+   */
+  private static Image[] strikeImages(BitmapSizeTable strike, ReadableFontData ebdtData,
+      List<Integer> permutationTable, Map<Integer, Integer> inverseMap) {
+    Image[] images = new Image[permutationTable.size()];
+    for (int s = 0; s < strike.numberOfIndexSubTables(); s++) {
+      IndexSubTable subTable = strike.indexSubTable(s);
+      if (subTable == null) {
+        continue;
+      }
+      byte[] constantMetrics = null;
+      if (subTable.indexFormat() == IndexSubTable.Format.FORMAT_2
+          || subTable.indexFormat() == IndexSubTable.Format.FORMAT_5) {
+        constantMetrics = new byte[CONSTANT_METRICS_SIZE];
+        subTable.readFontData().readBytes(
+            SUBTABLE_HEADER_SIZE, constantMetrics, 0, CONSTANT_METRICS_SIZE);
+      }
+      for (int oldGlyph = subTable.firstGlyphIndex(); oldGlyph <= subTable.lastGlyphIndex();
+          oldGlyph++) {
+        Integer newGlyph = inverseMap.get(oldGlyph);
+        if (newGlyph == null || images[newGlyph] != null) {
+          continue;
+        }
+        int start = subTable.glyphStartOffset(oldGlyph);
+        int length = subTable.glyphLength(oldGlyph);
+        if (start < 0 || length <= 0) {
+          continue;
+        }
+        byte[] data = new byte[length];
+        ebdtData.readBytes(subTable.imageDataOffset() + start, data, 0, length);
+        if (!renumberComponents(subTable.imageFormat(), data, inverseMap)) {
+          continue;
+        }
+        images[newGlyph] = new Image(newGlyph, subTable.imageFormat(), data, constantMetrics);
+      }
+    }
+    return images;
+  }
+
+  /**
+   * Renumbers the components of a composite bitmap in place.
+   *
+   * @return false if a component is not in the subset
+   */
+  private static boolean renumberComponents(
+      int imageFormat, byte[] data, Map<Integer, Integer> inverseMap) {
+    int countOffset;
+    if (imageFormat == IMAGE_FORMAT_COMPOSITE_SMALL) {
+      // smallGlyphMetrics and a pad byte
+      countOffset = 6;
+    } else if (imageFormat == IMAGE_FORMAT_COMPOSITE_BIG) {
+      // bigGlyphMetrics
+      countOffset = 8;
+    } else {
+      return true;
+    }
+    // wraps the image data, so the writes below update it
+    WritableFontData image = WritableFontData.createWritableFontData(data);
+    int numComponents = image.readUShort(countOffset);
+    for (int i = 0; i < numComponents; i++) {
+      int componentOffset = countOffset + 2 + 4 * i;
+      Integer newComponent = inverseMap.get(image.readUShort(componentOffset));
+      if (newComponent == null) {
+        return false;
+      }
+      image.writeUShort(componentOffset, newComponent);
+    }
+    return true;
+  }
+
+  /**
+   * Splits the images into runs that share an image format and, for constant
+   * metrics, the metrics. A run is also split where the gap in glyph ids costs
+   * more than starting another index subtable.
+   */
+  private static List<Run> runs(Image[] images) {
+    List<Run> runs = new ArrayList<Run>();
+    Run run = null;
+    for (Image image : images) {
+      if (image == null) {
+        continue;
+      }
+      if (run != null) {
+        Image last = run.images.get(run.images.size() - 1);
+        int gap = image.glyphId - last.glyphId - 1;
+        boolean split = !image.sameBlock(last);
+        if (!split && image.constantMetrics == null) {
+          // each missing glyph costs at least a 16-bit offset
+          split = 2 * gap > SUBTABLE_ENTRY_SIZE + SUBTABLE_HEADER_SIZE;
+        }
+        if (split) {
+          run = null;
+        }
+      }
+      if (run == null) {
+        run = new Run();
+        runs.add(run);
+      }
+      run.images.add(image);
+    }
+    return runs;
+  }
+
+  /**
+   * Writes the index subtable for the run.
+   *
+   * @return the size of the subtable, without padding
+   */
+  private static int writeSubTable(
+      Run run, WritableFontData eblc, int offset, int imageDataOffset) {
+    int size = eblc.writeUShort(offset, run.indexFormat);
+    size += eblc.writeUShort(offset + size, run.images.get(0).imageFormat);
+    size += eblc.writeULong(offset + size, imageDataOffset);
+    switch (run.indexFormat) {
+      case IndexSubTable.Format.FORMAT_1:
+      case IndexSubTable.Format.FORMAT_3: {
+        boolean wide = run.indexFormat == IndexSubTable.Format.FORMAT_1;
+        int glyphOffset = 0;
+        int index = 0;
+        for (int glyph = run.firstGlyph(); glyph <= run.lastGlyph() + 1; glyph++) {
+          size += wide ? eblc.writeULong(offset + size, glyphOffset)
+              : eblc.writeUShort(offset + size, glyphOffset);
+          if (index < run.images.size() && run.images.get(index).glyphId == glyph) {
+            glyphOffset += run.images.get(index++).data.length;
+          }
+        }
+        break;
+      }
+      case IndexSubTable.Format.FORMAT_2:
+        size += eblc.writeBytes(offset + size, run.images.get(0).constantMetrics);
+        break;
+      case IndexSubTable.Format.FORMAT_4: {
+        size += eblc.writeULong(offset + size, run.images.size());
+        int glyphOffset = 0;
+        for (Image image : run.images) {
+          size += eblc.writeUShort(offset + size, image.glyphId);
+          size += eblc.writeUShort(offset + size, glyphOffset);
+          glyphOffset += image.data.length;
+        }
+        // the sentinel pair gives the length of the last glyph
+        size += eblc.writeUShort(offset + size, 0);
+        size += eblc.writeUShort(offset + size, glyphOffset);
+        break;
+      }
+      case IndexSubTable.Format.FORMAT_5:
+        size += eblc.writeBytes(offset + size, run.images.get(0).constantMetrics);
+        size += eblc.writeULong(offset + size, run.images.size());
+        for (Image image : run.images) {
+          size += eblc.writeUShort(offset + size, image.glyphId);
+        }
+        break;
+      default:
+        throw new IllegalStateException("Unknown index format " + run.indexFormat);
+    }
+    return size;
+  }
+}
@@ -20,21 +20,42 @@ import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.data.FontData;
 import com.google.typography.font.sfntly.table.core.CMap.CMapFormat;
+import com.google.typography.font.sfntly.table.core.CMapFormat12;
 import com.google.typography.font.sfntly.table.core.CMapFormat4;
 import com.google.typography.font.sfntly.table.core.CMapTable;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * This is a medium-level builder for CMap tables, given the mapping from Unicode codepoint
  * to glyph id.
  *
+ * <p>A format 4 cmap is always written for the BMP characters. Its segments are chosen to
+ * minimize the size of the subtable, so short runs of unmapped characters may be left as
+ * holes in a segment that uses the glyph id array. When the mapping has characters outside
+ * of the BMP a format 12 cmap with the complete mapping is written as well.
+ *
  * @author Raph Levien
  */
 public class CMapTableBuilder {
 
   private static final int MAX_FORMAT4_ENDCODE = 0xffff;
 
+  // format 4 sizes in bytes
+  private static final int SEGMENT_SIZE =
+      3 * FontData.DataSize.USHORT.size() + FontData.DataSize.SHORT.size();
+  private static final int GLYPH_ID_SIZE = FontData.DataSize.USHORT.size();
+
+  // a segment can always be split at a hole this long without growing the subtable
+  private static final int MAX_HOLE = SEGMENT_SIZE / GLYPH_ID_SIZE;
+
   private final Font.Builder fontBuilder;
   private final Map<Integer, Integer> mapping;
 
@@ -43,102 +64,145 @@ public class CMapTableBuilder {
     this.mapping = mapping;
   }
 
-  private class CMap4Segment {
-    private final int startCode;
-    private int endCode;
-    List<Integer> glyphIds;
-
-    CMap4Segment(int startCode, int endCode) {
-      this.startCode = startCode;
-      this.endCode = endCode;
-      this.glyphIds = new ArrayList<Integer>();
-    }
-
-    private boolean isContiguous() {
-      int firstId = glyphIds.get(0);
-      for (int index = 1; index < glyphIds.size(); index++) {
-        if (glyphIds.get(index) != firstId + index) {
-          return false;
-        }
+  /**
+   * Runs of consecutive characters that map to consecutive glyph ids, in
+   * character order. A run can be written as a segment with only an idDelta.
+   */
+  private static final class Runs {
+    int size;
+    int[] startCode = new int[16];
+    int[] endCode = new int[16];
+    int[] startGlyph = new int[16];
+
+    void add(int unicode, int glyphId) {
+      if (size > 0 && unicode == endCode[size - 1] + 1
+          && glyphId == startGlyph[size - 1] + unicode - startCode[size - 1]) {
+        endCode[size - 1] = unicode;
+        return;
       }
-      return true;
-    }
-
-    int idDelta() {
-      return isContiguous() ? getGlyphIds().get(0) - getStartCode() : 0;
-    }
-
-    public int getStartCode() {
-      return startCode;
-    }
-
-    public void setEndCode(int endCode) {
-      this.endCode = endCode;
-    }
-
-    public int getEndCode() {
-      return endCode;
-    }
-
-    public List<Integer> getGlyphIds() {
-      return glyphIds;
+      if (size == startCode.length) {
+        startCode = Arrays.copyOf(startCode, 2 * size);
+        endCode = Arrays.copyOf(endCode, 2 * size);
+        startGlyph = Arrays.copyOf(startGlyph, 2 * size);
+      }
+      startCode[size] = unicode;
+      endCode[size] = unicode;
+      startGlyph[size] = glyphId;
+      size++;
     }
   }
 
-  // TODO(raph): This currently uses a simplistic algorithm to compute segments.
-  // The segments computed are the longest contiguous segments that actually map
-  // glyph ids. A smarter approach would leave "holes", or short runs of glyphs
-  // mapped to notdef, to reduce the number of segments.
-  private List<CMap4Segment> getFormat4Segments() {
-    List<CMap4Segment> result = new ArrayList<CMap4Segment>();
+  private Runs getRuns(int maxCode) {
     SortedMap<Integer, Integer> sortedMap = new TreeMap<Integer, Integer>(mapping);
-    if (!sortedMap.containsKey(MAX_FORMAT4_ENDCODE)) {
-      sortedMap.put(MAX_FORMAT4_ENDCODE, 0);
+    Runs runs = new Runs();
+    for (Map.Entry<Integer, Integer> entry : sortedMap.headMap(maxCode + 1).entrySet()) {
+      if (entry.getValue() != CMapTable.NOTDEF) {
+        runs.add(entry.getKey(), entry.getValue());
+      }
     }
+    return runs;
+  }
 
-    CMap4Segment curSegment = null;
-    for (Map.Entry<Integer, Integer> entry : sortedMap.entrySet()) {
-      int unicode = entry.getKey();
-      if (unicode > MAX_FORMAT4_ENDCODE) {
-        break;
+  /**
+   * Chooses the format 4 segments. A segment either covers a single run and
+   * uses an idDelta, or covers several runs and the holes between them using
+   * the glyph id array. The cost of a segment that ends with run b and starts
+   * with run a is SEGMENT_SIZE + GLYPH_ID_SIZE * (endCode[b] - startCode[a] + 1),
+   * so the smallest total is found in one pass by keeping the minimum of
+   * cost[a] - GLYPH_ID_SIZE * startCode[a] over the runs that can start the
+   * segment. A segment never needs to span a hole of MAX_HOLE or more.
+   */
+  private List<CMapFormat4.Builder.Segment> getFormat4Segments(List<Integer> glyphIdArray) {
+    Runs runs = getRuns(MAX_FORMAT4_ENDCODE - 1);
+    int n = runs.size;
+    long[] cost = new long[n + 1];
+    int[] segmentStart = new int[n + 1];
+    long bestStart = Long.MAX_VALUE;
+    int bestStartRun = 0;
+    for (int b = 0; b < n; b++) {
+      if (b > 0 && runs.startCode[b] - runs.endCode[b - 1] - 1 >= MAX_HOLE) {
+        bestStart = Long.MAX_VALUE;
       }
-      int glyphId = entry.getValue();
-      if (curSegment == null || unicode != curSegment.getEndCode() + 1) {
-        curSegment = new CMap4Segment(unicode, unicode);
-        result.add(curSegment);
-      } else {
-        curSegment.setEndCode(unicode);
+      long candidate = cost[b] - GLYPH_ID_SIZE * (long) runs.startCode[b];
+      if (candidate < bestStart) {
+        bestStart = candidate;
+        bestStartRun = b;
+      }
+      cost[b + 1] = cost[b] + SEGMENT_SIZE;
+      segmentStart[b + 1] = b;
+      long arrayCost =
+          bestStart + SEGMENT_SIZE + GLYPH_ID_SIZE * ((long) runs.endCode[b] + 1);
+      if (bestStartRun < b && arrayCost < cost[b + 1]) {
+        cost[b + 1] = arrayCost;
+        segmentStart[b + 1] = bestStartRun;
       }
-      curSegment.getGlyphIds().add(glyphId);
     }
-    return result;
-  }
 
-  private void buildCMapFormat4(CMapFormat4.Builder builder,
-                                List<CMap4Segment> segments) {
-    List<CMapFormat4.Builder.Segment> segmentList =
-        new ArrayList<CMapFormat4.Builder.Segment>();
-    List<Integer> glyphIdArray = new ArrayList<Integer>();
+    LinkedList<CMapFormat4.Builder.Segment> segments =
+        new LinkedList<CMapFormat4.Builder.Segment>();
+    LinkedList<int[]> glyphIds = new LinkedList<int[]>();
+    for (int end = n; end > 0; end = segmentStart[end]) {
+      int first = segmentStart[end];
+      int last = end - 1;
+      int startCode = runs.startCode[first];
+      int endCode = runs.endCode[last];
+      if (first == last) {
+        segments.addFirst(new CMapFormat4.Builder.Segment(
+            startCode, endCode, runs.startGlyph[first] - startCode, 0));
+        glyphIds.addFirst(null);
+      } else {
+        int[] ids = new int[endCode - startCode + 1];
+        for (int run = first; run <= last; run++) {
+          for (int unicode = runs.startCode[run]; unicode <= runs.endCode[run]; unicode++) {
+            ids[unicode - startCode] = runs.startGlyph[run] + unicode - runs.startCode[run];
+          }
+        }
+        segments.addFirst(new CMapFormat4.Builder.Segment(startCode, endCode, 0, 0));
+        glyphIds.addFirst(ids);
+      }
+    }
+    // the required last segment maps 0xffff to .notdef
+    segments.addLast(new CMapFormat4.Builder.Segment(
+        MAX_FORMAT4_ENDCODE, MAX_FORMAT4_ENDCODE, 1, 0));
+    glyphIds.addLast(null);
 
     // The glyphIndexArray immediately follows the idRangeOffset array, so idOffset counts the
     // offset (in shorts) from the beginning of the idRangeOffset array to the next block of
     // glyphIndexArray data.
     int idOffset = segments.size();
-    for (int i = 0; i < segments.size(); i++) {
-      CMap4Segment segment = segments.get(i);
-      int idRangeOffset;
-      if (segment.isContiguous()) {
-        idRangeOffset = 0;
-      } else {
-        idRangeOffset = (idOffset - i) * FontData.DataSize.USHORT.size();
-        glyphIdArray.addAll(segment.getGlyphIds());
-        idOffset += segment.getGlyphIds().size();
+    int i = 0;
+    Iterator<int[]> idIterator = glyphIds.iterator();
+    for (CMapFormat4.Builder.Segment segment : segments) {
+      int[] ids = idIterator.next();
+      if (ids != null) {
+        segment.setIdRangeOffset((idOffset - i) * FontData.DataSize.USHORT.size());
+        for (int id : ids) {
+          glyphIdArray.add(id);
+        }
+        idOffset += ids.length;
       }
-      segmentList.add(new CMapFormat4.Builder.Segment(segment.getStartCode(), segment.getEndCode(),
-          segment.idDelta(), idRangeOffset));
+      i++;
     }
-    builder.setGlyphIdArray(glyphIdArray);
-    builder.setSegments(segmentList);
+    return segments;
+  }
+
+  private List<CMapFormat12.Builder.Group> getFormat12Groups() {
+    Runs runs = getRuns(Integer.MAX_VALUE - 1);
+    List<CMapFormat12.Builder.Group> groups = new ArrayList<CMapFormat12.Builder.Group>();
+    for (int i = 0; i < runs.size; i++) {
+      groups.add(
+          new CMapFormat12.Builder.Group(runs.startCode[i], runs.endCode[i], runs.startGlyph[i]));
+    }
+    return groups;
+  }
+
+  private boolean hasSupplementaryCharacters() {
+    for (int unicode : mapping.keySet()) {
+      if (unicode > MAX_FORMAT4_ENDCODE && mapping.get(unicode) != CMapTable.NOTDEF) {
+        return true;
+      }
+    }
+    return false;
   }
 
   public void build() {
@@ -146,6 +210,15 @@ public class CMapTableBuilder {
     CMapFormat4.Builder cmapBuilder =
         (CMapFormat4.Builder) cmapTableBuilder.newCMapBuilder(CMapTable.CMapId.WINDOWS_BMP,
             CMapFormat.Format4);
-    buildCMapFormat4(cmapBuilder, getFormat4Segments());
+    List<Integer> glyphIdArray = new ArrayList<Integer>();
+    cmapBuilder.setSegments(getFormat4Segments(glyphIdArray));
+    cmapBuilder.setGlyphIdArray(glyphIdArray);
+
+    if (hasSupplementaryCharacters()) {
+      CMapFormat12.Builder cmap12Builder =
+          (CMapFormat12.Builder) cmapTableBuilder.newCMapBuilder(CMapTable.CMapId.WINDOWS_UCS4,
+              CMapFormat.Format12);
+      cmap12Builder.setGroups(getFormat12Groups());
+    }
   }
 }
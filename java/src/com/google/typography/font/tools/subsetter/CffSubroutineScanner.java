@@ -0,0 +1,298 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.cff.CffIndex;
+import com.google.typography.font.sfntly.table.cff.CffTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the subroutines that the charstrings of a set of glyphs use, and where
+ * each charstring and subroutine calls the subroutines it uses.
+ *
+ * The charstrings are run far enough to follow the subroutine calls: the
+ * operand stack is tracked so the subroutine numbers are known, and stem hints
+ * are counted so the mask bytes of hintmask and cntrmask can be skipped. A call
+ * is only understood when its subroutine number is a number written right
+ * before it in the charstring. If any call isn't, {@link #unknownCalls()} is
+ * true and none of the results can be relied on.
+ */
+final class CffSubroutineScanner {
+
+  /**
+   * The location in a charstring of the number operand of a subroutine call.
+   */
+  static final class CallSite {
+    final int offset;
+    final int length;
+    final boolean global;
+    final int subr;
+
+    CallSite(int offset, int length, boolean global, int subr) {
+      this.offset = offset;
+      this.length = length;
+      this.global = global;
+      this.subr = subr;
+    }
+  }
+
+  // Type 2 charstring operators
+  private static final int HSTEM = 1;
+  private static final int VSTEM = 3;
+  private static final int CALLSUBR = 10;
+  private static final int RETURN = 11;
+  private static final int ESCAPE = 12;
+  private static final int ENDCHAR = 14;
+  private static final int HSTEMHM = 18;
+  private static final int HINTMASK = 19;
+  private static final int CNTRMASK = 20;
+  private static final int VSTEMHM = 23;
+  private static final int SHORTINT = 28;
+  private static final int CALLGSUBR = 29;
+
+  private static final int MAX_SUBR_NESTING = 10;
+
+  private final CffTable cff;
+  private final BitSet usedGlobalSubrs = new BitSet();
+  private final BitSet[] usedLocalSubrs;
+  private final Map<Integer, List<CallSite>> glyphCalls = new HashMap<Integer, List<CallSite>>();
+  private final Map<Integer, List<CallSite>> globalSubrCalls =
+      new HashMap<Integer, List<CallSite>>();
+  private final List<Map<Integer, List<CallSite>>> localSubrCalls;
+  private boolean unknownCalls;
+  private boolean globalSubrsCallLocal;
+
+  // the state of the charstring being run
+  private int[] stack = new int[48];
+  private int stackSize;
+  private int numStems;
+
+  CffSubroutineScanner(CffTable cff) {
+    this.cff = cff;
+    this.usedLocalSubrs = new BitSet[cff.numFontDicts()];
+    this.localSubrCalls = new ArrayList<Map<Integer, List<CallSite>>>();
+    for (int fd = 0; fd < cff.numFontDicts(); fd++) {
+      this.usedLocalSubrs[fd] = new BitSet();
+      this.localSubrCalls.add(new HashMap<Integer, List<CallSite>>());
+    }
+  }
+
+  /**
+   * Runs the charstring of a glyph.
+   *
+   * @param glyphId the glyph id
+   */
+  void scanGlyph(int glyphId) {
+    if (this.unknownCalls || this.glyphCalls.containsKey(glyphId)) {
+      return;
+    }
+    List<CallSite> calls = new ArrayList<CallSite>();
+    this.glyphCalls.put(glyphId, calls);
+    this.stackSize = 0;
+    this.numStems = 0;
+    run(this.cff.charStrings().data(glyphId), this.cff.fdIndex(glyphId), calls, false, 0);
+  }
+
+  boolean unknownCalls() {
+    return this.unknownCalls;
+  }
+
+  /**
+   * @return true if a global subroutine calls a local subroutine, which is a
+   *         different subroutine for glyphs that use different Font DICTs
+   */
+  boolean globalSubrsCallLocal() {
+    return this.globalSubrsCallLocal;
+  }
+
+  BitSet usedGlobalSubrs() {
+    return this.usedGlobalSubrs;
+  }
+
+  BitSet usedLocalSubrs(int fd) {
+    return this.usedLocalSubrs[fd];
+  }
+
+  List<CallSite> glyphCalls(int glyphId) {
+    return this.glyphCalls.get(glyphId);
+  }
+
+  List<CallSite> globalSubrCalls(int subr) {
+    return this.globalSubrCalls.get(subr);
+  }
+
+  List<CallSite> localSubrCalls(int fd, int subr) {
+    return this.localSubrCalls.get(fd).get(subr);
+  }
+
+  /**
+   * Runs a charstring or subroutine.
+   *
+   * @param calls where to add the calls it makes, or null if it has been run
+   *        before
+   * @return true if the charstring has ended
+   */
+  private boolean run(
+      ReadableFontData data, int fd, List<CallSite> calls, boolean global, int depth) {
+    int literalOffset = -1;
+    int literalLength = 0;
+    int index = 0;
+    while (index < data.length()) {
+      int b0 = data.readUByte(index);
+      if (b0 == SHORTINT || b0 >= 32) {
+        int length = numberLength(b0);
+        push(readNumber(data, index));
+        literalOffset = index;
+        literalLength = length;
+        index += length;
+        continue;
+      }
+
+      int literal = literalOffset;
+      literalOffset = -1;
+      switch (b0) {
+        case HSTEM:
+        case VSTEM:
+        case HSTEMHM:
+        case VSTEMHM:
+          this.numStems += this.stackSize / 2;
+          this.stackSize = 0;
+          index++;
+          break;
+        case HINTMASK:
+        case CNTRMASK:
+          // any operands are the arguments of an implied vstem
+          this.numStems += this.stackSize / 2;
+          this.stackSize = 0;
+          index += 1 + (this.numStems + 7) / 8;
+          break;
+        case CALLSUBR:
+        case CALLGSUBR: {
+          boolean globalCall = b0 == CALLGSUBR;
+          CffIndex subrs = globalCall ? this.cff.globalSubrs() : this.cff.localSubrs(fd);
+          if (literal < 0 || subrs == null || depth >= MAX_SUBR_NESTING) {
+            this.unknownCalls = true;
+            return true;
+          }
+          int subr = this.stack[--this.stackSize] + CffTable.subrBias(subrs.count());
+          if (subr < 0 || subr >= subrs.count()) {
+            this.unknownCalls = true;
+            return true;
+          }
+          if (calls != null) {
+            calls.add(new CallSite(literal, literalLength, globalCall, subr));
+          }
+          if (global && !globalCall) {
+            this.globalSubrsCallLocal = true;
+          }
+          BitSet used = globalCall ? this.usedGlobalSubrs : this.usedLocalSubrs[fd];
+          List<CallSite> subrCalls = null;
+          if (!used.get(subr)) {
+            used.set(subr);
+            subrCalls = new ArrayList<CallSite>();
+            (globalCall ? this.globalSubrCalls : this.localSubrCalls.get(fd)).put(subr, subrCalls);
+          }
+          if (run(subrs.data(subr), fd, subrCalls, globalCall, depth + 1)) {
+            return true;
+          }
+          index++;
+          break;
+        }
+        case RETURN:
+          return false;
+        case ENDCHAR:
+          // the seac form of endchar names its accent glyphs by their standard
+          // encoding, which isn't followed here
+          return true;
+        case ESCAPE:
+          this.stackSize = 0;
+          index += 2;
+          break;
+        default:
+          this.stackSize = 0;
+          index++;
+      }
+    }
+    return false;
+  }
+
+  private void push(int value) {
+    if (this.stackSize == this.stack.length) {
+      this.stack = Arrays.copyOf(this.stack, 2 * this.stackSize);
+    }
+    this.stack[this.stackSize++] = value;
+  }
+
+  /**
+   * Gets the number of bytes of a Type 2 charstring number.
+   *
+   * @param b0 the first byte of the number
+   * @return the length
+   */
+  static int numberLength(int b0) {
+    if (b0 == SHORTINT) {
+      return 3;
+    } else if (b0 == 255) {
+      return 5;
+    } else if (b0 >= 247) {
+      return 2;
+    }
+    return 1;
+  }
+
+  // reads a number, keeping only the integer part of a 16.16 fixed number
+  private static int readNumber(ReadableFontData data, int index) {
+    int b0 = data.readUByte(index);
+    if (b0 == SHORTINT) {
+      return data.readShort(index + 1);
+    } else if (b0 == 255) {
+      return data.readFixed(index + 1) >> 16;
+    } else if (b0 >= 251) {
+      return -(b0 - 251) * 256 - data.readUByte(index + 1) - 108;
+    } else if (b0 >= 247) {
+      return (b0 - 247) * 256 + data.readUByte(index + 1) + 108;
+    }
+    return b0 - 139;
+  }
+
+  /**
+   * Encodes an integer as a Type 2 charstring number in as few bytes as
+   * possible.
+   *
+   * @param value the integer, which must fit in 16 bits
+   * @return the encoded number
+   */
+  static byte[] encodeNumber(int value) {
+    if (value >= -107 && value <= 107) {
+      return new byte[] { (byte) (value + 139) };
+    } else if (value >= 108 && value <= 1131) {
+      value -= 108;
+      return new byte[] { (byte) ((value >> 8) + 247), (byte) value };
+    } else if (value >= -1131 && value <= -108) {
+      value = -value - 108;
+      return new byte[] { (byte) ((value >> 8) + 251), (byte) value };
+    }
+    return new byte[] { SHORTINT, (byte) (value >> 8), (byte) value };
+  }
+}
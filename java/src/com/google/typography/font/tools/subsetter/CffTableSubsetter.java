@@ -0,0 +1,352 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.cff.CffDict;
+import com.google.typography.font.sfntly.table.cff.CffIndex;
+import com.google.typography.font.sfntly.table.cff.CffTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.tools.subsetter.CffSubroutineScanner.CallSite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Subsets the 'CFF ' table of an OpenType font with PostScript outlines. Only
+ * the charstrings of the kept glyphs are written, in their new order, along
+ * with a new charset and FDSelect.
+ *
+ * The global and local subroutines that the kept charstrings don't use are
+ * pruned: the used ones are renumbered and the calls to them are rewritten.
+ * Local subroutines are kept in place, with the unused ones emptied, if global
+ * subroutines call them in a font with more than one Font DICT, since such a
+ * call can mean a different local subroutine for each glyph. If some call
+ * can't be followed, all of the subroutines are kept as they are.
+ */
+public class CffTableSubsetter extends TableSubsetterImpl {
+
+  private static final byte[] RETURN = { 11 };
+  private static final byte OFFSET_SIZE = 4;
+
+  protected CffTableSubsetter() {
+    super(Tag.CFF, Tag.maxp);
+  }
+
+  /**
+   * How one subroutine INDEX is subset.
+   */
+  private static final class SubrPlan {
+    final CffIndex subrs;
+    // the new number of each subroutine, or -1 if it is dropped
+    final int[] newSubrs;
+    final int newCount;
+    final boolean renumbered;
+    final boolean emptyUnused;
+
+    SubrPlan(CffIndex subrs, BitSet used, boolean prune, boolean renumber) {
+      this.subrs = subrs;
+      int count = subrs == null ? 0 : subrs.count();
+      this.newSubrs = new int[count];
+      this.renumbered = prune && renumber;
+      this.emptyUnused = prune && !renumber;
+      int next = 0;
+      for (int i = 0; i < count; i++) {
+        this.newSubrs[i] = !this.renumbered || used.get(i) ? next++ : -1;
+      }
+      this.newCount = next;
+    }
+
+    int newNumber(int subr) {
+      return this.newSubrs[subr] - CffTable.subrBias(this.newCount);
+    }
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder)
+      throws IOException {
+    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    CffTable cff = font.getTable(Tag.CFF);
+    if (permutationTable == null || cff == null) {
+      return false;
+    }
+
+    CffSubroutineScanner scanner = new CffSubroutineScanner(cff);
+    for (int oldGlyphId : permutationTable) {
+      scanner.scanGlyph(oldGlyphId);
+    }
+    boolean prune = !scanner.unknownCalls();
+    SubrPlan globalPlan = new SubrPlan(cff.globalSubrs(), scanner.usedGlobalSubrs(), prune, true);
+    boolean renumberLocal = !scanner.globalSubrsCallLocal() || cff.numFontDicts() == 1;
+    SubrPlan[] localPlans = new SubrPlan[cff.numFontDicts()];
+    for (int fd = 0; fd < localPlans.length; fd++) {
+      localPlans[fd] =
+          new SubrPlan(cff.localSubrs(fd), scanner.usedLocalSubrs(fd), prune, renumberLocal);
+    }
+
+    List<ReadableFontData> charStrings = new ArrayList<ReadableFontData>();
+    for (int oldGlyphId : permutationTable) {
+      ReadableFontData charString = cff.charStrings().data(oldGlyphId);
+      charStrings.add(prune ? rewrite(charString, scanner.glyphCalls(oldGlyphId), globalPlan,
+          localPlans[cff.fdIndex(oldGlyphId)]) : charString);
+    }
+    List<ReadableFontData> globalSubrs = subrs(globalPlan, scanner, -1, globalPlan, localPlans);
+    List<List<ReadableFontData>> localSubrs = new ArrayList<List<ReadableFontData>>();
+    for (int fd = 0; fd < localPlans.length; fd++) {
+      localSubrs.add(subrs(localPlans[fd], scanner, fd, globalPlan, localPlans));
+    }
+
+    ReadableFontData data = serialize(cff, permutationTable, charStrings, globalSubrs, localSubrs);
+    fontBuilder.newTableBuilder(Tag.CFF, data);
+    MaximumProfileTable.Builder maxpBuilder =
+        (MaximumProfileTable.Builder) fontBuilder.getTableBuilder(Tag.maxp);
+    if (maxpBuilder != null) {
+      maxpBuilder.setNumGlyphs(permutationTable.size());
+    }
+    return true;
+  }
+
+  /**
+   * Gets the new subroutines of a subroutine INDEX.
+   *
+   * @param fd the Font DICT of local subroutines, or -1 for global ones
+   */
+  private static List<ReadableFontData> subrs(SubrPlan plan, CffSubroutineScanner scanner, int fd,
+      SubrPlan globalPlan, SubrPlan[] localPlans) {
+    List<ReadableFontData> subrs = new ArrayList<ReadableFontData>(plan.newCount);
+    for (int i = 0; i < plan.newSubrs.length; i++) {
+      if (plan.newSubrs[i] < 0) {
+        continue;
+      }
+      ReadableFontData subr = plan.subrs.data(i);
+      if (plan.renumbered || plan.emptyUnused) {
+        List<CallSite> calls =
+            fd < 0 ? scanner.globalSubrCalls(i) : scanner.localSubrCalls(fd, i);
+        if (calls == null) {
+          subr = ReadableFontData.createReadableFontData(RETURN);
+        } else {
+          // a global subroutine only calls local ones when they aren't
+          // renumbered, so any Font DICT's plan gives the same result
+          subr = rewrite(subr, calls, globalPlan, localPlans[Math.max(fd, 0)]);
+        }
+      }
+      subrs.add(subr);
+    }
+    return subrs;
+  }
+
+  /**
+   * Rewrites the subroutine numbers of the calls in a charstring or subroutine.
+   */
+  private static ReadableFontData rewrite(
+      ReadableFontData data, List<CallSite> calls, SubrPlan globalPlan, SubrPlan localPlan) {
+    boolean changed = false;
+    for (CallSite call : calls) {
+      changed |= (call.global ? globalPlan : localPlan).renumbered;
+    }
+    if (!changed) {
+      return data;
+    }
+    ByteArrayOutputStream os = new ByteArrayOutputStream(data.length());
+    int copied = 0;
+    for (CallSite call : calls) {
+      SubrPlan plan = call.global ? globalPlan : localPlan;
+      if (!plan.renumbered) {
+        continue;
+      }
+      copy(data, copied, call.offset, os);
+      byte[] number = CffSubroutineScanner.encodeNumber(plan.newNumber(call.subr));
+      os.write(number, 0, number.length);
+      copied = call.offset + call.length;
+    }
+    copy(data, copied, data.length(), os);
+    return ReadableFontData.createReadableFontData(os.toByteArray());
+  }
+
+  private static void copy(ReadableFontData data, int start, int end, ByteArrayOutputStream os) {
+    byte[] b = new byte[end - start];
+    data.readBytes(start, b, 0, b.length);
+    os.write(b, 0, b.length);
+  }
+
+  private static ReadableFontData serialize(CffTable cff, List<Integer> permutationTable,
+      List<ReadableFontData> charStrings, List<ReadableFontData> globalSubrs,
+      List<List<ReadableFontData>> localSubrs) {
+    int numFontDicts = cff.numFontDicts();
+
+    // work out where everything goes; the offsets in DICTs are written in a
+    // fixed size so the DICT lengths don't depend on them
+    byte[] charset = charset(cff, permutationTable);
+    byte[] fdSelect = cff.isCid() ? fdSelect(cff, permutationTable) : null;
+    byte[][] privateDicts = new byte[numFontDicts][];
+    for (int fd = 0; fd < numFontDicts; fd++) {
+      privateDicts[fd] = privateDict(cff, fd, localSubrs.get(fd));
+    }
+    int[] privateOffsets = new int[numFontDicts];
+    int offset = cff.headerSize() + cff.nameIndex().length();
+    offset += CffIndex.serializedLength(Collections.singletonList(
+        wrap(topDict(cff, 0, 0, 0, 0, privateDicts, privateOffsets))));
+    offset += cff.stringIndex().length();
+    offset += CffIndex.serializedLength(globalSubrs);
+    int charsetOffset = offset;
+    offset += charset.length;
+    int fdSelectOffset = offset;
+    if (fdSelect != null) {
+      offset += fdSelect.length;
+    }
+    int charStringsOffset = offset;
+    offset += CffIndex.serializedLength(charStrings);
+    int fdArrayOffset = offset;
+    if (cff.isCid()) {
+      offset += CffIndex.serializedLength(fontDicts(cff, privateDicts, privateOffsets));
+    }
+    for (int fd = 0; fd < numFontDicts; fd++) {
+      if (privateDicts[fd] != null) {
+        privateOffsets[fd] = offset;
+        offset += privateDicts[fd].length + CffIndex.serializedLength(localSubrs.get(fd));
+      }
+    }
+
+    WritableFontData data = WritableFontData.createWritableFontData(offset);
+    cff.readFontData().slice(0, cff.headerSize()).copyTo(data);
+    data.writeByte(3, OFFSET_SIZE);
+    int index = cff.headerSize();
+    index += cff.nameIndex().readFontData().copyTo(data.slice(index));
+    index += CffIndex.serialize(Collections.singletonList(wrap(topDict(cff, charsetOffset,
+        fdSelectOffset, charStringsOffset, fdArrayOffset, privateDicts, privateOffsets))),
+        data, index);
+    index += cff.stringIndex().readFontData().copyTo(data.slice(index));
+    index += CffIndex.serialize(globalSubrs, data, index);
+    index += data.writeBytes(index, charset);
+    if (fdSelect != null) {
+      index += data.writeBytes(index, fdSelect);
+    }
+    index += CffIndex.serialize(charStrings, data, index);
+    if (cff.isCid()) {
+      index += CffIndex.serialize(fontDicts(cff, privateDicts, privateOffsets), data, index);
+    }
+    for (int fd = 0; fd < numFontDicts; fd++) {
+      if (privateDicts[fd] != null) {
+        index += data.writeBytes(index, privateDicts[fd]);
+        index += CffIndex.serialize(localSubrs.get(fd), data, index);
+      }
+    }
+    return data;
+  }
+
+  private static ReadableFontData wrap(byte[] b) {
+    return ReadableFontData.createReadableFontData(b);
+  }
+
+  private static byte[] topDict(CffTable cff, int charsetOffset, int fdSelectOffset,
+      int charStringsOffset, int fdArrayOffset, byte[][] privateDicts, int[] privateOffsets) {
+    Map<Integer, int[]> replacements = new LinkedHashMap<Integer, int[]>();
+    replacements.put(CffDict.CHARSET, new int[] { charsetOffset });
+    replacements.put(CffDict.CHARSTRINGS, new int[] { charStringsOffset });
+    if (cff.topDict().intOperand(CffDict.ENCODING, 0, 0) > 1) {
+      // a custom encoding is in old glyph ids so fall back to the standard one
+      replacements.put(CffDict.ENCODING, new int[0]);
+    }
+    if (cff.isCid()) {
+      replacements.put(CffDict.FD_SELECT, new int[] { fdSelectOffset });
+      replacements.put(CffDict.FD_ARRAY, new int[] { fdArrayOffset });
+    } else if (privateDicts[0] != null) {
+      replacements.put(CffDict.PRIVATE, new int[] { privateDicts[0].length, privateOffsets[0] });
+    }
+    return cff.topDict().serialize(replacements);
+  }
+
+  private static List<ReadableFontData> fontDicts(
+      CffTable cff, byte[][] privateDicts, int[] privateOffsets) {
+    List<ReadableFontData> fontDicts = new ArrayList<ReadableFontData>();
+    for (int fd = 0; fd < cff.numFontDicts(); fd++) {
+      Map<Integer, int[]> replacements = new LinkedHashMap<Integer, int[]>();
+      if (privateDicts[fd] != null) {
+        replacements.put(
+            CffDict.PRIVATE, new int[] { privateDicts[fd].length, privateOffsets[fd] });
+      }
+      fontDicts.add(wrap(cff.fontDict(fd).serialize(replacements)));
+    }
+    return fontDicts;
+  }
+
+  private static byte[] privateDict(CffTable cff, int fd, List<ReadableFontData> localSubrs) {
+    CffDict privateDict = cff.privateDict(fd);
+    if (privateDict == null) {
+      return null;
+    }
+    Map<Integer, int[]> replacements = new LinkedHashMap<Integer, int[]>();
+    replacements.put(CffDict.SUBRS, new int[0]);
+    if (localSubrs.isEmpty()) {
+      return privateDict.serialize(replacements);
+    }
+    // the local subroutines go right after the Private DICT
+    replacements.put(CffDict.SUBRS, new int[] { 0 });
+    int length = privateDict.serialize(replacements).length;
+    replacements.put(CffDict.SUBRS, new int[] { length });
+    return privateDict.serialize(replacements);
+  }
+
+  // a format 0 charset of the kept glyphs' SIDs or CIDs
+  private static byte[] charset(CffTable cff, List<Integer> permutationTable) {
+    int[] oldCharset = cff.charset();
+    int numGlyphs = permutationTable.size();
+    byte[] charset = new byte[1 + 2 * Math.max(numGlyphs - 1, 0)];
+    for (int i = 1; i < numGlyphs; i++) {
+      int sid = oldCharset[permutationTable.get(i)];
+      charset[2 * i - 1] = (byte) (sid >> 8);
+      charset[2 * i] = (byte) sid;
+    }
+    return charset;
+  }
+
+  // a format 3 FDSelect of the kept glyphs' Font DICTs
+  private static byte[] fdSelect(CffTable cff, List<Integer> permutationTable) {
+    ByteArrayOutputStream ranges = new ByteArrayOutputStream();
+    int numRanges = 0;
+    int lastFd = -1;
+    for (int i = 0; i < permutationTable.size(); i++) {
+      int fd = cff.fdIndex(permutationTable.get(i));
+      if (fd != lastFd) {
+        ranges.write(i >> 8);
+        ranges.write(i);
+        ranges.write(fd);
+        numRanges++;
+        lastFd = fd;
+      }
+    }
+    int sentinel = permutationTable.size();
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    os.write(3);
+    os.write(numRanges >> 8);
+    os.write(numRanges);
+    byte[] b = ranges.toByteArray();
+    os.write(b, 0, b.length);
+    os.write(sentinel >> 8);
+    os.write(sentinel);
+    return os.toByteArray();
+  }
+}
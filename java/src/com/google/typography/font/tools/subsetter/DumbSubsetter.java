@@ -20,9 +20,6 @@ import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.FontFactory;
 import com.google.typography.font.sfntly.Tag;
 
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * Note: at the moment, this class just replicates the existing functionality in sfntly. It does
  * _not_ create a working font.
@@ -32,10 +29,8 @@ import java.util.Set;
 public class DumbSubsetter extends Subsetter {
 
   {
-    Set<TableSubsetter> temp = new HashSet<TableSubsetter>();
-    temp.add(new GlyphTableSubsetter());
-    temp.add(new CMapTableSubsetter());
-    tableSubsetters = temp;
+    tableSubsetters.add(new GlyphTableSubsetter());
+    tableSubsetters.add(new CMapTableSubsetter());
   }
 
   public DumbSubsetter(Font font, FontFactory fontFactory) {
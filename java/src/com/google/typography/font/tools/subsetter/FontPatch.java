@@ -0,0 +1,215 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A patch that turns one subset of a font into a larger subset of the same
+ * font, so that a client that already has the first subset only needs to be
+ * sent what has changed.
+ *
+ * The glyphs of the base subset must keep their glyph ids in the target
+ * subset, with the added glyphs after them, as the glyph order from
+ * {@link IncrementalSubsetter#extendGlyphs} gives. The glyph data of the added
+ * glyphs is then simply appended to the glyf table and the loca table is
+ * rebuilt by the client. Any other table that differs is sent whole, and
+ * tables that are the same are not sent at all.
+ *
+ * The patch is made of big-endian values:
+ *
+ * <pre>
+ * uint32  magic 'sfpt'
+ * uint16  version, 1
+ * uint16  number of table operations
+ * uint32  checksum of the base font, see {@link #baseChecksum(Font)}
+ * uint16  number of glyphs in the base font
+ * uint16  number of glyphs in the patched font
+ * then for each table operation, in tag order:
+ *   uint32  table tag
+ *   uint8   operation: 0 remove, 1 replace, 2 append glyphs
+ *   uint32  length of the operation data
+ *   the operation data
+ * </pre>
+ *
+ * The data of a replace operation is the new table. The data of an append
+ * glyphs operation, which is only used for the glyf table, is the uint32 length
+ * of each added glyph followed by the glyph data of the added glyphs. The patch
+ * isn't compressed itself, it is expected to be compressed in transfer like
+ * the fonts are.
+ *
+ * @see FontPatchApplier
+ */
+public final class FontPatch {
+
+  static final int MAGIC = Tag.intValue(new byte[] {'s', 'f', 'p', 't'});
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 16;
+  static final int OPERATION_HEADER_SIZE = 9;
+
+  static final int REMOVE = 0;
+  static final int REPLACE = 1;
+  static final int APPEND_GLYPHS = 2;
+
+  private FontPatch() {
+    // Prevent construction.
+  }
+
+  /**
+   * Creates the patch from one subset of a font to another.
+   *
+   * @param base the subset the client already has
+   * @param target the subset the client should end up with
+   * @return the patch
+   */
+  public static byte[] create(Font base, Font target) {
+    int baseNumGlyphs = numGlyphs(base);
+    int numGlyphs = numGlyphs(target);
+    boolean appendGlyphs = canAppendGlyphs(base, target);
+
+    Set<Integer> tags = new TreeSet<Integer>(base.tableMap().keySet());
+    tags.addAll(target.tableMap().keySet());
+    List<Integer> operationTags = new ArrayList<Integer>();
+    List<Integer> operations = new ArrayList<Integer>();
+    List<ReadableFontData> operationData = new ArrayList<ReadableFontData>();
+    int size = HEADER_SIZE;
+    for (int tag : tags) {
+      Table baseTable = base.getTable(tag);
+      Table targetTable = target.getTable(tag);
+      ReadableFontData data;
+      int operation;
+      if (targetTable == null) {
+        operation = REMOVE;
+        data = null;
+      } else if (appendGlyphs && tag == Tag.loca) {
+        // the client rebuilds the loca table from the appended glyphs
+        continue;
+      } else if (appendGlyphs && tag == Tag.glyf) {
+        operation = APPEND_GLYPHS;
+        data = appendedGlyphs(target, baseNumGlyphs, numGlyphs);
+      } else if (baseTable != null
+          && baseTable.readFontData().contentEquals(targetTable.readFontData())) {
+        continue;
+      } else {
+        operation = REPLACE;
+        data = targetTable.readFontData();
+      }
+      operationTags.add(tag);
+      operations.add(operation);
+      operationData.add(data);
+      size += OPERATION_HEADER_SIZE + (data == null ? 0 : data.length());
+    }
+
+    WritableFontData patch = WritableFontData.createWritableFontData(size);
+    int index = patch.writeULong(0, MAGIC);
+    index += patch.writeUShort(index, VERSION);
+    index += patch.writeUShort(index, operations.size());
+    index += patch.writeULong(index, baseChecksum(base));
+    index += patch.writeUShort(index, baseNumGlyphs);
+    index += patch.writeUShort(index, numGlyphs);
+    for (int i = 0; i < operations.size(); i++) {
+      ReadableFontData data = operationData.get(i);
+      index += patch.writeULong(index, operationTags.get(i));
+      index += patch.writeByte(index, (byte) operations.get(i).intValue());
+      index += patch.writeULong(index, data == null ? 0 : data.length());
+      if (data != null) {
+        index += data.copyTo(patch.slice(index, data.length()));
+      }
+    }
+    byte[] bytes = new byte[size];
+    patch.readBytes(0, bytes, 0, size);
+    return bytes;
+  }
+
+  /**
+   * Gets the checksum that a patch uses to check that it is applied to the
+   * font it was made from. It is the sum of the checksums of the tables, which
+   * doesn't depend on where the tables are in the font file.
+   *
+   * @param font the font
+   * @return the checksum
+   */
+  static long baseChecksum(Font font) {
+    long checksum = 0;
+    for (Table table : font.tableMap().values()) {
+      checksum += table.calculatedChecksum();
+    }
+    return checksum & 0xffffffffL;
+  }
+
+  static int numGlyphs(Font font) {
+    MaximumProfileTable maxp = font.getTable(Tag.maxp);
+    return maxp == null ? 0 : maxp.numGlyphs();
+  }
+
+  /**
+   * Checks whether the glyph data of the base font is the start of the glyph
+   * data of the target, so that the target glyphs can be sent as an append.
+   */
+  private static boolean canAppendGlyphs(Font base, Font target) {
+    Table baseGlyf = base.getTable(Tag.glyf);
+    Table targetGlyf = target.getTable(Tag.glyf);
+    LocaTable baseLoca = base.getTable(Tag.loca);
+    LocaTable targetLoca = target.getTable(Tag.loca);
+    if (baseGlyf == null || targetGlyf == null || baseLoca == null || targetLoca == null) {
+      return false;
+    }
+    int baseNumGlyphs = baseLoca.numGlyphs();
+    if (baseNumGlyphs > targetLoca.numGlyphs()) {
+      return false;
+    }
+    for (int glyphId = 0; glyphId < baseNumGlyphs; glyphId++) {
+      if (baseLoca.glyphOffset(glyphId) != targetLoca.glyphOffset(glyphId)
+          || baseLoca.glyphLength(glyphId) != targetLoca.glyphLength(glyphId)) {
+        return false;
+      }
+    }
+    int baseLength = baseLoca.loca(baseNumGlyphs);
+    if (baseLength > baseGlyf.dataLength() || baseLength > targetGlyf.dataLength()) {
+      return false;
+    }
+    return baseGlyf.readFontData().slice(0, baseLength)
+        .contentEquals(targetGlyf.readFontData().slice(0, baseLength));
+  }
+
+  private static ReadableFontData appendedGlyphs(Font target, int baseNumGlyphs, int numGlyphs) {
+    LocaTable loca = target.getTable(Tag.loca);
+    ReadableFontData glyf = target.getTable(Tag.glyf).readFontData();
+    int start = loca.loca(baseNumGlyphs);
+    int glyphsLength = loca.loca(numGlyphs) - start;
+    int lengthsSize = 4 * (numGlyphs - baseNumGlyphs);
+    WritableFontData data = WritableFontData.createWritableFontData(lengthsSize + glyphsLength);
+    for (int glyphId = baseNumGlyphs; glyphId < numGlyphs; glyphId++) {
+      data.writeULong(4 * (glyphId - baseNumGlyphs), loca.glyphLength(glyphId));
+    }
+    if (glyphsLength > 0) {
+      glyf.slice(start, glyphsLength).copyTo(data.slice(lengthsSize));
+    }
+    return data;
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies a {@link FontPatch} to the font it was made from. This is the
+ * reference for clients that apply the patches themselves.
+ */
+public final class FontPatchApplier {
+
+  private FontPatchApplier() {
+    // Prevent construction.
+  }
+
+  /**
+   * Applies a patch.
+   *
+   * @param fontFactory the factory to make the font builder with
+   * @param base the font the patch was made from
+   * @param patch the patch
+   * @return a builder for the patched font
+   * @throws IllegalArgumentException if the patch is malformed or was made
+   *         from a different font
+   */
+  public static Font.Builder apply(FontFactory fontFactory, Font base, ReadableFontData patch) {
+    if (patch.length() < FontPatch.HEADER_SIZE || patch.readULongAsInt(0) != FontPatch.MAGIC) {
+      throw new IllegalArgumentException("Not a font patch.");
+    }
+    if (patch.readUShort(4) != FontPatch.VERSION) {
+      throw new IllegalArgumentException("Unsupported font patch version " + patch.readUShort(4));
+    }
+    int numOperations = patch.readUShort(6);
+    long baseChecksum = patch.readULong(8);
+    int baseNumGlyphs = patch.readUShort(12);
+    int numGlyphs = patch.readUShort(14);
+    if (baseChecksum != FontPatch.baseChecksum(base)
+        || baseNumGlyphs != FontPatch.numGlyphs(base)) {
+      throw new IllegalArgumentException("Font patch was made from a different font.");
+    }
+
+    Map<Integer, Integer> operations = new HashMap<Integer, Integer>();
+    Map<Integer, ReadableFontData> operationData = new HashMap<Integer, ReadableFontData>();
+    int index = FontPatch.HEADER_SIZE;
+    for (int i = 0; i < numOperations; i++) {
+      if (index + FontPatch.OPERATION_HEADER_SIZE > patch.length()) {
+        throw new IllegalArgumentException("Font patch is truncated.");
+      }
+      int tag = patch.readULongAsInt(index);
+      int operation = patch.readUByte(index + 4);
+      int length = patch.readULongAsInt(index + 5);
+      index += FontPatch.OPERATION_HEADER_SIZE;
+      if (length < 0 || index + length > patch.length()) {
+        throw new IllegalArgumentException("Font patch is truncated.");
+      }
+      operations.put(tag, operation);
+      operationData.put(tag, patch.slice(index, length));
+      index += length;
+    }
+
+    Font.Builder fontBuilder = fontFactory.newFontBuilder();
+    for (Table table : base.tableMap().values()) {
+      int tag = table.headerTag();
+      if (!operations.containsKey(tag)) {
+        fontBuilder.newTableBuilder(tag, table.readFontData());
+      }
+    }
+    for (Map.Entry<Integer, Integer> entry : operations.entrySet()) {
+      int tag = entry.getKey();
+      ReadableFontData data = operationData.get(tag);
+      switch (entry.getValue()) {
+        case FontPatch.REMOVE:
+          fontBuilder.removeTableBuilder(tag);
+          break;
+        case FontPatch.REPLACE:
+          fontBuilder.newTableBuilder(tag, data);
+          break;
+        case FontPatch.APPEND_GLYPHS:
+          if (tag != Tag.glyf) {
+            throw new IllegalArgumentException(
+                "Glyphs can't be appended to the " + Tag.stringValue(tag) + " table.");
+          }
+          appendGlyphs(fontBuilder, base, data, baseNumGlyphs, numGlyphs);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown font patch operation " + entry.getValue());
+      }
+    }
+    return fontBuilder;
+  }
+
+  /**
+   * Appends the glyph data of the added glyphs to the glyf table and rebuilds
+   * the loca table from the base loca and the added glyph lengths.
+   */
+  private static void appendGlyphs(Font.Builder fontBuilder, Font base, ReadableFontData data,
+      int baseNumGlyphs, int numGlyphs) {
+    LocaTable baseLoca = base.getTable(Tag.loca);
+    Table baseGlyf = base.getTable(Tag.glyf);
+    int numAdded = numGlyphs - baseNumGlyphs;
+    if (baseLoca == null || baseGlyf == null || numAdded < 0 || 4 * numAdded > data.length()) {
+      throw new IllegalArgumentException("Font patch doesn't match the glyphs of the font.");
+    }
+
+    List<Integer> locaList = new ArrayList<Integer>(numGlyphs + 1);
+    for (int glyphId = 0; glyphId <= baseNumGlyphs; glyphId++) {
+      locaList.add(baseLoca.loca(glyphId));
+    }
+    int baseLength = locaList.get(baseNumGlyphs);
+    int offset = baseLength;
+    for (int i = 0; i < numAdded; i++) {
+      offset += data.readULongAsInt(4 * i);
+      locaList.add(offset);
+    }
+    ReadableFontData glyphs = data.slice(4 * numAdded);
+    if (offset - baseLength != glyphs.length()) {
+      throw new IllegalArgumentException("Font patch glyph lengths don't match the glyph data.");
+    }
+
+    WritableFontData glyf = WritableFontData.createWritableFontData(offset);
+    if (baseLength > 0) {
+      baseGlyf.readFontData().slice(0, baseLength).copyTo(glyf);
+    }
+    if (glyphs.length() > 0) {
+      glyphs.copyTo(glyf.slice(baseLength));
+    }
+    fontBuilder.newTableBuilder(Tag.glyf, glyf);
+    LocaTable.Builder locaBuilder = (LocaTable.Builder) fontBuilder.newTableBuilder(Tag.loca);
+    locaBuilder.setLocaList(locaList);
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.tools.subsetter.LayoutSerializer.Node;
+import com.google.typography.font.tools.subsetter.LayoutSerializer.NodeBuilder;
+import com.google.typography.font.tools.subsetter.LayoutSerializer.OffsetOverflowException;
+import com.google.typography.font.tools.subsetter.LayoutTableSubsetter.GlyphEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Subsets the GDEF table: the glyph class, attachment point, ligature caret
+ * and mark attachment class definitions are renumbered and limited to the
+ * glyphs in the subset. The item variation store of a version 1.3 table is
+ * copied unchanged since the GPOS device tables still refer to it.
+ */
+public class GDefTableSubsetter extends TableSubsetterImpl {
+  private static final Logger logger =
+      Logger.getLogger(GDefTableSubsetter.class.getCanonicalName());
+
+  public GDefTableSubsetter() {
+    super(Tag.GDEF);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder)
+      throws IOException {
+    if (subsetter.glyphMappingTable() == null) {
+      return false;
+    }
+    Table table = font.getTable(Tag.GDEF);
+    if (table == null) {
+      return false;
+    }
+    LayoutSubsetContext context = new LayoutSubsetContext(subsetter.getInverseMapping(),
+        subsetter.glyphMappingTable().size());
+    byte[] newTable = null;
+    try {
+      Node header = header(context, table.readFontData());
+      if (header != null) {
+        newTable = context.serializer.pack(header);
+      }
+    } catch (OffsetOverflowException e) {
+      // Dropped below.
+    }
+    if (newTable != null) {
+      fontBuilder.newTableBuilder(Tag.GDEF, ReadableFontData.createReadableFontData(newTable));
+    } else {
+      logger.info("Dropping GDEF table from the subset font");
+    }
+    return true;
+  }
+
+  private static Node header(LayoutSubsetContext context, ReadableFontData data) {
+    if (data.length() < 12 || data.readUShort(0) != 1) {
+      return null;
+    }
+    int minorVersion = data.readUShort(2);
+    NodeBuilder node = context.newNode().writeUShort(1).writeUShort(minorVersion)
+        .writeOffset(classDef(context, data, data.readUShort(4)))
+        .writeOffset(attachList(context, data, data.readUShort(6)))
+        .writeOffset(ligCaretList(context, data, data.readUShort(8)))
+        .writeOffset(classDef(context, data, data.readUShort(10)));
+    if (minorVersion >= 2) {
+      node.writeOffset(markGlyphSets(context, data, data.readUShort(12)));
+    }
+    if (minorVersion >= 3) {
+      node.writeWideOffset(itemVariationStore(context, data, data.readULongAsInt(14)));
+    }
+    return node.build();
+  }
+
+  private static Node classDef(LayoutSubsetContext context, ReadableFontData data, int offset) {
+    if (offset == 0) {
+      return null;
+    }
+    return context.classDef(context.mapClassDef(context.readClassDef(data, offset)));
+  }
+
+  private interface Converter {
+    Node convert(LayoutSubsetContext context, ReadableFontData data);
+  }
+
+  /**
+   * Subsets a table made of a coverage and per covered glyph offsets; the
+   * tables those offsets point to are converted by the given converter.
+   */
+  private static Node coverageIndexedOffsets(LayoutSubsetContext context, ReadableFontData data,
+      int offset, Converter converter) {
+    if (offset == 0) {
+      return null;
+    }
+    ReadableFontData table = data.slice(offset);
+    int[] glyphs = context.readCoverage(table, table.readUShort(0));
+    int count = Math.min(glyphs.length, table.readUShort(2));
+    List<GlyphEntry<Node>> entries = new ArrayList<GlyphEntry<Node>>();
+    for (int i = 0; i < count; i++) {
+      int newGlyph = context.newGlyph(glyphs[i]);
+      if (newGlyph != LayoutSubsetContext.NOT_MAPPED) {
+        entries.add(new GlyphEntry<Node>(newGlyph,
+            converter.convert(context, table.slice(table.readUShort(4 + 2 * i)))));
+      }
+    }
+    if (entries.isEmpty()) {
+      return null;
+    }
+    Collections.sort(entries);
+    NodeBuilder node = context.newNode()
+        .writeOffset(context.coverage(GlyphEntry.glyphs(entries)))
+        .writeUShort(entries.size());
+    for (GlyphEntry<Node> entry : entries) {
+      node.writeOffset(entry.value);
+    }
+    return node.build();
+  }
+
+  private static Node attachList(LayoutSubsetContext context, ReadableFontData data, int offset) {
+    return coverageIndexedOffsets(context, data, offset, new Converter() {
+      @Override
+      public Node convert(LayoutSubsetContext context, ReadableFontData attachPoint) {
+        return context.serializer.copyOf(attachPoint, 0, 2 + 2 * attachPoint.readUShort(0));
+      }
+    });
+  }
+
+  private static Node ligCaretList(LayoutSubsetContext context, ReadableFontData data,
+      int offset) {
+    return coverageIndexedOffsets(context, data, offset, new Converter() {
+      @Override
+      public Node convert(LayoutSubsetContext context, ReadableFontData ligGlyph) {
+        int caretCount = ligGlyph.readUShort(0);
+        NodeBuilder node = context.newNode().writeUShort(caretCount);
+        for (int i = 0; i < caretCount; i++) {
+          node.writeOffset(caretValue(context, ligGlyph.slice(ligGlyph.readUShort(2 + 2 * i))));
+        }
+        return node.build();
+      }
+    });
+  }
+
+  private static Node caretValue(LayoutSubsetContext context, ReadableFontData caret) {
+    if (caret.readUShort(0) == 3) {
+      return context.newNode().writeBytes(caret, 0, 4)
+          .writeOffset(context.device(caret, caret.readUShort(4))).build();
+    }
+    return context.serializer.copyOf(caret, 0, 4);
+  }
+
+  private static Node markGlyphSets(LayoutSubsetContext context, ReadableFontData data,
+      int offset) {
+    if (offset == 0) {
+      return null;
+    }
+    ReadableFontData sets = data.slice(offset);
+    int count = sets.readUShort(2);
+    NodeBuilder node = context.newNode().writeUShort(1).writeUShort(count);
+    for (int i = 0; i < count; i++) {
+      // Mark filtering sets are referenced by index, so empty sets are kept.
+      int[] glyphs = context.readCoverage(sets, sets.readULongAsInt(4 + 4 * i));
+      node.writeWideOffset(context.coverage(context.mapGlyphs(glyphs)));
+    }
+    return node.build();
+  }
+
+  private static Node itemVariationStore(LayoutSubsetContext context, ReadableFontData data,
+      int offset) {
+    if (offset == 0) {
+      return null;
+    }
+    ReadableFontData store = data.slice(offset);
+    int regionListOffset = store.readULongAsInt(2);
+    int dataCount = store.readUShort(6);
+    int end = 8 + 4 * dataCount;
+    if (regionListOffset != 0) {
+      int axisCount = store.readUShort(regionListOffset);
+      int regionCount = store.readUShort(regionListOffset + 2);
+      end = Math.max(end, regionListOffset + 4 + 6 * axisCount * regionCount);
+    }
+    for (int i = 0; i < dataCount; i++) {
+      int dataOffset = store.readULongAsInt(8 + 4 * i);
+      if (dataOffset == 0) {
+        continue;
+      }
+      int itemCount = store.readUShort(dataOffset);
+      int wordDeltaCount = store.readUShort(dataOffset + 2);
+      int regionIndexCount = store.readUShort(dataOffset + 4);
+      int wordCount = wordDeltaCount & 0x7fff;
+      int rowSize = (wordDeltaCount & 0x8000) != 0
+          ? 4 * wordCount + 2 * (regionIndexCount - wordCount)
+          : 2 * wordCount + (regionIndexCount - wordCount);
+      end = Math.max(end, dataOffset + 6 + 2 * regionIndexCount + itemCount * rowSize);
+    }
+    // The store is internally linked with 32-bit offsets, so it is kept as is.
+    return context.serializer.copyOf(store, 0, end);
+  }
+}
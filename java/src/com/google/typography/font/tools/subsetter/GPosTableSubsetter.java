@@ -0,0 +1,445 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.opentype.component.ClassDefIndex;
+import com.google.typography.font.tools.subsetter.LayoutSerializer.Node;
+import com.google.typography.font.tools.subsetter.LayoutSerializer.NodeBuilder;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Subsets the GPOS table. Adjustments and attachments are kept only for glyphs
+ * in the subset; class based pair adjustments also drop the classes that no
+ * longer have any glyphs.
+ */
+public class GPosTableSubsetter extends LayoutTableSubsetter {
+  private static final int SINGLE = 1;
+  private static final int PAIR = 2;
+  private static final int CURSIVE = 3;
+  private static final int MARK_TO_BASE = 4;
+  private static final int MARK_TO_LIGATURE = 5;
+  private static final int MARK_TO_MARK = 6;
+  private static final int CONTEXT = 7;
+  private static final int CHAINED_CONTEXT = 8;
+  private static final int EXTENSION = 9;
+
+  public GPosTableSubsetter() {
+    super(Tag.GPOS, EXTENSION);
+  }
+
+  @Override
+  protected boolean isContextual(int lookupType) {
+    return lookupType == CONTEXT || lookupType == CHAINED_CONTEXT;
+  }
+
+  @Override
+  protected Node subsetSubtable(
+      LayoutSubsetContext context, int lookupType, ReadableFontData data) {
+    switch (lookupType) {
+    case SINGLE:
+      return subsetSingle(context, data);
+    case PAIR:
+      return subsetPair(context, data);
+    case CURSIVE:
+      return subsetCursive(context, data);
+    case MARK_TO_BASE:
+    case MARK_TO_MARK:
+      return subsetMarkToBase(context, data);
+    case MARK_TO_LIGATURE:
+      return subsetMarkToLigature(context, data);
+    case CONTEXT:
+      return subsetContext(context, data);
+    case CHAINED_CONTEXT:
+      return subsetChainContext(context, data);
+    default:
+      return null;
+    }
+  }
+
+  private static int valueRecordSize(int valueFormat) {
+    return 2 * Integer.bitCount(valueFormat & 0xff);
+  }
+
+  /**
+   * Copies a value record. Its device table offsets are relative to the table
+   * that holds the record, in both the source and the new table.
+   */
+  private static void writeValueRecord(LayoutSubsetContext context, NodeBuilder node,
+      ReadableFontData parent, int offset, int valueFormat) {
+    for (int bit = 0; bit < 8; bit++) {
+      if ((valueFormat & (1 << bit)) == 0) {
+        continue;
+      }
+      if (bit < 4) {
+        node.writeUShort(parent.readUShort(offset));
+      } else {
+        node.writeOffset(context.device(parent, parent.readUShort(offset)));
+      }
+      offset += 2;
+    }
+  }
+
+  private static Node anchor(LayoutSubsetContext context, ReadableFontData parent, int offset) {
+    if (offset == 0) {
+      return null;
+    }
+    switch (parent.readUShort(offset)) {
+    case 1:
+      return context.serializer.copyOf(parent, offset, 6);
+    case 2:
+      return context.serializer.copyOf(parent, offset, 8);
+    case 3:
+      ReadableFontData anchor = parent.slice(offset);
+      return context.newNode().writeBytes(anchor, 0, 6)
+          .writeOffset(context.device(anchor, anchor.readUShort(6)))
+          .writeOffset(context.device(anchor, anchor.readUShort(8))).build();
+    default:
+      return null;
+    }
+  }
+
+  private static Node subsetSingle(LayoutSubsetContext context, ReadableFontData data) {
+    int format = data.readUShort(0);
+    int[] glyphs = context.readCoverage(data, data.readUShort(2));
+    int valueFormat = data.readUShort(4);
+    if (format == 1) {
+      int[] newGlyphs = context.mapGlyphs(glyphs);
+      if (newGlyphs.length == 0) {
+        return null;
+      }
+      NodeBuilder node = context.newNode().writeUShort(1)
+          .writeOffset(context.coverage(newGlyphs)).writeUShort(valueFormat);
+      writeValueRecord(context, node, data, 6, valueFormat);
+      return node.build();
+    }
+    if (format != 2) {
+      return null;
+    }
+    int count = Math.min(glyphs.length, data.readUShort(6));
+    int recordSize = valueRecordSize(valueFormat);
+    List<GlyphEntry<Integer>> entries = new ArrayList<GlyphEntry<Integer>>();
+    for (int i = 0; i < count; i++) {
+      int newGlyph = context.newGlyph(glyphs[i]);
+      if (newGlyph != LayoutSubsetContext.NOT_MAPPED) {
+        entries.add(new GlyphEntry<Integer>(newGlyph, 8 + i * recordSize));
+      }
+    }
+    if (entries.isEmpty()) {
+      return null;
+    }
+    Collections.sort(entries);
+    NodeBuilder node = context.newNode().writeUShort(2)
+        .writeOffset(context.coverage(GlyphEntry.glyphs(entries)))
+        .writeUShort(valueFormat).writeUShort(entries.size());
+    for (GlyphEntry<Integer> entry : entries) {
+      writeValueRecord(context, node, data, entry.value, valueFormat);
+    }
+    return node.build();
+  }
+
+  private static Node subsetPair(LayoutSubsetContext context, ReadableFontData data) {
+    switch (data.readUShort(0)) {
+    case 1:
+      return subsetPairGlyphs(context, data);
+    case 2:
+      return subsetPairClasses(context, data);
+    default:
+      return null;
+    }
+  }
+
+  private static Node subsetPairGlyphs(LayoutSubsetContext context, ReadableFontData data) {
+    int[] glyphs = context.readCoverage(data, data.readUShort(2));
+    int valueFormat1 = data.readUShort(4);
+    int valueFormat2 = data.readUShort(6);
+    int recordSize = 2 + valueRecordSize(valueFormat1) + valueRecordSize(valueFormat2);
+    int count = Math.min(glyphs.length, data.readUShort(8));
+
+    List<GlyphEntry<Node>> entries = new ArrayList<GlyphEntry<Node>>();
+    for (int i = 0; i < count; i++) {
+      int newGlyph = context.newGlyph(glyphs[i]);
+      if (newGlyph == LayoutSubsetContext.NOT_MAPPED) {
+        continue;
+      }
+      ReadableFontData pairSet = data.slice(data.readUShort(10 + 2 * i));
+      int pairCount = pairSet.readUShort(0);
+      List<GlyphEntry<Integer>> pairs = new ArrayList<GlyphEntry<Integer>>();
+      for (int j = 0; j < pairCount; j++) {
+        int record = 2 + j * recordSize;
+        int newSecond = context.newGlyph(pairSet.readUShort(record));
+        if (newSecond != LayoutSubsetContext.NOT_MAPPED) {
+          pairs.add(new GlyphEntry<Integer>(newSecond, record));
+        }
+      }
+      if (pairs.isEmpty()) {
+        continue;
+      }
+      Collections.sort(pairs);
+      NodeBuilder pairSetNode = context.newNode().writeUShort(pairs.size());
+      for (GlyphEntry<Integer> pair : pairs) {
+        pairSetNode.writeUShort(pair.glyph);
+        writeValueRecord(context, pairSetNode, pairSet, pair.value + 2, valueFormat1);
+        writeValueRecord(context, pairSetNode, pairSet,
+            pair.value + 2 + valueRecordSize(valueFormat1), valueFormat2);
+      }
+      entries.add(new GlyphEntry<Node>(newGlyph, pairSetNode.build()));
+    }
+    if (entries.isEmpty()) {
+      return null;
+    }
+    Collections.sort(entries);
+    NodeBuilder node = context.newNode().writeUShort(1)
+        .writeOffset(context.coverage(GlyphEntry.glyphs(entries)))
+        .writeUShort(valueFormat1).writeUShort(valueFormat2).writeUShort(entries.size());
+    for (GlyphEntry<Node> entry : entries) {
+      node.writeOffset(entry.value);
+    }
+    return node.build();
+  }
+
+  /**
+   * Returns the new numbering of the classes that are set, keeping class 0 as
+   * class 0.
+   */
+  private static int[] compactClasses(BitSet used, int classCount) {
+    int[] map = new int[classCount];
+    int next = 1;
+    for (int i = 1; i < classCount; i++) {
+      map[i] = used.get(i) ? next++ : LayoutSubsetContext.NOT_MAPPED;
+    }
+    return map;
+  }
+
+  private static Node subsetPairClasses(LayoutSubsetContext context, ReadableFontData data) {
+    int[] glyphs = context.readCoverage(data, data.readUShort(2));
+    int valueFormat1 = data.readUShort(4);
+    int valueFormat2 = data.readUShort(6);
+    ClassDefIndex classDef1 = context.readClassDef(data, data.readUShort(8));
+    ClassDefIndex classDef2 = context.readClassDef(data, data.readUShort(10));
+    int class1Count = data.readUShort(12);
+    int class2Count = data.readUShort(14);
+    int recordSize = valueRecordSize(valueFormat1) + valueRecordSize(valueFormat2);
+    if (class1Count == 0 || class2Count == 0) {
+      return null;
+    }
+
+    int[] newCoverage = context.mapGlyphs(glyphs);
+    if (newCoverage.length == 0) {
+      return null;
+    }
+    BitSet used1 = new BitSet();
+    for (int glyph : glyphs) {
+      if (context.retained(glyph)) {
+        used1.set(classDef1 == null ? 0 : classDef1.glyphClass(glyph));
+      }
+    }
+    BitSet used2 = new BitSet();
+    if (classDef2 != null) {
+      for (int glyph = classDef2.firstGlyph(); glyph < classDef2.limitGlyph(); glyph++) {
+        if (context.retained(glyph)) {
+          used2.set(classDef2.glyphClass(glyph));
+        }
+      }
+    }
+    int[] class1Map = compactClasses(used1, class1Count);
+    int[] class2Map = compactClasses(used2, class2Count);
+
+    int[] newClasses1 = new int[context.numGlyphs()];
+    for (int glyph : glyphs) {
+      int newGlyph = context.newGlyph(glyph);
+      int glyphClass = classDef1 == null ? 0 : classDef1.glyphClass(glyph);
+      if (newGlyph != LayoutSubsetContext.NOT_MAPPED && glyphClass < class1Count) {
+        newClasses1[newGlyph] = class1Map[glyphClass];
+      }
+    }
+    int[] newClasses2 = context.mapClassDef(classDef2);
+    for (int glyph = 0; glyph < newClasses2.length; glyph++) {
+      int glyphClass = newClasses2[glyph];
+      newClasses2[glyph] = glyphClass < class2Count ? class2Map[glyphClass] : 0;
+    }
+
+    int newClass1Count = 1 + used1.get(1, class1Count).cardinality();
+    int newClass2Count = 1 + used2.get(1, class2Count).cardinality();
+    NodeBuilder node = context.newNode().writeUShort(2)
+        .writeOffset(context.coverage(newCoverage))
+        .writeUShort(valueFormat1).writeUShort(valueFormat2)
+        .writeOffset(context.classDef(newClasses1))
+        .writeOffset(context.classDef(newClasses2))
+        .writeUShort(newClass1Count).writeUShort(newClass2Count);
+    for (int class1 = 0; class1 < class1Count; class1++) {
+      if (class1Map[class1] == LayoutSubsetContext.NOT_MAPPED) {
+        continue;
+      }
+      for (int class2 = 0; class2 < class2Count; class2++) {
+        if (class2Map[class2] == LayoutSubsetContext.NOT_MAPPED) {
+          continue;
+        }
+        int record = 16 + (class1 * class2Count + class2) * recordSize;
+        writeValueRecord(context, node, data, record, valueFormat1);
+        writeValueRecord(context, node, data, record + valueRecordSize(valueFormat1),
+            valueFormat2);
+      }
+    }
+    return node.build();
+  }
+
+  private static Node subsetCursive(LayoutSubsetContext context, ReadableFontData data) {
+    if (data.readUShort(0) != 1) {
+      return null;
+    }
+    int[] glyphs = context.readCoverage(data, data.readUShort(2));
+    int count = Math.min(glyphs.length, data.readUShort(4));
+    List<GlyphEntry<Integer>> entries = new ArrayList<GlyphEntry<Integer>>();
+    for (int i = 0; i < count; i++) {
+      int newGlyph = context.newGlyph(glyphs[i]);
+      if (newGlyph != LayoutSubsetContext.NOT_MAPPED) {
+        entries.add(new GlyphEntry<Integer>(newGlyph, 6 + 4 * i));
+      }
+    }
+    if (entries.isEmpty()) {
+      return null;
+    }
+    Collections.sort(entries);
+    NodeBuilder node = context.newNode().writeUShort(1)
+        .writeOffset(context.coverage(GlyphEntry.glyphs(entries))).writeUShort(entries.size());
+    for (GlyphEntry<Integer> entry : entries) {
+      node.writeOffset(anchor(context, data, data.readUShort(entry.value)))
+          .writeOffset(anchor(context, data, data.readUShort(entry.value + 2)));
+    }
+    return node.build();
+  }
+
+  /**
+   * Subsets the mark array shared by the mark attachment subtables.
+   *
+   * @return the entries for the marks in the subset, sorted by new glyph id,
+   *         each holding the position of its mark record
+   */
+  private static List<GlyphEntry<Integer>> markEntries(
+      LayoutSubsetContext context, int[] marks, ReadableFontData markArray) {
+    int count = Math.min(marks.length, markArray.readUShort(0));
+    List<GlyphEntry<Integer>> entries = new ArrayList<GlyphEntry<Integer>>();
+    for (int i = 0; i < count; i++) {
+      int newGlyph = context.newGlyph(marks[i]);
+      if (newGlyph != LayoutSubsetContext.NOT_MAPPED) {
+        entries.add(new GlyphEntry<Integer>(newGlyph, 2 + 4 * i));
+      }
+    }
+    Collections.sort(entries);
+    return entries;
+  }
+
+  private static Node markArray(LayoutSubsetContext context, ReadableFontData markArray,
+      List<GlyphEntry<Integer>> marks) {
+    NodeBuilder node = context.newNode().writeUShort(marks.size());
+    for (GlyphEntry<Integer> mark : marks) {
+      node.writeUShort(markArray.readUShort(mark.value))
+          .writeOffset(anchor(context, markArray, markArray.readUShort(mark.value + 2)));
+    }
+    return node.build();
+  }
+
+  /**
+   * Subsets a mark to base or a mark to mark subtable, which have the same
+   * layout.
+   */
+  private static Node subsetMarkToBase(LayoutSubsetContext context, ReadableFontData data) {
+    if (data.readUShort(0) != 1) {
+      return null;
+    }
+    int[] marks = context.readCoverage(data, data.readUShort(2));
+    int[] bases = context.readCoverage(data, data.readUShort(4));
+    int classCount = data.readUShort(6);
+    ReadableFontData markArray = data.slice(data.readUShort(8));
+    ReadableFontData baseArray = data.slice(data.readUShort(10));
+
+    List<GlyphEntry<Integer>> markEntries = markEntries(context, marks, markArray);
+    int baseCount = Math.min(bases.length, baseArray.readUShort(0));
+    List<GlyphEntry<Integer>> baseEntries = new ArrayList<GlyphEntry<Integer>>();
+    for (int i = 0; i < baseCount; i++) {
+      int newGlyph = context.newGlyph(bases[i]);
+      if (newGlyph != LayoutSubsetContext.NOT_MAPPED) {
+        baseEntries.add(new GlyphEntry<Integer>(newGlyph, 2 + 2 * classCount * i));
+      }
+    }
+    if (markEntries.isEmpty() || baseEntries.isEmpty()) {
+      return null;
+    }
+    Collections.sort(baseEntries);
+    NodeBuilder baseArrayNode = context.newNode().writeUShort(baseEntries.size());
+    for (GlyphEntry<Integer> base : baseEntries) {
+      for (int c = 0; c < classCount; c++) {
+        baseArrayNode.writeOffset(
+            anchor(context, baseArray, baseArray.readUShort(base.value + 2 * c)));
+      }
+    }
+    return context.newNode().writeUShort(1)
+        .writeOffset(context.coverage(GlyphEntry.glyphs(markEntries)))
+        .writeOffset(context.coverage(GlyphEntry.glyphs(baseEntries)))
+        .writeUShort(classCount)
+        .writeOffset(markArray(context, markArray, markEntries))
+        .writeOffset(baseArrayNode.build()).build();
+  }
+
+  private static Node subsetMarkToLigature(LayoutSubsetContext context, ReadableFontData data) {
+    if (data.readUShort(0) != 1) {
+      return null;
+    }
+    int[] marks = context.readCoverage(data, data.readUShort(2));
+    int[] ligatures = context.readCoverage(data, data.readUShort(4));
+    int classCount = data.readUShort(6);
+    ReadableFontData markArray = data.slice(data.readUShort(8));
+    ReadableFontData ligatureArray = data.slice(data.readUShort(10));
+
+    List<GlyphEntry<Integer>> markEntries = markEntries(context, marks, markArray);
+    int ligatureCount = Math.min(ligatures.length, ligatureArray.readUShort(0));
+    List<GlyphEntry<Node>> ligatureEntries = new ArrayList<GlyphEntry<Node>>();
+    for (int i = 0; i < ligatureCount; i++) {
+      int newGlyph = context.newGlyph(ligatures[i]);
+      if (newGlyph == LayoutSubsetContext.NOT_MAPPED) {
+        continue;
+      }
+      ReadableFontData attach = ligatureArray.slice(ligatureArray.readUShort(2 + 2 * i));
+      int componentCount = attach.readUShort(0);
+      NodeBuilder attachNode = context.newNode().writeUShort(componentCount);
+      for (int j = 0; j < componentCount * classCount; j++) {
+        attachNode.writeOffset(anchor(context, attach, attach.readUShort(2 + 2 * j)));
+      }
+      ligatureEntries.add(new GlyphEntry<Node>(newGlyph, attachNode.build()));
+    }
+    if (markEntries.isEmpty() || ligatureEntries.isEmpty()) {
+      return null;
+    }
+    Collections.sort(ligatureEntries);
+    NodeBuilder ligatureArrayNode = context.newNode().writeUShort(ligatureEntries.size());
+    for (GlyphEntry<Node> ligature : ligatureEntries) {
+      ligatureArrayNode.writeOffset(ligature.value);
+    }
+    return context.newNode().writeUShort(1)
+        .writeOffset(context.coverage(GlyphEntry.glyphs(markEntries)))
+        .writeOffset(context.coverage(GlyphEntry.glyphs(ligatureEntries)))
+        .writeUShort(classCount)
+        .writeOffset(markArray(context, markArray, markEntries))
+        .writeOffset(ligatureArrayNode.build()).build();
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.tools.subsetter.LayoutSerializer.Node;
+import com.google.typography.font.tools.subsetter.LayoutSerializer.NodeBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Subsets the GSUB table. Substitutions are kept only when both their input
+ * and output glyphs are in the subset.
+ */
+public class GSubTableSubsetter extends LayoutTableSubsetter {
+  private static final int SINGLE = 1;
+  private static final int MULTIPLE = 2;
+  private static final int ALTERNATE = 3;
+  private static final int LIGATURE = 4;
+  private static final int CONTEXT = 5;
+  private static final int CHAINING_CONTEXT = 6;
+  private static final int EXTENSION = 7;
+  private static final int REVERSE_CHAINING_CONTEXT_SINGLE = 8;
+
+  public GSubTableSubsetter() {
+    super(Tag.GSUB, EXTENSION);
+  }
+
+  @Override
+  protected boolean isContextual(int lookupType) {
+    return lookupType == CONTEXT || lookupType == CHAINING_CONTEXT;
+  }
+
+  @Override
+  protected Node subsetSubtable(
+      LayoutSubsetContext context, int lookupType, ReadableFontData data) {
+    switch (lookupType) {
+    case SINGLE:
+      return subsetSingle(context, data);
+    case MULTIPLE:
+      return subsetSequences(context, data, false);
+    case ALTERNATE:
+      return subsetSequences(context, data, true);
+    case LIGATURE:
+      return subsetLigature(context, data);
+    case CONTEXT:
+      return subsetContext(context, data);
+    case CHAINING_CONTEXT:
+      return subsetChainContext(context, data);
+    case REVERSE_CHAINING_CONTEXT_SINGLE:
+      return subsetReverseChainSingle(context, data);
+    default:
+      return null;
+    }
+  }
+
+  private static Node subsetSingle(LayoutSubsetContext context, ReadableFontData data) {
+    int format = data.readUShort(0);
+    int[] glyphs = context.readCoverage(data, data.readUShort(2));
+    List<GlyphEntry<Integer>> entries = new ArrayList<GlyphEntry<Integer>>();
+    for (int i = 0; i < glyphs.length; i++) {
+      int substitute;
+      if (format == 1) {
+        substitute = (glyphs[i] + data.readShort(4)) & 0xffff;
+      } else if (format == 2) {
+        if (i >= data.readUShort(4)) {
+          break;
+        }
+        substitute = data.readUShort(6 + 2 * i);
+      } else {
+        return null;
+      }
+      int newGlyph = context.newGlyph(glyphs[i]);
+      int newSubstitute = context.newGlyph(substitute);
+      if (newGlyph != LayoutSubsetContext.NOT_MAPPED
+          && newSubstitute != LayoutSubsetContext.NOT_MAPPED) {
+        entries.add(new GlyphEntry<Integer>(newGlyph, newSubstitute));
+      }
+    }
+    if (entries.isEmpty()) {
+      return null;
+    }
+    Collections.sort(entries);
+    Node coverage = context.coverage(GlyphEntry.glyphs(entries));
+    int delta = entries.get(0).value - entries.get(0).glyph;
+    boolean constantDelta = true;
+    for (GlyphEntry<Integer> entry : entries) {
+      constantDelta &= entry.value - entry.glyph == delta;
+    }
+    NodeBuilder node = context.newNode();
+    if (constantDelta) {
+      return node.writeUShort(1).writeOffset(coverage).writeUShort(delta & 0xffff).build();
+    }
+    node.writeUShort(2).writeOffset(coverage).writeUShort(entries.size());
+    for (GlyphEntry<Integer> entry : entries) {
+      node.writeUShort(entry.value);
+    }
+    return node.build();
+  }
+
+  /**
+   * Subsets a multiple or alternate substitution; they have the same layout of
+   * a glyph sequence per covered glyph. A multiple substitution is kept only if
+   * its whole sequence is in the subset, an alternate substitution keeps the
+   * alternates that are.
+   */
+  private static Node subsetSequences(
+      LayoutSubsetContext context, ReadableFontData data, boolean alternates) {
+    if (data.readUShort(0) != 1) {
+      return null;
+    }
+    int[] glyphs = context.readCoverage(data, data.readUShort(2));
+    int count = Math.min(glyphs.length, data.readUShort(4));
+    List<GlyphEntry<Node>> entries = new ArrayList<GlyphEntry<Node>>();
+    for (int i = 0; i < count; i++) {
+      int newGlyph = context.newGlyph(glyphs[i]);
+      if (newGlyph == LayoutSubsetContext.NOT_MAPPED) {
+        continue;
+      }
+      ReadableFontData sequence = data.slice(data.readUShort(6 + 2 * i));
+      int glyphCount = sequence.readUShort(0);
+      List<Integer> newSequence = new ArrayList<Integer>(glyphCount);
+      for (int j = 0; j < glyphCount; j++) {
+        int newSubstitute = context.newGlyph(sequence.readUShort(2 + 2 * j));
+        if (newSubstitute != LayoutSubsetContext.NOT_MAPPED) {
+          newSequence.add(newSubstitute);
+        } else if (!alternates) {
+          newSequence = null;
+          break;
+        }
+      }
+      if (newSequence == null || (alternates && newSequence.isEmpty())) {
+        continue;
+      }
+      NodeBuilder sequenceNode = context.newNode().writeUShort(newSequence.size());
+      for (int substitute : newSequence) {
+        sequenceNode.writeUShort(substitute);
+      }
+      entries.add(new GlyphEntry<Node>(newGlyph, sequenceNode.build()));
+    }
+    return coverageIndexedOffsets(context, entries);
+  }
+
+  private static Node subsetLigature(LayoutSubsetContext context, ReadableFontData data) {
+    if (data.readUShort(0) != 1) {
+      return null;
+    }
+    int[] glyphs = context.readCoverage(data, data.readUShort(2));
+    int count = Math.min(glyphs.length, data.readUShort(4));
+    List<GlyphEntry<Node>> entries = new ArrayList<GlyphEntry<Node>>();
+    for (int i = 0; i < count; i++) {
+      int newGlyph = context.newGlyph(glyphs[i]);
+      if (newGlyph == LayoutSubsetContext.NOT_MAPPED) {
+        continue;
+      }
+      ReadableFontData ligatureSet = data.slice(data.readUShort(6 + 2 * i));
+      int ligatureCount = ligatureSet.readUShort(0);
+      List<Node> ligatures = new ArrayList<Node>();
+      for (int j = 0; j < ligatureCount; j++) {
+        ReadableFontData ligature = ligatureSet.slice(ligatureSet.readUShort(2 + 2 * j));
+        Node newLigature = ligature(context, ligature);
+        if (newLigature != null) {
+          ligatures.add(newLigature);
+        }
+      }
+      if (ligatures.isEmpty()) {
+        continue;
+      }
+      NodeBuilder ligatureSetNode = context.newNode().writeUShort(ligatures.size());
+      for (Node ligature : ligatures) {
+        ligatureSetNode.writeOffset(ligature);
+      }
+      entries.add(new GlyphEntry<Node>(newGlyph, ligatureSetNode.build()));
+    }
+    return coverageIndexedOffsets(context, entries);
+  }
+
+  private static Node ligature(LayoutSubsetContext context, ReadableFontData ligature) {
+    int newLigatureGlyph = context.newGlyph(ligature.readUShort(0));
+    if (newLigatureGlyph == LayoutSubsetContext.NOT_MAPPED) {
+      return null;
+    }
+    int componentCount = ligature.readUShort(2);
+    NodeBuilder node = context.newNode().writeUShort(newLigatureGlyph).writeUShort(componentCount);
+    for (int i = 0; i < componentCount - 1; i++) {
+      int newComponent = context.newGlyph(ligature.readUShort(4 + 2 * i));
+      if (newComponent == LayoutSubsetContext.NOT_MAPPED) {
+        return null;
+      }
+      node.writeUShort(newComponent);
+    }
+    return node.build();
+  }
+
+  /**
+   * Writes the common format 1 layout of a coverage and an array of offsets to
+   * per-glyph tables.
+   */
+  private static Node coverageIndexedOffsets(
+      LayoutSubsetContext context, List<GlyphEntry<Node>> entries) {
+    if (entries.isEmpty()) {
+      return null;
+    }
+    Collections.sort(entries);
+    NodeBuilder node = context.newNode().writeUShort(1)
+        .writeOffset(context.coverage(GlyphEntry.glyphs(entries))).writeUShort(entries.size());
+    for (GlyphEntry<Node> entry : entries) {
+      node.writeOffset(entry.value);
+    }
+    return node.build();
+  }
+
+  private static Node subsetReverseChainSingle(
+      LayoutSubsetContext context, ReadableFontData data) {
+    if (data.readUShort(0) != 1) {
+      return null;
+    }
+    int[] glyphs = context.readCoverage(data, data.readUShort(2));
+    int backtrackCount = data.readUShort(4);
+    int lookaheadCountPosition = 6 + 2 * backtrackCount;
+    int lookaheadCount = data.readUShort(lookaheadCountPosition);
+    int glyphCountPosition = lookaheadCountPosition + 2 + 2 * lookaheadCount;
+    int substituteCount = Math.min(glyphs.length, data.readUShort(glyphCountPosition));
+
+    List<GlyphEntry<Integer>> entries = new ArrayList<GlyphEntry<Integer>>();
+    for (int i = 0; i < substituteCount; i++) {
+      int newGlyph = context.newGlyph(glyphs[i]);
+      int newSubstitute =
+          context.newGlyph(data.readUShort(glyphCountPosition + 2 + 2 * i));
+      if (newGlyph != LayoutSubsetContext.NOT_MAPPED
+          && newSubstitute != LayoutSubsetContext.NOT_MAPPED) {
+        entries.add(new GlyphEntry<Integer>(newGlyph, newSubstitute));
+      }
+    }
+    if (entries.isEmpty()) {
+      return null;
+    }
+    Collections.sort(entries);
+    NodeBuilder node = context.newNode().writeUShort(1)
+        .writeOffset(context.coverage(GlyphEntry.glyphs(entries)))
+        .writeUShort(backtrackCount);
+    if (!writeCoverages(context, node, data, 6, backtrackCount)) {
+      return null;
+    }
+    node.writeUShort(lookaheadCount);
+    if (!writeCoverages(context, node, data, lookaheadCountPosition + 2, lookaheadCount)) {
+      return null;
+    }
+    node.writeUShort(entries.size());
+    for (GlyphEntry<Integer> entry : entries) {
+      node.writeUShort(entry.value);
+    }
+    return node.build();
+  }
+}
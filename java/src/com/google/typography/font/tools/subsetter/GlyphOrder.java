@@ -0,0 +1,39 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+
+import java.util.List;
+
+/**
+ * A strategy for choosing the new glyph ids of the glyphs kept by a
+ * {@link RenumberingSubsetter}.
+ */
+public interface GlyphOrder {
+
+  /**
+   * Orders the glyphs of a subset.
+   *
+   * @param font the font being subset
+   * @param glyphs the old glyph ids of the glyphs to keep, in the order given
+   *        to the subsetter
+   * @return the same glyphs in the order of their new glyph ids, with the
+   *         first glyph still first since it is the .notdef glyph
+   */
+  public List<Integer> order(Font font, List<Integer> glyphs);
+}
@@ -100,7 +100,7 @@ public class GlyphRenumberer {
   /**
    * Compute the size, in bytes, of a single composite reference.
    */
-  private static int compositeReferenceSize(int flags) {
+  static int compositeReferenceSize(int flags) {
     int result = 6;
     if ((flags & CompositeGlyph.FLAG_ARG_1_AND_2_ARE_WORDS) != 0) {
       result += 2;
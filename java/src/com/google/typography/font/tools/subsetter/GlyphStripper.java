@@ -36,6 +36,16 @@ public class GlyphStripper {
   }
 
   public Glyph.Builder<? extends Glyph> stripGlyph(Glyph glyph) {
+    return glyphTableBuilder.glyphBuilder(stripGlyphData(glyph));
+  }
+
+  /**
+   * Get the data of the glyph with its hints removed.
+   *
+   * @param glyph the glyph to strip
+   * @return the stripped glyph data, which is empty for an empty glyph
+   */
+  static WritableFontData stripGlyphData(Glyph glyph) {
     WritableFontData newGlyphData = null;
     if (glyph != null && glyph.readFontData().length() > 0) {
       switch (glyph.glyphType()) {
@@ -52,10 +62,10 @@ public class GlyphStripper {
     if (newGlyphData == null) {
       newGlyphData = WritableFontData.createWritableFontData(0);
     }
-    return glyphTableBuilder.glyphBuilder(newGlyphData);
+    return newGlyphData;
   }
 
-  private WritableFontData stripSimpleGlyph(Glyph glyph) {
+  private static WritableFontData stripSimpleGlyph(Glyph glyph) {
     int size = computeSimpleStrippedGlyphSize(glyph);
     int paddedSize = (size + 1) & -2;
     // TODO(stuartg): look into this issue
@@ -80,7 +90,7 @@ public class GlyphStripper {
     return newGlyf;
   }
 
-  private int writeHeaderAndContoursSize(WritableFontData newGlyf, int newGlyfOffset,
+  private static int writeHeaderAndContoursSize(WritableFontData newGlyf, int newGlyfOffset,
       ReadableFontData originalGlyfData, int glyphOffset, SimpleGlyph simpleGlyph) {
     int headerAndNumberOfContoursSize =
         (ReadableFontData.DataSize.SHORT.size() * 5)
@@ -91,12 +101,12 @@ public class GlyphStripper {
     return headerAndNumberOfContoursSize;
   }
 
-  private int writeZeroInstructionLength(WritableFontData newGlyf, int offset) {
+  private static int writeZeroInstructionLength(WritableFontData newGlyf, int offset) {
     newGlyf.writeUShort(offset, 0);
     return ReadableFontData.DataSize.USHORT.size();
   }
 
-  private int writeEndSimpleGlyph(WritableFontData newGlyf, int newGlyfOffset,
+  private static int writeEndSimpleGlyph(WritableFontData newGlyf, int newGlyfOffset,
       ReadableFontData originalGlyfData, int glyphOffset, int length) {
     ReadableFontData originalGlyfSlice = originalGlyfData.slice(glyphOffset, length);
     WritableFontData newGlyfSlice = newGlyf.slice(newGlyfOffset, length);
@@ -105,7 +115,7 @@ public class GlyphStripper {
     return length;
   }
 
-  private WritableFontData stripCompositeGlyph(Glyph glyph) {
+  private static WritableFontData stripCompositeGlyph(Glyph glyph) {
     int dataLength = computeCompositeStrippedGlyphSize(glyph);
     WritableFontData newGlyf = WritableFontData.createWritableFontData(dataLength);
     CompositeGlyph compositeGlyph = (CompositeGlyph) glyph;
@@ -118,7 +128,7 @@ public class GlyphStripper {
     return newGlyf;
   }
 
-  private void overrideCompositeGlyfFlags(WritableFontData slice, int dataLength) {
+  private static void overrideCompositeGlyfFlags(WritableFontData slice, int dataLength) {
     int index = 5 * ReadableFontData.DataSize.USHORT.size();
     int flags = CompositeGlyph.FLAG_MORE_COMPONENTS;
     while ((flags & CompositeGlyph.FLAG_MORE_COMPONENTS) != 0) {
@@ -141,7 +151,7 @@ public class GlyphStripper {
     }
   }
 
-  private int computeSimpleStrippedGlyphSize(Glyph glyph) {
+  private static int computeSimpleStrippedGlyphSize(Glyph glyph) {
     SimpleGlyph simpleGlyph = (SimpleGlyph) glyph;
 
     // Compute instruction size before querying padding, to work around a bug in
@@ -155,11 +165,11 @@ public class GlyphStripper {
     return nonPaddedSimpleGlyphLength;
   }
 
-  private int computeInstructionsSize(SimpleGlyph simpleGlyph) {
+  private static int computeInstructionsSize(SimpleGlyph simpleGlyph) {
     return simpleGlyph.instructionSize() * ReadableFontData.DataSize.BYTE.size();
   }
 
-  private int computeCompositeStrippedGlyphSize(Glyph glyph) {
+  private static int computeCompositeStrippedGlyphSize(Glyph glyph) {
     CompositeGlyph compositeGlyph = (CompositeGlyph) glyph;
     int instructionSize = compositeGlyph.instructionSize();
     int nonPaddedCompositeGlyphLength = compositeGlyph.dataLength() - compositeGlyph.padding();
@@ -0,0 +1,797 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.core.FontHeaderTable;
+import com.google.typography.font.sfntly.table.core.FontHeaderTable.IndexToLocFormat;
+import com.google.typography.font.sfntly.table.core.HorizontalHeaderTable;
+import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
+import com.google.typography.font.sfntly.table.core.OS2Table;
+import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.table.truetype.SimpleGlyph;
+import com.google.typography.font.sfntly.table.variations.FontVariationsTable;
+import com.google.typography.font.sfntly.table.variations.GlyphVariationsTable;
+import com.google.typography.font.sfntly.table.variations.GlyphVariationsTable.TupleVariation;
+import com.google.typography.font.sfntly.table.variations.HorizontalMetricsVariationsTable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies the glyph variations of a variable font at the location of an
+ * {@link Instancer} to the glyf, loca, hmtx and bounding box values, and
+ * leaves out the variation tables.
+ *
+ * The deltas of the points of a glyph are added up in floating point and
+ * rounded once, and the points that a tuple variation has no deltas for are
+ * interpolated from the points of the same contour that it has, as renderers
+ * do. The new advance widths come from the HVAR table if the font has one and
+ * from the phantom points otherwise; a composite glyph with a component that
+ * has USE_MY_METRICS set takes the metrics of that component.
+ *
+ * A glyph is marked as overlapping if it was marked in the variable font, or
+ * if two of its contours overlap in the instance. For a composite glyph only
+ * contours of different components are compared. Contours are compared by
+ * their control polygons: they overlap if their edges cross, or if one is
+ * inside the other and they wind the same way, so holes aren't overlaps.
+ */
+public class GlyphTableInstancer extends TableSubsetterImpl {
+
+  // the flags that mark glyphs whose contours or components may overlap
+  private static final int OVERLAP_SIMPLE = 0x40;
+
+  private static final int FLAG_ON_CURVE = 0x01;
+  private static final int FLAG_X_SHORT = 0x02;
+  private static final int FLAG_Y_SHORT = 0x04;
+  private static final int FLAG_REPEAT = 0x08;
+  private static final int FLAG_X_SAME_OR_POSITIVE = 0x10;
+  private static final int FLAG_Y_SAME_OR_POSITIVE = 0x20;
+
+  private static final int MAX_SHORT_LOCA = 0x1fffe;
+  private static final int MAX_COMPONENT_DEPTH = 16;
+
+  private static final int WEIGHT = Tag.intValue("wght");
+
+  /**
+   * A glyph with its variations applied.
+   */
+  private static final class InstancedGlyph {
+    // -1 for a composite glyph and 0 for an empty one
+    int numberOfContours;
+    // the points of a simple glyph, or the offsets of the components of a
+    // composite glyph
+    int[] x;
+    int[] y;
+    // the x coordinates of the left and right phantom points
+    int left;
+    int right;
+    Glyph glyph;
+    int xMin;
+    int yMin;
+    int xMax;
+    int yMax;
+    // the outline with the components in place, once it is known: the x and
+    // y coordinates, the last point of each contour and, for each contour,
+    // the component that it comes from
+    int[][] outline;
+  }
+
+  protected GlyphTableInstancer() {
+    super(Tag.glyf, Tag.loca, Tag.hmtx, Tag.hhea, Tag.head, Tag.OS_2, Tag.gvar, Tag.HVAR,
+        Tag.fvar, Tag.avar, Tag.cvar, Tag.MVAR, Tag.STAT, Tag.VVAR);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    FontVariationsTable fvar = font.getTable(Tag.fvar);
+    if (!(subsetter instanceof Instancer) || fvar == null) {
+      return false;
+    }
+    GlyphTable glyphTable = font.getTable(Tag.glyf);
+    LocaTable locaTable = font.getTable(Tag.loca);
+    HorizontalMetricsTable hmtx = font.getTable(Tag.hmtx);
+    if (glyphTable == null || locaTable == null || hmtx == null) {
+      throw new IllegalArgumentException(
+          "Only variable fonts with TrueType outlines can be instanced.");
+    }
+    Instancer instancer = (Instancer) subsetter;
+    float[] coordinates = instancer.coordinates();
+    GlyphVariationsTable gvar = font.getTable(Tag.gvar);
+    if (gvar != null && gvar.axisCount() != coordinates.length) {
+      throw new IllegalArgumentException("The gvar and fvar tables have different axes.");
+    }
+    HorizontalMetricsVariationsTable hvar = font.getTable(Tag.HVAR);
+
+    int numGlyphs = locaTable.numGlyphs();
+    InstancedGlyph[] glyphs = new InstancedGlyph[numGlyphs];
+    for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+      glyphs[glyphId] = instanceGlyph(glyphTable, locaTable, hmtx, gvar, glyphId, coordinates);
+    }
+
+    GlyphTable.Builder glyphTableBuilder =
+        (GlyphTable.Builder) fontBuilder.newTableBuilder(Tag.glyf);
+    LocaTable.Builder locaTableBuilder = (LocaTable.Builder) fontBuilder.newTableBuilder(Tag.loca);
+    List<Glyph.Builder<? extends Glyph>> glyphBuilders = glyphTableBuilder.glyphBuilders();
+    List<HorizontalMetricsTableBuilder.LongHorMetric> metrics =
+        new ArrayList<HorizontalMetricsTableBuilder.LongHorMetric>(numGlyphs);
+    int fontXMin = Integer.MAX_VALUE;
+    int fontYMin = Integer.MAX_VALUE;
+    int fontXMax = Integer.MIN_VALUE;
+    int fontYMax = Integer.MIN_VALUE;
+    int minLeftSideBearing = Integer.MAX_VALUE;
+    int minRightSideBearing = Integer.MAX_VALUE;
+    int xMaxExtent = Integer.MIN_VALUE;
+    int glyfSize = 0;
+    for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+      InstancedGlyph glyph = glyphs[glyphId];
+      boolean empty = glyph.numberOfContours == 0;
+      if (!empty) {
+        setBoundingBox(glyphs, glyph, 0);
+      }
+      ReadableFontData data = empty ? glyphTable.readFontData().slice(0, 0)
+          : encode(glyph, hasOverlapFlag(glyph.glyph) || overlaps(glyph.outline));
+      glyfSize += data.length();
+      glyphBuilders.add(glyphTableBuilder.glyphBuilder(data));
+
+      int metricsGlyphId = metricsGlyph(glyphs, glyphId);
+      InstancedGlyph metricsGlyph = glyphs[metricsGlyphId];
+      int advanceWidth = hvar != null
+          ? round(hmtx.advanceWidth(metricsGlyphId)
+              + hvar.advanceWidthDelta(metricsGlyphId, coordinates))
+          : metricsGlyph.right - metricsGlyph.left;
+      advanceWidth = Math.max(0, advanceWidth);
+      int lsb = (empty ? 0 : glyph.xMin) - metricsGlyph.left;
+      metrics.add(new HorizontalMetricsTableBuilder.LongHorMetric(advanceWidth, lsb));
+      if (!empty) {
+        fontXMin = Math.min(fontXMin, glyph.xMin);
+        fontYMin = Math.min(fontYMin, glyph.yMin);
+        fontXMax = Math.max(fontXMax, glyph.xMax);
+        fontYMax = Math.max(fontYMax, glyph.yMax);
+        int extent = lsb + glyph.xMax - glyph.xMin;
+        minLeftSideBearing = Math.min(minLeftSideBearing, lsb);
+        minRightSideBearing = Math.min(minRightSideBearing, advanceWidth - extent);
+        xMaxExtent = Math.max(xMaxExtent, extent);
+      }
+    }
+    locaTableBuilder.setLocaList(glyphTableBuilder.generateLocaList());
+    new HorizontalMetricsTableBuilder(fontBuilder, metrics).build();
+
+    FontHeaderTable.Builder headBuilder =
+        (FontHeaderTable.Builder) fontBuilder.getTableBuilder(Tag.head);
+    if (headBuilder != null) {
+      if (fontXMin <= fontXMax) {
+        headBuilder.setXMin(fontXMin);
+        headBuilder.setYMin(fontYMin);
+        headBuilder.setXMax(fontXMax);
+        headBuilder.setYMax(fontYMax);
+      }
+      if (glyfSize > MAX_SHORT_LOCA) {
+        headBuilder.setIndexToLocFormat(IndexToLocFormat.longOffset);
+      }
+    }
+    HorizontalHeaderTable.Builder hheaBuilder =
+        (HorizontalHeaderTable.Builder) fontBuilder.getTableBuilder(Tag.hhea);
+    if (hheaBuilder != null && xMaxExtent != Integer.MIN_VALUE) {
+      hheaBuilder.setMinLeftSideBearing(minLeftSideBearing);
+      hheaBuilder.setMinRightSideBearing(minRightSideBearing);
+      hheaBuilder.setXMaxExtent(xMaxExtent);
+    }
+    OS2Table.Builder os2Builder = (OS2Table.Builder) fontBuilder.getTableBuilder(Tag.OS_2);
+    int weightAxis = fvar.axisIndex(WEIGHT);
+    if (os2Builder != null && weightAxis >= 0) {
+      os2Builder.setUsWeightClass(
+          Math.max(1, Math.min(1000, round(instancer.axisValue(fvar, weightAxis)))));
+    }
+    return true;
+  }
+
+  /**
+   * Applies the variations to the points of a glyph.
+   */
+  private static InstancedGlyph instanceGlyph(GlyphTable glyphTable, LocaTable locaTable,
+      HorizontalMetricsTable hmtx, GlyphVariationsTable gvar, int glyphId, float[] coordinates) {
+    InstancedGlyph instanced = new InstancedGlyph();
+    int length = locaTable.glyphLength(glyphId);
+    Glyph glyph = length == 0 ? null : glyphTable.glyph(locaTable.glyphOffset(glyphId), length);
+    instanced.glyph = glyph;
+
+    // the points of the glyph, then its phantom points
+    int numberOfPoints;
+    int[] endPoints;
+    float[] x;
+    float[] y;
+    int[] originalX;
+    int[] originalY;
+    if (glyph == null || glyph.numberOfContours() == 0) {
+      instanced.numberOfContours = 0;
+      numberOfPoints = 0;
+      endPoints = new int[0];
+    } else if (glyph instanceof SimpleGlyph) {
+      SimpleGlyph simple = (SimpleGlyph) glyph;
+      instanced.numberOfContours = simple.numberOfContours();
+      endPoints = new int[simple.numberOfContours()];
+      numberOfPoints = 0;
+      for (int contour = 0; contour < endPoints.length; contour++) {
+        numberOfPoints += simple.numberOfPoints(contour);
+        endPoints[contour] = numberOfPoints - 1;
+      }
+    } else {
+      instanced.numberOfContours = -1;
+      numberOfPoints = ((CompositeGlyph) glyph).numGlyphs();
+      endPoints = null;
+    }
+    originalX = new int[numberOfPoints + GlyphVariationsTable.PHANTOM_POINTS];
+    originalY = new int[originalX.length];
+    if (instanced.numberOfContours > 0) {
+      SimpleGlyph simple = (SimpleGlyph) glyph;
+      int point = 0;
+      for (int contour = 0; contour < endPoints.length; contour++) {
+        for (int i = 0; i < simple.numberOfPoints(contour); i++, point++) {
+          originalX[point] = simple.xCoordinate(contour, i);
+          originalY[point] = simple.yCoordinate(contour, i);
+        }
+      }
+    } else if (instanced.numberOfContours < 0) {
+      CompositeGlyph composite = (CompositeGlyph) glyph;
+      for (int i = 0; i < numberOfPoints; i++) {
+        if ((composite.flags(i) & CompositeGlyph.FLAG_ARGS_ARE_XY_VALUES) != 0) {
+          originalX[i] = argument(composite, i, false);
+          originalY[i] = argument(composite, i, true);
+        }
+      }
+    }
+    int xMin = glyph == null ? 0 : glyph.xMin();
+    originalX[numberOfPoints] = xMin - hmtx.leftSideBearing(glyphId);
+    originalX[numberOfPoints + 1] = originalX[numberOfPoints] + hmtx.advanceWidth(glyphId);
+
+    x = new float[originalX.length];
+    y = new float[originalY.length];
+    for (int i = 0; i < x.length; i++) {
+      x[i] = originalX[i];
+      y[i] = originalY[i];
+    }
+    if (gvar != null) {
+      for (TupleVariation variation : gvar.tupleVariations(glyphId, x.length)) {
+        float scalar = variation.scalar(coordinates);
+        if (scalar == 0) {
+          continue;
+        }
+        if (variation.allPoints() || instanced.numberOfContours <= 0) {
+          for (int i = 0; i < variation.numberOfDeltas(); i++) {
+            x[variation.point(i)] += scalar * variation.xDelta(i);
+            y[variation.point(i)] += scalar * variation.yDelta(i);
+          }
+        } else {
+          applyInterpolated(variation, scalar, endPoints, originalX, originalY, x, y);
+        }
+      }
+    }
+
+    instanced.x = new int[numberOfPoints];
+    instanced.y = new int[numberOfPoints];
+    for (int i = 0; i < numberOfPoints; i++) {
+      instanced.x[i] = round(x[i]);
+      instanced.y[i] = round(y[i]);
+    }
+    instanced.left = round(x[numberOfPoints]);
+    instanced.right = round(x[numberOfPoints + 1]);
+    if (instanced.numberOfContours > 0) {
+      // each contour of a simple glyph is compared with the others
+      int[] components = new int[endPoints.length];
+      for (int contour = 0; contour < components.length; contour++) {
+        components[contour] = contour;
+      }
+      instanced.outline = new int[][] {instanced.x, instanced.y, endPoints, components};
+    }
+    return instanced;
+  }
+
+  /**
+   * Gets the glyph whose metrics a glyph uses: the component with
+   * USE_MY_METRICS set for a composite glyph that has one, followed through
+   * nested composite glyphs, and the glyph itself otherwise.
+   */
+  private static int metricsGlyph(InstancedGlyph[] glyphs, int glyphId) {
+    for (int depth = 0; depth <= MAX_COMPONENT_DEPTH; depth++) {
+      InstancedGlyph glyph = glyphs[glyphId];
+      if (glyph.numberOfContours >= 0) {
+        return glyphId;
+      }
+      CompositeGlyph composite = (CompositeGlyph) glyph.glyph;
+      int next = -1;
+      for (int component = 0; component < composite.numGlyphs(); component++) {
+        if ((composite.flags(component) & CompositeGlyph.FLAG_USE_MY_METRICS) != 0
+            && composite.glyphIndex(component) < glyphs.length) {
+          next = composite.glyphIndex(component);
+          break;
+        }
+      }
+      if (next < 0) {
+        return glyphId;
+      }
+      glyphId = next;
+    }
+    return glyphId;
+  }
+
+  /**
+   * Whether the glyph is marked as overlapping in the variable font.
+   */
+  private static boolean hasOverlapFlag(Glyph glyph) {
+    if (glyph instanceof CompositeGlyph) {
+      CompositeGlyph composite = (CompositeGlyph) glyph;
+      return composite.numGlyphs() > 0
+          && (composite.flags(0) & CompositeGlyph.FLAG_OVERLAP_COMPOUND) != 0;
+    }
+    SimpleGlyph simple = (SimpleGlyph) glyph;
+    if (simple.numberOfContours() <= 0) {
+      return false;
+    }
+    // the first flag follows the end points and the instructions
+    int flags = 10 + 2 * simple.numberOfContours() + 2 + simple.instructionSize();
+    ReadableFontData data = simple.readFontData();
+    return flags < data.length() && (data.readUByte(flags) & OVERLAP_SIMPLE) != 0;
+  }
+
+  /**
+   * Whether two contours of an outline that come from different components
+   * overlap.
+   */
+  private static boolean overlaps(int[][] outline) {
+    int[] x = outline[0];
+    int[] y = outline[1];
+    int[] ends = outline[2];
+    int[] components = outline[3];
+    int[][] boxes = new int[ends.length][];
+    for (int contour = 0; contour < ends.length; contour++) {
+      int start = contour == 0 ? 0 : ends[contour - 1] + 1;
+      int[] box = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+      for (int i = start; i <= ends[contour]; i++) {
+        box[0] = Math.min(box[0], x[i]);
+        box[1] = Math.min(box[1], y[i]);
+        box[2] = Math.max(box[2], x[i]);
+        box[3] = Math.max(box[3], y[i]);
+      }
+      boxes[contour] = box;
+    }
+    for (int a = 0; a < ends.length; a++) {
+      int startA = a == 0 ? 0 : ends[a - 1] + 1;
+      for (int b = a + 1; b < ends.length; b++) {
+        int startB = ends[b - 1] + 1;
+        if (components[a] == components[b]) {
+          continue;
+        }
+        if (ends[a] < startA || ends[b] < startB || boxes[a][0] > boxes[b][2]
+            || boxes[b][0] > boxes[a][2] || boxes[a][1] > boxes[b][3]
+            || boxes[b][1] > boxes[a][3]) {
+          continue;
+        }
+        if (contoursOverlap(x, y, startA, ends[a], startB, ends[b])) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Applies a tuple variation that only has deltas for some points of a
+   * simple glyph. The deltas of the other points of each contour are
+   * interpolated from the points before and after them that have deltas.
+   */
+  private static void applyInterpolated(TupleVariation variation, float scalar, int[] endPoints,
+      int[] originalX, int[] originalY, float[] x, float[] y) {
+    int numberOfPoints = endPoints.length == 0 ? 0 : endPoints[endPoints.length - 1] + 1;
+    boolean[] touched = new boolean[originalX.length];
+    float[] dx = new float[originalX.length];
+    float[] dy = new float[originalX.length];
+    for (int i = 0; i < variation.numberOfDeltas(); i++) {
+      int point = variation.point(i);
+      touched[point] = true;
+      dx[point] = variation.xDelta(i);
+      dy[point] = variation.yDelta(i);
+    }
+    int start = 0;
+    for (int end : endPoints) {
+      interpolate(start, end, touched, originalX, dx);
+      interpolate(start, end, touched, originalY, dy);
+      start = end + 1;
+    }
+    for (int i = 0; i < originalX.length; i++) {
+      if (touched[i] || i < numberOfPoints) {
+        x[i] += scalar * dx[i];
+        y[i] += scalar * dy[i];
+      }
+    }
+  }
+
+  /**
+   * Interpolates the deltas of the untouched points of one contour on one
+   * axis.
+   */
+  private static void interpolate(
+      int start, int end, boolean[] touched, int[] original, float[] deltas) {
+    int firstTouched = -1;
+    for (int i = start; i <= end; i++) {
+      if (touched[i]) {
+        firstTouched = i;
+        break;
+      }
+    }
+    if (firstTouched < 0) {
+      return;
+    }
+    int previous = firstTouched;
+    int count = end - start + 1;
+    for (int step = 1; step <= count; step++) {
+      int point = start + (firstTouched - start + step) % count;
+      if (!touched[point]) {
+        continue;
+      }
+      // interpolate the points between the previous touched point and this one
+      for (int between = start + (previous - start + 1) % count; between != point;
+          between = start + (between - start + 1) % count) {
+        deltas[between] = interpolate(original[between], original[previous], deltas[previous],
+            original[point], deltas[point]);
+      }
+      previous = point;
+    }
+  }
+
+  private static float interpolate(int coordinate, int coordinate1, float delta1,
+      int coordinate2, float delta2) {
+    if (coordinate1 == coordinate2) {
+      return delta1 == delta2 ? delta1 : 0;
+    }
+    if (coordinate1 > coordinate2) {
+      int c = coordinate1;
+      coordinate1 = coordinate2;
+      coordinate2 = c;
+      float d = delta1;
+      delta1 = delta2;
+      delta2 = d;
+    }
+    if (coordinate <= coordinate1) {
+      return delta1;
+    }
+    if (coordinate >= coordinate2) {
+      return delta2;
+    }
+    return delta1 + (coordinate - coordinate1) * (delta2 - delta1) / (coordinate2 - coordinate1);
+  }
+
+  /**
+   * Works out the bounding box of a glyph, which for a composite glyph needs
+   * the outlines of its components.
+   */
+  private static void setBoundingBox(InstancedGlyph[] glyphs, InstancedGlyph glyph, int depth) {
+    int[][] outline = outline(glyphs, glyph, depth);
+    int[] x = outline[0];
+    int[] y = outline[1];
+    if (x.length == 0) {
+      glyph.xMin = glyph.yMin = glyph.xMax = glyph.yMax = 0;
+      return;
+    }
+    glyph.xMin = glyph.xMax = x[0];
+    glyph.yMin = glyph.yMax = y[0];
+    for (int i = 1; i < x.length; i++) {
+      glyph.xMin = Math.min(glyph.xMin, x[i]);
+      glyph.xMax = Math.max(glyph.xMax, x[i]);
+      glyph.yMin = Math.min(glyph.yMin, y[i]);
+      glyph.yMax = Math.max(glyph.yMax, y[i]);
+    }
+  }
+
+  private static int[][] outline(InstancedGlyph[] glyphs, InstancedGlyph glyph, int depth) {
+    if (glyph.outline != null) {
+      return glyph.outline;
+    }
+    if (glyph.numberOfContours == 0 || depth > MAX_COMPONENT_DEPTH) {
+      return new int[][] {new int[0], new int[0], new int[0], new int[0]};
+    }
+    CompositeGlyph composite = (CompositeGlyph) glyph.glyph;
+    List<int[]> points = new ArrayList<int[]>();
+    List<int[]> contours = new ArrayList<int[]>();
+    for (int component = 0; component < composite.numGlyphs(); component++) {
+      int glyphIndex = composite.glyphIndex(component);
+      if (glyphIndex >= glyphs.length) {
+        continue;
+      }
+      int[][] child = outline(glyphs, glyphs[glyphIndex], depth + 1);
+      float[] transform = transform(composite, component);
+      int flags = composite.flags(component);
+      int[][] placed = new int[child[0].length][];
+      for (int i = 0; i < placed.length; i++) {
+        float cx = child[0][i];
+        float cy = child[1][i];
+        placed[i] = new int[] {round(transform[0] * cx + transform[2] * cy),
+            round(transform[1] * cx + transform[3] * cy)};
+      }
+      int offsetX;
+      int offsetY;
+      if ((flags & CompositeGlyph.FLAG_ARGS_ARE_XY_VALUES) != 0) {
+        offsetX = glyph.x[component];
+        offsetY = glyph.y[component];
+      } else {
+        // the component is placed so that its point matches a point of the
+        // components before it
+        int parentPoint = argument(composite, component, false);
+        int childPoint = argument(composite, component, true);
+        if (parentPoint < points.size() && childPoint < placed.length) {
+          offsetX = points.get(parentPoint)[0] - placed[childPoint][0];
+          offsetY = points.get(parentPoint)[1] - placed[childPoint][1];
+        } else {
+          offsetX = offsetY = 0;
+        }
+      }
+      for (int contour = 0; contour < child[2].length; contour++) {
+        contours.add(new int[] {points.size() + child[2][contour], component});
+      }
+      for (int[] point : placed) {
+        points.add(new int[] {point[0] + offsetX, point[1] + offsetY});
+      }
+    }
+    int[][] result = new int[][] {new int[points.size()], new int[points.size()],
+        new int[contours.size()], new int[contours.size()]};
+    for (int i = 0; i < points.size(); i++) {
+      result[0][i] = points.get(i)[0];
+      result[1][i] = points.get(i)[1];
+    }
+    for (int i = 0; i < contours.size(); i++) {
+      result[2][i] = contours.get(i)[0];
+      result[3][i] = contours.get(i)[1];
+    }
+    glyph.outline = result;
+    return result;
+  }
+
+  /**
+   * Whether two contours overlap, judged by their control polygons.
+   */
+  private static boolean contoursOverlap(
+      int[] x, int[] y, int startA, int endA, int startB, int endB) {
+    for (int a = startA; a <= endA; a++) {
+      int nextA = a == endA ? startA : a + 1;
+      for (int b = startB; b <= endB; b++) {
+        int nextB = b == endB ? startB : b + 1;
+        if (edgesCross(x[a], y[a], x[nextA], y[nextA], x[b], y[b], x[nextB], y[nextB])) {
+          return true;
+        }
+      }
+    }
+    // without crossings one contour is inside the other or they are apart;
+    // a contour inside another that winds the opposite way is a hole
+    long areaA = signedArea(x, y, startA, endA);
+    long areaB = signedArea(x, y, startB, endB);
+    if ((areaA > 0) != (areaB > 0)) {
+      return false;
+    }
+    return inside(x[startA], y[startA], x, y, startB, endB)
+        || inside(x[startB], y[startB], x, y, startA, endA);
+  }
+
+  private static boolean edgesCross(
+      int x1, int y1, int x2, int y2, int x3, int y3, int x4, int y4) {
+    long d1 = cross(x3, y3, x4, y4, x1, y1);
+    long d2 = cross(x3, y3, x4, y4, x2, y2);
+    long d3 = cross(x1, y1, x2, y2, x3, y3);
+    long d4 = cross(x1, y1, x2, y2, x4, y4);
+    // only proper crossings; contours that just touch don't overlap
+    return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0))
+        && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+  }
+
+  private static long cross(int x1, int y1, int x2, int y2, int x, int y) {
+    return (long) (x2 - x1) * (y - y1) - (long) (y2 - y1) * (x - x1);
+  }
+
+  private static long signedArea(int[] x, int[] y, int start, int end) {
+    long area = 0;
+    for (int i = start; i <= end; i++) {
+      int next = i == end ? start : i + 1;
+      area += (long) x[i] * y[next] - (long) x[next] * y[i];
+    }
+    return area;
+  }
+
+  // whether the point is inside the contour, by the even-odd rule
+  private static boolean inside(int px, int py, int[] x, int[] y, int start, int end) {
+    boolean inside = false;
+    for (int i = start; i <= end; i++) {
+      int next = i == end ? start : i + 1;
+      if ((y[i] > py) != (y[next] > py)
+          && px < x[i] + (double) (x[next] - x[i]) * (py - y[i]) / (y[next] - y[i])) {
+        inside = !inside;
+      }
+    }
+    return inside;
+  }
+
+  /**
+   * Gets the 2x2 transformation of a component, as xx, xy, yx, yy.
+   */
+  private static float[] transform(CompositeGlyph composite, int component) {
+    int flags = composite.flags(component);
+    ReadableFontData data = ReadableFontData.createReadableFontData(
+        composite.transformation(component));
+    if ((flags & CompositeGlyph.FLAG_WE_HAVE_A_SCALE) != 0) {
+      float scale = data.readShort(0) / 16384f;
+      return new float[] {scale, 0, 0, scale};
+    } else if ((flags & CompositeGlyph.FLAG_WE_HAVE_AN_X_AND_Y_SCALE) != 0) {
+      return new float[] {data.readShort(0) / 16384f, 0, 0, data.readShort(2) / 16384f};
+    } else if ((flags & CompositeGlyph.FLAG_WE_HAVE_A_TWO_BY_TWO) != 0) {
+      return new float[] {data.readShort(0) / 16384f, data.readShort(2) / 16384f,
+          data.readShort(4) / 16384f, data.readShort(6) / 16384f};
+    }
+    return new float[] {1, 0, 0, 1};
+  }
+
+  /**
+   * Gets an argument of a component: a signed offset if the arguments are x
+   * and y values, and an unsigned point number otherwise.
+   */
+  private static int argument(CompositeGlyph composite, int component, boolean second) {
+    int flags = composite.flags(component);
+    int value = second ? composite.argument2(component) : composite.argument1(component);
+    boolean words = (flags & CompositeGlyph.FLAG_ARG_1_AND_2_ARE_WORDS) != 0;
+    if ((flags & CompositeGlyph.FLAG_ARGS_ARE_XY_VALUES) != 0) {
+      return words ? (short) value : (byte) value;
+    }
+    return words ? value & 0xffff : value & 0xff;
+  }
+
+  private static ReadableFontData encode(InstancedGlyph glyph, boolean overlap) {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    writeShort(os, glyph.numberOfContours);
+    writeShort(os, glyph.xMin);
+    writeShort(os, glyph.yMin);
+    writeShort(os, glyph.xMax);
+    writeShort(os, glyph.yMax);
+    if (glyph.numberOfContours > 0) {
+      encodeSimple((SimpleGlyph) glyph.glyph, glyph, overlap, os);
+    } else {
+      encodeComposite((CompositeGlyph) glyph.glyph, glyph, overlap, os);
+    }
+    if ((os.size() & 1) != 0) {
+      // keep the glyphs at even offsets for the short loca format
+      os.write(0);
+    }
+    return ReadableFontData.createReadableFontData(os.toByteArray());
+  }
+
+  private static void encodeSimple(
+      SimpleGlyph simple, InstancedGlyph glyph, boolean overlap, ByteArrayOutputStream os) {
+    int point = 0;
+    boolean[] onCurve = new boolean[glyph.x.length];
+    for (int contour = 0; contour < glyph.numberOfContours; contour++) {
+      for (int i = 0; i < simple.numberOfPoints(contour); i++) {
+        onCurve[point++] = simple.onCurve(contour, i);
+      }
+      writeShort(os, point - 1);
+    }
+    ReadableFontData instructions = simple.instructions();
+    writeShort(os, instructions.length());
+    writeData(os, instructions);
+
+    int[] flags = new int[glyph.x.length];
+    ByteArrayOutputStream xs = new ByteArrayOutputStream();
+    ByteArrayOutputStream ys = new ByteArrayOutputStream();
+    int lastX = 0;
+    int lastY = 0;
+    for (int i = 0; i < flags.length; i++) {
+      flags[i] = onCurve[i] ? FLAG_ON_CURVE : 0;
+      flags[i] |= encodeCoordinate(glyph.x[i] - lastX, xs, FLAG_X_SHORT, FLAG_X_SAME_OR_POSITIVE);
+      flags[i] |= encodeCoordinate(glyph.y[i] - lastY, ys, FLAG_Y_SHORT, FLAG_Y_SAME_OR_POSITIVE);
+      lastX = glyph.x[i];
+      lastY = glyph.y[i];
+    }
+    if (overlap && flags.length > 0) {
+      flags[0] |= OVERLAP_SIMPLE;
+    }
+    for (int i = 0; i < flags.length;) {
+      int repeat = 0;
+      while (i + repeat + 1 < flags.length && flags[i + repeat + 1] == flags[i] && repeat < 255) {
+        repeat++;
+      }
+      if (repeat > 1) {
+        os.write(flags[i] | FLAG_REPEAT);
+        os.write(repeat);
+      } else {
+        os.write(flags[i]);
+        repeat = 0;
+      }
+      i += repeat + 1;
+    }
+    os.write(xs.toByteArray(), 0, xs.size());
+    os.write(ys.toByteArray(), 0, ys.size());
+  }
+
+  private static int encodeCoordinate(
+      int delta, ByteArrayOutputStream os, int shortFlag, int sameOrPositiveFlag) {
+    if (delta == 0) {
+      return sameOrPositiveFlag;
+    }
+    if (delta >= -255 && delta <= 255) {
+      os.write(Math.abs(delta));
+      return delta > 0 ? shortFlag | sameOrPositiveFlag : shortFlag;
+    }
+    writeShort(os, delta);
+    return 0;
+  }
+
+  private static void encodeComposite(
+      CompositeGlyph composite, InstancedGlyph glyph, boolean overlap, ByteArrayOutputStream os) {
+    int flags = 0;
+    for (int component = 0; component < composite.numGlyphs(); component++) {
+      flags = composite.flags(component) & ~CompositeGlyph.FLAG_OVERLAP_COMPOUND;
+      if (component == 0 && overlap) {
+        flags |= CompositeGlyph.FLAG_OVERLAP_COMPOUND;
+      }
+      int argument1;
+      int argument2;
+      if ((flags & CompositeGlyph.FLAG_ARGS_ARE_XY_VALUES) != 0) {
+        argument1 = glyph.x[component];
+        argument2 = glyph.y[component];
+        boolean bytes = argument1 >= -128 && argument1 <= 127
+            && argument2 >= -128 && argument2 <= 127;
+        flags = bytes ? flags & ~CompositeGlyph.FLAG_ARG_1_AND_2_ARE_WORDS
+            : flags | CompositeGlyph.FLAG_ARG_1_AND_2_ARE_WORDS;
+      } else {
+        argument1 = argument(composite, component, false);
+        argument2 = argument(composite, component, true);
+      }
+      writeShort(os, flags);
+      writeShort(os, composite.glyphIndex(component));
+      if ((flags & CompositeGlyph.FLAG_ARG_1_AND_2_ARE_WORDS) != 0) {
+        writeShort(os, argument1);
+        writeShort(os, argument2);
+      } else {
+        os.write(argument1);
+        os.write(argument2);
+      }
+      byte[] transformation = composite.transformation(component);
+      os.write(transformation, 0, transformation.length);
+    }
+    if ((flags & CompositeGlyph.FLAG_WE_HAVE_INSTRUCTIONS) != 0) {
+      ReadableFontData instructions = composite.instructions();
+      writeShort(os, instructions.length());
+      writeData(os, instructions);
+    }
+  }
+
+  private static void writeShort(ByteArrayOutputStream os, int value) {
+    os.write(value >> 8);
+    os.write(value);
+  }
+
+  private static void writeData(ByteArrayOutputStream os, ReadableFontData data) {
+    byte[] b = new byte[data.length()];
+    data.readBytes(0, b, 0, b.length);
+    os.write(b, 0, b.length);
+  }
+
+  private static int round(float value) {
+    return (int) Math.floor(value + 0.5f);
+  }
+}
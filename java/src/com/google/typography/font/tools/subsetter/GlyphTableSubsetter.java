@@ -58,6 +58,10 @@ public class GlyphTableSubsetter extends TableSubsetterImpl {
     GlyphTable glyphTable = font.getTable(Tag.glyf);
     LocaTable locaTable = font.getTable(Tag.loca);
     if (glyphTable == null || locaTable == null) {
+      if (font.hasTable(Tag.CFF)) {
+        // PostScript outlines are subset by the CffTableSubsetter
+        return false;
+      }
       throw new RuntimeException("Font to subset is not valid.");
     }
 
@@ -68,6 +72,7 @@ public class GlyphTableSubsetter extends TableSubsetterImpl {
       throw new RuntimeException("Builder for subset is not valid.");
     }
     Map<Integer, Integer> inverseMap = subsetter.getInverseMapping();
+    List<GlyphTransform> glyphTransforms = subsetter.glyphTransforms();
 
     List<Glyph.Builder<? extends Glyph>> glyphBuilders = glyphTableBuilder.glyphBuilders();
     for (int oldGlyphId : permutationTable) {
@@ -77,6 +82,16 @@ public class GlyphTableSubsetter extends TableSubsetterImpl {
       int oldLength = locaTable.glyphLength(oldGlyphId);
       Glyph glyph = glyphTable.glyph(oldOffset, oldLength);
       ReadableFontData data = glyph.readFontData();
+      for (GlyphTransform glyphTransform : glyphTransforms) {
+        if (glyph == null) {
+          glyph = glyphTableBuilder.glyphBuilder(data).build();
+        }
+        ReadableFontData transformedData = glyphTransform.transform(subsetter, glyph);
+        if (transformedData != data) {
+          data = transformedData;
+          glyph = null;
+        }
+      }
       ReadableFontData renumberedData = GlyphRenumberer.renumberGlyph(data, inverseMap);
       Glyph.Builder<? extends Glyph> glyphBuilder = glyphTableBuilder.glyphBuilder(renumberedData);
       if (DEBUG) {
@@ -89,6 +104,11 @@ public class GlyphTableSubsetter extends TableSubsetterImpl {
       glyphBuilders.add(glyphBuilder);
 
     }
+    int deduplicated = 0;
+    // a deduplicated glyph has different points from its glyph variations
+    if (subsetter.deduplicateGlyphs() && !font.hasTable(Tag.gvar)) {
+      deduplicated = glyphTableBuilder.deduplicateGlyphs();
+    }
     List<Integer> locaList = glyphTableBuilder.generateLocaList();
     if (DEBUG) {
       System.out.println("\tlocaList = " + locaList);
@@ -97,6 +117,15 @@ public class GlyphTableSubsetter extends TableSubsetterImpl {
     MaximumProfileTable.Builder maxpBuilder =
       (MaximumProfileTable.Builder) fontBuilder.getTableBuilder(Tag.maxp);
     maxpBuilder.setNumGlyphs(locaTableBuilder.numGlyphs());
+    if (deduplicated > 0) {
+      // the duplicates are now composite glyphs with one component
+      maxpBuilder.setMaxComponentElements(Math.max(1, maxpBuilder.maxComponentElements()));
+      maxpBuilder.setMaxComponentDepth(Math.max(1, maxpBuilder.maxComponentDepth()));
+      maxpBuilder.setMaxCompositePoints(Math.max(
+          glyphTableBuilder.maxDeduplicatedPoints(), maxpBuilder.maxCompositePoints()));
+      maxpBuilder.setMaxCompositeContours(Math.max(
+          glyphTableBuilder.maxDeduplicatedContours(), maxpBuilder.maxCompositeContours()));
+    }
     return true;
   }
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+
+/**
+ * A change to the TrueType outline of each glyph that is kept by a subsetter.
+ * The transforms added to a {@link Subsetter} are applied in order, in the
+ * same pass over the glyph table that copies and renumbers the glyphs.
+ */
+public interface GlyphTransform {
+
+  /**
+   * Transforms one glyph.
+   *
+   * @param subsetter the subsetter doing the subsetting
+   * @param glyph the glyph as left by the previous transforms
+   * @return the new glyph data, or the glyph's own data if it is unchanged
+   */
+  public ReadableFontData transform(Subsetter subsetter, Glyph glyph);
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.variations.GlyphVariationsTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Subsets the gvar table. The variation data of each glyph in the subset is
+ * kept as it is, in the new glyph order, and the variation data of the other
+ * glyphs is dropped. The points of a glyph don't change when it is renumbered,
+ * so the data stays valid; the shared tuples are kept whole.
+ */
+public class GlyphVariationsTableSubsetter extends TableSubsetterImpl {
+
+  private static final int HEADER_SIZE = 20;
+  // the largest glyph variation data array that 16 bit offsets can address
+  private static final int MAX_SHORT_OFFSET = 0x1fffe;
+
+  protected GlyphVariationsTableSubsetter() {
+    super(Tag.gvar);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    GlyphVariationsTable gvar = font.getTable(Tag.gvar);
+    if (permutationTable == null || gvar == null) {
+      return false;
+    }
+
+    List<ReadableFontData> glyphData = new ArrayList<ReadableFontData>(permutationTable.size());
+    int dataSize = 0;
+    for (int oldGlyphId : permutationTable) {
+      ReadableFontData data = gvar.glyphVariationData(oldGlyphId);
+      glyphData.add(data);
+      dataSize += data.length() + (data.length() & 1);
+    }
+    boolean longOffsets = dataSize > MAX_SHORT_OFFSET;
+    int offsetSize = longOffsets ? 4 : 2;
+    ReadableFontData sharedTuples = gvar.sharedTuples();
+    int sharedTuplesOffset = HEADER_SIZE + offsetSize * (glyphData.size() + 1);
+    int arrayOffset = sharedTuplesOffset + sharedTuples.length();
+
+    WritableFontData newGvar = WritableFontData.createWritableFontData(arrayOffset + dataSize);
+    gvar.readFontData().slice(0, 4).copyTo(newGvar);
+    newGvar.writeUShort(4, gvar.axisCount());
+    newGvar.writeUShort(6, gvar.sharedTupleCount());
+    newGvar.writeULong(8, sharedTuplesOffset);
+    newGvar.writeUShort(12, glyphData.size());
+    int flags = gvar.flags() & ~GlyphVariationsTable.FLAG_LONG_OFFSETS;
+    newGvar.writeUShort(14, longOffsets ? flags | GlyphVariationsTable.FLAG_LONG_OFFSETS : flags);
+    newGvar.writeULong(16, arrayOffset);
+    sharedTuples.copyTo(newGvar.slice(sharedTuplesOffset, sharedTuples.length()));
+
+    int offset = 0;
+    for (int i = 0; i <= glyphData.size(); i++) {
+      int index = HEADER_SIZE + i * offsetSize;
+      if (longOffsets) {
+        newGvar.writeULong(index, offset);
+      } else {
+        newGvar.writeUShort(index, offset / 2);
+      }
+      if (i < glyphData.size()) {
+        ReadableFontData data = glyphData.get(i);
+        if (data.length() > 0) {
+          data.copyTo(newGvar.slice(arrayOffset + offset, data.length()));
+        }
+        // 16 bit offsets are to even positions
+        offset += data.length() + (longOffsets ? 0 : data.length() & 1);
+      }
+    }
+    fontBuilder.newTableBuilder(Tag.gvar, newGvar.slice(0, arrayOffset + offset));
+    return true;
+  }
+}
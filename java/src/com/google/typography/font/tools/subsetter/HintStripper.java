@@ -19,18 +19,13 @@ package com.google.typography.font.tools.subsetter;
 import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.FontFactory;
 
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * @author Raph Levien
  */
 public class HintStripper extends Subsetter {
 
   {
-    Set<TableSubsetter> temp = new HashSet<TableSubsetter>();
-    temp.add(new GlyphTableStripper());
-    tableSubsetters = temp;
+    tableSubsetters.add(new GlyphTableStripper());
   }
 
   public HintStripper(Font font, FontFactory fontFactory) {
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+
+/**
+ * A glyph transform that removes the hinting instructions from each glyph.
+ * The fpgm, prep and cvt tables should be removed along with it.
+ */
+public class HintStrippingGlyphTransform implements GlyphTransform {
+
+  @Override
+  public ReadableFontData transform(Subsetter subsetter, Glyph glyph) {
+    if (glyph.readFontData().length() == 0) {
+      return glyph.readFontData();
+    }
+    return GlyphStripper.stripGlyphData(glyph);
+  }
+}
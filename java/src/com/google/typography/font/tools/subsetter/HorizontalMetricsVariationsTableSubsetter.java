@@ -0,0 +1,171 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.variations.HorizontalMetricsVariationsTable;
+import com.google.typography.font.sfntly.table.variations.ItemVariationStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Subsets the HVAR table. Only the advance width deltas of the glyphs in the
+ * subset are kept: the Item Variation Store is rebuilt with just their delta
+ * sets, and the advance widths are mapped to them with a delta set index map
+ * unless the new glyph ids are the inner indices. The side bearing mappings
+ * are dropped, which leaves the side bearing variations to the phantom points
+ * in the gvar table.
+ */
+public class HorizontalMetricsVariationsTableSubsetter extends TableSubsetterImpl {
+
+  private static final int HEADER_SIZE = 20;
+  private static final int STORE_HEADER_SIZE = 8;
+
+  protected HorizontalMetricsVariationsTableSubsetter() {
+    super(Tag.HVAR);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    HorizontalMetricsVariationsTable hvar = font.getTable(Tag.HVAR);
+    if (permutationTable == null || hvar == null) {
+      return false;
+    }
+    ItemVariationStore store = hvar.itemVariationStore();
+
+    // the delta sets used, in the order of first use, by outer index
+    Map<Integer, Integer> newOuters = new HashMap<Integer, Integer>();
+    List<Integer> oldOuters = new ArrayList<Integer>();
+    List<List<Integer>> oldInners = new ArrayList<List<Integer>>();
+    Map<Integer, Integer> newIndices = new HashMap<Integer, Integer>();
+    int[] mapping = new int[permutationTable.size()];
+    boolean identity = true;
+    for (int i = 0; i < mapping.length; i++) {
+      int oldIndex = hvar.advanceWidthIndex(permutationTable.get(i));
+      int outer = oldIndex >>> 16;
+      int inner = oldIndex & 0xffff;
+      if (outer >= store.itemVariationDataCount() || inner >= store.itemCount(outer)) {
+        throw new IllegalArgumentException("HVAR refers to a missing delta set.");
+      }
+      Integer newIndex = newIndices.get(oldIndex);
+      if (newIndex == null) {
+        Integer newOuter = newOuters.get(outer);
+        if (newOuter == null) {
+          newOuter = oldOuters.size();
+          newOuters.put(outer, newOuter);
+          oldOuters.add(outer);
+          oldInners.add(new ArrayList<Integer>());
+        }
+        List<Integer> inners = oldInners.get(newOuter);
+        newIndex = newOuter << 16 | inners.size();
+        inners.add(inner);
+        newIndices.put(oldIndex, newIndex);
+      }
+      mapping[i] = newIndex;
+      identity &= newIndex == i;
+    }
+
+    byte[] indexMap = identity ? null : deltaSetIndexMap(mapping);
+    int storeOffset = HEADER_SIZE + (indexMap == null ? 0 : indexMap.length);
+    ReadableFontData regionList = store.regionList();
+    int size = STORE_HEADER_SIZE + 4 * oldOuters.size() + regionList.length();
+    for (int newOuter = 0; newOuter < oldOuters.size(); newOuter++) {
+      int outer = oldOuters.get(newOuter);
+      size += store.itemVariationDataHeader(outer).length()
+          + oldInners.get(newOuter).size() * store.deltaSet(outer, 0).length();
+    }
+
+    WritableFontData newHvar = WritableFontData.createWritableFontData(storeOffset + size);
+    hvar.readFontData().slice(0, 4).copyTo(newHvar);
+    newHvar.writeULong(4, storeOffset);
+    newHvar.writeULong(8, indexMap == null ? 0 : HEADER_SIZE);
+    if (indexMap != null) {
+      newHvar.writeBytes(HEADER_SIZE, indexMap);
+    }
+
+    WritableFontData newStore = newHvar.slice(storeOffset);
+    int index = STORE_HEADER_SIZE + 4 * oldOuters.size();
+    newStore.writeUShort(0, 1);
+    newStore.writeULong(2, index);
+    newStore.writeUShort(6, oldOuters.size());
+    index += regionList.copyTo(newStore.slice(index, regionList.length()));
+    for (int newOuter = 0; newOuter < oldOuters.size(); newOuter++) {
+      int outer = oldOuters.get(newOuter);
+      newStore.writeULong(STORE_HEADER_SIZE + 4 * newOuter, index);
+      ReadableFontData header = store.itemVariationDataHeader(outer);
+      header.copyTo(newStore.slice(index, header.length()));
+      newStore.writeUShort(index, oldInners.get(newOuter).size());
+      index += header.length();
+      for (int inner : oldInners.get(newOuter)) {
+        ReadableFontData deltaSet = store.deltaSet(outer, inner);
+        if (deltaSet.length() > 0) {
+          index += deltaSet.copyTo(newStore.slice(index, deltaSet.length()));
+        }
+      }
+    }
+    fontBuilder.newTableBuilder(Tag.HVAR, newHvar);
+    return true;
+  }
+
+  /**
+   * Makes a delta set index map with the smallest entries that hold the
+   * outer and inner indices.
+   *
+   * @param mapping the outer index in the high 16 bits and the inner index in
+   *        the low 16 bits, for each glyph
+   * @return the delta set index map
+   */
+  private static byte[] deltaSetIndexMap(int[] mapping) {
+    int outerMask = 0;
+    int innerMask = 0;
+    for (int index : mapping) {
+      outerMask |= index >>> 16;
+      innerMask |= index & 0xffff;
+    }
+    int innerBits = Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(innerMask));
+    int outerBits = Integer.SIZE - Integer.numberOfLeadingZeros(outerMask);
+    int entrySize = Math.max(1, (innerBits + outerBits + 7) / 8);
+    boolean longCount = mapping.length > 0xffff;
+    int headerSize = longCount ? 6 : 4;
+    WritableFontData map =
+        WritableFontData.createWritableFontData(headerSize + mapping.length * entrySize);
+    map.writeByte(0, (byte) (longCount ? 1 : 0));
+    map.writeByte(1, (byte) ((entrySize - 1) << 4 | (innerBits - 1)));
+    if (longCount) {
+      map.writeULong(2, mapping.length);
+    } else {
+      map.writeUShort(2, mapping.length);
+    }
+    for (int i = 0; i < mapping.length; i++) {
+      int entry = (mapping[i] >>> 16) << innerBits | (mapping[i] & 0xffff);
+      for (int b = 0; b < entrySize; b++) {
+        map.writeByte(headerSize + i * entrySize + b,
+            (byte) (entry >> (8 * (entrySize - 1 - b))));
+      }
+    }
+    byte[] bytes = new byte[map.length()];
+    map.readBytes(0, bytes, 0, bytes.length);
+    return bytes;
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Makes subsets of a font that grow as more glyphs are needed, and the patches
+ * from each subset to the next. The glyphs already sent keep their glyph ids
+ * in the next subset so that the patch only has to carry the added glyphs and
+ * the small tables that depend on the glyph set.
+ *
+ * A typical use is to subset with the glyphs for the first text, and then
+ * for more text:
+ *
+ * <pre>
+ * List&lt;Integer&gt; next = incrementalSubsetter.nextGlyphs(glyphs);
+ * byte[] patch = incrementalSubsetter.patch(incrementalSubsetter.glyphOrder(), next);
+ * </pre>
+ *
+ * The patch is applied to the previous subset with {@link FontPatchApplier}.
+ * An incremental subsetter remembers the last subset it made, so that the
+ * next patch can start from it without subsetting it again; it must not be
+ * shared between threads.
+ */
+public class IncrementalSubsetter {
+
+  private final Font font;
+  private final FontFactory fontFactory;
+  private Set<Integer> removeTables;
+  private final List<GlyphTransform> glyphTransforms = new ArrayList<GlyphTransform>();
+
+  // the glyph order of the last subset made, and the subset if it was built
+  // here
+  private List<Integer> lastGlyphs;
+  private Font lastSubset;
+
+  public IncrementalSubsetter(Font font, FontFactory fontFactory) {
+    this.font = font;
+    this.fontFactory = fontFactory;
+  }
+
+  public void setRemoveTables(Set<Integer> removeTables) {
+    this.removeTables = new HashSet<Integer>(removeTables);
+    this.lastSubset = null;
+  }
+
+  /**
+   * Add a transform to apply to each glyph. The transforms must always give
+   * the same result for a glyph, or the glyphs can't be patched incrementally.
+   *
+   * @param glyphTransform the transform to add
+   */
+  public void addGlyphTransform(GlyphTransform glyphTransform) {
+    this.glyphTransforms.add(glyphTransform);
+    this.lastSubset = null;
+  }
+
+  /**
+   * Gets the glyph order for a subset that has the glyphs of a previous subset
+   * in the same order, followed by the other glyphs in glyph id order.
+   *
+   * The previous glyphs must be the glyph order of the previous subset, as
+   * given to {@link #subset} or {@link #patch} or returned by
+   * {@link #glyphOrder}, and not the glyphs that were asked for before it. A
+   * patch to a glyph order that doesn't start with the previous one can't
+   * append glyphs, so {@link #patch} rejects it.
+   *
+   * @param previousGlyphs the glyph order of the previous subset
+   * @param glyphs the glyphs needed now, which may include glyphs of the
+   *        previous subset
+   * @return the glyph order of the next subset
+   */
+  public static List<Integer> extendGlyphs(
+      List<Integer> previousGlyphs, Collection<Integer> glyphs) {
+    Set<Integer> added = new TreeSet<Integer>(glyphs);
+    added.removeAll(previousGlyphs);
+    List<Integer> extended = new ArrayList<Integer>(previousGlyphs.size() + added.size());
+    extended.addAll(previousGlyphs);
+    extended.addAll(added);
+    return extended;
+  }
+
+  /**
+   * Gets the glyph order of the last subset made, by {@link #subset} or as
+   * the target of {@link #patch}.
+   *
+   * @return the glyph order, or null if no subset has been made
+   */
+  public List<Integer> glyphOrder() {
+    return this.lastGlyphs == null ? null : Collections.unmodifiableList(this.lastGlyphs);
+  }
+
+  /**
+   * Gets the glyph order for a subset that extends the last subset made with
+   * more glyphs, as {@link #extendGlyphs} does.
+   *
+   * @param glyphs the glyphs needed now
+   * @return the glyph order of the next subset
+   * @throws IllegalStateException if no subset has been made
+   */
+  public List<Integer> nextGlyphs(Collection<Integer> glyphs) {
+    if (this.lastGlyphs == null) {
+      throw new IllegalStateException("No subset has been made.");
+    }
+    return extendGlyphs(this.lastGlyphs, glyphs);
+  }
+
+  /**
+   * Subsets the font.
+   *
+   * @param glyphs the glyph order of the subset
+   * @return a builder for the subset
+   */
+  public Font.Builder subset(List<Integer> glyphs) throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(this.font, this.fontFactory);
+    subsetter.setGlyphs(glyphs);
+    if (this.removeTables != null) {
+      subsetter.setRemoveTables(this.removeTables);
+    }
+    for (GlyphTransform glyphTransform : this.glyphTransforms) {
+      subsetter.addGlyphTransform(glyphTransform);
+    }
+    Font.Builder fontBuilder = subsetter.subset();
+    this.lastGlyphs = new ArrayList<Integer>(subsetter.glyphMappingTable());
+    this.lastSubset = null;
+    return fontBuilder;
+  }
+
+  /**
+   * Makes the patch from one subset to a larger one. The previous subset is
+   * only made again if it isn't the last subset that a patch was made to.
+   *
+   * @param previousGlyphs the glyph order of the subset the client has
+   * @param glyphs the glyph order of the subset the client should have, which
+   *        must start with the previous glyph order, such as the glyph order
+   *        from {@link #extendGlyphs} or {@link #nextGlyphs}
+   * @return the patch
+   * @throws IllegalArgumentException if the glyph order doesn't start with
+   *         the previous glyph order
+   */
+  public byte[] patch(List<Integer> previousGlyphs, List<Integer> glyphs) throws IOException {
+    if (glyphs.size() < previousGlyphs.size()
+        || !glyphs.subList(0, previousGlyphs.size()).equals(previousGlyphs)) {
+      throw new IllegalArgumentException(
+          "The glyph order doesn't start with the glyph order of the previous subset.");
+    }
+    Font base = this.lastSubset != null && previousGlyphs.equals(this.lastGlyphs)
+        ? this.lastSubset : subset(previousGlyphs).build();
+    Font target = subset(glyphs).build();
+    this.lastSubset = target;
+    return FontPatch.create(base, target);
+  }
+}
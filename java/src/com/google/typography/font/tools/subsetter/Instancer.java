@@ -0,0 +1,127 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.variations.AxisVariationsTable;
+import com.google.typography.font.sfntly.table.variations.FontVariationsTable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Makes a static instance of a variable font with TrueType outlines. The
+ * glyph variations at a location in the design space are applied to the
+ * outlines in the glyf table and to the metrics in the hmtx table, and the
+ * variation tables are removed. Axes without a value are pinned at their
+ * default.
+ *
+ * Only the glyph outlines and the advance widths vary in the instance. The
+ * deltas of the MVAR, cvar and GDEF tables aren't applied, so the font-wide
+ * metrics, the hinting control values and the positioning stay at their
+ * default values. All glyphs are kept; a subset of the instance can be made
+ * by subsetting the font that is built.
+ */
+public class Instancer extends Subsetter {
+
+  private final Map<Integer, Float> location = new HashMap<Integer, Float>();
+
+  {
+    tableSubsetters.add(new GlyphTableInstancer());
+  }
+
+  public Instancer(Font font, FontFactory fontFactory) {
+    super(font, fontFactory);
+  }
+
+  /**
+   * Set the value of an axis in the instance.
+   *
+   * @param tag the axis tag, such as 'wght'
+   * @param value the value, in the units of the axis
+   */
+  public void setAxisValue(int tag, float value) {
+    this.location.put(tag, value);
+  }
+
+  /**
+   * Set the location of the instance.
+   *
+   * @param location the value of each axis, by axis tag
+   */
+  public void setLocation(Map<Integer, Float> location) {
+    this.location.clear();
+    this.location.putAll(location);
+  }
+
+  /**
+   * Gets the value of an axis in the instance, clamped to the range of the
+   * axis.
+   *
+   * @param fvar the font variations table of the font
+   * @param axis the index of the axis
+   * @return the value
+   */
+  float axisValue(FontVariationsTable fvar, int axis) {
+    Float value = this.location.get(fvar.axisTag(axis));
+    if (value == null) {
+      return fvar.axisDefaultValue(axis);
+    }
+    return Math.max(fvar.axisMinValue(axis), Math.min(fvar.axisMaxValue(axis), value));
+  }
+
+  /**
+   * Gets the normalized coordinates of the instance, as the variation tables
+   * use them.
+   *
+   * @return the coordinate on each axis of the font
+   * @throws IllegalArgumentException if a value is set for an axis that the
+   *         font doesn't have
+   */
+  float[] coordinates() {
+    FontVariationsTable fvar = this.font.getTable(Tag.fvar);
+    AxisVariationsTable avar = this.font.getTable(Tag.avar);
+    for (int tag : this.location.keySet()) {
+      if (fvar.axisIndex(tag) < 0) {
+        throw new IllegalArgumentException("Font has no " + Tag.stringValue(tag) + " axis.");
+      }
+    }
+    float[] coordinates = new float[fvar.axisCount()];
+    for (int axis = 0; axis < coordinates.length; axis++) {
+      float coordinate = fvar.normalize(axis, axisValue(fvar, axis));
+      if (avar != null) {
+        coordinate = avar.map(axis, coordinate);
+      }
+      // the coordinates are F2DOT14 values
+      coordinates[axis] = Math.round(coordinate * 16384) / 16384f;
+    }
+    return coordinates;
+  }
+
+  @Override
+  protected void setUpTables(Font.Builder fontBuilder) {
+    for (int tag : new int[] {Tag.head, Tag.hhea, Tag.OS_2}) {
+      Table table = this.font.getTable(tag);
+      if (table != null) {
+        fontBuilder.newTableBuilder(tag, table.readFontData());
+      }
+    }
+  }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializer for the offset-linked structures of the OpenType layout tables.
+ *
+ * Tables are built bottom up as immutable {@link Node}s: a node's bytes plus the
+ * positions at which offsets to its child nodes are written. Identical nodes are
+ * shared. {@link #pack(Node)} lays the graph out so that every node follows all
+ * of its parents and resolves the offsets, failing with an
+ * {@link OffsetOverflowException} if a 16-bit offset doesn't fit.
+ */
+final class LayoutSerializer {
+
+  /**
+   * Thrown when a packed graph has an offset that is out of range.
+   */
+  static final class OffsetOverflowException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    OffsetOverflowException(String message) {
+      super(message);
+    }
+  }
+
+  static final class Node {
+    private final byte[] data;
+    private final int[] linkPositions;
+    private final Node[] links;
+    private final boolean[] wide;
+    private final boolean childrenFirst;
+    private final int hash;
+
+    private Node(byte[] data, int[] linkPositions, Node[] links, boolean[] wide,
+        boolean childrenFirst) {
+      this.data = data;
+      this.linkPositions = linkPositions;
+      this.links = links;
+      this.wide = wide;
+      this.childrenFirst = childrenFirst;
+      int h = Arrays.hashCode(data);
+      for (int i = 0; i < links.length; i++) {
+        h = h * 31 + System.identityHashCode(links[i]);
+        h = h * 31 + linkPositions[i];
+      }
+      this.hash = h;
+    }
+
+    int size() {
+      return data.length;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Node)) {
+        return false;
+      }
+      Node other = (Node) o;
+      if (hash != other.hash || childrenFirst != other.childrenFirst
+          || !Arrays.equals(data, other.data)
+          || !Arrays.equals(linkPositions, other.linkPositions)
+          || !Arrays.equals(wide, other.wide)) {
+        return false;
+      }
+      for (int i = 0; i < links.length; i++) {
+        if (links[i] != other.links[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Accumulates the content of one node.
+   */
+  final class NodeBuilder {
+    private byte[] data = new byte[32];
+    private int size;
+    private final List<Integer> linkPositions = new ArrayList<Integer>();
+    private final List<Node> links = new ArrayList<Node>();
+    private final List<Boolean> wide = new ArrayList<Boolean>();
+    private boolean childrenFirst;
+
+    private void ensure(int extra) {
+      if (size + extra > data.length) {
+        data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+      }
+    }
+
+    int position() {
+      return size;
+    }
+
+    NodeBuilder writeUShort(int value) {
+      ensure(2);
+      data[size++] = (byte) (value >> 8);
+      data[size++] = (byte) value;
+      return this;
+    }
+
+    NodeBuilder writeULong(long value) {
+      ensure(4);
+      data[size++] = (byte) (value >> 24);
+      data[size++] = (byte) (value >> 16);
+      data[size++] = (byte) (value >> 8);
+      data[size++] = (byte) value;
+      return this;
+    }
+
+    NodeBuilder writeBytes(ReadableFontData source, int offset, int length) {
+      ensure(length);
+      source.readBytes(offset, data, size, length);
+      size += length;
+      return this;
+    }
+
+    /**
+     * Overwrites a previously written unsigned short, for counts that are only
+     * known after the entries have been written.
+     */
+    NodeBuilder setUShort(int position, int value) {
+      data[position] = (byte) (value >> 8);
+      data[position + 1] = (byte) value;
+      return this;
+    }
+
+    /**
+     * Writes a 16-bit offset to the child, or a null offset if child is null.
+     */
+    NodeBuilder writeOffset(Node child) {
+      return writeOffset(child, false);
+    }
+
+    /**
+     * Writes a 32-bit offset to the child, or a null offset if child is null.
+     * Children reached only through 32-bit offsets are placed after everything
+     * else in the table.
+     */
+    NodeBuilder writeWideOffset(Node child) {
+      return writeOffset(child, true);
+    }
+
+    private NodeBuilder writeOffset(Node child, boolean isWide) {
+      if (child != null) {
+        linkPositions.add(size);
+        links.add(child);
+        wide.add(isWide);
+      }
+      if (isWide) {
+        writeULong(0);
+      } else {
+        writeUShort(0);
+      }
+      return this;
+    }
+
+    /**
+     * Requests that the direct children of this node are laid out next to
+     * each other before any of their own children, which keeps the offsets in
+     * list tables short.
+     */
+    NodeBuilder placeChildrenFirst() {
+      childrenFirst = true;
+      return this;
+    }
+
+    Node build() {
+      if ((size & 1) != 0) {
+        ensure(1);
+        data[size++] = 0;
+      }
+      int[] positions = new int[linkPositions.size()];
+      boolean[] wideFlags = new boolean[positions.length];
+      for (int i = 0; i < positions.length; i++) {
+        positions[i] = linkPositions.get(i);
+        wideFlags[i] = wide.get(i);
+      }
+      Node node = new Node(Arrays.copyOf(data, size), positions,
+          links.toArray(new Node[positions.length]), wideFlags, childrenFirst);
+      Node existing = nodes.get(node);
+      if (existing != null) {
+        return existing;
+      }
+      nodes.put(node, node);
+      return node;
+    }
+  }
+
+  private final Map<Node, Node> nodes = new HashMap<Node, Node>();
+
+  NodeBuilder newNode() {
+    return new NodeBuilder();
+  }
+
+  /**
+   * Creates a node holding a verbatim copy of source data without any links.
+   */
+  Node copyOf(ReadableFontData source, int offset, int length) {
+    return newNode().writeBytes(source, offset, length).build();
+  }
+
+  /**
+   * Lays out the graph reachable from the root and resolves all offsets.
+   *
+   * @return the serialized table
+   */
+  byte[] pack(Node root) throws OffsetOverflowException {
+    Map<Node, int[]> pendingParents = new IdentityHashMap<Node, int[]>();
+    Map<Node, Boolean> deferred = new IdentityHashMap<Node, Boolean>();
+    countParents(root, pendingParents, deferred);
+
+    Map<Node, Integer> positions = new IdentityHashMap<Node, Integer>();
+    List<Node> order = new ArrayList<Node>();
+    List<Node> deferredReady = new ArrayList<Node>();
+    int[] size = new int[1];
+    place(root, positions, order, size);
+    visit(root, pendingParents, deferred, positions, order, deferredReady, size);
+    for (int i = 0; i < deferredReady.size(); i++) {
+      Node node = deferredReady.get(i);
+      place(node, positions, order, size);
+      visit(node, pendingParents, deferred, positions, order, deferredReady, size);
+    }
+
+    byte[] result = new byte[size[0]];
+    for (Node node : order) {
+      int start = positions.get(node);
+      System.arraycopy(node.data, 0, result, start, node.data.length);
+      for (int i = 0; i < node.links.length; i++) {
+        int offset = positions.get(node.links[i]) - start;
+        int at = start + node.linkPositions[i];
+        if (node.wide[i]) {
+          result[at] = (byte) (offset >> 24);
+          result[at + 1] = (byte) (offset >> 16);
+          result[at + 2] = (byte) (offset >> 8);
+          result[at + 3] = (byte) offset;
+        } else {
+          if (offset < 0 || offset > 0xffff) {
+            throw new OffsetOverflowException("16-bit offset out of range: " + offset);
+          }
+          result[at] = (byte) (offset >> 8);
+          result[at + 1] = (byte) offset;
+        }
+      }
+    }
+    return result;
+  }
+
+  private static void countParents(Node root, Map<Node, int[]> pendingParents,
+      Map<Node, Boolean> deferred) {
+    List<Node> stack = new ArrayList<Node>();
+    stack.add(root);
+    pendingParents.put(root, new int[1]);
+    while (!stack.isEmpty()) {
+      Node node = stack.remove(stack.size() - 1);
+      for (int i = 0; i < node.links.length; i++) {
+        Node child = node.links[i];
+        if (node.wide[i]) {
+          deferred.put(child, Boolean.TRUE);
+        }
+        int[] count = pendingParents.get(child);
+        if (count == null) {
+          count = new int[1];
+          pendingParents.put(child, count);
+          stack.add(child);
+        }
+        count[0]++;
+      }
+    }
+  }
+
+  private static void place(Node node, Map<Node, Integer> positions, List<Node> order,
+      int[] size) {
+    positions.put(node, size[0]);
+    order.add(node);
+    size[0] += node.data.length;
+  }
+
+  /**
+   * Called once a node has been placed; places the children for which it was
+   * the last unplaced parent, depth first.
+   */
+  private static void visit(Node node, Map<Node, int[]> pendingParents,
+      Map<Node, Boolean> deferred, Map<Node, Integer> positions, List<Node> order,
+      List<Node> deferredReady, int[] size) {
+    List<Node> ready = new ArrayList<Node>();
+    for (Node child : node.links) {
+      int[] count = pendingParents.get(child);
+      if (--count[0] == 0) {
+        if (deferred.containsKey(child)) {
+          deferredReady.add(child);
+        } else {
+          ready.add(child);
+        }
+      }
+    }
+    if (node.childrenFirst) {
+      for (Node child : ready) {
+        place(child, positions, order, size);
+      }
+      for (Node child : ready) {
+        visit(child, pendingParents, deferred, positions, order, deferredReady, size);
+      }
+    } else {
+      for (Node child : ready) {
+        place(child, positions, order, size);
+        visit(child, pendingParents, deferred, positions, order, deferredReady, size);
+      }
+    }
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.opentype.ClassDefTable;
+import com.google.typography.font.sfntly.table.opentype.CoverageTable;
+import com.google.typography.font.sfntly.table.opentype.component.ClassDefIndex;
+import com.google.typography.font.sfntly.table.opentype.component.CoverageIndex;
+import com.google.typography.font.tools.subsetter.LayoutSerializer.Node;
+import com.google.typography.font.tools.subsetter.LayoutSerializer.NodeBuilder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * State shared while subsetting the OpenType layout tables: the glyph
+ * renumbering, the lookup renumbering and the serializer the new tables are
+ * written to. Also reads and writes the coverage and class definition tables
+ * that all of the layout tables use.
+ */
+final class LayoutSubsetContext {
+  static final int NOT_MAPPED = -1;
+
+  final LayoutSerializer serializer = new LayoutSerializer();
+  private final int[] oldToNew;
+  private final int numGlyphs;
+  private int[] lookupMap;
+  private final Map<Integer, CoverageIndex> coverages = new HashMap<Integer, CoverageIndex>();
+  private final Map<Integer, ClassDefIndex> classDefs = new HashMap<Integer, ClassDefIndex>();
+
+  LayoutSubsetContext(Map<Integer, Integer> inverseMapping, int numGlyphs) {
+    this.numGlyphs = numGlyphs;
+    int maxGlyph = -1;
+    for (int oldGlyph : inverseMapping.keySet()) {
+      maxGlyph = Math.max(maxGlyph, oldGlyph);
+    }
+    oldToNew = new int[maxGlyph + 1];
+    Arrays.fill(oldToNew, NOT_MAPPED);
+    for (Map.Entry<Integer, Integer> entry : inverseMapping.entrySet()) {
+      oldToNew[entry.getKey()] = entry.getValue();
+    }
+  }
+
+  /**
+   * Returns the new id of the glyph, or {@link #NOT_MAPPED} if it is not in the
+   * subset.
+   */
+  int newGlyph(int oldGlyph) {
+    if (oldGlyph < 0 || oldGlyph >= oldToNew.length) {
+      return NOT_MAPPED;
+    }
+    return oldToNew[oldGlyph];
+  }
+
+  /**
+   * Returns the number of glyphs in the subset font.
+   */
+  int numGlyphs() {
+    return numGlyphs;
+  }
+
+  boolean retained(int oldGlyph) {
+    return newGlyph(oldGlyph) != NOT_MAPPED;
+  }
+
+  /**
+   * Sets the mapping from old to new lookup list indices. Until it is set all
+   * lookups are assumed to be kept with their old indices.
+   */
+  void setLookupMap(int[] lookupMap) {
+    this.lookupMap = lookupMap;
+  }
+
+  /**
+   * Returns the new index of the lookup, or {@link #NOT_MAPPED} if it was
+   * dropped.
+   */
+  int newLookup(int oldLookup) {
+    if (lookupMap == null) {
+      return oldLookup;
+    }
+    if (oldLookup < 0 || oldLookup >= lookupMap.length) {
+      return NOT_MAPPED;
+    }
+    return lookupMap[oldLookup];
+  }
+
+  NodeBuilder newNode() {
+    return serializer.newNode();
+  }
+
+  /**
+   * Reads a coverage table. Each coverage table is only compiled once, however
+   * many subtables share it or however many times they are subset.
+   *
+   * @return the old glyph ids in coverage index order
+   */
+  int[] readCoverage(ReadableFontData data, int offset) {
+    if (offset == 0) {
+      return new int[0];
+    }
+    // all of the data is sliced from the one table, so the offset in the
+    // underlying data identifies the coverage table
+    int key = data.dataOffset() + offset;
+    CoverageIndex coverage = coverages.get(key);
+    if (coverage == null) {
+      coverage = new CoverageTable(data.slice(offset), 0, true).index();
+      coverages.put(key, coverage);
+    }
+    return coverage.toArray();
+  }
+
+  /**
+   * Reads a class definition table. Like coverage tables, each is only compiled
+   * once.
+   */
+  ClassDefIndex readClassDef(ReadableFontData data, int offset) {
+    if (offset == 0) {
+      return null;
+    }
+    int key = data.dataOffset() + offset;
+    ClassDefIndex classDef = classDefs.get(key);
+    if (classDef == null) {
+      classDef = new ClassDefTable(data.slice(offset), 0, true).index();
+      classDefs.put(key, classDef);
+    }
+    return classDef;
+  }
+
+  /**
+   * Maps and sorts old glyph ids, dropping those not in the subset.
+   */
+  int[] mapGlyphs(int[] oldGlyphs) {
+    int[] result = new int[oldGlyphs.length];
+    int count = 0;
+    for (int oldGlyph : oldGlyphs) {
+      int newGlyph = newGlyph(oldGlyph);
+      if (newGlyph != NOT_MAPPED) {
+        result[count++] = newGlyph;
+      }
+    }
+    result = Arrays.copyOf(result, count);
+    Arrays.sort(result);
+    return result;
+  }
+
+  /**
+   * Writes a coverage table for the sorted new glyph ids in whichever format
+   * is smaller.
+   */
+  Node coverage(int[] sortedGlyphs) {
+    int ranges = 0;
+    for (int i = 0; i < sortedGlyphs.length; i++) {
+      if (i == 0 || sortedGlyphs[i] != sortedGlyphs[i - 1] + 1) {
+        ranges++;
+      }
+    }
+    NodeBuilder node = newNode();
+    if (2 * sortedGlyphs.length <= 6 * ranges) {
+      node.writeUShort(1).writeUShort(sortedGlyphs.length);
+      for (int glyph : sortedGlyphs) {
+        node.writeUShort(glyph);
+      }
+    } else {
+      node.writeUShort(2).writeUShort(ranges);
+      int start = 0;
+      for (int i = 1; i <= sortedGlyphs.length; i++) {
+        if (i == sortedGlyphs.length || sortedGlyphs[i] != sortedGlyphs[i - 1] + 1) {
+          node.writeUShort(sortedGlyphs[start]).writeUShort(sortedGlyphs[i - 1])
+              .writeUShort(start);
+          start = i;
+        }
+      }
+    }
+    return node.build();
+  }
+
+  /**
+   * Maps a class definition table to the new glyph ids, keeping the class
+   * values.
+   *
+   * @return the class of each new glyph id, 0 for unclassified glyphs
+   */
+  int[] mapClassDef(ClassDefIndex classDef) {
+    int[] classes = new int[numGlyphs];
+    if (classDef == null) {
+      return classes;
+    }
+    for (int oldGlyph = classDef.firstGlyph(); oldGlyph < classDef.limitGlyph(); oldGlyph++) {
+      int newGlyph = newGlyph(oldGlyph);
+      if (newGlyph != NOT_MAPPED && newGlyph < numGlyphs) {
+        classes[newGlyph] = classDef.glyphClass(oldGlyph);
+      }
+    }
+    return classes;
+  }
+
+  /**
+   * Writes a class definition table in whichever format is smaller.
+   *
+   * @param classes the class of each glyph id, indexed by glyph id
+   */
+  Node classDef(int[] classes) {
+    int first = -1;
+    int last = -1;
+    int ranges = 0;
+    for (int glyph = 0; glyph < classes.length; glyph++) {
+      if (classes[glyph] == 0) {
+        continue;
+      }
+      if (first < 0) {
+        first = glyph;
+      }
+      if (last < 0 || last != glyph - 1 || classes[last] != classes[glyph]) {
+        ranges++;
+      }
+      last = glyph;
+    }
+    NodeBuilder node = newNode();
+    if (first < 0) {
+      return node.writeUShort(2).writeUShort(0).build();
+    }
+    if (2 * (last - first + 1) + 2 <= 6 * ranges) {
+      node.writeUShort(1).writeUShort(first).writeUShort(last - first + 1);
+      for (int glyph = first; glyph <= last; glyph++) {
+        node.writeUShort(classes[glyph]);
+      }
+    } else {
+      node.writeUShort(2).writeUShort(ranges);
+      int start = -1;
+      for (int glyph = first; glyph <= last + 1; glyph++) {
+        int glyphClass = glyph <= last ? classes[glyph] : 0;
+        if (start >= 0 && glyphClass != classes[start]) {
+          node.writeUShort(start).writeUShort(glyph - 1).writeUShort(classes[start]);
+          start = -1;
+        }
+        if (start < 0 && glyphClass != 0) {
+          start = glyph;
+        }
+      }
+    }
+    return node.build();
+  }
+
+  /**
+   * Returns the size in bytes of the device or variation index table at the
+   * offset.
+   */
+  static int deviceTableSize(ReadableFontData data, int offset) {
+    int deltaFormat = data.readUShort(offset + 4);
+    if (deltaFormat < 1 || deltaFormat > 3) {
+      return 6;
+    }
+    int startSize = data.readUShort(offset);
+    int endSize = data.readUShort(offset + 2);
+    int count = Math.max(0, endSize - startSize + 1);
+    int bits = count << (deltaFormat);
+    return 6 + 2 * ((bits + 15) / 16);
+  }
+
+  Node device(ReadableFontData data, int offset) {
+    if (offset == 0) {
+      return null;
+    }
+    return serializer.copyOf(data, offset, deviceTableSize(data, offset));
+  }
+}
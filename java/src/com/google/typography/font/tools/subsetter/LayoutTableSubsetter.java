@@ -0,0 +1,618 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.opentype.component.ClassDefIndex;
+import com.google.typography.font.tools.subsetter.LayoutSerializer.Node;
+import com.google.typography.font.tools.subsetter.LayoutSerializer.NodeBuilder;
+import com.google.typography.font.tools.subsetter.LayoutSerializer.OffsetOverflowException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Common subsetting of the GSUB and GPOS tables. The script and feature lists
+ * are kept, lookups are pruned and renumbered against the glyph mapping of the
+ * subsetter, and lookups left without any subtables are dropped. The lookup
+ * types specific to each table are handled by the subclasses; the contextual
+ * lookups, which have the same layout in both tables, are handled here.
+ *
+ * If the subset table can't be serialized the table is dropped from the
+ * subset font.
+ */
+public abstract class LayoutTableSubsetter extends TableSubsetterImpl {
+  private static final Logger logger =
+      Logger.getLogger(LayoutTableSubsetter.class.getCanonicalName());
+
+  private static final int LOOKUP_FLAG_USE_MARK_FILTERING_SET = 0x0010;
+
+  private final int tag;
+  private final int extensionLookupType;
+
+  protected LayoutTableSubsetter(int tag, int extensionLookupType) {
+    super(tag);
+    this.tag = tag;
+    this.extensionLookupType = extensionLookupType;
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder)
+      throws IOException {
+    if (subsetter.glyphMappingTable() == null) {
+      return false;
+    }
+    Table table = font.getTable(this.tag);
+    if (table == null) {
+      return false;
+    }
+    LayoutSubsetContext context = new LayoutSubsetContext(subsetter.getInverseMapping(),
+        subsetter.glyphMappingTable().size());
+    byte[] newTable = subset(context, table.readFontData());
+    if (newTable != null) {
+      fontBuilder.newTableBuilder(this.tag, ReadableFontData.createReadableFontData(newTable));
+    } else {
+      logger.info("Dropping " + Tag.stringValue(this.tag) + " table from the subset font");
+    }
+    // Either subset or deliberately dropped, the original must not be copied.
+    return true;
+  }
+
+  /**
+   * Subsets a lookup subtable of a lookup type specific to the table.
+   *
+   * @return the new subtable, or null if nothing of it remains in the subset
+   */
+  protected abstract Node subsetSubtable(
+      LayoutSubsetContext context, int lookupType, ReadableFontData data);
+
+  /**
+   * Returns whether subtables of the lookup type refer to other lookups and so
+   * depend on the lookup renumbering.
+   */
+  protected abstract boolean isContextual(int lookupType);
+
+  private static final class Lookup {
+    int type;
+    int flag;
+    int markFilteringSet;
+    final List<ReadableFontData> subtables = new ArrayList<ReadableFontData>();
+    Node[] newSubtables;
+
+    boolean isEmpty() {
+      for (Node node : newSubtables) {
+        if (node != null) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private byte[] subset(LayoutSubsetContext context, ReadableFontData data) {
+    if (data.length() < 10 || data.readUShort(0) != 1) {
+      return null;
+    }
+    int scriptListOffset = data.readUShort(4);
+    int featureListOffset = data.readUShort(6);
+    int lookupListOffset = data.readUShort(8);
+
+    List<Lookup> lookups = readLookups(data, lookupListOffset);
+    for (Lookup lookup : lookups) {
+      lookup.newSubtables = subsetSubtables(context, lookup);
+    }
+
+    int[] lookupMap = new int[lookups.size()];
+    int newCount = 0;
+    for (int i = 0; i < lookups.size(); i++) {
+      lookupMap[i] = lookups.get(i).isEmpty() ? LayoutSubsetContext.NOT_MAPPED : newCount++;
+    }
+    context.setLookupMap(lookupMap);
+    // Contextual lookups refer to other lookups, so must be redone with the
+    // final lookup numbering.
+    for (int i = 0; i < lookups.size(); i++) {
+      Lookup lookup = lookups.get(i);
+      if (lookupMap[i] != LayoutSubsetContext.NOT_MAPPED && isContextual(lookup.type)) {
+        lookup.newSubtables = subsetSubtables(context, lookup);
+      }
+    }
+
+    Node scriptList = scriptList(context, data, scriptListOffset);
+    Node featureList = featureList(context, data, featureListOffset);
+    try {
+      return context.serializer.pack(
+          header(context, scriptList, featureList, lookupList(context, lookups, false)));
+    } catch (OffsetOverflowException e) {
+      // Retry with every lookup moved behind an extension subtable.
+    }
+    try {
+      return context.serializer.pack(
+          header(context, scriptList, featureList, lookupList(context, lookups, true)));
+    } catch (OffsetOverflowException e) {
+      return null;
+    }
+  }
+
+  private List<Lookup> readLookups(ReadableFontData data, int lookupListOffset) {
+    List<Lookup> lookups = new ArrayList<Lookup>();
+    if (lookupListOffset == 0) {
+      return lookups;
+    }
+    ReadableFontData lookupList = data.slice(lookupListOffset);
+    int lookupCount = lookupList.readUShort(0);
+    for (int i = 0; i < lookupCount; i++) {
+      ReadableFontData lookupData = lookupList.slice(lookupList.readUShort(2 + 2 * i));
+      Lookup lookup = new Lookup();
+      lookup.type = lookupData.readUShort(0);
+      lookup.flag = lookupData.readUShort(2);
+      int subtableCount = lookupData.readUShort(4);
+      boolean extension = lookup.type == this.extensionLookupType;
+      if ((lookup.flag & LOOKUP_FLAG_USE_MARK_FILTERING_SET) != 0) {
+        lookup.markFilteringSet = lookupData.readUShort(6 + 2 * subtableCount);
+      }
+      for (int j = 0; j < subtableCount; j++) {
+        ReadableFontData subtable = lookupData.slice(lookupData.readUShort(6 + 2 * j));
+        if (extension) {
+          lookup.type = subtable.readUShort(2);
+          subtable = subtable.slice(subtable.readULongAsInt(4));
+        }
+        lookup.subtables.add(subtable);
+      }
+      lookups.add(lookup);
+    }
+    return lookups;
+  }
+
+  private Node[] subsetSubtables(LayoutSubsetContext context, Lookup lookup) {
+    Node[] result = new Node[lookup.subtables.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = subsetSubtable(context, lookup.type, lookup.subtables.get(i));
+    }
+    return result;
+  }
+
+  private static Node header(
+      LayoutSubsetContext context, Node scriptList, Node featureList, Node lookupList) {
+    return context.newNode().writeUShort(1).writeUShort(0)
+        .writeOffset(scriptList).writeOffset(featureList).writeOffset(lookupList).build();
+  }
+
+  private Node lookupList(LayoutSubsetContext context, List<Lookup> lookups, boolean extension) {
+    List<Node> newLookups = new ArrayList<Node>();
+    for (Lookup lookup : lookups) {
+      if (lookup.isEmpty()) {
+        continue;
+      }
+      List<Node> subtables = new ArrayList<Node>();
+      for (Node subtable : lookup.newSubtables) {
+        if (subtable == null) {
+          continue;
+        }
+        if (extension) {
+          subtable = context.newNode().writeUShort(1).writeUShort(lookup.type)
+              .writeWideOffset(subtable).build();
+        }
+        subtables.add(subtable);
+      }
+      NodeBuilder node = context.newNode()
+          .writeUShort(extension ? this.extensionLookupType : lookup.type)
+          .writeUShort(lookup.flag).writeUShort(subtables.size());
+      for (Node subtable : subtables) {
+        node.writeOffset(subtable);
+      }
+      if ((lookup.flag & LOOKUP_FLAG_USE_MARK_FILTERING_SET) != 0) {
+        node.writeUShort(lookup.markFilteringSet);
+      }
+      newLookups.add(node.placeChildrenFirst().build());
+    }
+    NodeBuilder node = context.newNode().writeUShort(newLookups.size());
+    for (Node lookup : newLookups) {
+      node.writeOffset(lookup);
+    }
+    return node.placeChildrenFirst().build();
+  }
+
+  private static Node scriptList(LayoutSubsetContext context, ReadableFontData data, int offset) {
+    NodeBuilder node = context.newNode();
+    if (offset == 0) {
+      return node.writeUShort(0).build();
+    }
+    ReadableFontData scriptList = data.slice(offset);
+    int scriptCount = scriptList.readUShort(0);
+    node.writeUShort(scriptCount);
+    for (int i = 0; i < scriptCount; i++) {
+      int record = 2 + 6 * i;
+      ReadableFontData script = scriptList.slice(scriptList.readUShort(record + 4));
+      NodeBuilder scriptNode = context.newNode()
+          .writeOffset(langSys(context, script, script.readUShort(0)));
+      int langSysCount = script.readUShort(2);
+      scriptNode.writeUShort(langSysCount);
+      for (int j = 0; j < langSysCount; j++) {
+        int langSysRecord = 4 + 6 * j;
+        scriptNode.writeBytes(script, langSysRecord, 4)
+            .writeOffset(langSys(context, script, script.readUShort(langSysRecord + 4)));
+      }
+      node.writeBytes(scriptList, record, 4).writeOffset(scriptNode.build());
+    }
+    return node.build();
+  }
+
+  private static Node langSys(LayoutSubsetContext context, ReadableFontData script, int offset) {
+    if (offset == 0) {
+      return null;
+    }
+    int featureIndexCount = script.readUShort(offset + 4);
+    return context.serializer.copyOf(script, offset, 6 + 2 * featureIndexCount);
+  }
+
+  private static Node featureList(
+      LayoutSubsetContext context, ReadableFontData data, int offset) {
+    NodeBuilder node = context.newNode();
+    if (offset == 0) {
+      return node.writeUShort(0).build();
+    }
+    ReadableFontData featureList = data.slice(offset);
+    int featureCount = featureList.readUShort(0);
+    node.writeUShort(featureCount);
+    for (int i = 0; i < featureCount; i++) {
+      int record = 2 + 6 * i;
+      int featureTag = featureList.readULongAsInt(record);
+      ReadableFontData feature = featureList.slice(featureList.readUShort(record + 4));
+      NodeBuilder featureNode = context.newNode()
+          .writeOffset(featureParams(context, featureTag, feature, feature.readUShort(0)));
+      int lookupIndexCount = feature.readUShort(2);
+      int countPosition = featureNode.position();
+      featureNode.writeUShort(0);
+      int newCount = 0;
+      for (int j = 0; j < lookupIndexCount; j++) {
+        int newLookup = context.newLookup(feature.readUShort(4 + 2 * j));
+        if (newLookup != LayoutSubsetContext.NOT_MAPPED) {
+          featureNode.writeUShort(newLookup);
+          newCount++;
+        }
+      }
+      featureNode.setUShort(countPosition, newCount);
+      node.writeBytes(featureList, record, 4).writeOffset(featureNode.build());
+    }
+    return node.build();
+  }
+
+  private static Node featureParams(
+      LayoutSubsetContext context, int featureTag, ReadableFontData feature, int offset) {
+    if (offset == 0) {
+      return null;
+    }
+    String tag = Tag.stringValue(featureTag);
+    int length;
+    if (tag.equals("size")) {
+      length = 10;
+    } else if (tag.startsWith("ss")) {
+      length = 4;
+    } else if (tag.startsWith("cv")) {
+      length = 14 + 3 * feature.readUShort(offset + 12);
+    } else {
+      return null;
+    }
+    return context.serializer.copyOf(feature, offset, length);
+  }
+
+  // Contextual lookups, GSUB types 5 and 6, GPOS types 7 and 8.
+
+  private static void writeLookupRecords(
+      LayoutSubsetContext context, NodeBuilder node, ReadableFontData data, int offset,
+      int count) {
+    int countPosition = node.position();
+    node.writeUShort(0);
+    writeLookupRecords(context, node, data, offset, count, countPosition);
+  }
+
+  /**
+   * Writes the lookup records that refer to lookups which are kept, with the
+   * new lookup indices, and sets the record count at the position given.
+   */
+  private static void writeLookupRecords(
+      LayoutSubsetContext context, NodeBuilder node, ReadableFontData data, int offset,
+      int count, int countPosition) {
+    int newCount = 0;
+    for (int i = 0; i < count; i++) {
+      int record = offset + 4 * i;
+      int newLookup = context.newLookup(data.readUShort(record + 2));
+      if (newLookup != LayoutSubsetContext.NOT_MAPPED) {
+        node.writeUShort(data.readUShort(record)).writeUShort(newLookup);
+        newCount++;
+      }
+    }
+    node.setUShort(countPosition, newCount);
+  }
+
+  /**
+   * Writes a glyph array with the glyphs renumbered.
+   *
+   * @return false if one of the glyphs is not in the subset
+   */
+  private static boolean writeGlyphs(
+      LayoutSubsetContext context, NodeBuilder node, ReadableFontData data, int offset,
+      int count) {
+    for (int i = 0; i < count; i++) {
+      int newGlyph = context.newGlyph(data.readUShort(offset + 2 * i));
+      if (newGlyph == LayoutSubsetContext.NOT_MAPPED) {
+        return false;
+      }
+      node.writeUShort(newGlyph);
+    }
+    return true;
+  }
+
+  /**
+   * A subset entry of a coverage-indexed array, sortable by new glyph id.
+   */
+  static final class GlyphEntry<T> implements Comparable<GlyphEntry<T>> {
+    final int glyph;
+    final T value;
+
+    GlyphEntry(int glyph, T value) {
+      this.glyph = glyph;
+      this.value = value;
+    }
+
+    @Override
+    public int compareTo(GlyphEntry<T> other) {
+      return Integer.compare(glyph, other.glyph);
+    }
+
+    static <T> int[] glyphs(List<GlyphEntry<T>> entries) {
+      int[] result = new int[entries.size()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = entries.get(i).glyph;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Subsets a format 1 coverage-indexed array of rule sets: a format, a
+   * coverage offset, and a count of offsets to the per-glyph rule sets.
+   */
+  private static Node subsetRuleSets(
+      LayoutSubsetContext context, ReadableFontData data, boolean chained) {
+    int[] glyphs = context.readCoverage(data, data.readUShort(2));
+    int ruleSetCount = Math.min(glyphs.length, data.readUShort(4));
+    List<GlyphEntry<Node>> entries = new ArrayList<GlyphEntry<Node>>();
+    for (int i = 0; i < ruleSetCount; i++) {
+      int newGlyph = context.newGlyph(glyphs[i]);
+      int ruleSetOffset = data.readUShort(6 + 2 * i);
+      if (newGlyph == LayoutSubsetContext.NOT_MAPPED || ruleSetOffset == 0) {
+        continue;
+      }
+      ReadableFontData ruleSet = data.slice(ruleSetOffset);
+      List<Node> rules = new ArrayList<Node>();
+      int ruleCount = ruleSet.readUShort(0);
+      for (int j = 0; j < ruleCount; j++) {
+        ReadableFontData rule = ruleSet.slice(ruleSet.readUShort(2 + 2 * j));
+        Node newRule = chained ? chainRule(context, rule, true) : rule(context, rule, true);
+        if (newRule != null) {
+          rules.add(newRule);
+        }
+      }
+      if (!rules.isEmpty()) {
+        entries.add(new GlyphEntry<Node>(newGlyph, offsetArray(context, rules)));
+      }
+    }
+    if (entries.isEmpty()) {
+      return null;
+    }
+    Collections.sort(entries);
+    NodeBuilder node = context.newNode().writeUShort(1)
+        .writeOffset(context.coverage(GlyphEntry.glyphs(entries)))
+        .writeUShort(entries.size());
+    for (GlyphEntry<Node> entry : entries) {
+      node.writeOffset(entry.value);
+    }
+    return node.build();
+  }
+
+  private static Node offsetArray(LayoutSubsetContext context, List<Node> nodes) {
+    NodeBuilder node = context.newNode().writeUShort(nodes.size());
+    for (Node child : nodes) {
+      node.writeOffset(child);
+    }
+    return node.build();
+  }
+
+  /**
+   * Copies a context rule, renumbering its input glyphs if it is glyph based.
+   *
+   * @return the new rule, or null if a glyph of the rule is not in the subset
+   */
+  private static Node rule(LayoutSubsetContext context, ReadableFontData rule, boolean glyphs) {
+    int glyphCount = rule.readUShort(0);
+    int lookupCount = rule.readUShort(2);
+    int inputCount = Math.max(0, glyphCount - 1);
+    NodeBuilder node = context.newNode().writeUShort(glyphCount);
+    int countPosition = node.position();
+    node.writeUShort(0);
+    if (glyphs) {
+      if (!writeGlyphs(context, node, rule, 4, inputCount)) {
+        return null;
+      }
+    } else {
+      node.writeBytes(rule, 4, 2 * inputCount);
+    }
+    writeLookupRecords(context, node, rule, 4 + 2 * inputCount, lookupCount, countPosition);
+    return node.build();
+  }
+
+  private static Node chainRule(
+      LayoutSubsetContext context, ReadableFontData rule, boolean glyphs) {
+    NodeBuilder node = context.newNode();
+    int position = 0;
+    for (int sequence = 0; sequence < 3; sequence++) {
+      int count = rule.readUShort(position);
+      node.writeUShort(count);
+      position += 2;
+      // The input sequence doesn't include its first glyph.
+      int length = sequence == 1 ? Math.max(0, count - 1) : count;
+      if (glyphs) {
+        if (!writeGlyphs(context, node, rule, position, length)) {
+          return null;
+        }
+      } else {
+        node.writeBytes(rule, position, 2 * length);
+      }
+      position += 2 * length;
+    }
+    writeLookupRecords(context, node, rule, position + 2, rule.readUShort(position));
+    return node.build();
+  }
+
+  /**
+   * Subsets a format 2, class based, context subtable.
+   */
+  private static Node subsetClassRuleSets(
+      LayoutSubsetContext context, ReadableFontData data, boolean chained) {
+    int[] glyphs = context.readCoverage(data, data.readUShort(2));
+    int[] newCoverage = context.mapGlyphs(glyphs);
+    if (newCoverage.length == 0) {
+      return null;
+    }
+    int[] classDefOffsets = chained
+        ? new int[] {data.readUShort(4), data.readUShort(6), data.readUShort(8)}
+        : new int[] {data.readUShort(4)};
+    int inputClassDefOffset = chained ? classDefOffsets[1] : classDefOffsets[0];
+    ClassDefIndex inputClassDef = context.readClassDef(data, inputClassDefOffset);
+    BitSet usedClasses = new BitSet();
+    for (int glyph : glyphs) {
+      if (context.retained(glyph)) {
+        usedClasses.set(inputClassDef == null ? 0 : inputClassDef.glyphClass(glyph));
+      }
+    }
+
+    int countOffset = chained ? 10 : 6;
+    int classSetCount = data.readUShort(countOffset);
+    NodeBuilder node = context.newNode().writeUShort(2)
+        .writeOffset(context.coverage(newCoverage));
+    for (int classDefOffset : classDefOffsets) {
+      node.writeOffset(classDefOffset == 0 ? null : context.classDef(context.mapClassDef(
+          context.readClassDef(data, classDefOffset))));
+    }
+    node.writeUShort(classSetCount);
+    for (int i = 0; i < classSetCount; i++) {
+      int classSetOffset = data.readUShort(countOffset + 2 + 2 * i);
+      if (classSetOffset == 0 || !usedClasses.get(i)) {
+        node.writeOffset(null);
+        continue;
+      }
+      ReadableFontData classSet = data.slice(classSetOffset);
+      List<Node> rules = new ArrayList<Node>();
+      int ruleCount = classSet.readUShort(0);
+      for (int j = 0; j < ruleCount; j++) {
+        ReadableFontData rule = classSet.slice(classSet.readUShort(2 + 2 * j));
+        rules.add(chained ? chainRule(context, rule, false) : rule(context, rule, false));
+      }
+      node.writeOffset(offsetArray(context, rules));
+    }
+    return node.build();
+  }
+
+  /**
+   * Subsets a format 3, coverage based, context subtable.
+   */
+  private static Node subsetCoverageRule(
+      LayoutSubsetContext context, ReadableFontData data, boolean chained) {
+    NodeBuilder node = context.newNode().writeUShort(3);
+    if (!chained) {
+      int glyphCount = data.readUShort(2);
+      int lookupCount = data.readUShort(4);
+      node.writeUShort(glyphCount);
+      int countPosition = node.position();
+      node.writeUShort(0);
+      if (!writeCoverages(context, node, data, 6, glyphCount)) {
+        return null;
+      }
+      writeLookupRecords(context, node, data, 6 + 2 * glyphCount, lookupCount, countPosition);
+      return node.build();
+    }
+    int position = 2;
+    for (int sequence = 0; sequence < 3; sequence++) {
+      int count = data.readUShort(position);
+      node.writeUShort(count);
+      if (!writeCoverages(context, node, data, position + 2, count)) {
+        return null;
+      }
+      position += 2 + 2 * count;
+    }
+    writeLookupRecords(context, node, data, position + 2, data.readUShort(position));
+    return node.build();
+  }
+
+  /**
+   * Writes offsets to renumbered copies of an array of coverage tables.
+   *
+   * @return false if one of the coverages is left empty
+   */
+  static boolean writeCoverages(LayoutSubsetContext context, NodeBuilder node,
+      ReadableFontData data, int offset, int count) {
+    for (int i = 0; i < count; i++) {
+      int[] glyphs = context.mapGlyphs(
+          context.readCoverage(data, data.readUShort(offset + 2 * i)));
+      if (glyphs.length == 0) {
+        return false;
+      }
+      node.writeOffset(context.coverage(glyphs));
+    }
+    return true;
+  }
+
+  /**
+   * Subsets a context lookup subtable, GSUB type 5 or GPOS type 7.
+   */
+  protected static Node subsetContext(LayoutSubsetContext context, ReadableFontData data) {
+    switch (data.readUShort(0)) {
+    case 1:
+      return subsetRuleSets(context, data, false);
+    case 2:
+      return subsetClassRuleSets(context, data, false);
+    case 3:
+      return subsetCoverageRule(context, data, false);
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * Subsets a chained context lookup subtable, GSUB type 6 or GPOS type 8.
+   */
+  protected static Node subsetChainContext(LayoutSubsetContext context, ReadableFontData data) {
+    switch (data.readUShort(0)) {
+    case 1:
+      return subsetRuleSets(context, data, true);
+    case 2:
+      return subsetClassRuleSets(context, data, true);
+    case 3:
+      return subsetCoverageRule(context, data, true);
+    default:
+      return null;
+    }
+  }
+}
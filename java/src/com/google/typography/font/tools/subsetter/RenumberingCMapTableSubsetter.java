@@ -21,11 +21,12 @@ import com.google.typography.font.sfntly.Font.Builder;
 import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.table.core.CMap;
 import com.google.typography.font.sfntly.table.core.CMap.CMapFormat;
-import com.google.typography.font.sfntly.table.core.CMapFormat4;
+import com.google.typography.font.sfntly.table.core.CMapReverseIndex;
 import com.google.typography.font.sfntly.table.core.CMapTable;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -37,27 +38,38 @@ public class RenumberingCMapTableSubsetter extends TableSubsetterImpl {
     super(Tag.cmap);
   }
  
-  private static CMapFormat4 getCMapFormat4(Font font) {
+  /**
+   * Gets the cmap to take the character mappings from. A format 12 cmap is
+   * preferred since it also maps the characters outside of the BMP.
+   */
+  private static CMap getSourceCMap(Font font) {
     CMapTable cmapTable = font.getTable(Tag.cmap);
+    CMap format4 = null;
     for (CMap cmap : cmapTable) {
-      if (cmap.format() == CMapFormat.Format4.value()) {
-        return (CMapFormat4) cmap;
+      if (cmap.format() == CMapFormat.Format12.value()) {
+        return cmap;
+      }
+      if (cmap.format() == CMapFormat.Format4.value() && format4 == null) {
+        format4 = cmap;
       }
     }
-    return null;
+    return format4;
   }
-  
+
   static Map<Integer, Integer> computeMapping(Subsetter subsetter, Font font) {
-    CMapFormat4 cmap4 = getCMapFormat4(font);
-    if (cmap4 == null) {
-      throw new RuntimeException("CMap format 4 table in source font not found");
+    CMap cmap = getSourceCMap(font);
+    if (cmap == null) {
+      throw new RuntimeException("CMap format 4 or 12 table in source font not found");
     }
-    Map<Integer, Integer> inverseMapping = subsetter.getInverseMapping();
+    // the cmap table keeps the cmaps it builds, so the reverse index is built once per
+    // font and only the kept glyphs are visited here
+    CMapReverseIndex reverseIndex = cmap.reverseIndex();
+    List<Integer> newToOld = subsetter.glyphMappingTable();
     Map<Integer, Integer> mapping = new HashMap<Integer, Integer>();
-    for (Integer unicode : cmap4) {
-      int glyph = cmap4.glyphId(unicode);
-      if (inverseMapping.containsKey(glyph)) {
-        mapping.put(unicode, inverseMapping.get(glyph));
+    for (int newGlyph = 0; newGlyph < newToOld.size(); newGlyph++) {
+      int oldGlyph = newToOld.get(newGlyph);
+      for (int i = 0; i < reverseIndex.characterCount(oldGlyph); i++) {
+        mapping.put(reverseIndex.character(oldGlyph, i), newGlyph);
       }
     }
     return mapping;
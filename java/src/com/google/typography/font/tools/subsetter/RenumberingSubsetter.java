@@ -20,27 +20,52 @@ import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.FontFactory;
 import com.google.typography.font.sfntly.Tag;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.io.IOException;
 
 /**
  * @author Raph Levien
  */
 public class RenumberingSubsetter extends Subsetter {
 
+  private GlyphOrder glyphOrder;
+
   {
-    Set<TableSubsetter> temp = new HashSet<TableSubsetter>();
-    temp.add(new GlyphTableSubsetter());
-    temp.add(new RenumberingCMapTableSubsetter());
-    temp.add(new PostScriptTableSubsetter());
-    temp.add(new HorizontalMetricsTableSubsetter());
-    tableSubsetters = temp;
+    tableSubsetters.add(new GlyphTableSubsetter());
+    tableSubsetters.add(new CffTableSubsetter());
+    tableSubsetters.add(new GlyphVariationsTableSubsetter());
+    tableSubsetters.add(new RenumberingCMapTableSubsetter());
+    tableSubsetters.add(new PostScriptTableSubsetter());
+    tableSubsetters.add(new HorizontalMetricsTableSubsetter());
+    tableSubsetters.add(new HorizontalMetricsVariationsTableSubsetter());
+    tableSubsetters.add(new GSubTableSubsetter());
+    tableSubsetters.add(new GPosTableSubsetter());
+    tableSubsetters.add(new GDefTableSubsetter());
+    tableSubsetters.add(new BitmapTableSubsetter());
   }
 
   public RenumberingSubsetter(Font font, FontFactory fontFactory) {
     super(font, fontFactory);
   }
 
+  /**
+   * Set the strategy that chooses the new glyph ids. By default, or with a
+   * null strategy, the glyphs are numbered in the order given to
+   * {@link #setGlyphs(java.util.List)}.
+   *
+   * @param glyphOrder the strategy, or null
+   */
+  public void setGlyphOrder(GlyphOrder glyphOrder) {
+    this.glyphOrder = glyphOrder;
+  }
+
+  @Override
+  public Font.Builder subset() throws IOException {
+    if (this.glyphOrder != null && glyphMappingTable() != null) {
+      setGlyphs(this.glyphOrder.order(this.font, glyphMappingTable()));
+    }
+    return super.subset();
+  }
+
   @Override
   protected void setUpTables(Font.Builder fontBuilder) {
     fontBuilder.newTableBuilder(Tag.hhea, font.getTable(Tag.hhea).readFontData());
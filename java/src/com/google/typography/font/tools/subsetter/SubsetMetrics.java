@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.TableBuildListener;
+
+/**
+ * A listener for the cost of subsetting a font. It is told about each
+ * {@link TableSubsetter} that is run and, since it is also a
+ * {@link TableBuildListener}, about each table when the subset font is built.
+ * The size of the subset tables is only known once they are built, so the
+ * output size of a table subsetter is given by the builds of the tables that
+ * it handles.
+ *
+ * @see Subsetter#setMetrics(SubsetMetrics)
+ */
+public interface SubsetMetrics extends TableBuildListener {
+
+  /**
+   * Called after a table subsetter has run.
+   *
+   * @param tableSubsetter the table subsetter
+   * @param bytesIn the total length of the source font tables that the table
+   *        subsetter handles
+   * @param glyphBuilders the number of glyph builders created for the subset
+   *        glyph table; zero if the table subsetter doesn't handle the glyph
+   *        table
+   * @param nanos the wall time taken by the table subsetter, in nanoseconds
+   */
+  void tableSubsetted(TableSubsetter tableSubsetter, int bytesIn, int glyphBuilders, long nanos);
+}
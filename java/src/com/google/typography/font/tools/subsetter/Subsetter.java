@@ -22,10 +22,15 @@ import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.table.Table;
 import com.google.typography.font.sfntly.table.core.CMap;
 import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
 
 import java.io.IOException;
 import java.security.InvalidParameterException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * sfntly sample code demonstrating subsetting. Work in progress.
@@ -40,12 +45,18 @@ public class Subsetter {
   //private SmartFontBuilder fontBuilder;
   private FontFactory fontFactory;
   // TODO(stuartg): can TableSubsetter become TableProcessor?
-  protected Set<TableSubsetter> tableSubsetters;
+  // in the order they are added, which is the order that table subsetters
+  // handling the same tables are run in
+  protected Set<TableSubsetter> tableSubsetters = new LinkedHashSet<TableSubsetter>();
 
   // settings from user
   private Set<Integer> removeTables;
   private List<Integer> newToOldGlyphs;
   private List<CMapTable.CMapId> cmapIds;
+  private final List<GlyphTransform> glyphTransforms = new ArrayList<GlyphTransform>();
+  private boolean deduplicateGlyphs;
+  private SubsetMetrics metrics;
+  private ForkJoinPool pool;
 
   // inverse of mapping, computed lazily
   private Map<Integer, Integer> oldToNewGlyphs = null;
@@ -57,6 +68,7 @@ public class Subsetter {
 
   public void setGlyphs(List<Integer> glyphs) {
     this.newToOldGlyphs = new ArrayList<Integer>(glyphs);
+    this.oldToNewGlyphs = null;
   }
 
   /**
@@ -110,8 +122,65 @@ public class Subsetter {
     this.removeTables = new HashSet<Integer>(removeTables);
   }
 
+  /**
+   * Add a transform to apply to each glyph while the glyph table is subset.
+   * Transforms are applied in the order they are added, so a font can be
+   * subset and have its hints stripped in one pass.
+   *
+   * @param glyphTransform the transform to add
+   */
+  public void addGlyphTransform(GlyphTransform glyphTransform) {
+    this.glyphTransforms.add(glyphTransform);
+  }
+
+  /**
+   * Set whether simple glyphs that are byte-for-byte the same as an earlier
+   * glyph of the subset are stored as a reference to the earlier glyph. See
+   * {@link GlyphTable.Builder#deduplicateGlyphs()}. Glyphs of variable fonts
+   * aren't deduplicated, since their variations are for their own points.
+   *
+   * @param deduplicateGlyphs true to store duplicate glyphs once
+   */
+  public void setDeduplicateGlyphs(boolean deduplicateGlyphs) {
+    this.deduplicateGlyphs = deduplicateGlyphs;
+  }
+
+  /**
+   * Set a listener that is told the time taken by each table subsetter and,
+   * when the font builder returned by {@link #subset()} is built, by each
+   * table build.
+   *
+   * @param metrics the listener, or null for none
+   */
+  public void setMetrics(SubsetMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Add a table subsetter. It is run after the table subsetters already added
+   * that handle any of the same tables.
+   *
+   * @param tableSubsetter the table subsetter
+   */
+  public void addTableSubsetter(TableSubsetter tableSubsetter) {
+    this.tableSubsetters.add(tableSubsetter);
+  }
+
+  /**
+   * Set the pool to run the table subsetters in. Table subsetters that have
+   * no tables in common are run at the same time, so they must be safe to use
+   * concurrently with each other. By default, or with a null pool, the table
+   * subsetters are run one after the other in the calling thread.
+   *
+   * @param pool the pool, or null
+   */
+  public void setForkJoinPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
   public Font.Builder subset() throws IOException {
     Font.Builder fontBuilder = this.fontFactory.newFontBuilder();
+    fontBuilder.setTableBuildListener(this.metrics);
 
     setUpTables(fontBuilder);
 
@@ -120,11 +189,22 @@ public class Subsetter {
       tableTags.removeAll(this.removeTables);
     }
 
+    TableSubsetterRegistry registry = new TableSubsetterRegistry();
     for (TableSubsetter tableSubsetter : this.tableSubsetters) {
-      boolean handled = tableSubsetter.subset(this, this.font, fontBuilder);
-      if (handled) {
-        tableTags.removeAll(tableSubsetter.tagsHandled());
+      registry.register(tableSubsetter);
+    }
+    List<List<TableSubsetter>> groups = registry.independentGroups(this.removeTables);
+    List<TableSubsetter> handled;
+    if (this.pool == null || groups.size() < 2) {
+      handled = new ArrayList<TableSubsetter>();
+      for (List<TableSubsetter> group : groups) {
+        handled.addAll(runTableSubsetters(group, fontBuilder));
       }
+    } else {
+      handled = runTableSubsettersInPool(groups, fontBuilder);
+    }
+    for (TableSubsetter tableSubsetter : handled) {
+      tableTags.removeAll(tableSubsetter.tagsHandled());
     }
     for (Integer tag : tableTags) {
       Table table = this.font.getTable(tag);
@@ -135,6 +215,100 @@ public class Subsetter {
     return fontBuilder;
   }
 
+  /**
+   * Run a group of dependent table subsetters in order.
+   *
+   * @return the table subsetters that handled their tables
+   */
+  private List<TableSubsetter> runTableSubsetters(
+      List<TableSubsetter> group, Font.Builder fontBuilder) throws IOException {
+    List<TableSubsetter> handled = new ArrayList<TableSubsetter>(group.size());
+    for (TableSubsetter tableSubsetter : group) {
+      long start = this.metrics == null ? 0 : System.nanoTime();
+      if (tableSubsetter.subset(this, this.font, fontBuilder)) {
+        handled.add(tableSubsetter);
+      }
+      if (this.metrics != null) {
+        reportMetrics(tableSubsetter, fontBuilder, System.nanoTime() - start);
+      }
+    }
+    return handled;
+  }
+
+  /**
+   * Run independent groups of table subsetters at the same time in the pool.
+   * All of the groups are finished before returning, even if one fails, so
+   * that nothing is still changing the font builder.
+   *
+   * @return the table subsetters that handled their tables
+   */
+  private List<TableSubsetter> runTableSubsettersInPool(
+      List<List<TableSubsetter>> groups, final Font.Builder fontBuilder) throws IOException {
+    // the inverse mapping is built lazily so build it before it's shared
+    if (glyphMappingTable() != null) {
+      getInverseMapping();
+    }
+    List<ForkJoinTask<List<TableSubsetter>>> tasks =
+        new ArrayList<ForkJoinTask<List<TableSubsetter>>>(groups.size());
+    for (final List<TableSubsetter> group : groups) {
+      tasks.add(this.pool.submit(new Callable<List<TableSubsetter>>() {
+        @Override
+        public List<TableSubsetter> call() throws IOException {
+          return runTableSubsetters(group, fontBuilder);
+        }
+      }));
+    }
+    List<TableSubsetter> handled = new ArrayList<TableSubsetter>();
+    Throwable failure = null;
+    boolean interrupted = false;
+    for (ForkJoinTask<List<TableSubsetter>> task : tasks) {
+      while (true) {
+        try {
+          handled.addAll(task.get());
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+          }
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    } else if (failure != null) {
+      throw new IOException("Table subsetter failed.", failure);
+    }
+    return handled;
+  }
+
+  private void reportMetrics(
+      TableSubsetter tableSubsetter, Font.Builder fontBuilder, long nanos) {
+    int bytesIn = 0;
+    for (int tag : tableSubsetter.tagsHandled()) {
+      Table table = this.font.getTable(tag);
+      if (table != null) {
+        bytesIn += table.dataLength();
+      }
+    }
+    int glyphBuilders = 0;
+    if (tableSubsetter.tagHandled(Tag.glyf) && fontBuilder.hasTableBuilder(Tag.glyf)) {
+      GlyphTable.Builder glyphTableBuilder =
+          (GlyphTable.Builder) fontBuilder.getTableBuilder(Tag.glyf);
+      glyphBuilders = glyphTableBuilder.glyphBuilders().size();
+    }
+    this.metrics.tableSubsetted(tableSubsetter, bytesIn, glyphBuilders, nanos);
+  }
+
   /**
    * Get the permutation table of the old glyph id to the new glyph id.
    *
@@ -160,6 +334,14 @@ public class Subsetter {
     return oldToNewGlyphs;
   }
 
+  List<GlyphTransform> glyphTransforms() {
+    return this.glyphTransforms;
+  }
+
+  boolean deduplicateGlyphs() {
+    return this.deduplicateGlyphs;
+  }
+
   List<CMapTable.CMapId> cmapId() {
     return this.cmapIds;
   }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The table subsetters of a {@link Subsetter}. Table subsetters that handle a
+ * common table depend on each other, since they use the same table builders,
+ * and are run one after the other in the order they were registered. Table
+ * subsetters that have no tables in common, directly or through other table
+ * subsetters, are independent and can be run at the same time.
+ */
+public final class TableSubsetterRegistry implements Iterable<TableSubsetter> {
+
+  private final List<TableSubsetter> tableSubsetters = new ArrayList<TableSubsetter>();
+
+  /**
+   * Register a table subsetter. It is run after the table subsetters already
+   * registered that handle any of the same tables.
+   *
+   * @param tableSubsetter the table subsetter
+   */
+  public void register(TableSubsetter tableSubsetter) {
+    this.tableSubsetters.add(tableSubsetter);
+  }
+
+  /**
+   * Get the number of registered table subsetters.
+   *
+   * @return the number of table subsetters
+   */
+  public int size() {
+    return this.tableSubsetters.size();
+  }
+
+  @Override
+  public Iterator<TableSubsetter> iterator() {
+    return Collections.unmodifiableList(this.tableSubsetters).iterator();
+  }
+
+  /**
+   * Get the table subsetters split into groups that are independent of each
+   * other. Each group is in the order the table subsetters were registered,
+   * and the groups are in the order of their first table subsetter. Table
+   * subsetters whose tables are all removed are left out.
+   *
+   * @param removeTables the tags of the tables removed from the subset font,
+   *        or null
+   * @return the groups of table subsetters
+   */
+  public List<List<TableSubsetter>> independentGroups(Set<Integer> removeTables) {
+    // union-find over the table subsetters, joining those with a common tag
+    int[] parent = new int[this.tableSubsetters.size()];
+    Map<Integer, Integer> tagOwner = new HashMap<Integer, Integer>();
+    for (int i = 0; i < parent.length; i++) {
+      parent[i] = i;
+      if (removed(this.tableSubsetters.get(i), removeTables)) {
+        continue;
+      }
+      for (int tag : this.tableSubsetters.get(i).tagsHandled()) {
+        Integer owner = tagOwner.get(tag);
+        if (owner == null) {
+          tagOwner.put(tag, i);
+        } else {
+          union(parent, owner, i);
+        }
+      }
+    }
+
+    List<List<TableSubsetter>> groups = new ArrayList<List<TableSubsetter>>();
+    Map<Integer, List<TableSubsetter>> groupsByRoot = new HashMap<Integer, List<TableSubsetter>>();
+    for (int i = 0; i < parent.length; i++) {
+      TableSubsetter tableSubsetter = this.tableSubsetters.get(i);
+      if (removed(tableSubsetter, removeTables)) {
+        continue;
+      }
+      int root = find(parent, i);
+      List<TableSubsetter> group = groupsByRoot.get(root);
+      if (group == null) {
+        group = new ArrayList<TableSubsetter>();
+        groupsByRoot.put(root, group);
+        groups.add(group);
+      }
+      group.add(tableSubsetter);
+    }
+    return groups;
+  }
+
+  private static boolean removed(TableSubsetter tableSubsetter, Set<Integer> removeTables) {
+    return removeTables != null && removeTables.containsAll(tableSubsetter.tagsHandled());
+  }
+
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  private static void union(int[] parent, int a, int b) {
+    int rootA = find(parent, a);
+    int rootB = find(parent, b);
+    // keep the earliest registered table subsetter as the root
+    parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the loading of TrueType Collections.
+ */
+public class FontCollectionTests extends TestCase {
+
+  private static byte[] readFile(File file) throws IOException {
+    byte[] b = new byte[(int) file.length()];
+    FileInputStream is = new FileInputStream(file);
+    try {
+      int read = 0;
+      while (read < b.length) {
+        read += is.read(b, read, b.length - read);
+      }
+    } finally {
+      is.close();
+    }
+    return b;
+  }
+
+  /**
+   * Creates a collection of two fonts that have the same tables except for
+   * the name table.
+   */
+  private static byte[] testCollection() throws IOException {
+    File fontFile = TestFontNames.ROBOTO.getFile();
+    ReadableFontData font = ReadableFontData.createReadableFontData(readFile(fontFile));
+    ReadableFontData name =
+        FontFactory.getInstance().loadFonts(readFile(fontFile))[0].getTable(Tag.name).readFontData();
+    int numTables = font.readUShort(4);
+    int directorySize = 12 + 16 * numTables;
+    int headerSize = 12 + 2 * 4;
+    int fontStart = headerSize + 2 * directorySize;
+    WritableFontData ttc =
+        WritableFontData.createWritableFontData(fontStart + font.length() + name.length());
+    ttc.writeULong(0, Tag.ttcf);
+    ttc.writeFixed(4, 0x10000);
+    ttc.writeULong(8, 2);
+    for (int member = 0; member < 2; member++) {
+      int directory = headerSize + member * directorySize;
+      ttc.writeULong(12 + 4 * member, directory);
+      font.slice(0, directorySize).copyTo(ttc.slice(directory, directorySize));
+      for (int i = 0; i < numTables; i++) {
+        int record = directory + 12 + 16 * i;
+        int offset = ttc.readULongAsInt(record + 8);
+        if (member == 1 && ttc.readULongAsInt(record) == Tag.name) {
+          // point the second font at a copy of the name table at the end
+          offset = font.length();
+        }
+        ttc.writeULong(record + 8, fontStart + offset);
+      }
+    }
+    font.copyTo(ttc.slice(fontStart));
+    name.copyTo(ttc.slice(fontStart + font.length()));
+    byte[] b = new byte[ttc.length()];
+    ttc.readBytes(0, b, 0, b.length);
+    return b;
+  }
+
+  public void testLazyLoading() throws IOException {
+    FontCollection collection = FontFactory.getInstance().loadFontCollection(testCollection());
+    assertEquals(2, collection.size());
+    Font second = collection.font(1);
+    assertSame(second, collection.font(1));
+    assertNotNull(second.getTable(Tag.glyf));
+    assertEquals(second.numTables(), collection.font(0).numTables());
+  }
+
+  public void testTablesShared() throws IOException {
+    FontCollection collection = FontFactory.getInstance().loadFontCollection(testCollection());
+    Font first = collection.font(0);
+    Font second = collection.font(1);
+    assertSame(first.getTable(Tag.glyf), second.getTable(Tag.glyf));
+    assertSame(first.getTable(Tag.loca), second.getTable(Tag.loca));
+    assertSame(first.getTable(Tag.cmap), second.getTable(Tag.cmap));
+    assertNotSame(first.getTable(Tag.name), second.getTable(Tag.name));
+    // every other table, including those built with data from other tables
+    for (int tag : first.tableMap().keySet()) {
+      if (tag != Tag.name) {
+        assertSame(first.getTable(tag), second.getTable(tag));
+      }
+    }
+    assertEquals(first.tableMap().keySet(), second.tableMap().keySet());
+  }
+
+  public void testStreamReadFully() throws IOException {
+    // a stream that reads in small chunks and doesn't know how much is left
+    InputStream is = new FilterInputStream(new ByteArrayInputStream(testCollection())) {
+      @Override
+      public int available() {
+        return 0;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        return super.read(b, off, Math.min(len, 100));
+      }
+    };
+    Font[] fonts = FontFactory.getInstance().loadFonts(is);
+    assertEquals(2, fonts.length);
+    assertSame(fonts[0].getTable(Tag.hmtx), fonts[1].getTable(Tag.hmtx));
+    assertTrue(fonts[1].getTable(Tag.name).dataLength() > 0);
+  }
+
+  public void testSerializeCollection() throws IOException {
+    FontFactory factory = FontFactory.getInstance();
+    byte[] roboto = readFile(TestFontNames.ROBOTO.getFile());
+    byte[] openSans = readFile(TestFontNames.OPENSANS.getFile());
+    List<Font> fonts = new ArrayList<Font>();
+    fonts.add(factory.loadFonts(roboto)[0]);
+    fonts.add(factory.loadFonts(openSans)[0]);
+    // a separately loaded copy, so that only the contents of the tables match
+    fonts.add(factory.loadFonts(roboto)[0]);
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    factory.serializeFontCollection(fonts, os);
+    byte[] ttc = os.toByteArray();
+    assertTrue(ttc.length < roboto.length + openSans.length + 1024);
+
+    FontCollection collection = factory.loadFontCollection(ttc);
+    assertEquals(3, collection.size());
+    for (int i = 0; i < fonts.size(); i++) {
+      Font expected = fonts.get(i);
+      Font actual = collection.font(i);
+      assertEquals(expected.tableMap().keySet(), actual.tableMap().keySet());
+      for (int tag : expected.tableMap().keySet()) {
+        assertEquals(expected.getTable(tag).calculatedChecksum(),
+            actual.getTable(tag).calculatedChecksum());
+      }
+    }
+    assertSame(collection.font(0).getTable(Tag.glyf), collection.font(2).getTable(Tag.glyf));
+    assertNotSame(collection.font(0).getTable(Tag.glyf), collection.font(1).getTable(Tag.glyf));
+  }
+
+  public void testSingleFont() throws IOException {
+    FontCollection collection = FontFactory.getInstance().loadFontCollection(
+        readFile(TestFontNames.ROBOTO.getFile()));
+    assertEquals(1, collection.size());
+    assertNotNull(collection.font(0).getTable(Tag.head));
+  }
+}
@@ -22,7 +22,11 @@ import com.google.typography.font.sfntly.testutils.TestFont;
 import com.google.typography.font.sfntly.testutils.TestFontUtils;
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -70,4 +74,62 @@ public class LoadingTests extends TestCase {
       }
     }
   }
+
+  /**
+   * Makes a font whose aaaa and bbbb tables are the same data, as bdat and
+   * EBDT or bloc and EBLC often are, with a cccc table inside them and a dddd
+   * table after them.
+   */
+  private static byte[] aliasedTablesFont() throws IOException {
+    int[] tags = {Tag.intValue("aaaa"), Tag.intValue("bbbb"), Tag.intValue("cccc"),
+        Tag.intValue("dddd")};
+    int dataOffset = 12 + 16 * tags.length;
+    int[] offsets = {dataOffset, dataOffset, dataOffset + 4, dataOffset + 8};
+    int[] lengths = {8, 8, 4, 4};
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0x00010000);
+    out.writeShort(tags.length);
+    out.writeShort(64);
+    out.writeShort(2);
+    out.writeShort(0);
+    for (int i = 0; i < tags.length; i++) {
+      out.writeInt(tags[i]);
+      out.writeInt(0);
+      out.writeInt(offsets[i]);
+      out.writeInt(lengths[i]);
+    }
+    for (int i = 0; i < 12; i++) {
+      out.write(i + 1);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void assertAliasedTables(Font font) {
+    assertEquals(4, font.numTables());
+    Table aaaa = font.getTable(Tag.intValue("aaaa"));
+    Table bbbb = font.getTable(Tag.intValue("bbbb"));
+    Table cccc = font.getTable(Tag.intValue("cccc"));
+    Table dddd = font.getTable(Tag.intValue("dddd"));
+    assertEquals(8, aaaa.dataLength());
+    for (int i = 0; i < 8; i++) {
+      assertEquals(i + 1, aaaa.readFontData().readUByte(i));
+      assertEquals(i + 1, bbbb.readFontData().readUByte(i));
+    }
+    for (int i = 0; i < 4; i++) {
+      assertEquals(i + 5, cccc.readFontData().readUByte(i));
+      assertEquals(i + 9, dddd.readFontData().readUByte(i));
+    }
+  }
+
+  public void testAliasedTablesFromByteArray() throws IOException {
+    Font[] fonts = FontFactory.getInstance().loadFonts(aliasedTablesFont());
+    assertAliasedTables(fonts[0]);
+  }
+
+  public void testAliasedTablesFromStream() throws IOException {
+    Font[] fonts =
+        FontFactory.getInstance().loadFonts(new ByteArrayInputStream(aliasedTablesFont()));
+    assertAliasedTables(fonts[0]);
+  }
 }
@@ -25,6 +25,7 @@ import com.google.typography.font.sfntly.testutils.TestFontUtils;
 import junit.framework.TestCase;
 
 import java.io.File;
+import java.util.Arrays;
 
 /**
  * @author Stuart Gill
@@ -81,4 +82,21 @@ public class NameTests extends TestCase {
       assertEquals(nameTable.nameCount(), nameCount);
     }
   }
+
+  public void testNameEntryLookup() throws Exception {
+    for (TestFontNames fontName : TestFontNames.values()) {
+      Font font = TestFontUtils.loadFont(fontName.getFile())[0];
+      NameTable nameTable = font.getTable(Tag.name);
+      for (int nameIndex = 0; nameIndex < nameTable.nameCount(); nameIndex++) {
+        NameTable.NameEntry entry = nameTable.nameEntry(nameIndex);
+        NameTable.NameEntry found = nameTable.nameEntry(
+            entry.platformId(), entry.encodingId(), entry.languageId(), entry.nameId());
+        assertEquals(entry, found);
+        assertTrue(Arrays.equals(entry.nameAsBytes(), nameTable.nameAsBytes(
+            entry.platformId(), entry.encodingId(), entry.languageId(), entry.nameId())));
+      }
+      assertNull(nameTable.nameEntry(PlatformId.Windows.value(), 1, 0x409, 0xffff));
+      assertNull(nameTable.nameAsBytes(0xffff, 0, 0, NameId.FontFamilyName.value()));
+    }
+  }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import com.google.typography.font.sfntly.table.core.FontHeaderTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Tests that serializing a font to a channel gives the same bytes as
+ * serializing it to a stream.
+ */
+public class SerializationTests extends TestCase {
+
+  private static byte[] serializeToStream(Font font) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    FontFactory.getInstance().serializeFont(font, os);
+    return os.toByteArray();
+  }
+
+  public void testChannel() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    byte[] expected = serializeToStream(font);
+
+    // a channel that can't do gathering writes
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    FontFactory.getInstance().serializeFont(font, Channels.newChannel(os));
+    assertTrue(Arrays.equals(expected, os.toByteArray()));
+  }
+
+  public void testFileChannel() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    byte[] expected = serializeToStream(font);
+
+    File file = File.createTempFile("sfntly", ".ttf");
+    file.deleteOnExit();
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      FileChannel channel = raf.getChannel();
+      FontFactory.getInstance().serializeFont(font, channel);
+      assertEquals(expected.length, channel.size());
+      byte[] actual = new byte[expected.length];
+      raf.seek(0);
+      raf.readFully(actual);
+      assertTrue(Arrays.equals(expected, actual));
+    } finally {
+      raf.close();
+    }
+  }
+
+  public void testBuiltTables() throws IOException {
+    // tables rebuilt from builders have growable backing data
+    Font.Builder builder = TestFontUtils.builderForFontFile(TestFontNames.OPENSANS.getFile());
+    FontHeaderTable.Builder head = (FontHeaderTable.Builder) builder.getTableBuilder(Tag.head);
+    head.setFontRevision(head.fontRevision() + 1);
+    Font font = builder.build();
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    FontFactory.getInstance().serializeFont(font, Channels.newChannel(os));
+    assertTrue(Arrays.equals(serializeToStream(font), os.toByteArray()));
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tests the tag keyed map used for the tables of a font.
+ */
+public class TagMapTests extends TestCase {
+
+  public void testSortedByTag() {
+    TagMap<String> map = new TagMap<String>(2);
+    Map<Integer, String> expected = new TreeMap<Integer, String>();
+    int[] tags = {Tag.name, Tag.OS_2, Tag.cmap, Tag.glyf, Tag.head, Tag.loca, Tag.GSUB};
+    for (int tag : tags) {
+      map.put(tag, Tag.stringValue(tag));
+      expected.put(tag, Tag.stringValue(tag));
+    }
+    assertEquals("name", map.put(Tag.name, "new"));
+    expected.put(Tag.name, "new");
+
+    assertEquals(expected, map);
+    assertEquals(new ArrayList<Integer>(expected.keySet()), new ArrayList<Integer>(map.keySet()));
+    assertTrue(map.containsKey(Tag.loca));
+    assertFalse(map.containsKey(Tag.hmtx));
+    assertNull(map.get(Tag.hmtx));
+    assertNull(map.get("glyf"));
+  }
+
+  public void testNullValue() {
+    try {
+      new TagMap<String>(1).put(Tag.glyf, null);
+      fail("Null value accepted.");
+    } catch (NullPointerException e) {
+      // expected
+    }
+  }
+
+  public void testStreamAndByteArrayLoadMatch() throws IOException {
+    for (TestFontNames name : TestFontNames.values()) {
+      Font fromStream = TestFontUtils.loadFont(name.getFile())[0];
+      Font fromBytes =
+          FontFactory.getInstance().loadFonts(Files.readAllBytes(name.getFile().toPath()))[0];
+      assertEquals(fromBytes.numTables(), fromStream.numTables());
+      Iterator<? extends Table> bytesTables = fromBytes.iterator();
+      Iterator<? extends Table> streamTables = fromStream.iterator();
+      List<Integer> tags = new ArrayList<Integer>();
+      while (bytesTables.hasNext()) {
+        Table table = bytesTables.next();
+        Table other = streamTables.next();
+        assertEquals(table.headerTag(), other.headerTag());
+        assertEquals(table.header().offset(), other.header().offset());
+        assertEquals(table.calculatedChecksum(), other.calculatedChecksum());
+        tags.add(table.headerTag());
+      }
+      for (int i = 1; i < tags.size(); i++) {
+        assertTrue(tags.get(i - 1) < tags.get(i));
+      }
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.tools.conversion.eot.EOTWriter;
+import com.google.typography.font.tools.conversion.woff.WoffWriter;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Tests the loading of WOFF and EOT fonts.
+ */
+public class WebFontLoadingTests extends TestCase {
+
+  private static byte[] toBytes(ReadableFontData data) {
+    byte[] b = new byte[data.length()];
+    data.readBytes(0, b, 0, b.length);
+    return b;
+  }
+
+  private static void assertSameTables(Font expected, Font actual) {
+    assertEquals(expected.sfntVersion(), actual.sfntVersion());
+    // the WOFF writer drops the DSIG table since the signature is invalidated
+    int dropped = expected.hasTable(Tag.DSIG) && !actual.hasTable(Tag.DSIG) ? 1 : 0;
+    assertEquals(expected.numTables() - dropped, actual.numTables());
+    Iterator<? extends Table> iterator = actual.iterator();
+    while (iterator.hasNext()) {
+      Table other = iterator.next();
+      Table table = expected.getTable(other.headerTag());
+      assertNotNull(other);
+      assertEquals(table.getClass(), other.getClass());
+      assertEquals(table.dataLength(), other.dataLength());
+      for (int i = 0; i < table.dataLength(); i++) {
+        assertEquals(table.readFontData().readUByte(i), other.readFontData().readUByte(i));
+      }
+    }
+  }
+
+  public void testWoff() throws IOException {
+    for (TestFontNames name : TestFontNames.values()) {
+      Font font = TestFontUtils.loadFont(name.getFile())[0];
+      byte[] woff = toBytes(new WoffWriter().convert(font));
+      Font[] fonts = FontFactory.getInstance().loadFonts(woff);
+      assertEquals(1, fonts.length);
+      assertSameTables(font, fonts[0]);
+    }
+  }
+
+  public void testWoffStream() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    byte[] woff = toBytes(new WoffWriter().convert(font));
+    Font.Builder[] builders =
+        FontFactory.getInstance().loadFontsForBuilding(new ByteArrayInputStream(woff));
+    assertEquals(1, builders.length);
+    assertSameTables(font, builders[0].build());
+  }
+
+  public void testTruncatedWoff() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    WritableFontData woff = new WoffWriter().convert(font);
+    try {
+      FontFactory.getInstance().loadFonts(toBytes(woff.slice(0, woff.length() / 2)));
+      fail("Truncated WOFF data loaded.");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  public void testWoffOffsetPastEndRejected() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    WritableFontData woff = new WoffWriter().convert(font);
+    // an offset that is negative as a signed 32-bit value
+    woff.writeULong(44 + 4, 0xfffffff0L);
+    try {
+      FontFactory.getInstance().loadFonts(toBytes(woff));
+      fail("WOFF table past the end of the data loaded.");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  public void testWoffTableInflatedOnRead() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    WritableFontData woff = new WoffWriter().convert(font);
+    // corrupt the compressed GPOS data, which isn't read until the table is used
+    int entry = 44;
+    while (woff.readULongAsInt(entry) != Tag.GPOS) {
+      entry += 20;
+    }
+    int offset = woff.readULongAsInt(entry + 4);
+    assertTrue(woff.readULongAsInt(entry + 8) < woff.readULongAsInt(entry + 12));
+    woff.writeULong(offset, 0xffffffffL);
+
+    Font loaded = FontFactory.getInstance().loadFonts(toBytes(woff))[0];
+    assertTrue(font.getTable(Tag.head).readFontData().contentEquals(
+        loaded.getTable(Tag.head).readFontData()));
+    try {
+      loaded.getTable(Tag.GPOS).readFontData().readUByte(0);
+      fail("Corrupt compressed table data read.");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testEOT() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    byte[] eot = toBytes(new EOTWriter(false).convert(font));
+    assertSameTables(font, FontFactory.getInstance().loadFonts(eot)[0]);
+    assertSameTables(
+        font, FontFactory.getInstance().loadFonts(new ByteArrayInputStream(eot))[0]);
+  }
+
+  public void testXorEncryptedEOT() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    WritableFontData eot = new EOTWriter(false).convert(font);
+    // Flags and FontDataSize, with the font data at the end
+    eot.writeULongLE(12, eot.readULongLE(12) | 0x10000000);
+    int fontDataSize = (int) eot.readULongLE(4);
+    for (int i = eot.length() - fontDataSize; i < eot.length(); i++) {
+      eot.writeByte(i, (byte) (eot.readUByte(i) ^ 0x50));
+    }
+    assertSameTables(font, FontFactory.getInstance().loadFonts(toBytes(eot))[0]);
+  }
+
+  public void testOversizedEUDCRejected() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    WritableFontData eot = new EOTWriter(false).convert(font);
+    // the empty EUDC font data comes right before the font data at the end
+    int fontDataSize = (int) eot.readULongLE(4);
+    eot.writeULongLE(eot.length() - fontDataSize - 4, 0xffffffffL);
+    try {
+      FontFactory.getInstance().loadFonts(toBytes(eot));
+      fail("EOT with EUDC font data past its end loaded.");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  public void testCompressedEOTRejected() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    byte[] eot = toBytes(new EOTWriter(true).convert(font));
+    try {
+      FontFactory.getInstance().loadFonts(eot);
+      fail("MicroType Express compressed EOT loaded.");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
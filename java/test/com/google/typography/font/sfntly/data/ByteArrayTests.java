@@ -19,6 +19,9 @@ package com.google.typography.font.sfntly.data;
 import com.google.typography.font.sfntly.testutils.TestUtils;
 import junit.framework.TestCase;
 
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
 
 /**
  * @author Stuart Gill
@@ -46,6 +49,39 @@ public class ByteArrayTests extends TestCase {
     }
   }
 
+  public void testInflatingByteArray() throws Exception {
+    for (int size : BYTE_ARRAY_SIZES) {
+      byteArrayTester(inflatingByteArray(size));
+    }
+  }
+
+  public void testInflatingByteArrayClosed() {
+    InflatingByteArray ba = inflatingByteArray(100);
+    assertEquals(1, ba.get(1));
+    ba.close();
+    try {
+      ba.get(1);
+      fail("Read a closed byte array.");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  private static InflatingByteArray inflatingByteArray(int size) {
+    byte[] b = new byte[size];
+    for (int i = 0; i < size; i++) {
+      b[i] = (byte) (i % 256);
+    }
+    Deflater deflater = new Deflater();
+    deflater.setInput(b);
+    deflater.finish();
+    byte[] compressed = new byte[size + 64];
+    int length = deflater.deflate(compressed);
+    deflater.end();
+    return new InflatingByteArray(
+        ReadableFontData.createReadableFontData(Arrays.copyOf(compressed, length)), size);
+  }
+
   private void byteArrayTester(ByteArray<? extends ByteArray<?>> ba) throws Exception {
     copyTest(ba);
     // slicingCopyTest(ba);
@@ -0,0 +1,67 @@
+package com.google.typography.font.sfntly.table.bitmap;
+
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+
+import junit.framework.TestCase;
+
+public class BitmapSizeTableTests extends TestCase {
+
+  private static final int ARRAY_OFFSET = 8 + 48;
+
+  private static void writeFormat2(WritableFontData data, int entryIndex, int subTableOffset,
+      int firstGlyph, int lastGlyph, int imageFormat, int imageDataOffset, int imageSize) {
+    int entry = ARRAY_OFFSET + 8 * entryIndex;
+    data.writeUShort(entry, firstGlyph);
+    data.writeUShort(entry + 2, lastGlyph);
+    data.writeULong(entry + 4, subTableOffset - ARRAY_OFFSET);
+    data.writeUShort(subTableOffset, 2);
+    data.writeUShort(subTableOffset + 2, imageFormat);
+    data.writeULong(subTableOffset + 4, imageDataOffset);
+    data.writeULong(subTableOffset + 8, imageSize);
+  }
+
+  /**
+   * Creates a strike whose index subtables are not in glyph order.
+   */
+  private static BitmapSizeTable unsortedStrike() {
+    WritableFontData data = WritableFontData.createWritableFontData(ARRAY_OFFSET + 16 + 40);
+    data.writeFixed(0, 0x20000);
+    data.writeULong(4, 1);
+    data.writeULong(8, ARRAY_OFFSET);
+    data.writeULong(12, 16 + 40);
+    data.writeULong(16, 2);
+    data.writeUShort(48, 5);
+    data.writeUShort(50, 22);
+    writeFormat2(data, 0, ARRAY_OFFSET + 16, 20, 22, 5, 100, 5);
+    writeFormat2(data, 1, ARRAY_OFFSET + 36, 5, 7, 5, 4, 3);
+    EblcTable eblc = EblcTable.Builder.createBuilder(new Header(Tag.EBLC), data).build();
+    return eblc.bitmapSizeTable(0);
+  }
+
+  public void testUnsortedSubTables() {
+    BitmapSizeTable strike = unsortedStrike();
+    assertEquals(110, strike.glyphOffset(22));
+    assertEquals(5, strike.glyphLength(22));
+    assertEquals(4 + 3, strike.glyphOffset(6));
+    assertEquals(3, strike.glyphLength(6));
+    assertEquals(5, strike.glyphFormat(5));
+    assertEquals(-1, strike.glyphOffset(4));
+    assertEquals(-1, strike.glyphOffset(10));
+    assertEquals(-1, strike.glyphOffset(23));
+    assertNull(strike.glyphInfo(19));
+  }
+
+  public void testGlyphLocation() {
+    BitmapSizeTable strike = unsortedStrike();
+    BitmapGlyphInfo location = strike.glyphLocation(21);
+    assertEquals(21, location.glyphId());
+    assertFalse(location.relative());
+    assertEquals(105, location.offset());
+    assertEquals(5, location.length());
+    assertEquals(5, location.format());
+    assertEquals(strike.glyphInfo(7).offset(), strike.glyphLocation(7).offset());
+    assertNull(strike.glyphLocation(8));
+  }
+}
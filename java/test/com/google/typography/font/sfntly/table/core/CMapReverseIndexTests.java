@@ -0,0 +1,81 @@
+package com.google.typography.font.sfntly.table.core;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+
+public class CMapReverseIndexTests extends TestCase {
+
+  private static CMap windowsBmpCMap(TestFontNames name) throws IOException {
+    Font font = TestFontUtils.loadFont(name.getFile())[0];
+    CMapTable cmapTable = font.getTable(Tag.cmap);
+    return cmapTable.cmap(CMapTable.CMapId.WINDOWS_BMP);
+  }
+
+  private static void assertReverseIndex(CMap cmap) {
+    CMapReverseIndex index = cmap.reverseIndex();
+    int mapped = 0;
+    for (int character : cmap) {
+      int glyph = cmap.glyphId(character);
+      if (glyph == CMapTable.NOTDEF) {
+        continue;
+      }
+      mapped++;
+      boolean found = false;
+      for (int i = 0; i < index.characterCount(glyph); i++) {
+        found |= index.character(glyph, i) == character;
+      }
+      assertTrue(found);
+    }
+    assertEquals(mapped, index.numCharacters());
+    for (int glyph = 0; glyph < index.numGlyphs(); glyph++) {
+      int[] characters = index.characters(glyph);
+      for (int i = 0; i < characters.length; i++) {
+        assertEquals(glyph, cmap.glyphId(characters[i]));
+        if (i > 0) {
+          assertTrue(characters[i - 1] < characters[i]);
+        }
+      }
+    }
+  }
+
+  public void testFormat4() throws IOException {
+    for (TestFontNames name : TestFontNames.values()) {
+      assertReverseIndex(windowsBmpCMap(name));
+    }
+  }
+
+  public void testCached() throws IOException {
+    CMap cmap = windowsBmpCMap(TestFontNames.ROBOTO);
+    assertSame(cmap.reverseIndex(), cmap.reverseIndex());
+  }
+
+  public void testSharedAcrossLookups() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    CMapTable cmapTable = font.getTable(Tag.cmap);
+    CMap cmap = cmapTable.cmap(CMapTable.CMapId.WINDOWS_BMP);
+    CMapTable sameTable = font.getTable(Tag.cmap);
+    assertSame(cmap, sameTable.cmap(CMapTable.CMapId.WINDOWS_BMP));
+    assertSame(cmap, sameTable.cmap(cmapTable.getCmapIndex(CMapTable.CMapId.WINDOWS_BMP)));
+    assertSame(cmap.reverseIndex(),
+        sameTable.cmap(CMapTable.CMapId.WINDOWS_BMP).reverseIndex());
+    for (CMap iterated : sameTable) {
+      if (iterated.cmapId().equals(CMapTable.CMapId.WINDOWS_BMP)) {
+        assertSame(cmap.reverseIndex(), iterated.reverseIndex());
+      }
+    }
+  }
+
+  public void testUnmappedGlyph() throws IOException {
+    CMapReverseIndex index = windowsBmpCMap(TestFontNames.ROBOTO).reverseIndex();
+    assertEquals(0, index.characterCount(0));
+    assertEquals(0, index.characters(0).length);
+    assertEquals(0, index.characterCount(index.numGlyphs()));
+    assertEquals(0, index.characterCount(-1));
+  }
+}
@@ -0,0 +1,76 @@
+package com.google.typography.font.sfntly.table.opentype;
+
+import com.google.typography.font.sfntly.data.WritableFontData;
+
+import junit.framework.TestCase;
+
+public class LookupIndexTests extends TestCase {
+
+  private static WritableFontData data(int... ushorts) {
+    WritableFontData data = WritableFontData.createWritableFontData(ushorts.length * 2);
+    for (int i = 0; i < ushorts.length; i++) {
+      data.writeUShort(i * 2, ushorts[i]);
+    }
+    return data;
+  }
+
+  public void testCoverageFormat1() {
+    CoverageTable coverage = new CoverageTable(data(1, 4, 3, 7, 20, 300), 0, true);
+    assertEquals(0, coverage.coverageIndex(3));
+    assertEquals(1, coverage.coverageIndex(7));
+    assertEquals(3, coverage.coverageIndex(300));
+    assertEquals(-1, coverage.coverageIndex(4));
+    assertTrue(coverage.covers(20));
+    assertFalse(coverage.covers(0));
+    assertSame(coverage.index(), coverage.index());
+  }
+
+  public void testUnsortedCoverageFormat1() {
+    // Glyphs 20, 3, 7, 3 keep their coverage indices; the repeated 3 has its first.
+    CoverageTable coverage = new CoverageTable(data(1, 4, 20, 3, 7, 3), 0, true);
+    assertEquals(4, coverage.index().size());
+    assertEquals(0, coverage.coverageIndex(20));
+    assertEquals(1, coverage.coverageIndex(3));
+    assertEquals(2, coverage.coverageIndex(7));
+    assertEquals(-1, coverage.coverageIndex(4));
+    assertEquals(20, coverage.index().glyphAt(0));
+    assertEquals(3, coverage.index().glyphAt(3));
+    assertTrue(coverage.covers(7));
+    assertFalse(coverage.covers(8));
+  }
+
+  public void testCoverageFormat2() {
+    // Ranges 10-12 and 40-41, with start coverage indices 0 and 3.
+    CoverageTable coverage = new CoverageTable(data(2, 2, 10, 12, 0, 40, 41, 3), 0, true);
+    assertEquals(5, coverage.index().size());
+    assertEquals(0, coverage.coverageIndex(10));
+    assertEquals(2, coverage.coverageIndex(12));
+    assertEquals(3, coverage.coverageIndex(40));
+    assertEquals(4, coverage.coverageIndex(41));
+    assertEquals(-1, coverage.coverageIndex(13));
+    assertEquals(-1, coverage.coverageIndex(9));
+  }
+
+  public void testClassDefFormat1() {
+    // Start glyph 5, classes for glyphs 5, 6, 7.
+    ClassDefTable classDef = new ClassDefTable(data(1, 5, 3, 2, 0, 1), 0, true);
+    assertEquals(2, classDef.glyphClass(5));
+    assertEquals(0, classDef.glyphClass(6));
+    assertEquals(1, classDef.glyphClass(7));
+    assertEquals(0, classDef.glyphClass(4));
+    assertEquals(0, classDef.glyphClass(8));
+    assertEquals(2, classDef.index().maxClass());
+  }
+
+  public void testClassDefFormat2() {
+    // Ranges 3-4 in class 1 and 10-10 in class 3.
+    ClassDefTable classDef = new ClassDefTable(data(2, 2, 3, 4, 1, 10, 10, 3), 0, true);
+    assertEquals(1, classDef.glyphClass(3));
+    assertEquals(1, classDef.glyphClass(4));
+    assertEquals(0, classDef.glyphClass(5));
+    assertEquals(3, classDef.glyphClass(10));
+    assertEquals(0, classDef.glyphClass(11));
+    assertEquals(3, classDef.index().firstGlyph());
+    assertEquals(11, classDef.index().limitGlyph());
+  }
+}
@@ -16,10 +16,15 @@
 
 package com.google.typography.font.tools.conversion.eot;
 
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
 import junit.framework.TestCase;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Raph Levien
@@ -258,4 +263,22 @@ public class GlyfEncoderTest extends TestCase {
     byte[] expected = {(byte)254, (byte)0x12, (byte)0x34, (byte)0x56, (byte)0x78};
     assertEqualsByteArray(expected, tripletEncode(false, -0x1234, 0x5678));
   }
+
+  public void testParallelEncodeIsIdentical() throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (TestFontNames name : TestFontNames.values()) {
+        Font font = TestFontUtils.loadFont(name.getFile())[0];
+        GlyfEncoder sequential = new GlyfEncoder();
+        sequential.encode(font);
+        GlyfEncoder parallel = new GlyfEncoder();
+        parallel.encode(font, pool);
+        assertTrue(Arrays.equals(sequential.getGlyfBytes(), parallel.getGlyfBytes()));
+        assertTrue(Arrays.equals(sequential.getPushBytes(), parallel.getPushBytes()));
+        assertTrue(Arrays.equals(sequential.getCodeBytes(), parallel.getCodeBytes()));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
 }
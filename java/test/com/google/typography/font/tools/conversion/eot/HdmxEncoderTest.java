@@ -0,0 +1,75 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.core.FontHeaderTable;
+import com.google.typography.font.sfntly.table.core.HorizontalDeviceMetricsTable;
+import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+
+public class HdmxEncoderTest extends TestCase {
+
+  // the encoding of the surprises one record and glyph at a time, as in section 5.4
+  private static byte[] expectedSurprises(Font font) {
+    HorizontalDeviceMetricsTable hdmx = font.getTable(Tag.hdmx);
+    HorizontalMetricsTable hmtx = font.getTable(Tag.hmtx);
+    MaximumProfileTable maxp = font.getTable(Tag.maxp);
+    int unitsPerEm = font.<FontHeaderTable>getTable(Tag.head).unitsPerEm();
+    MagnitudeDependentWriter writer = new MagnitudeDependentWriter();
+    for (int i = 0; i < hdmx.numRecords(); i++) {
+      int ppem = hdmx.pixelSize(i);
+      for (int j = 0; j < maxp.numGlyphs(); j++) {
+        int roundedTtAw =
+            ((64 * ppem * hmtx.advanceWidth(j) + unitsPerEm / 2) / unitsPerEm + 32) / 64;
+        writer.writeValue(hdmx.width(i, j) - roundedTtAw);
+      }
+    }
+    writer.flush();
+    return writer.toByteArray();
+  }
+
+  public void testEncode() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.DROIDSANS.getFile())[0];
+    HorizontalDeviceMetricsTable hdmx = font.getTable(Tag.hdmx);
+    assertNotNull(hdmx);
+    byte[] expected = expectedSurprises(font);
+    int surprisesOffset = 8 + 2 * hdmx.numRecords();
+
+    HdmxEncoder encoder = new HdmxEncoder();
+    // the encoder keeps no state between calls, so encoding twice must give the same result
+    for (int pass = 0; pass < 2; pass++) {
+      WritableFontData result = encoder.encode(font);
+      assertEquals(hdmx.numRecords(), result.readUShort(2));
+      assertEquals(surprisesOffset + expected.length, result.length());
+      for (int i = 0; i < hdmx.numRecords(); i++) {
+        assertEquals(hdmx.pixelSize(i), result.readUByte(8 + 2 * i));
+        assertEquals(hdmx.maxWidth(i), result.readUByte(8 + 2 * i + 1));
+      }
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i], result.readByte(surprisesOffset + i));
+      }
+    }
+  }
+}
@@ -65,4 +65,29 @@ public class MagnitudeDependentWriterTest extends TestCase {
     byte[] expected = {(byte)0x3a, (byte)0x17};
     assertEqualsByteArray(expected, result);
   }
+
+  public void testLargeValues() {
+    MagnitudeDependentWriter writer = new MagnitudeDependentWriter();
+    writer.writeValue(1);
+    writer.writeValue(-13);
+    writer.flush();
+    // 1: 1 0 0, -13: thirteen 1s then 0 1, least significant bit first
+    byte[] expected = {(byte)0xf9, (byte)0xff, (byte)0x02};
+    assertEqualsByteArray(expected, writer.toByteArray());
+  }
+
+  public void testReset() {
+    MagnitudeDependentWriter writer = new MagnitudeDependentWriter();
+    writer.writeValue(5);
+    writer.flush();
+    writer.reset();
+    assertEquals(0, writer.size());
+    writer.writeValue(0);
+    writer.writeValue(-1);
+    writer.writeValue(2);
+    writer.writeValue(-3);
+    writer.flush();
+    byte[] expected = {(byte)0x3a, (byte)0x17};
+    assertEqualsByteArray(expected, writer.toByteArray());
+  }
 }
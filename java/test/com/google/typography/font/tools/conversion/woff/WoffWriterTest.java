@@ -0,0 +1,155 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+import com.google.typography.font.tools.subsetter.RenumberingSubsetter;
+import com.google.typography.font.tools.subsetter.Subsetter;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class WoffWriterTest extends TestCase {
+
+  private static final int HEADER_SIZE = 44;
+  private static final int ENTRY_SIZE = 20;
+
+  /**
+   * Creates a WOFF font that has all of its tables stored uncompressed, so
+   * that tables which are reused can be told apart from recompressed ones.
+   */
+  private static ReadableFontData uncompressedWoff(Font font) {
+    TreeSet<Integer> tags = new TreeSet<Integer>(font.tableMap().keySet());
+    int length = HEADER_SIZE + ENTRY_SIZE * tags.size();
+    for (int tag : tags) {
+      length += (font.getTable(tag).dataLength() + 3) & ~3;
+    }
+    WritableFontData woff = WritableFontData.createWritableFontData(length);
+    woff.writeULong(0, 0x774F4646);
+    woff.writeULong(4, font.sfntVersion());
+    woff.writeULong(8, length);
+    woff.writeUShort(12, tags.size());
+    int entry = HEADER_SIZE;
+    int offset = HEADER_SIZE + ENTRY_SIZE * tags.size();
+    for (int tag : tags) {
+      Table table = font.getTable(tag);
+      woff.writeULong(entry, tag);
+      woff.writeULong(entry + 4, offset);
+      woff.writeULong(entry + 8, table.dataLength());
+      woff.writeULong(entry + 12, table.dataLength());
+      woff.writeULong(entry + 16, table.calculatedChecksum());
+      table.readFontData().slice(0, table.dataLength()).copyTo(woff.slice(offset));
+      entry += ENTRY_SIZE;
+      offset += (table.dataLength() + 3) & ~3;
+    }
+    return woff;
+  }
+
+  private static Map<Integer, Integer> compressedLengths(ReadableFontData woff) {
+    Map<Integer, Integer> lengths = new HashMap<Integer, Integer>();
+    for (int i = 0; i < woff.readUShort(12); i++) {
+      int entry = HEADER_SIZE + ENTRY_SIZE * i;
+      lengths.put(woff.readULongAsInt(entry), woff.readULongAsInt(entry + 8));
+    }
+    return lengths;
+  }
+
+  private static Font subset(Font font) throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(font, FontFactory.getInstance());
+    List<CMapTable.CMapId> cmapIds = new ArrayList<CMapTable.CMapId>();
+    cmapIds.add(CMapTable.CMapId.WINDOWS_BMP);
+    subsetter.setCMaps(cmapIds, 1);
+    subsetter.setGlyphs(GlyphCoverage.getGlyphCoverage(font, "Hello, World"));
+    Set<Integer> removeTables = new HashSet<Integer>();
+    removeTables.add(Tag.DSIG);
+    subsetter.setRemoveTables(removeTables);
+    return subsetter.subset().build();
+  }
+
+  public void testReuseUnchangedTables() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    ReadableFontData sourceWoff = uncompressedWoff(font);
+    byte[] b = new byte[sourceWoff.length()];
+    sourceWoff.readBytes(0, b, 0, b.length);
+    Font source = FontFactory.getInstance().loadFonts(b)[0];
+    Font subset = subset(source);
+
+    WoffWriter writer = new WoffWriter();
+    writer.setSource(source, sourceWoff);
+    Map<Integer, Integer> lengths = compressedLengths(writer.convert(subset));
+
+    // the name table is copied unchanged and stays uncompressed
+    assertEquals(source.getTable(Tag.name).dataLength(), (int) lengths.get(Tag.name));
+    // the glyphs are rewritten and get compressed
+    assertTrue(lengths.get(Tag.glyf) < subset.getTable(Tag.glyf).dataLength());
+
+    Map<Integer, Integer> recompressed = compressedLengths(new WoffWriter().convert(subset));
+    assertTrue(recompressed.get(Tag.name) < source.getTable(Tag.name).dataLength());
+    assertEquals(recompressed.get(Tag.glyf), lengths.get(Tag.glyf));
+  }
+
+  public void testReusedTablesLoad() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    ReadableFontData sourceWoff = uncompressedWoff(font);
+    Font subset = subset(font);
+
+    WoffWriter writer = new WoffWriter();
+    writer.setSource(font, sourceWoff);
+    WritableFontData woff = writer.convert(subset);
+    byte[] b = new byte[woff.length()];
+    woff.readBytes(0, b, 0, b.length);
+    Font loaded = FontFactory.getInstance().loadFonts(b)[0];
+
+    assertEquals(subset.numTables(), loaded.numTables());
+    Iterator<? extends Table> iterator = subset.iterator();
+    while (iterator.hasNext()) {
+      Table table = iterator.next();
+      Table other = loaded.getTable(table.headerTag());
+      assertEquals(table.dataLength(), other.dataLength());
+      for (int i = 0; i < table.dataLength(); i++) {
+        assertEquals(table.readFontData().readUByte(i), other.readFontData().readUByte(i));
+      }
+    }
+  }
+
+  public void testNotWoffSource() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    try {
+      new WoffWriter().setSource(font, WritableFontData.createWritableFontData(64));
+      fail("Non WOFF source data accepted.");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
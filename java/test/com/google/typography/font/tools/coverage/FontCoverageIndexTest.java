@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.coverage;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class FontCoverageIndexTest extends TestCase {
+
+  private static final TestFontNames[] FONTS = TestFontNames.values();
+
+  private static FontCoverageIndex buildIndex() throws IOException {
+    FontCoverageIndexBuilder builder = new FontCoverageIndexBuilder();
+    for (TestFontNames name : FONTS) {
+      builder.addFontFile(name.getFile());
+    }
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    builder.write(os);
+    return FontCoverageIndex.wrap(ByteBuffer.wrap(os.toByteArray()));
+  }
+
+  private static CMap cmap(TestFontNames name) throws IOException {
+    Font font = TestFontUtils.loadFont(name.getFile())[0];
+    return FontCoverageIndexBuilder.unicodeCMap(font);
+  }
+
+  public void testMatchesCMap() throws IOException {
+    FontCoverageIndex index = buildIndex();
+    assertEquals(FONTS.length, index.numFonts());
+    for (int font = 0; font < FONTS.length; font++) {
+      assertEquals(FONTS[font].getFile().getPath(), index.path(font));
+      assertEquals(0, index.collectionIndex(font));
+      assertEquals(32, index.digest(font).length);
+      CMap cmap = cmap(FONTS[font]);
+      int numChars = 0;
+      for (int c = 0; c < 0x20000; c++) {
+        boolean mapped = cmap.glyphId(c) != CMapTable.NOTDEF;
+        assertEquals("U+" + Integer.toHexString(c), mapped, index.covers(font, c));
+        numChars += mapped ? 1 : 0;
+      }
+      assertEquals(numChars, index.numChars(font));
+    }
+  }
+
+  public void testFontsCovering() throws IOException {
+    FontCoverageIndex index = buildIndex();
+    int[] all = new int[FONTS.length];
+    for (int font = 0; font < all.length; font++) {
+      all[font] = font;
+    }
+    assertTrue(Arrays.equals(all, index.fontsCovering("Hello")));
+    assertEquals(0, index.fontsCovering("中").length);
+    assertEquals(0, index.fontsCovering("Hello 😀").length);
+    int[] codePoints = FontCoverageIndex.codePoints("abca");
+    assertTrue(Arrays.equals(new int[] { 'a', 'b', 'c' }, codePoints));
+    assertEquals(3, index.countCovered(0, codePoints));
+  }
+
+  public void testMappedFile() throws IOException {
+    File file = File.createTempFile("coverage", ".idx");
+    try {
+      FontCoverageIndexBuilder builder = new FontCoverageIndexBuilder();
+      builder.addFontFile(TestFontNames.ROBOTO.getFile());
+      builder.write(file);
+      FontCoverageIndex index = FontCoverageIndex.open(file);
+      assertEquals(1, index.numFonts());
+      assertTrue(index.covers(0, 'A'));
+      assertFalse(index.covers(0, 0x4e2d));
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testNotAnIndex() {
+    try {
+      FontCoverageIndex.wrap(ByteBuffer.wrap(new byte[16]));
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.fontinfo;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.tools.subsetter.CMapTableBuilder;
+import com.ibm.icu.lang.UCharacter;
+import com.ibm.icu.lang.UScript;
+import com.ibm.icu.text.UnicodeSet;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tests the character coverage of cmaps, and the block and script coverage
+ * that FontInfo lists from it.
+ */
+public class CharacterCoverageTest extends TestCase {
+
+  private static void assertSameCharacters(CMap cmap, int limit) {
+    CharacterCoverage coverage = CharacterCoverage.fromCMap(cmap);
+    int size = 0;
+    for (int charId = 0; charId < limit; charId++) {
+      boolean mapped = cmap.glyphId(charId) != CMapTable.NOTDEF;
+      assertEquals(mapped, coverage.contains(charId));
+      size += mapped ? 1 : 0;
+    }
+    assertEquals(size, coverage.size());
+    assertEquals(size, coverage.count(0, limit - 1));
+  }
+
+  public void testFormat4() throws IOException {
+    for (TestFontNames name : TestFontNames.values()) {
+      Font font = TestFontUtils.loadFont(name.getFile())[0];
+      CMapTable cmapTable = font.getTable(Tag.cmap);
+      assertSameCharacters(cmapTable.cmap(CMapTable.CMapId.WINDOWS_BMP), 0x10000);
+    }
+  }
+
+  public void testFormat12() {
+    Map<Integer, Integer> mapping = new HashMap<Integer, Integer>();
+    for (int charId = 0x41; charId <= 0x5a; charId++) {
+      mapping.put(charId, charId - 0x40);
+    }
+    for (int charId = 0x1f600; charId <= 0x1f60f; charId++) {
+      mapping.put(charId, charId - 0x1f600 + 40);
+    }
+    mapping.put(0x1f610, 30);
+    mapping.put(0x20000, 60);
+    Font.Builder fontBuilder = FontFactory.getInstance().newFontBuilder();
+    new CMapTableBuilder(fontBuilder, mapping).build();
+    CMapTable cmapTable = fontBuilder.build().getTable(Tag.cmap);
+    CMap cmap = cmapTable.cmap(CMapTable.CMapId.WINDOWS_UCS4);
+    assertSameCharacters(cmap, 0x20010);
+
+    // adjacent groups become one range
+    int[] ranges = CharacterCoverage.fromCMap(cmap).ranges();
+    assertTrue(Arrays.equals(new int[] {0x41, 0x5a, 0x1f600, 0x1f610, 0x20000, 0x20000}, ranges));
+  }
+
+  // the block coverage as FontInfo listed it from ICU UnicodeSets
+  private static List<List<String>> unicodeSetBlockCoverage(Font font) {
+    List<List<String>> rows = new ArrayList<List<String>>();
+    CMap cmap = FontUtils.getUCSCMap(font);
+    int totalCount = 0;
+    for (int i = 0; i < UnicodeBlockData.numBlocks(); i++) {
+      String block = UnicodeBlockData.getBlockName(i);
+      UnicodeSet set =
+          new UnicodeSet("[[:Block=" + block + ":]-[:gc=Unassigned:]-[:gc=Control:]]");
+      int count = 0;
+      for (String charStr : set) {
+        if (cmap.glyphId(UCharacter.codePointAt(charStr, 0)) > 0) {
+          count++;
+        }
+      }
+      if (count > 0) {
+        rows.add(Arrays.asList(String.format("%s [%s, %s]", block,
+            UnicodeBlockData.getBlockStartCode(i), UnicodeBlockData.getBlockEndCode(i)),
+            String.format("%d / %d", count, set.size())));
+      }
+      totalCount += count;
+    }
+    for (String charStr : new UnicodeSet("[[:gc=Control:]]")) {
+      if (cmap.glyphId(UCharacter.codePointAt(charStr, 0)) > 0) {
+        totalCount++;
+      }
+    }
+    int nonUnicodeCount = FontInfo.numChars(font) - totalCount;
+    if (nonUnicodeCount > 0) {
+      rows.add(Arrays.asList("Unknown", String.format("%d", nonUnicodeCount)));
+    }
+    return rows;
+  }
+
+  // the script coverage as FontInfo listed it from ICU UnicodeSets
+  private static List<List<String>> unicodeSetScriptCoverage(Font font) {
+    Map<Integer, Integer> coveredScripts = new TreeMap<Integer, Integer>();
+    CMap cmap = FontUtils.getUCSCMap(font);
+    for (int charId : cmap) {
+      if (cmap.glyphId(charId) != CMapTable.NOTDEF) {
+        int scriptCode = UScript.getScript(charId);
+        Integer count = coveredScripts.get(scriptCode);
+        coveredScripts.put(scriptCode, count == null ? 1 : count + 1);
+      }
+    }
+    List<List<String>> rows = new ArrayList<List<String>>();
+    for (Map.Entry<Integer, Integer> script : coveredScripts.entrySet()) {
+      String scriptName = UScript.getName(script.getKey());
+      UnicodeSet scriptSet = new UnicodeSet("[[:" + scriptName + ":]]");
+      rows.add(Arrays.asList(scriptName,
+          String.format("%d / %d", script.getValue(), scriptSet.size())));
+    }
+    return rows;
+  }
+
+  public void testBlockCoverage() throws IOException {
+    for (TestFontNames name : TestFontNames.values()) {
+      Font font = TestFontUtils.loadFont(name.getFile())[0];
+      assertEquals(unicodeSetBlockCoverage(font), FontInfo.listCharBlockCoverage(font).getData());
+    }
+  }
+
+  public void testScriptCoverage() throws IOException {
+    for (TestFontNames name : TestFontNames.values()) {
+      Font font = TestFontUtils.loadFont(name.getFile())[0];
+      assertEquals(unicodeSetScriptCoverage(font), FontInfo.listScriptCoverage(font).getData());
+    }
+  }
+}
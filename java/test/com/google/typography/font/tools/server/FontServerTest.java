@@ -0,0 +1,320 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.server;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for {@link FontServer}.
+ */
+public class FontServerTest extends TestCase {
+
+  private FontServer server;
+
+  @Override
+  protected void setUp() throws IOException {
+    FontLibrary library = new FontLibrary();
+    assertTrue(library.addDirectory(TestFontNames.ROBOTO.getFile().getParentFile()) > 0);
+    assertTrue(library.families().contains("Roboto-Regular"));
+    server = new FontServer(library);
+    server.start(new InetSocketAddress("localhost", 0));
+  }
+
+  @Override
+  protected void tearDown() {
+    server.stop();
+  }
+
+  public void testTrueTypeSubset() throws IOException {
+    HttpURLConnection connection = open("family=Roboto-Regular&text=Hello&format=ttf");
+    assertEquals(200, connection.getResponseCode());
+    assertEquals("font/ttf", connection.getContentType());
+    byte[] body = read(connection);
+    Font subset = FontFactory.getInstance().loadFonts(body)[0];
+    MaximumProfileTable maxp = subset.getTable(Tag.maxp);
+    // .notdef, H, e, l and o
+    assertEquals(5, maxp.numGlyphs());
+    assertNull(subset.getTable(Tag.kern));
+  }
+
+  public void testWoffNegotiation() throws IOException {
+    HttpURLConnection connection = open("family=Roboto-Regular&text=Hello");
+    connection.setRequestProperty("Accept", "font/woff2, font/woff;q=0.9, */*;q=0.1");
+    assertEquals(200, connection.getResponseCode());
+    assertEquals("font/woff", connection.getContentType());
+    assertEquals("Accept", connection.getHeaderField("Vary"));
+    byte[] body = read(connection);
+    assertEquals('w', body[0]);
+    assertEquals('O', body[1]);
+    assertEquals('F', body[2]);
+    assertEquals('F', body[3]);
+  }
+
+  public void testEot() throws IOException {
+    HttpURLConnection connection = open("family=Roboto-Regular&text=Hello&format=eot");
+    assertEquals(200, connection.getResponseCode());
+    assertEquals("application/vnd.ms-fontobject", connection.getContentType());
+    assertTrue(read(connection).length > 0);
+  }
+
+  public void testNotModified() throws IOException {
+    HttpURLConnection connection = open("family=Roboto-Regular&text=Hello&format=woff");
+    assertEquals(200, connection.getResponseCode());
+    String etag = connection.getHeaderField("ETag");
+    assertNotNull(etag);
+    read(connection);
+
+    // the same glyphs make the same subset, whatever the text
+    connection = open("family=Roboto-Regular&text=" + URLEncoder.encode("oleH", "UTF-8")
+        + "&format=woff");
+    connection.setRequestProperty("If-None-Match", etag);
+    assertEquals(304, connection.getResponseCode());
+    assertEquals(etag, connection.getHeaderField("ETag"));
+
+    connection = open("family=Roboto-Regular&text=Hello&format=ttf");
+    connection.setRequestProperty("If-None-Match", etag);
+    assertEquals(200, connection.getResponseCode());
+    assertFalse(etag.equals(connection.getHeaderField("ETag")));
+    read(connection);
+  }
+
+  public void testETagStableAcrossRestarts() throws IOException {
+    HttpURLConnection connection = open("family=Roboto-Regular&text=Hello&format=woff");
+    String etag = connection.getHeaderField("ETag");
+    read(connection);
+
+    server.stop();
+    setUp();
+    connection = open("family=Roboto-Regular&text=Hello&format=woff");
+    assertEquals(etag, connection.getHeaderField("ETag"));
+    read(connection);
+  }
+
+  public void testFontWithoutDigestRejected() throws IOException {
+    Font font;
+    try (InputStream is = new FileInputStream(TestFontNames.ROBOTO.getFile())) {
+      font = FontFactory.getInstance().loadFonts(is)[0];
+    }
+    assertNull(font.digest());
+    try {
+      new FontLibrary().addFont("Roboto", font);
+      fail("Font without a digest added.");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testErrors() throws IOException {
+    assertEquals(404, open("family=Nonexistent&text=Hello").getResponseCode());
+    assertEquals(400, open("family=Roboto-Regular").getResponseCode());
+    assertEquals(400, open("family=Roboto-Regular&text=Hello&format=bmp").getResponseCode());
+    HttpURLConnection connection = open("family=Roboto-Regular&text=Hello");
+    connection.setRequestMethod("DELETE");
+    assertEquals(405, connection.getResponseCode());
+  }
+
+  public void testFailureAfterHeadersSent() throws IOException {
+    BrokenBodyExchange exchange =
+        new BrokenBodyExchange("/subset?family=Roboto-Regular&text=Hello&format=ttf");
+    server.handleSubset(exchange);
+    assertEquals(1, exchange.headersSent);
+    assertEquals(200, exchange.getResponseCode());
+    assertTrue(exchange.closed);
+  }
+
+  public void testMetrics() throws IOException {
+    read(open("family=Roboto-Regular&text=Hello&format=woff"));
+    read(open("family=Roboto-Regular&text=Hello&format=woff"));
+    assertEquals(2, server.latency(FontServer.Format.WOFF).count());
+    assertEquals(0, server.latency(FontServer.Format.EOT).count());
+
+    HttpURLConnection connection = (HttpURLConnection)
+        new URL("http://localhost:" + server.port() + "/metrics").openConnection();
+    assertEquals(200, connection.getResponseCode());
+    String metrics = new String(read(connection), StandardCharsets.UTF_8);
+    assertTrue(metrics, metrics.contains("woff count=2 "));
+    assertTrue(metrics, metrics.contains("hits=1 misses=1"));
+  }
+
+  public void testLatencyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.percentileMicros(50));
+    for (int i = 0; i < 99; i++) {
+      histogram.record(100 * 1000);
+    }
+    histogram.record(5000 * 1000);
+    assertEquals(100, histogram.count());
+    assertEquals(5000, histogram.maxMicros());
+    assertEquals(128, histogram.percentileMicros(50));
+    assertEquals(128, histogram.percentileMicros(99));
+    assertEquals(5000, histogram.percentileMicros(100));
+  }
+
+  /**
+   * An exchange whose response body fails on the first write, as when the
+   * client goes away once the headers are sent.
+   */
+  private static final class BrokenBodyExchange extends HttpExchange {
+    private final URI uri;
+    private final Headers requestHeaders = new Headers();
+    private final Headers responseHeaders = new Headers();
+    private int responseCode = -1;
+    int headersSent;
+    boolean closed;
+
+    BrokenBodyExchange(String uri) {
+      this.uri = URI.create(uri);
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+      return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+      return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+      return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+      return "GET";
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+      return null;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+      return new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+          throw new IOException("Connection reset.");
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          throw new IOException("Connection reset.");
+        }
+      };
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+      if (responseCode >= 0) {
+        throw new IOException("Headers already sent.");
+      }
+      responseCode = rCode;
+      headersSent++;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+      return null;
+    }
+
+    @Override
+    public int getResponseCode() {
+      return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+      return null;
+    }
+
+    @Override
+    public String getProtocol() {
+      return "HTTP/1.1";
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+      return null;
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+      return null;
+    }
+  }
+
+  private HttpURLConnection open(String query) throws IOException {
+    return (HttpURLConnection)
+        new URL("http://localhost:" + server.port() + "/subset?" + query).openConnection();
+  }
+
+  private static byte[] read(HttpURLConnection connection) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try (InputStream is = connection.getInputStream()) {
+      byte[] buffer = new byte[4096];
+      int length;
+      while ((length = is.read(buffer)) != -1) {
+        os.write(buffer, 0, length);
+      }
+    }
+    return os.toByteArray();
+  }
+}
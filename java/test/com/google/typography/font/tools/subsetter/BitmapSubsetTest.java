@@ -0,0 +1,170 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.bitmap.BitmapSizeTable;
+import com.google.typography.font.sfntly.table.bitmap.EbdtTable;
+import com.google.typography.font.sfntly.table.bitmap.EblcTable;
+import com.google.typography.font.sfntly.table.bitmap.IndexSubTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the subsetting of the EBLC and EBDT tables.
+ */
+public class BitmapSubsetTest extends TestCase {
+
+  // glyphs 66-69 with per-glyph metrics in a format 1 index subtable
+  private static final int PROPORTIONAL_FIRST = 66;
+  private static final int PROPORTIONAL_LAST = 69;
+  // glyphs with constant metrics in a format 5 index subtable
+  private static final int[] MONOSPACED = {100, 162, 200};
+  private static final int MONOSPACED_SIZE = 4;
+
+  private Font dstFont;
+
+  private static int proportionalLength(int glyph) {
+    return glyph - 60;
+  }
+
+  /**
+   * Creates a single strike EBLC table and fills the EBDT table with image
+   * data where every byte of an image is its glyph id.
+   */
+  private static void addBitmapTables(Font.Builder fontBuilder) {
+    int proportionalCount = PROPORTIONAL_LAST - PROPORTIONAL_FIRST + 1;
+    int format1Size = 8 + 4 * (proportionalCount + 1);
+    int format5Size = 8 + 12 + 4 + 2 * MONOSPACED.length;
+    int arrayOffset = 8 + 48;
+    WritableFontData eblc =
+        WritableFontData.createWritableFontData(arrayOffset + 16 + format1Size + format5Size);
+    WritableFontData ebdt = WritableFontData.createWritableFontData(1024);
+
+    eblc.writeFixed(0, 0x20000);
+    eblc.writeULong(4, 1);
+    eblc.writeULong(8, arrayOffset);
+    eblc.writeULong(12, 16 + format1Size + format5Size);
+    eblc.writeULong(16, 2);
+    eblc.writeUShort(48, PROPORTIONAL_FIRST);
+    eblc.writeUShort(50, MONOSPACED[MONOSPACED.length - 1]);
+    eblc.writeByte(52, (byte) 12);
+    eblc.writeByte(53, (byte) 12);
+    eblc.writeByte(54, (byte) 1);
+
+    eblc.writeUShort(arrayOffset, PROPORTIONAL_FIRST);
+    eblc.writeUShort(arrayOffset + 2, PROPORTIONAL_LAST);
+    eblc.writeULong(arrayOffset + 4, 16);
+    eblc.writeUShort(arrayOffset + 8, MONOSPACED[0]);
+    eblc.writeUShort(arrayOffset + 10, MONOSPACED[MONOSPACED.length - 1]);
+    eblc.writeULong(arrayOffset + 12, 16 + format1Size);
+
+    int ebdtOffset = 4;
+    ebdt.writeFixed(0, 0x20000);
+    int subTable = arrayOffset + 16;
+    eblc.writeUShort(subTable, 1);
+    eblc.writeUShort(subTable + 2, 1);
+    eblc.writeULong(subTable + 4, ebdtOffset);
+    int glyphOffset = 0;
+    for (int glyph = PROPORTIONAL_FIRST; glyph <= PROPORTIONAL_LAST + 1; glyph++) {
+      eblc.writeULong(subTable + 8 + 4 * (glyph - PROPORTIONAL_FIRST), glyphOffset);
+      if (glyph <= PROPORTIONAL_LAST) {
+        for (int i = 0; i < proportionalLength(glyph); i++) {
+          ebdt.writeByte(ebdtOffset + glyphOffset++, (byte) glyph);
+        }
+      }
+    }
+    ebdtOffset += glyphOffset;
+
+    subTable += format1Size;
+    eblc.writeUShort(subTable, 5);
+    eblc.writeUShort(subTable + 2, 5);
+    eblc.writeULong(subTable + 4, ebdtOffset);
+    eblc.writeULong(subTable + 8, MONOSPACED_SIZE);
+    eblc.writeByte(subTable + 12, (byte) 3);
+    eblc.writeULong(subTable + 20, MONOSPACED.length);
+    for (int i = 0; i < MONOSPACED.length; i++) {
+      eblc.writeUShort(subTable + 24 + 2 * i, MONOSPACED[i]);
+      for (int j = 0; j < MONOSPACED_SIZE; j++) {
+        ebdt.writeByte(ebdtOffset++, (byte) MONOSPACED[i]);
+      }
+    }
+
+    fontBuilder.newTableBuilder(Tag.EBLC, eblc);
+    fontBuilder.newTableBuilder(Tag.EBDT, ebdt.slice(0, ebdtOffset));
+  }
+
+  @Override
+  public void setUp() throws IOException {
+    FontFactory factory = FontFactory.getInstance();
+    Font.Builder srcBuilder =
+        TestFontUtils.builderForFontFile(TestFontNames.OPENSANS.getFile());
+    addBitmapTables(srcBuilder);
+    Font srcFont = srcBuilder.build();
+
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, factory);
+    List<Integer> glyphs = new ArrayList<Integer>();
+    glyphs.add(0);
+    glyphs.add(67);
+    glyphs.add(68);
+    glyphs.add(162);
+    subsetter.setGlyphs(glyphs);
+    dstFont = subsetter.subset().build();
+  }
+
+  private void assertImage(BitmapSizeTable strike, int newGlyph, int oldGlyph, int length) {
+    EbdtTable ebdt = dstFont.getTable(Tag.EBDT);
+    ReadableFontData data = ebdt.readFontData();
+    assertEquals(length, strike.glyphLength(newGlyph));
+    int offset = strike.glyphOffset(newGlyph);
+    for (int i = 0; i < length; i++) {
+      assertEquals(oldGlyph, data.readUByte(offset + i));
+    }
+  }
+
+  public void testImagesRenumbered() {
+    EblcTable eblc = dstFont.getTable(Tag.EBLC);
+    assertEquals(1, eblc.numSizes());
+    BitmapSizeTable strike = eblc.bitmapSizeTable(0);
+    assertEquals(1, strike.startGlyphIndex());
+    assertEquals(3, strike.endGlyphIndex());
+    assertImage(strike, 1, 67, proportionalLength(67));
+    assertImage(strike, 2, 68, proportionalLength(68));
+    assertImage(strike, 3, 162, MONOSPACED_SIZE);
+    assertEquals(-1, strike.glyphOffset(0));
+  }
+
+  public void testIndexFormats() {
+    EblcTable eblc = dstFont.getTable(Tag.EBLC);
+    BitmapSizeTable strike = eblc.bitmapSizeTable(0);
+    assertEquals(2, strike.numberOfIndexSubTables());
+    // two glyphs with short offsets
+    assertEquals(IndexSubTable.Format.FORMAT_3, strike.indexSubTable(0).indexFormat());
+    // one glyph with constant metrics and no gaps
+    assertEquals(IndexSubTable.Format.FORMAT_2, strike.indexSubTable(1).indexFormat());
+    assertEquals(5, strike.indexSubTable(1).imageFormat());
+  }
+}
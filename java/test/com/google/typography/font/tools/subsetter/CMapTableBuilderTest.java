@@ -20,24 +20,31 @@ import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.FontFactory;
 import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMap.CMapFormat;
+import com.google.typography.font.sfntly.table.core.CMapFormat4;
 import com.google.typography.font.sfntly.table.core.CMapTable;
 import junit.framework.TestCase;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 /**
  * @author Raph Levien
  */
 public class CMapTableBuilderTest extends TestCase {
 
-  private static void verifyCmap(Map<Integer, Integer> mapping) {
+  private static CMapTable buildCmap(Map<Integer, Integer> mapping) {
     FontFactory fontFactory = FontFactory.getInstance();
     Font.Builder fontBuilder = fontFactory.newFontBuilder();
     new CMapTableBuilder(fontBuilder, mapping).build();
     
     Font font = fontBuilder.build();
-    CMapTable cmapTable = font.getTable(Tag.cmap);
+    return font.getTable(Tag.cmap);
+  }
+
+  private static CMap verifyCmap(Map<Integer, Integer> mapping) {
+    CMapTable cmapTable = buildCmap(mapping);
     CMap cmap = cmapTable.cmap(3, 1);
     for (Map.Entry<Integer,Integer> entry : mapping.entrySet()) {
       int unicode = entry.getKey();
@@ -46,6 +53,7 @@ public class CMapTableBuilderTest extends TestCase {
     }
     assertEquals(CMapTable.NOTDEF, cmap.glyphId(0xffff));
     assertEquals(CMapTable.NOTDEF, cmap.glyphId(0xfffe));
+    return cmap;
   }
   
   public void testCmapBuilding() {
@@ -58,4 +66,63 @@ public class CMapTableBuilderTest extends TestCase {
     mapping.put(0x1234, 4);
     verifyCmap(mapping);
   }
+
+  public void testHolesLeftInSegments() {
+    Map<Integer, Integer> mapping = new HashMap<Integer, Integer>();
+    // glyphs that aren't in character order, with one character holes between them
+    for (int i = 0; i < 20; i++) {
+      mapping.put(0x100 + 2 * i, 40 - i);
+    }
+    CMap cmap = verifyCmap(mapping);
+    for (int i = 0; i < 19; i++) {
+      assertEquals(CMapTable.NOTDEF, cmap.glyphId(0x101 + 2 * i));
+    }
+    // one segment with a glyph id array and the 0xffff segment
+    assertEquals(2, ((CMapFormat4) cmap).getSegCount());
+  }
+
+  public void testRandomMappings() {
+    Random random = new Random(0x636d6170);
+    for (int trial = 0; trial < 20; trial++) {
+      Map<Integer, Integer> mapping = new HashMap<Integer, Integer>();
+      int unicode = random.nextInt(100);
+      int glyphId = 1 + random.nextInt(100);
+      for (int i = 0; i < 300; i++) {
+        mapping.put(unicode, glyphId);
+        unicode += 1 + (random.nextInt(4) == 0 ? random.nextInt(10) : 0);
+        glyphId = random.nextBoolean() ? glyphId + 1 : 1 + random.nextInt(500);
+      }
+      CMap cmap = verifyCmap(mapping);
+      for (int c = 0; c < unicode + 10; c++) {
+        if (!mapping.containsKey(c)) {
+          assertEquals(CMapTable.NOTDEF, cmap.glyphId(c));
+        }
+      }
+    }
+  }
+
+  public void testSupplementaryCharacters() {
+    Map<Integer, Integer> mapping = new HashMap<Integer, Integer>();
+    mapping.put(0x41, 1);
+    mapping.put(0x42, 2);
+    mapping.put(0x1f600, 3);
+    mapping.put(0x1f601, 4);
+    mapping.put(0x20000, 7);
+    CMapTable cmapTable = buildCmap(mapping);
+    CMap cmap4 = cmapTable.cmap(CMapTable.CMapId.WINDOWS_BMP);
+    assertEquals(1, cmap4.glyphId(0x41));
+    CMap cmap12 = cmapTable.cmap(CMapTable.CMapId.WINDOWS_UCS4);
+    assertNotNull(cmap12);
+    assertEquals(CMapFormat.Format12.value(), cmap12.format());
+    for (Map.Entry<Integer, Integer> entry : mapping.entrySet()) {
+      assertEquals(entry.getValue().intValue(), cmap12.glyphId(entry.getKey()));
+    }
+    assertEquals(CMapTable.NOTDEF, cmap12.glyphId(0x1f602));
+  }
+
+  public void testNoFormat12ForBmp() {
+    Map<Integer, Integer> mapping = new HashMap<Integer, Integer>();
+    mapping.put(0x41, 1);
+    assertNull(buildCmap(mapping).cmap(CMapTable.CMapId.WINDOWS_UCS4));
+  }
 }
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.cff.CffDict;
+import com.google.typography.font.sfntly.table.cff.CffIndex;
+import com.google.typography.font.sfntly.table.cff.CffTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests subsetting of fonts with PostScript outlines. The test fonts are made
+ * by replacing the TrueType outlines of a test font with a CFF table in which
+ * glyph {@code i} calls local subroutine {@code i} and global subroutine
+ * {@code i % 3}.
+ */
+public class CffSubsetTest extends TestCase {
+
+  private static final int NUM_GLOBAL_SUBRS = 3;
+  private static final List<Integer> GLYPHS = Arrays.asList(0, 40, 41, 7);
+
+  private static void writeDictEntry(ByteArrayOutputStream os, int operator, int... operands) {
+    for (int operand : operands) {
+      os.write(29);
+      os.write(operand >> 24);
+      os.write(operand >> 16);
+      os.write(operand >> 8);
+      os.write(operand);
+    }
+    if (operator > 0xff) {
+      os.write(12);
+    }
+    os.write(operator);
+  }
+
+  private static ReadableFontData bytes(ByteArrayOutputStream os) {
+    return ReadableFontData.createReadableFontData(os.toByteArray());
+  }
+
+  private static int serializedLength(List<ReadableFontData> objects) {
+    return CffIndex.serializedLength(objects);
+  }
+
+  /**
+   * Makes a CFF table for the given number of glyphs, with two Font DICTs if
+   * it is CID-keyed.
+   */
+  static ReadableFontData cffTable(int numGlyphs, boolean cid) {
+    int numFontDicts = cid ? 2 : 1;
+    List<ReadableFontData> globalSubrs = new ArrayList<ReadableFontData>();
+    for (int i = 0; i < NUM_GLOBAL_SUBRS; i++) {
+      // i hmoveto return
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      byte[] number = CffSubroutineScanner.encodeNumber(i);
+      os.write(number, 0, number.length);
+      os.write(22);
+      os.write(11);
+      globalSubrs.add(bytes(os));
+    }
+    List<List<ReadableFontData>> localSubrs = new ArrayList<List<ReadableFontData>>();
+    for (int fd = 0; fd < numFontDicts; fd++) {
+      List<ReadableFontData> subrs = new ArrayList<ReadableFontData>();
+      for (int i = 0; i < numGlyphs; i++) {
+        // fd i rmoveto return
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] a = CffSubroutineScanner.encodeNumber(fd);
+        byte[] b = CffSubroutineScanner.encodeNumber(i);
+        os.write(a, 0, a.length);
+        os.write(b, 0, b.length);
+        os.write(21);
+        os.write(11);
+        subrs.add(bytes(os));
+      }
+      localSubrs.add(subrs);
+    }
+    int localBias = CffTable.subrBias(numGlyphs);
+    int globalBias = CffTable.subrBias(NUM_GLOBAL_SUBRS);
+    List<ReadableFontData> charStrings = new ArrayList<ReadableFontData>();
+    for (int i = 0; i < numGlyphs; i++) {
+      // subr callsubr gsubr callgsubr endchar
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      byte[] local = CffSubroutineScanner.encodeNumber(i - localBias);
+      byte[] global = CffSubroutineScanner.encodeNumber(i % NUM_GLOBAL_SUBRS - globalBias);
+      os.write(local, 0, local.length);
+      os.write(10);
+      os.write(global, 0, global.length);
+      os.write(29);
+      os.write(14);
+      charStrings.add(bytes(os));
+    }
+
+    ByteArrayOutputStream charset = new ByteArrayOutputStream();
+    charset.write(0);
+    for (int i = 1; i < numGlyphs; i++) {
+      int sid = cid ? 2 * i : 1000 + i;
+      charset.write(sid >> 8);
+      charset.write(sid);
+    }
+    ByteArrayOutputStream fdSelect = new ByteArrayOutputStream();
+    fdSelect.write(0);
+    for (int i = 0; i < numGlyphs; i++) {
+      fdSelect.write(i % numFontDicts);
+    }
+    List<ReadableFontData> privateDicts = new ArrayList<ReadableFontData>();
+    for (int fd = 0; fd < numFontDicts; fd++) {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      writeDictEntry(os, 20, 500 + fd); // defaultWidthX
+      writeDictEntry(os, CffDict.SUBRS, 12); // right after this DICT
+      privateDicts.add(bytes(os));
+    }
+
+    List<ReadableFontData> names =
+        Arrays.asList(ReadableFontData.createReadableFontData("Test".getBytes()));
+    // operands are 5 bytes and two byte operators come first
+    int topDictLength = cid ? 7 * 5 + 3 * 2 + 2 : 4 * 5 + 3;
+    int offset = 4 + serializedLength(names)
+        + serializedLength(Arrays.asList(ReadableFontData.createReadableFontData(
+            new byte[topDictLength])))
+        + 2 + serializedLength(globalSubrs);
+    int charsetOffset = offset;
+    offset += charset.size();
+    int fdSelectOffset = offset;
+    if (cid) {
+      offset += fdSelect.size();
+    }
+    int charStringsOffset = offset;
+    offset += serializedLength(charStrings);
+    int fdArrayOffset = offset;
+    int[] privateOffsets = new int[numFontDicts];
+    List<ReadableFontData> fontDicts = new ArrayList<ReadableFontData>();
+    if (cid) {
+      offset += serializedLength(Arrays.asList(
+          ReadableFontData.createReadableFontData(new byte[11]),
+          ReadableFontData.createReadableFontData(new byte[11])));
+    }
+    for (int fd = 0; fd < numFontDicts; fd++) {
+      privateOffsets[fd] = offset;
+      offset += privateDicts.get(fd).length() + serializedLength(localSubrs.get(fd));
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      writeDictEntry(os, CffDict.PRIVATE, privateDicts.get(fd).length(), privateOffsets[fd]);
+      fontDicts.add(bytes(os));
+    }
+
+    ByteArrayOutputStream topDict = new ByteArrayOutputStream();
+    if (cid) {
+      writeDictEntry(topDict, CffDict.ROS, 391, 392, 0);
+      writeDictEntry(topDict, CffDict.FD_ARRAY, fdArrayOffset);
+      writeDictEntry(topDict, CffDict.FD_SELECT, fdSelectOffset);
+    } else {
+      writeDictEntry(topDict, CffDict.PRIVATE, privateDicts.get(0).length(), privateOffsets[0]);
+    }
+    writeDictEntry(topDict, CffDict.CHARSET, charsetOffset);
+    writeDictEntry(topDict, CffDict.CHARSTRINGS, charStringsOffset);
+    assertEquals(topDictLength, topDict.size());
+
+    WritableFontData data = WritableFontData.createWritableFontData(offset);
+    data.writeByte(0, (byte) 1);
+    data.writeByte(1, (byte) 0);
+    data.writeByte(2, (byte) 4);
+    data.writeByte(3, (byte) 4);
+    int index = 4;
+    index += CffIndex.serialize(names, data, index);
+    index += CffIndex.serialize(Arrays.asList(bytes(topDict)), data, index);
+    index += CffIndex.serialize(new ArrayList<ReadableFontData>(), data, index);
+    index += CffIndex.serialize(globalSubrs, data, index);
+    index += data.writeBytes(index, charset.toByteArray());
+    if (cid) {
+      index += data.writeBytes(index, fdSelect.toByteArray());
+    }
+    index += CffIndex.serialize(charStrings, data, index);
+    if (cid) {
+      index += CffIndex.serialize(fontDicts, data, index);
+    }
+    for (int fd = 0; fd < numFontDicts; fd++) {
+      index += privateDicts.get(fd).copyTo(data.slice(index));
+      index += CffIndex.serialize(localSubrs.get(fd), data, index);
+    }
+    assertEquals(offset, index);
+    return data;
+  }
+
+  /**
+   * Makes a font with PostScript outlines from a test font.
+   */
+  static Font cffFont(boolean cid) throws IOException {
+    Font.Builder builder = TestFontUtils.builderForFontFile(TestFontNames.ROBOTO.getFile());
+    MaximumProfileTable.Builder maxp =
+        (MaximumProfileTable.Builder) builder.getTableBuilder(Tag.maxp);
+    int numGlyphs = maxp.numGlyphs();
+    builder.removeTableBuilder(Tag.glyf);
+    builder.removeTableBuilder(Tag.loca);
+    builder.newTableBuilder(Tag.CFF, cffTable(numGlyphs, cid));
+    return builder.build();
+  }
+
+  private static Font subset(Font font) throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(font, FontFactory.getInstance());
+    subsetter.setGlyphs(GLYPHS);
+    Set<Integer> removeTables = new HashSet<Integer>();
+    removeTables.add(Tag.GPOS);
+    removeTables.add(Tag.GSUB);
+    removeTables.add(Tag.GDEF);
+    subsetter.setRemoveTables(removeTables);
+    return subsetter.subset().build();
+  }
+
+  // follows a call whose subroutine number is written just before the operator
+  private static int calledSubr(ReadableFontData charString, int operator, CffIndex subrs) {
+    for (int i = 0; i < charString.length(); ) {
+      int b0 = charString.readUByte(i);
+      int length = CffSubroutineScanner.numberLength(b0);
+      if (charString.readUByte(i + length) == operator) {
+        int value;
+        if (b0 == 28) {
+          value = charString.readShort(i + 1);
+        } else if (b0 >= 251) {
+          value = -(b0 - 251) * 256 - charString.readUByte(i + 1) - 108;
+        } else if (b0 >= 247) {
+          value = (b0 - 247) * 256 + charString.readUByte(i + 1) + 108;
+        } else {
+          value = b0 - 139;
+        }
+        return value + CffTable.subrBias(subrs.count());
+      }
+      i += length + 1;
+    }
+    return -1;
+  }
+
+  public void testParse() throws IOException {
+    Font font = cffFont(false);
+    CffTable cff = font.getTable(Tag.CFF);
+    MaximumProfileTable maxp = font.getTable(Tag.maxp);
+    assertEquals(maxp.numGlyphs(), cff.numGlyphs());
+    assertFalse(cff.isCid());
+    assertEquals(1, cff.numFontDicts());
+    assertEquals(NUM_GLOBAL_SUBRS, cff.globalSubrs().count());
+    assertEquals(cff.numGlyphs(), cff.localSubrs(0).count());
+    assertEquals(500, cff.privateDict(0).intOperand(20, 0, 0));
+    assertEquals(1005, cff.charset()[5]);
+    ReadableFontData name = cff.nameIndex().data(0);
+    byte[] nameBytes = new byte[name.length()];
+    name.readBytes(0, nameBytes, 0, nameBytes.length);
+    assertEquals("Test", new String(nameBytes));
+
+    CffTable cid = cffFont(true).getTable(Tag.CFF);
+    assertTrue(cid.isCid());
+    assertEquals(2, cid.numFontDicts());
+    assertEquals(1, cid.fdIndex(41));
+    assertEquals(0, cid.fdIndex(40));
+    assertEquals(84, cid.charset()[42]);
+    assertEquals(501, cid.privateDict(1).intOperand(20, 0, 0));
+  }
+
+  private void assertSubset(boolean cidKeyed) throws IOException {
+    Font font = cffFont(cidKeyed);
+    CffTable source = font.getTable(Tag.CFF);
+    Font subset = subset(font);
+    assertFalse(subset.hasTable(Tag.glyf));
+    CffTable cff = subset.getTable(Tag.CFF);
+    assertEquals(GLYPHS.size(), cff.numGlyphs());
+    assertEquals(GLYPHS.size(), ((MaximumProfileTable) subset.getTable(Tag.maxp)).numGlyphs());
+    assertTrue(cff.dataLength() < source.dataLength() / 10);
+
+    // each kept glyph still draws with the same subroutines
+    Set<Integer> globalSubrs = new HashSet<Integer>();
+    for (int newGlyph = 0; newGlyph < GLYPHS.size(); newGlyph++) {
+      int oldGlyph = GLYPHS.get(newGlyph);
+      assertEquals(source.charset()[oldGlyph], cff.charset()[newGlyph]);
+      int oldFd = source.fdIndex(oldGlyph);
+      int newFd = cff.fdIndex(newGlyph);
+      assertEquals(oldFd, newFd);
+      ReadableFontData charString = cff.charStrings().data(newGlyph);
+      int local = calledSubr(charString, 10, cff.localSubrs(newFd));
+      assertTrue(source.localSubrs(oldFd).data(oldGlyph)
+          .contentEquals(cff.localSubrs(newFd).data(local)));
+      int global = calledSubr(charString, 29, cff.globalSubrs());
+      assertTrue(source.globalSubrs().data(oldGlyph % NUM_GLOBAL_SUBRS)
+          .contentEquals(cff.globalSubrs().data(global)));
+      globalSubrs.add(oldGlyph % NUM_GLOBAL_SUBRS);
+    }
+    assertEquals(globalSubrs.size(), cff.globalSubrs().count());
+    int localSubrs = 0;
+    for (int fd = 0; fd < cff.numFontDicts(); fd++) {
+      localSubrs += cff.localSubrs(fd).count();
+      assertEquals(source.privateDict(fd).intOperand(20, 0, 0),
+          cff.privateDict(fd).intOperand(20, 0, 0));
+    }
+    assertEquals(GLYPHS.size(), localSubrs);
+  }
+
+  public void testSubset() throws IOException {
+    assertSubset(false);
+  }
+
+  public void testSubsetCid() throws IOException {
+    assertSubset(true);
+  }
+
+  public void testUnsupportedTableLoads() throws IOException {
+    Font.Builder builder = TestFontUtils.builderForFontFile(TestFontNames.ROBOTO.getFile());
+    MaximumProfileTable.Builder maxp =
+        (MaximumProfileTable.Builder) builder.getTableBuilder(Tag.maxp);
+    WritableFontData data =
+        WritableFontData.createWritableFontData(cffTable(maxp.numGlyphs(), false));
+    // a CFF2 table, which isn't supported
+    data.writeByte(0, (byte) 2);
+    builder.removeTableBuilder(Tag.glyf);
+    builder.removeTableBuilder(Tag.loca);
+    builder.newTableBuilder(Tag.CFF, data);
+    Font font = builder.build();
+
+    CffTable cff = font.getTable(Tag.CFF);
+    assertFalse(cff.isSupported());
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    FontFactory.getInstance().serializeFont(font, os);
+    Font reloaded = FontFactory.getInstance().loadFonts(os.toByteArray())[0];
+    assertTrue(data.contentEquals(reloaded.getTable(Tag.CFF).readFontData()));
+
+    try {
+      subset(font);
+      fail("Subset an unsupported CFF table.");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.Glyph.GlyphType;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.table.truetype.SimpleGlyph;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests the deduplication of identical glyphs while subsetting.
+ */
+public class GlyphDeduplicationTest extends TestCase {
+
+  private static Font subset(boolean deduplicate) throws IOException {
+    return subset(TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0], deduplicate);
+  }
+
+  private static Font subset(Font font, boolean deduplicate) throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(font, FontFactory.getInstance());
+    List<Integer> glyphs = new ArrayList<Integer>();
+    // glyph 68 is kept twice, as a font with a copy of it would have it
+    Collections.addAll(glyphs, 0, 68, 69, 68);
+    subsetter.setGlyphs(glyphs);
+    Set<Integer> removeTables = new HashSet<Integer>();
+    removeTables.add(Tag.GPOS);
+    removeTables.add(Tag.GSUB);
+    removeTables.add(Tag.GDEF);
+    removeTables.add(Tag.kern);
+    subsetter.setRemoveTables(removeTables);
+    subsetter.setDeduplicateGlyphs(deduplicate);
+    return subsetter.subset().build();
+  }
+
+  private static Glyph glyph(Font font, int glyphId) {
+    LocaTable loca = font.getTable(Tag.loca);
+    GlyphTable glyf = font.getTable(Tag.glyf);
+    return glyf.glyph(loca.glyphOffset(glyphId), loca.glyphLength(glyphId));
+  }
+
+  public void testDuplicateReplaced() throws IOException {
+    Font font = subset(true);
+    Glyph original = glyph(font, 1);
+    Glyph duplicate = glyph(font, 3);
+    assertEquals(GlyphType.Simple, original.glyphType());
+    assertEquals(GlyphType.Composite, duplicate.glyphType());
+
+    CompositeGlyph composite = (CompositeGlyph) duplicate;
+    assertEquals(1, composite.numGlyphs());
+    assertEquals(1, composite.glyphIndex(0));
+    assertEquals(0, composite.argument1(0));
+    assertEquals(0, composite.argument2(0));
+    assertEquals(original.xMin(), duplicate.xMin());
+    assertEquals(original.yMax(), duplicate.yMax());
+    assertEquals(GlyphType.Simple, glyph(font, 2).glyphType());
+
+    MaximumProfileTable maxp = font.getTable(Tag.maxp);
+    assertTrue(maxp.maxComponentElements() >= 1);
+    assertTrue(maxp.maxComponentDepth() >= 1);
+  }
+
+  public void testCompositeLimitsCoverDuplicates() throws IOException {
+    // a font whose maxp allows no composite points or contours
+    Font.Builder builder = TestFontUtils.builderForFontFile(TestFontNames.OPENSANS.getFile());
+    MaximumProfileTable.Builder maxpBuilder =
+        (MaximumProfileTable.Builder) builder.getTableBuilder(Tag.maxp);
+    maxpBuilder.setMaxCompositePoints(0);
+    maxpBuilder.setMaxCompositeContours(0);
+    Font font = subset(builder.build(), true);
+
+    SimpleGlyph original = (SimpleGlyph) glyph(font, 1);
+    int points = 0;
+    for (int contour = 0; contour < original.numberOfContours(); contour++) {
+      points += original.numberOfPoints(contour);
+    }
+    MaximumProfileTable maxp = font.getTable(Tag.maxp);
+    assertEquals(points, maxp.maxCompositePoints());
+    assertEquals(original.numberOfContours(), maxp.maxCompositeContours());
+  }
+
+  public void testSmaller() throws IOException {
+    Font plain = subset(false);
+    Font deduplicated = subset(true);
+    assertEquals(GlyphType.Simple, glyph(plain, 3).glyphType());
+    assertTrue(deduplicated.getTable(Tag.glyf).dataLength()
+        < plain.getTable(Tag.glyf).dataLength() - glyph(plain, 3).dataLength() / 2);
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.Glyph.GlyphType;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.tools.conversion.woff.WoffWriter;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for {@link OutlineSimilarityGlyphOrder}.
+ */
+public class GlyphOrderTest extends TestCase {
+
+  private Font font;
+
+  @Override
+  protected void setUp() throws IOException {
+    font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+  }
+
+  public void testOrder() {
+    List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(font, " Hello \u00e9\u00e8\u00ea wrld!");
+    List<Integer> order = new OutlineSimilarityGlyphOrder().order(font, glyphs);
+
+    assertEquals(glyphs.size(), order.size());
+    assertEquals(new HashSet<Integer>(glyphs), new HashSet<Integer>(order));
+    assertEquals(glyphs.get(0), order.get(0));
+
+    // simple glyphs, then composites, then empty glyphs
+    int lastType = -1;
+    for (int i = 1; i < order.size(); i++) {
+      Glyph glyph = glyph(order.get(i));
+      int type = glyph == null ? 2 : glyph.glyphType() == GlyphType.Simple ? 0 : 1;
+      assertTrue(type >= lastType);
+      lastType = type;
+    }
+    assertEquals(2, lastType);
+  }
+
+  public void testRenumber() throws IOException {
+    List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(font, "abc\u00e1\u00e9");
+    RenumberingSubsetter subsetter = new RenumberingSubsetter(font, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs);
+    subsetter.setGlyphOrder(new OutlineSimilarityGlyphOrder());
+    subsetter.setRemoveTables(layoutTables());
+    Font subset = subsetter.subset().build();
+
+    // the characters still map to the same outlines
+    CMap cmap = ((CMapTable) font.getTable(Tag.cmap)).cmap(CMapTable.CMapId.WINDOWS_BMP);
+    CMap subsetCMap = ((CMapTable) subset.getTable(Tag.cmap)).cmap(CMapTable.CMapId.WINDOWS_BMP);
+    for (char c : "abc".toCharArray()) {
+      Glyph expected = glyph(font, cmap.glyphId(c));
+      Glyph actual = glyph(subset, subsetCMap.glyphId(c));
+      assertEquals(expected.dataLength(), actual.dataLength());
+      assertEquals(expected.numberOfContours(), actual.numberOfContours());
+    }
+  }
+
+  public void testCompressedSize() throws IOException {
+    int numGlyphs = ((MaximumProfileTable) font.getTable(Tag.maxp)).numGlyphs();
+    List<Integer> glyphs = new ArrayList<Integer>(numGlyphs);
+    for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+      glyphs.add(glyphId);
+    }
+    assertTrue(woffSize(glyphs, new OutlineSimilarityGlyphOrder()) < woffSize(glyphs, null));
+  }
+
+  private int woffSize(List<Integer> glyphs, GlyphOrder glyphOrder) throws IOException {
+    RenumberingSubsetter subsetter = new RenumberingSubsetter(font, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs);
+    subsetter.setGlyphOrder(glyphOrder);
+    subsetter.setRemoveTables(layoutTables());
+    return new WoffWriter().convert(subsetter.subset().build()).length();
+  }
+
+  private static Set<Integer> layoutTables() {
+    Set<Integer> removeTables = new HashSet<Integer>();
+    removeTables.add(Tag.GPOS);
+    removeTables.add(Tag.GSUB);
+    removeTables.add(Tag.GDEF);
+    return removeTables;
+  }
+
+  private Glyph glyph(int glyphId) {
+    return glyph(font, glyphId);
+  }
+
+  private static Glyph glyph(Font font, int glyphId) {
+    LocaTable loca = font.getTable(Tag.loca);
+    if (loca.glyphLength(glyphId) == 0) {
+      return null;
+    }
+    GlyphTable glyf = font.getTable(Tag.glyf);
+    return glyf.glyph(loca.glyphOffset(glyphId), loca.glyphLength(glyphId));
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.table.truetype.SimpleGlyph;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests subsetting with glyph transforms, which strips hints in the same pass
+ * that renumbers the glyphs.
+ */
+public class GlyphTransformTest extends TestCase {
+
+  private static final File fontFile = TestFontNames.OPENSANS.getFile();
+
+  private Font srcFont;
+  private List<Integer> glyphs;
+
+  @Override
+  public void setUp() throws IOException {
+    srcFont = TestFontUtils.loadFont(fontFile)[0];
+    glyphs = new ArrayList<Integer>();
+    glyphs.add(0);
+    glyphs.add(67); // grave, u+0060
+    glyphs.add(68); // a, u+0061
+    glyphs.add(162); // agrave, u+00e0
+  }
+
+  private static Set<Integer> hintTables() {
+    Set<Integer> removeTables = new HashSet<Integer>();
+    removeTables.add(Tag.fpgm);
+    removeTables.add(Tag.prep);
+    removeTables.add(Tag.cvt);
+    return removeTables;
+  }
+
+  private Font fusedSubset() throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs);
+    subsetter.addGlyphTransform(new HintStrippingGlyphTransform());
+    subsetter.setRemoveTables(hintTables());
+    return subsetter.subset().build();
+  }
+
+  private Font twoPassSubset() throws IOException {
+    FontFactory factory = FontFactory.getInstance();
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, factory);
+    subsetter.setGlyphs(glyphs);
+    Font subset = subsetter.subset().build();
+    Subsetter hintStripper = new HintStripper(subset, factory);
+    hintStripper.setRemoveTables(hintTables());
+    return hintStripper.subset().build();
+  }
+
+  private static Glyph getGlyph(Font font, int glyphId) {
+    LocaTable locaTable = font.getTable(Tag.loca);
+    GlyphTable glyfTable = font.getTable(Tag.glyf);
+    return glyfTable.glyph(locaTable.glyphOffset(glyphId), locaTable.glyphLength(glyphId));
+  }
+
+  public void testHintsStripped() throws IOException {
+    Font dstFont = fusedSubset();
+    assertEquals(0, ((SimpleGlyph) getGlyph(dstFont, 1)).instructionSize());
+    assertEquals(0, ((SimpleGlyph) getGlyph(dstFont, 2)).instructionSize());
+    CompositeGlyph composite = (CompositeGlyph) getGlyph(dstFont, 3);
+    assertEquals(0, composite.instructionSize());
+    // components are renumbered after stripping
+    assertEquals(2, composite.glyphIndex(0));
+    assertEquals(1, composite.glyphIndex(1));
+    assertNull(dstFont.getTable(Tag.fpgm));
+    assertNull(dstFont.getTable(Tag.prep));
+    assertNull(dstFont.getTable(Tag.cvt));
+  }
+
+  public void testSameAsTwoPasses() throws IOException {
+    ReadableFontData fused = fusedSubset().getTable(Tag.glyf).readFontData();
+    ReadableFontData twoPass = twoPassSubset().getTable(Tag.glyf).readFontData();
+    assertEquals(twoPass.length(), fused.length());
+    for (int i = 0; i < fused.length(); i++) {
+      assertEquals(twoPass.readUByte(i), fused.readUByte(i));
+    }
+  }
+
+  public void testTransformOrder() throws IOException {
+    final List<Integer> seen = new ArrayList<Integer>();
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs);
+    subsetter.addGlyphTransform(new HintStrippingGlyphTransform());
+    subsetter.addGlyphTransform(new GlyphTransform() {
+      @Override
+      public ReadableFontData transform(Subsetter subsetter, Glyph glyph) {
+        // sees the glyph as left by the hint stripping
+        seen.add(glyph.instructionSize());
+        return glyph.readFontData();
+      }
+    });
+    subsetter.subset();
+    assertEquals(glyphs.size(), seen.size());
+    for (int instructionSize : seen) {
+      assertEquals(0, instructionSize);
+    }
+  }
+}
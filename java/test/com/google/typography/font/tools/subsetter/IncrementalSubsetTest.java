@@ -0,0 +1,186 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for {@link IncrementalSubsetter}, {@link FontPatch} and
+ * {@link FontPatchApplier}.
+ */
+public class IncrementalSubsetTest extends TestCase {
+
+  private FontFactory factory;
+  private Font font;
+  private IncrementalSubsetter subsetter;
+
+  @Override
+  protected void setUp() throws IOException {
+    factory = FontFactory.getInstance();
+    font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    subsetter = new IncrementalSubsetter(font, factory);
+    Set<Integer> removeTables = new HashSet<Integer>();
+    removeTables.add(Tag.GPOS);
+    removeTables.add(Tag.GSUB);
+    removeTables.add(Tag.GDEF);
+    subsetter.setRemoveTables(removeTables);
+  }
+
+  public void testExtendGlyphs() {
+    List<Integer> previous = new ArrayList<Integer>();
+    Collections.addAll(previous, 0, 12, 5);
+    List<Integer> glyphs = new ArrayList<Integer>();
+    Collections.addAll(glyphs, 40, 5, 3, 0);
+    List<Integer> expected = new ArrayList<Integer>();
+    Collections.addAll(expected, 0, 12, 5, 3, 40);
+    assertEquals(expected, IncrementalSubsetter.extendGlyphs(previous, glyphs));
+  }
+
+  public void testAppendGlyphs() throws IOException {
+    List<Integer> previous = GlyphCoverage.getGlyphCoverage(font, "Hello");
+    List<Integer> next = IncrementalSubsetter.extendGlyphs(
+        previous, GlyphCoverage.getGlyphCoverage(font, "Hello, world! \u00e9t\u00e9"));
+    Font base = reload(subsetter.subset(previous).build());
+    Font target = subsetter.subset(next).build();
+
+    byte[] patch = FontPatch.create(base, target);
+    assertEquals(FontPatch.APPEND_GLYPHS, operation(patch, Tag.glyf));
+    assertEquals(-1, operation(patch, Tag.loca));
+    assertEquals(-1, operation(patch, Tag.name));
+    assertEquals(FontPatch.REPLACE, operation(patch, Tag.cmap));
+    assertEquals(FontPatch.REPLACE, operation(patch, Tag.hmtx));
+    assertTrue(patch.length < serialize(target).length / 2);
+
+    Font patched = FontPatchApplier.apply(
+        factory, base, ReadableFontData.createReadableFontData(patch)).build();
+    assertSameTables(target, patched);
+    assertTrue(Arrays.equals(serialize(target), serialize(patched)));
+  }
+
+  public void testReorderedGlyphs() throws IOException {
+    List<Integer> previous = GlyphCoverage.getGlyphCoverage(font, "abc");
+    List<Integer> next = GlyphCoverage.getGlyphCoverage(font, "Zabc");
+    Font base = subsetter.subset(previous).build();
+    Font target = subsetter.subset(next).build();
+
+    byte[] patch = FontPatch.create(base, target);
+    assertEquals(FontPatch.REPLACE, operation(patch, Tag.glyf));
+    assertEquals(FontPatch.REPLACE, operation(patch, Tag.loca));
+    Font patched = FontPatchApplier.apply(
+        factory, base, ReadableFontData.createReadableFontData(patch)).build();
+    assertSameTables(target, patched);
+  }
+
+  public void testChainedPatches() throws IOException {
+    Font client = reload(subsetter.subset(GlyphCoverage.getGlyphCoverage(font, "Hello")).build());
+    for (String text : new String[] {"Hello, world", "Hello, world! \u00e9t\u00e9"}) {
+      List<Integer> previous = subsetter.glyphOrder();
+      List<Integer> next = subsetter.nextGlyphs(GlyphCoverage.getGlyphCoverage(font, text));
+      byte[] patch = subsetter.patch(previous, next);
+      assertEquals(next, subsetter.glyphOrder());
+      assertEquals(FontPatch.APPEND_GLYPHS, operation(patch, Tag.glyf));
+      client = reload(FontPatchApplier.apply(
+          factory, client, ReadableFontData.createReadableFontData(patch)).build());
+      assertTrue(Arrays.equals(
+          serialize(subsetter.subset(next).build()), serialize(client)));
+    }
+  }
+
+  public void testPatchToOtherGlyphOrder() throws IOException {
+    // the glyphs asked for, rather than the glyph order of the subset
+    List<Integer> previous = GlyphCoverage.getGlyphCoverage(font, "abc");
+    List<Integer> asked = new ArrayList<Integer>(previous);
+    Collections.reverse(asked);
+    List<Integer> next = IncrementalSubsetter.extendGlyphs(
+        asked, GlyphCoverage.getGlyphCoverage(font, "abcd"));
+    try {
+      subsetter.patch(previous, next);
+      fail("patched to a glyph order that doesn't extend the previous one");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testWrongBase() throws IOException {
+    List<Integer> previous = GlyphCoverage.getGlyphCoverage(font, "abc");
+    List<Integer> next = IncrementalSubsetter.extendGlyphs(
+        previous, GlyphCoverage.getGlyphCoverage(font, "abcd"));
+    byte[] patch = subsetter.patch(previous, next);
+    Font other = subsetter.subset(GlyphCoverage.getGlyphCoverage(font, "xyz")).build();
+    try {
+      FontPatchApplier.apply(factory, other, ReadableFontData.createReadableFontData(patch));
+      fail("patch applied to the wrong font");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Gets the operation of a table in a patch, or -1 if the table isn't in it.
+   */
+  private static int operation(byte[] patch, int tag) {
+    ReadableFontData data = ReadableFontData.createReadableFontData(patch);
+    int index = FontPatch.HEADER_SIZE;
+    for (int i = 0; i < data.readUShort(6); i++) {
+      if (data.readULongAsInt(index) == tag) {
+        return data.readUByte(index + 4);
+      }
+      index += FontPatch.OPERATION_HEADER_SIZE + data.readULongAsInt(index + 5);
+    }
+    return -1;
+  }
+
+  private static void assertSameTables(Font expected, Font actual) {
+    assertEquals(expected.tableMap().keySet(), actual.tableMap().keySet());
+    for (int tag : expected.tableMap().keySet()) {
+      ReadableFontData expectedData = expected.getTable(tag).readFontData();
+      ReadableFontData actualData = actual.getTable(tag).readFontData();
+      assertEquals(Tag.stringValue(tag), expectedData.length(), actualData.length());
+      for (int i = 0; i < expectedData.length(); i++) {
+        assertEquals(Tag.stringValue(tag), expectedData.readByte(i), actualData.readByte(i));
+      }
+    }
+  }
+
+  private byte[] serialize(Font font) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    factory.serializeFont(font, os);
+    return os.toByteArray();
+  }
+
+  // the client has the subset as it was sent to it
+  private Font reload(Font font) throws IOException {
+    return factory.loadFonts(serialize(font))[0];
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.opentype.ClassDefTable;
+import com.google.typography.font.sfntly.table.opentype.CoverageTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the subsetting of the GSUB, GPOS and GDEF tables.
+ */
+public class LayoutSubsetTest extends TestCase {
+
+  private static Font subset(TestFontNames fontName, List<Integer> glyphs) throws IOException {
+    Font font = TestFontUtils.loadFont(fontName.getFile())[0];
+    Subsetter subsetter = new RenumberingSubsetter(font, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs);
+    return subsetter.subset().build();
+  }
+
+  private static int lookupCount(Font font, int tag) {
+    ReadableFontData data = font.getTable(tag).readFontData();
+    return data.readUShort(data.readUShort(8));
+  }
+
+  /**
+   * Checks that every feature of the table refers to existing lookups.
+   */
+  private static void assertFeaturesValid(Font font, int tag) {
+    ReadableFontData data = font.getTable(tag).readFontData();
+    int lookupCount = lookupCount(font, tag);
+    ReadableFontData featureList = data.slice(data.readUShort(6));
+    for (int i = 0; i < featureList.readUShort(0); i++) {
+      ReadableFontData feature = featureList.slice(featureList.readUShort(2 + 6 * i + 4));
+      for (int j = 0; j < feature.readUShort(2); j++) {
+        assertTrue(feature.readUShort(4 + 2 * j) < lookupCount);
+      }
+    }
+  }
+
+  /**
+   * Returns the subtables of the lookups of a type, following extension
+   * subtables.
+   */
+  private static List<ReadableFontData> subtables(Font font, int tag, int lookupType) {
+    int extensionType = tag == Tag.GSUB ? 7 : 9;
+    ReadableFontData data = font.getTable(tag).readFontData();
+    ReadableFontData lookupList = data.slice(data.readUShort(8));
+    List<ReadableFontData> result = new ArrayList<ReadableFontData>();
+    for (int i = 0; i < lookupList.readUShort(0); i++) {
+      ReadableFontData lookup = lookupList.slice(lookupList.readUShort(2 + 2 * i));
+      int type = lookup.readUShort(0);
+      for (int j = 0; j < lookup.readUShort(4); j++) {
+        ReadableFontData subtable = lookup.slice(lookup.readUShort(6 + 2 * j));
+        if (type == extensionType) {
+          if (subtable.readUShort(2) == lookupType) {
+            result.add(subtable.slice(subtable.readULongAsInt(4)));
+          }
+        } else if (type == lookupType) {
+          result.add(subtable);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the ligature glyph for the components from the first ligature
+   * substitution that has them, or -1 if there is none.
+   */
+  private static int ligature(Font font, int... components) {
+    for (ReadableFontData subtable : subtables(font, Tag.GSUB, 4)) {
+      int index = new CoverageTable(subtable.slice(subtable.readUShort(2)), 0, true)
+          .coverageIndex(components[0]);
+      if (index < 0) {
+        continue;
+      }
+      ReadableFontData ligatureSet = subtable.slice(subtable.readUShort(6 + 2 * index));
+      for (int i = 0; i < ligatureSet.readUShort(0); i++) {
+        ReadableFontData ligature = ligatureSet.slice(ligatureSet.readUShort(2 + 2 * i));
+        boolean matches = ligature.readUShort(2) == components.length;
+        for (int j = 1; matches && j < components.length; j++) {
+          matches = ligature.readUShort(2 + 2 * j) == components[j];
+        }
+        if (matches) {
+          return ligature.readUShort(0);
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the x advance adjustment of the first glyph of the pair from the
+   * first pair positioning subtable that covers the pair, or null if none do.
+   */
+  private static Integer pairXAdvance(Font font, int first, int second) {
+    for (ReadableFontData subtable : subtables(font, Tag.GPOS, 2)) {
+      int index = new CoverageTable(subtable.slice(subtable.readUShort(2)), 0, true)
+          .coverageIndex(first);
+      if (index < 0) {
+        continue;
+      }
+      int valueFormat1 = subtable.readUShort(4);
+      int valueFormat2 = subtable.readUShort(6);
+      int recordSize = 2 * (Integer.bitCount(valueFormat1) + Integer.bitCount(valueFormat2));
+      int value;
+      if (subtable.readUShort(0) == 1) {
+        ReadableFontData pairSet = subtable.slice(subtable.readUShort(10 + 2 * index));
+        value = -1;
+        for (int i = 0; i < pairSet.readUShort(0); i++) {
+          if (pairSet.readUShort(2 + i * (2 + recordSize)) == second) {
+            value = 4 + i * (2 + recordSize);
+            break;
+          }
+        }
+        if (value < 0) {
+          continue;
+        }
+        return xAdvance(pairSet, value, valueFormat1);
+      }
+      int class1 = new ClassDefTable(subtable.slice(subtable.readUShort(8)), 0, true)
+          .glyphClass(first);
+      int class2 = new ClassDefTable(subtable.slice(subtable.readUShort(10)), 0, true)
+          .glyphClass(second);
+      int class2Count = subtable.readUShort(14);
+      return xAdvance(
+          subtable, 16 + (class1 * class2Count + class2) * recordSize, valueFormat1);
+    }
+    return null;
+  }
+
+  private static int xAdvance(ReadableFontData data, int valueRecord, int valueFormat) {
+    if ((valueFormat & 0x4) == 0) {
+      return 0;
+    }
+    return data.readShort(valueRecord + 2 * Integer.bitCount(valueFormat & 0x3));
+  }
+
+  public void testLigatureRenumbered() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(font, "fix");
+    int f = glyphs.get(1);
+    int i = glyphs.get(2);
+    int fi = ligature(font, f, i);
+    assertTrue(fi > 0);
+    glyphs.add(fi);
+    Font newFont = subset(TestFontNames.ROBOTO, glyphs);
+    assertEquals(glyphs.indexOf(fi), ligature(newFont, glyphs.indexOf(f), glyphs.indexOf(i)));
+  }
+
+  public void testPairValuesRenumbered() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(font, "AVTo.");
+    Font newFont = subset(TestFontNames.ROBOTO, glyphs);
+    int kerned = 0;
+    for (int first = 1; first < glyphs.size(); first++) {
+      for (int second = 1; second < glyphs.size(); second++) {
+        Integer value = pairXAdvance(font, glyphs.get(first), glyphs.get(second));
+        assertEquals(value, pairXAdvance(newFont, first, second));
+        if (value != null && value != 0) {
+          kerned++;
+        }
+      }
+    }
+    assertTrue(kerned > 0);
+  }
+
+  public void testLayoutTablesKept() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    Font newFont = subset(TestFontNames.ROBOTO, GlyphCoverage.getGlyphCoverage(font, "AVATAR fi"));
+    assertNotNull(newFont.getTable(Tag.GSUB));
+    assertNotNull(newFont.getTable(Tag.GPOS));
+    assertNotNull(newFont.getTable(Tag.GDEF));
+    assertEquals(1, lookupCount(newFont, Tag.GPOS));
+    assertFeaturesValid(newFont, Tag.GSUB);
+    assertFeaturesValid(newFont, Tag.GPOS);
+  }
+
+  public void testAllGlyphsKeepsLookups() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    MaximumProfileTable maxp = font.getTable(Tag.maxp);
+    List<Integer> glyphs = new ArrayList<Integer>();
+    for (int i = 0; i < maxp.numGlyphs(); i++) {
+      glyphs.add(i);
+    }
+    Font newFont = subset(TestFontNames.ROBOTO, glyphs);
+    assertEquals(lookupCount(font, Tag.GSUB), lookupCount(newFont, Tag.GSUB));
+    assertEquals(lookupCount(font, Tag.GPOS), lookupCount(newFont, Tag.GPOS));
+  }
+
+  public void testEmptyLookupsDropped() throws IOException {
+    List<Integer> glyphs = new ArrayList<Integer>();
+    glyphs.add(0);
+    Font newFont = subset(TestFontNames.ROBOTO, glyphs);
+    assertEquals(0, lookupCount(newFont, Tag.GSUB));
+    assertEquals(0, lookupCount(newFont, Tag.GPOS));
+    assertFeaturesValid(newFont, Tag.GSUB);
+    assertFeaturesValid(newFont, Tag.GPOS);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests the metrics reported while subsetting and building a font.
+ */
+public class SubsetMetricsTest extends TestCase {
+
+  private static class RecordingMetrics implements SubsetMetrics {
+    private final Map<Class<?>, Integer> subsetterBytesIn = new HashMap<Class<?>, Integer>();
+    private final Map<Class<?>, Integer> glyphBuilders = new HashMap<Class<?>, Integer>();
+    private final Map<Integer, Integer> tableBytesOut = new HashMap<Integer, Integer>();
+
+    @Override
+    public void tableSubsetted(
+        TableSubsetter tableSubsetter, int bytesIn, int glyphBuilders, long nanos) {
+      assertTrue(nanos >= 0);
+      this.subsetterBytesIn.put(tableSubsetter.getClass(), bytesIn);
+      this.glyphBuilders.put(tableSubsetter.getClass(), glyphBuilders);
+    }
+
+    @Override
+    public void tableBuilt(
+        int tag, int bytesIn, int bytesOut, long buildNanos, long checksumNanos) {
+      assertTrue(buildNanos >= 0 && checksumNanos >= 0);
+      assertFalse(this.tableBytesOut.containsKey(tag));
+      this.tableBytesOut.put(tag, bytesOut);
+    }
+  }
+
+  public void testMetrics() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    Subsetter subsetter = new RenumberingSubsetter(font, FontFactory.getInstance());
+    List<CMapTable.CMapId> cmapIds = new ArrayList<CMapTable.CMapId>();
+    cmapIds.add(CMapTable.CMapId.WINDOWS_BMP);
+    subsetter.setCMaps(cmapIds, 1);
+    List<Integer> glyphs = new ArrayList<Integer>();
+    glyphs.add(0);
+    glyphs.add(68); // a, u+0061
+    subsetter.setGlyphs(glyphs);
+    Set<Integer> removeTables = new HashSet<Integer>();
+    removeTables.add(Tag.DSIG);
+    subsetter.setRemoveTables(removeTables);
+    RecordingMetrics metrics = new RecordingMetrics();
+    subsetter.setMetrics(metrics);
+    Font subset = subsetter.subset().build();
+
+    int glyfIn = font.getTable(Tag.glyf).dataLength() + font.getTable(Tag.loca).dataLength()
+        + font.getTable(Tag.maxp).dataLength();
+    assertEquals(glyfIn, (int) metrics.subsetterBytesIn.get(GlyphTableSubsetter.class));
+    assertEquals(2, (int) metrics.glyphBuilders.get(GlyphTableSubsetter.class));
+    assertEquals(0, (int) metrics.glyphBuilders.get(PostScriptTableSubsetter.class));
+
+    // every table of the subset font is reported once with its built size
+    assertEquals(subset.numTables(), metrics.tableBytesOut.size());
+    for (Map.Entry<Integer, Integer> entry : metrics.tableBytesOut.entrySet()) {
+      assertEquals(subset.getTable(entry.getKey()).dataLength(), (int) entry.getValue());
+    }
+  }
+}
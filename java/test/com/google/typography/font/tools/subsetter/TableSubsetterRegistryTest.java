@@ -0,0 +1,129 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tests the grouping of table subsetters and running them in parallel.
+ */
+public class TableSubsetterRegistryTest extends TestCase {
+
+  private static class TagSubsetter extends TableSubsetterImpl {
+    private final List<String> log;
+    private final String name;
+
+    TagSubsetter(List<String> log, String name, Integer... tags) {
+      super(tags);
+      this.log = log;
+      this.name = name;
+    }
+
+    @Override
+    public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+      this.log.add(this.name);
+      return false;
+    }
+  }
+
+  public void testIndependentGroups() {
+    List<String> log = new ArrayList<String>();
+    TableSubsetter glyf = new TagSubsetter(log, "glyf", Tag.glyf, Tag.loca, Tag.maxp);
+    TableSubsetter cmap = new TagSubsetter(log, "cmap", Tag.cmap);
+    TableSubsetter hmtx = new TagSubsetter(log, "hmtx", Tag.hmtx, Tag.hhea);
+    TableSubsetter maxp = new TagSubsetter(log, "maxp", Tag.maxp, Tag.hhea);
+    TableSubsetter post = new TagSubsetter(log, "post", Tag.post);
+    TableSubsetterRegistry registry = new TableSubsetterRegistry();
+    for (TableSubsetter tableSubsetter : Arrays.asList(glyf, cmap, hmtx, maxp, post)) {
+      registry.register(tableSubsetter);
+    }
+
+    // maxp joins glyf and hmtx into one group
+    List<List<TableSubsetter>> groups = registry.independentGroups(null);
+    assertEquals(3, groups.size());
+    assertEquals(Arrays.asList(glyf, hmtx, maxp), groups.get(0));
+    assertEquals(Collections.singletonList(cmap), groups.get(1));
+    assertEquals(Collections.singletonList(post), groups.get(2));
+
+    // a removed table subsetter no longer joins the others
+    Set<Integer> removeTables = new HashSet<Integer>(Arrays.asList(Tag.maxp, Tag.hhea, Tag.post));
+    groups = registry.independentGroups(removeTables);
+    assertEquals(3, groups.size());
+    assertEquals(Collections.singletonList(glyf), groups.get(0));
+    assertEquals(Collections.singletonList(cmap), groups.get(1));
+    assertEquals(Collections.singletonList(hmtx), groups.get(2));
+  }
+
+  public void testDependentSubsettersRunInOrder() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    List<String> log = Collections.synchronizedList(new ArrayList<String>());
+    Subsetter subsetter = new Subsetter(font, FontFactory.getInstance()) {};
+    subsetter.addTableSubsetter(new TagSubsetter(log, "first", Tag.glyf, Tag.loca));
+    subsetter.addTableSubsetter(new TagSubsetter(log, "cmap", Tag.cmap));
+    subsetter.addTableSubsetter(new TagSubsetter(log, "second", Tag.loca));
+    subsetter.setForkJoinPool(new ForkJoinPool(2));
+    subsetter.subset();
+    assertEquals(3, log.size());
+    assertTrue(log.indexOf("first") < log.indexOf("second"));
+  }
+
+  private static byte[] subset(Font font, ForkJoinPool pool) throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(font, FontFactory.getInstance());
+    List<CMapTable.CMapId> cmapIds = new ArrayList<CMapTable.CMapId>();
+    cmapIds.add(CMapTable.CMapId.WINDOWS_BMP);
+    subsetter.setCMaps(cmapIds, 1);
+    subsetter.setGlyphs(GlyphCoverage.getGlyphCoverage(font, "The quick brown fox \u00e0\u00e9"));
+    Set<Integer> removeTables = new HashSet<Integer>();
+    removeTables.add(Tag.DSIG);
+    removeTables.add(Tag.kern);
+    removeTables.add(Tag.hdmx);
+    subsetter.setRemoveTables(removeTables);
+    subsetter.setForkJoinPool(pool);
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    FontFactory.getInstance().serializeFont(subsetter.subset().build(), os);
+    return os.toByteArray();
+  }
+
+  public void testParallelSubsetIsIdentical() throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (TestFontNames name : TestFontNames.values()) {
+        Font font = TestFontUtils.loadFont(name.getFile())[0];
+        assertTrue(Arrays.equals(subset(font, null), subset(font, pool)));
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
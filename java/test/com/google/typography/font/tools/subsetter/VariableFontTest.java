@@ -0,0 +1,477 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
+import com.google.typography.font.sfntly.table.core.OS2Table;
+import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.table.truetype.SimpleGlyph;
+import com.google.typography.font.sfntly.table.variations.AxisVariationsTable;
+import com.google.typography.font.sfntly.table.variations.FontVariationsTable;
+import com.google.typography.font.sfntly.table.variations.GlyphVariationsTable;
+import com.google.typography.font.sfntly.table.variations.GlyphVariationsTable.TupleVariation;
+import com.google.typography.font.sfntly.table.variations.HorizontalMetricsVariationsTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests the variable font tables, the subsetting of them and the instancing
+ * of variable fonts, with a weight axis added to Roboto.
+ */
+public class VariableFontTest extends TestCase {
+
+  private static final int WGHT = Tag.intValue("wght");
+  private static final int WDTH = Tag.intValue("wdth");
+
+  // the glyphs of 'H', 'o' and 'é' in Roboto, and the components of 'é'
+  private static final int H = 43;
+  private static final int O = 82;
+  private static final int E_ACUTE = 171;
+  private static final int E = 72;
+  private static final int ACUTE = 118;
+  // 'Ç', whose cedilla overlaps the 'C'
+  private static final int C_CEDILLA = 137;
+
+  private static final int H_POINTS = 12;
+  private static final int O_POINTS = 28;
+
+  private FontFactory fontFactory;
+  private Font font;
+
+  @Override
+  protected void setUp() throws IOException {
+    fontFactory = FontFactory.getInstance();
+    Font roboto = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    Font.Builder fontBuilder = fontFactory.newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : roboto.tableMap().entrySet()) {
+      fontBuilder.newTableBuilder(entry.getKey(), entry.getValue().readFontData());
+    }
+    LocaTable loca = roboto.getTable(Tag.loca);
+    addTable(fontBuilder, Tag.fvar, fvar());
+    addTable(fontBuilder, Tag.avar, avar());
+    addTable(fontBuilder, Tag.gvar, gvar(loca.numGlyphs()));
+    addTable(fontBuilder, Tag.HVAR, hvar(loca.numGlyphs()));
+    font = fontBuilder.build();
+  }
+
+  private static void addTable(Font.Builder fontBuilder, int tag, byte[] data) {
+    fontBuilder.newTableBuilder(tag, ReadableFontData.createReadableFontData(data));
+  }
+
+  // a weight axis from 100 to 900 with a default of 400
+  private static byte[] fvar() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeShort(1);
+    out.writeShort(0);
+    out.writeShort(16);
+    out.writeShort(2);
+    out.writeShort(1);
+    out.writeShort(20);
+    out.writeShort(0);
+    out.writeShort(8);
+    out.writeInt(WGHT);
+    out.writeInt(100 << 16);
+    out.writeInt(400 << 16);
+    out.writeInt(900 << 16);
+    out.writeShort(0);
+    out.writeShort(256);
+    return bytes.toByteArray();
+  }
+
+  // maps the middle of the weight axis above the default to a quarter
+  private static byte[] avar() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeShort(1);
+    out.writeShort(0);
+    out.writeShort(0);
+    out.writeShort(1);
+    out.writeShort(4);
+    int[] map = {-0x4000, -0x4000, 0, 0, 0x2000, 0x1000, 0x4000, 0x4000};
+    for (int value : map) {
+      out.writeShort(value);
+    }
+    return bytes.toByteArray();
+  }
+
+  // variations at the heaviest weight: 'H' moves 40 to the right and gets 80
+  // wider, the first contour of 'o' moves 8 to the right, and the accent of
+  // 'é' moves 20 to the right and 10 down
+  private static byte[] gvar(int numGlyphs) throws IOException {
+    byte[][] glyphData = new byte[numGlyphs][];
+    Arrays.fill(glyphData, new byte[0]);
+
+    int[] xDeltas = new int[H_POINTS + 4];
+    Arrays.fill(xDeltas, 0, H_POINTS, 40);
+    xDeltas[H_POINTS + 1] = 80;
+    glyphData[H] = glyphVariationData(null, xDeltas, new int[H_POINTS + 4]);
+    glyphData[O] = glyphVariationData(new int[] {0}, new int[] {8}, new int[] {0});
+    glyphData[E_ACUTE] =
+        glyphVariationData(null, new int[] {0, 20, 0, 0, 0, 0}, new int[] {0, -10, 0, 0, 0, 0});
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    int sharedTuplesOffset = 20 + 4 * (numGlyphs + 1);
+    out.writeShort(1);
+    out.writeShort(0);
+    out.writeShort(1);
+    out.writeShort(1);
+    out.writeInt(sharedTuplesOffset);
+    out.writeShort(numGlyphs);
+    out.writeShort(GlyphVariationsTable.FLAG_LONG_OFFSETS);
+    out.writeInt(sharedTuplesOffset + 2);
+    int offset = 0;
+    for (byte[] data : glyphData) {
+      out.writeInt(offset);
+      offset += data.length;
+    }
+    out.writeInt(offset);
+    out.writeShort(0x4000);
+    for (byte[] data : glyphData) {
+      out.write(data);
+    }
+    return bytes.toByteArray();
+  }
+
+  // one tuple variation at the shared tuple, for all points or some points
+  private static byte[] glyphVariationData(int[] points, int[] xDeltas, int[] yDeltas)
+      throws IOException {
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    if (points != null) {
+      serialized.write(points.length);
+      serialized.write(points.length - 1);
+      int last = 0;
+      for (int point : points) {
+        serialized.write(point - last);
+        last = point;
+      }
+    }
+    writeDeltas(serialized, xDeltas);
+    writeDeltas(serialized, yDeltas);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeShort(1);
+    out.writeShort(8);
+    out.writeShort(serialized.size());
+    out.writeShort(points == null ? 0 : 0x2000);
+    out.write(serialized.toByteArray());
+    if ((bytes.size() & 1) != 0) {
+      out.write(0);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeDeltas(ByteArrayOutputStream out, int[] deltas) {
+    for (int start = 0; start < deltas.length; start += 64) {
+      int count = Math.min(64, deltas.length - start);
+      out.write(count - 1);
+      for (int i = start; i < start + count; i++) {
+        out.write(deltas[i]);
+      }
+    }
+  }
+
+  // advance width deltas for each glyph at the heaviest weight, with the
+  // implicit mapping
+  private static byte[] hvar(int numGlyphs) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeShort(1);
+    out.writeShort(0);
+    out.writeInt(20);
+    out.writeInt(0);
+    out.writeInt(0);
+    out.writeInt(0);
+    out.writeShort(1);
+    out.writeInt(12);
+    out.writeShort(1);
+    out.writeInt(22);
+    out.writeShort(1);
+    out.writeShort(1);
+    out.writeShort(0);
+    out.writeShort(0x4000);
+    out.writeShort(0x4000);
+    out.writeShort(numGlyphs);
+    out.writeShort(0);
+    out.writeShort(1);
+    out.writeShort(0);
+    for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+      // 'é' takes its metrics from 'e', so its delta isn't used
+      out.write(glyphId == H ? 80 : glyphId == O ? 30 : glyphId == E_ACUTE ? 50 : 0);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Glyph glyph(Font font, int glyphId) {
+    LocaTable loca = font.getTable(Tag.loca);
+    GlyphTable glyf = font.getTable(Tag.glyf);
+    return glyf.glyph(loca.glyphOffset(glyphId), loca.glyphLength(glyphId));
+  }
+
+  private static boolean hasOverlapFlag(Glyph glyph) {
+    if (glyph instanceof CompositeGlyph) {
+      return (((CompositeGlyph) glyph).flags(0) & CompositeGlyph.FLAG_OVERLAP_COMPOUND) != 0;
+    }
+    SimpleGlyph simple = (SimpleGlyph) glyph;
+    int flags = 10 + 2 * simple.numberOfContours() + 2 + simple.instructionSize();
+    return (simple.readFontData().readUByte(flags) & 0x40) != 0;
+  }
+
+  private Font instance(float weight) throws IOException {
+    Instancer instancer = new Instancer(font, fontFactory);
+    instancer.setAxisValue(WGHT, weight);
+    return instancer.subset().build();
+  }
+
+  public void testTables() {
+    FontVariationsTable fvar = font.getTable(Tag.fvar);
+    assertEquals(1, fvar.axisCount());
+    assertEquals(WGHT, fvar.axisTag(0));
+    assertEquals(0, fvar.axisIndex(WGHT));
+    assertEquals(-1, fvar.axisIndex(WDTH));
+    assertEquals(1f, fvar.normalize(0, 900));
+    assertEquals(-0.5f, fvar.normalize(0, 250));
+    assertEquals(1f, fvar.normalize(0, 1000));
+
+    AxisVariationsTable avar = font.getTable(Tag.avar);
+    assertEquals(0.25f, avar.map(0, 0.5f));
+    assertEquals(0.625f, avar.map(0, 0.75f), 1e-6f);
+
+    GlyphVariationsTable gvar = font.getTable(Tag.gvar);
+    assertEquals(1037, gvar.glyphCount());
+    List<TupleVariation> variations = gvar.tupleVariations(H, H_POINTS + 4);
+    assertEquals(1, variations.size());
+    TupleVariation variation = variations.get(0);
+    assertTrue(variation.allPoints());
+    assertEquals(H_POINTS + 4, variation.numberOfDeltas());
+    assertEquals(40, variation.xDelta(0));
+    assertEquals(80, variation.xDelta(H_POINTS + 1));
+    assertEquals(1f, variation.scalar(new float[] {1}));
+    assertEquals(0.5f, variation.scalar(new float[] {0.5f}));
+    assertEquals(0f, variation.scalar(new float[] {-0.5f}));
+
+    variation = gvar.tupleVariations(O, O_POINTS + 4).get(0);
+    assertFalse(variation.allPoints());
+    assertEquals(1, variation.numberOfDeltas());
+    assertEquals(0, variation.point(0));
+    assertEquals(8, variation.xDelta(0));
+    assertTrue(gvar.tupleVariations(0, 4).isEmpty());
+
+    HorizontalMetricsVariationsTable hvar = font.getTable(Tag.HVAR);
+    assertEquals(80f, hvar.advanceWidthDelta(H, new float[] {1}));
+    assertEquals(15f, hvar.advanceWidthDelta(O, new float[] {0.5f}));
+    assertEquals(0f, hvar.advanceWidthDelta(E, new float[] {1}));
+  }
+
+  public void testSubsetKeepsGlyphVariations() throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(font, fontFactory);
+    List<Integer> glyphs = new ArrayList<Integer>(Arrays.asList(0, O, H, E_ACUTE, E, ACUTE));
+    subsetter.setGlyphs(glyphs);
+    Set<Integer> removeTables = new HashSet<Integer>();
+    removeTables.add(Tag.GPOS);
+    removeTables.add(Tag.GSUB);
+    removeTables.add(Tag.GDEF);
+    removeTables.add(Tag.kern);
+    subsetter.setRemoveTables(removeTables);
+    Font subset = subsetter.subset().build();
+
+    GlyphVariationsTable oldGvar = font.getTable(Tag.gvar);
+    GlyphVariationsTable gvar = subset.getTable(Tag.gvar);
+    assertEquals(glyphs.size(), gvar.glyphCount());
+    assertEquals(1, gvar.sharedTupleCount());
+    for (int i = 0; i < glyphs.size(); i++) {
+      ReadableFontData oldData = oldGvar.glyphVariationData(glyphs.get(i));
+      ReadableFontData data = gvar.glyphVariationData(i);
+      assertEquals(oldData.length(), data.length());
+      for (int b = 0; b < data.length(); b++) {
+        assertEquals(oldData.readByte(b), data.readByte(b));
+      }
+    }
+    assertEquals(40, gvar.tupleVariations(2, H_POINTS + 4).get(0).xDelta(0));
+
+    HorizontalMetricsVariationsTable hvar = subset.getTable(Tag.HVAR);
+    // each glyph keeps its own delta set, in the new glyph order
+    assertFalse(hvar.hasAdvanceWidthMapping());
+    assertEquals(0f, hvar.advanceWidthDelta(0, new float[] {1}));
+    assertEquals(30f, hvar.advanceWidthDelta(1, new float[] {1}));
+    assertEquals(80f, hvar.advanceWidthDelta(2, new float[] {1}));
+    assertEquals(50f, hvar.advanceWidthDelta(3, new float[] {1}));
+    assertEquals(1, hvar.itemVariationStore().itemVariationDataCount());
+    assertEquals(glyphs.size(), hvar.itemVariationStore().itemCount(0));
+  }
+
+  public void testInstanceAtMaximum() throws IOException {
+    Font instance = instance(900);
+    for (int tag : new int[] {Tag.fvar, Tag.avar, Tag.gvar, Tag.HVAR}) {
+      assertFalse(instance.hasTable(tag));
+    }
+
+    SimpleGlyph oldH = (SimpleGlyph) glyph(font, H);
+    SimpleGlyph h = (SimpleGlyph) glyph(instance, H);
+    for (int i = 0; i < H_POINTS; i++) {
+      assertEquals(oldH.xCoordinate(0, i) + 40, h.xCoordinate(0, i));
+      assertEquals(oldH.yCoordinate(0, i), h.yCoordinate(0, i));
+      assertEquals(oldH.onCurve(0, i), h.onCurve(0, i));
+    }
+    assertEquals(oldH.xMin() + 40, h.xMin());
+    assertEquals(oldH.xMax() + 40, h.xMax());
+    assertEquals(oldH.instructionSize(), h.instructionSize());
+
+    HorizontalMetricsTable oldHmtx = font.getTable(Tag.hmtx);
+    HorizontalMetricsTable hmtx = instance.getTable(Tag.hmtx);
+    assertEquals(oldHmtx.advanceWidth(H) + 80, hmtx.advanceWidth(H));
+    assertEquals(oldHmtx.leftSideBearing(H) + 40, hmtx.leftSideBearing(H));
+    assertEquals(oldHmtx.advanceWidth(O) + 30, hmtx.advanceWidth(O));
+    assertEquals(oldHmtx.advanceWidth(E), hmtx.advanceWidth(E));
+    assertEquals(hmtx.advanceWidth(E), hmtx.advanceWidth(E_ACUTE));
+
+    // the one point of the first contour with a delta moves the whole contour
+    SimpleGlyph oldO = (SimpleGlyph) glyph(font, O);
+    SimpleGlyph o = (SimpleGlyph) glyph(instance, O);
+    for (int i = 0; i < oldO.numberOfPoints(0); i++) {
+      assertEquals(oldO.xCoordinate(0, i) + 8, o.xCoordinate(0, i));
+    }
+    for (int i = 0; i < oldO.numberOfPoints(1); i++) {
+      assertEquals(oldO.xCoordinate(1, i), o.xCoordinate(1, i));
+    }
+
+    CompositeGlyph oldEAcute = (CompositeGlyph) glyph(font, E_ACUTE);
+    CompositeGlyph eAcute = (CompositeGlyph) glyph(instance, E_ACUTE);
+    assertEquals(2, eAcute.numGlyphs());
+    assertEquals(ACUTE, eAcute.glyphIndex(1));
+    assertEquals(oldEAcute.argument1(1) + 20, eAcute.argument1(1));
+    assertEquals(oldEAcute.argument2(1) - 10, eAcute.argument2(1));
+    assertEquals(0, eAcute.argument1(0));
+
+    OS2Table os2 = instance.getTable(Tag.OS_2);
+    assertEquals(900, os2.usWeightClass());
+  }
+
+  public void testInstanceAtDefault() throws IOException {
+    Font instance = instance(400);
+    SimpleGlyph oldO = (SimpleGlyph) glyph(font, O);
+    SimpleGlyph o = (SimpleGlyph) glyph(instance, O);
+    assertEquals(oldO.numberOfContours(), o.numberOfContours());
+    for (int contour = 0; contour < oldO.numberOfContours(); contour++) {
+      for (int i = 0; i < oldO.numberOfPoints(contour); i++) {
+        assertEquals(oldO.xCoordinate(contour, i), o.xCoordinate(contour, i));
+        assertEquals(oldO.yCoordinate(contour, i), o.yCoordinate(contour, i));
+      }
+    }
+    CompositeGlyph oldEAcute = (CompositeGlyph) glyph(font, E_ACUTE);
+    CompositeGlyph eAcute = (CompositeGlyph) glyph(instance, E_ACUTE);
+    assertEquals(oldEAcute.argument1(1), eAcute.argument1(1));
+    assertEquals(oldEAcute.xMin(), eAcute.xMin());
+    assertEquals(oldEAcute.yMax(), eAcute.yMax());
+
+    HorizontalMetricsTable oldHmtx = font.getTable(Tag.hmtx);
+    HorizontalMetricsTable hmtx = instance.getTable(Tag.hmtx);
+    for (int glyphId : new int[] {0, 3, H, O, E_ACUTE}) {
+      assertEquals(oldHmtx.advanceWidth(glyphId), hmtx.advanceWidth(glyphId));
+      assertEquals(oldHmtx.leftSideBearing(glyphId), hmtx.leftSideBearing(glyphId));
+    }
+    OS2Table os2 = instance.getTable(Tag.OS_2);
+    assertEquals(400, os2.usWeightClass());
+  }
+
+  public void testInstanceUsesAxisVariations() throws IOException {
+    // 650 is half way to the maximum, which avar maps to a quarter
+    Font instance = instance(650);
+    SimpleGlyph oldH = (SimpleGlyph) glyph(font, H);
+    SimpleGlyph h = (SimpleGlyph) glyph(instance, H);
+    assertEquals(oldH.xCoordinate(0, 0) + 10, h.xCoordinate(0, 0));
+    HorizontalMetricsTable oldHmtx = font.getTable(Tag.hmtx);
+    HorizontalMetricsTable hmtx = instance.getTable(Tag.hmtx);
+    assertEquals(oldHmtx.advanceWidth(H) + 20, hmtx.advanceWidth(H));
+  }
+
+  public void testOverlapFlags() throws IOException {
+    // mark 'H' as overlapping in the variable font
+    Glyph oldH = glyph(font, H);
+    LocaTable loca = font.getTable(Tag.loca);
+    ReadableFontData glyf = font.getTable(Tag.glyf).readFontData();
+    WritableFontData marked = WritableFontData.createWritableFontData(glyf.length());
+    glyf.copyTo(marked);
+    int flags = loca.glyphOffset(H) + 10 + 2 * oldH.numberOfContours() + 2
+        + oldH.instructionSize();
+    marked.writeByte(flags, (byte) (marked.readUByte(flags) | 0x40));
+    Font.Builder fontBuilder = fontFactory.newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : font.tableMap().entrySet()) {
+      fontBuilder.newTableBuilder(entry.getKey(),
+          entry.getKey() == Tag.glyf ? marked : entry.getValue().readFontData());
+    }
+    font = fontBuilder.build();
+
+    Font instance = instance(400);
+    assertTrue(hasOverlapFlag(glyph(instance, H)));
+    assertTrue(hasOverlapFlag(glyph(instance, C_CEDILLA)));
+    // the inner contour of 'o' is a hole, and the accent of 'é' is clear of the 'e'
+    assertFalse(hasOverlapFlag(glyph(instance, O)));
+    assertFalse(hasOverlapFlag(glyph(instance, E)));
+    assertFalse(hasOverlapFlag(glyph(instance, E_ACUTE)));
+  }
+
+  public void testNoTrueTypeOutlines() throws IOException {
+    Font.Builder fontBuilder = fontFactory.newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : font.tableMap().entrySet()) {
+      if (entry.getKey() != Tag.glyf && entry.getKey() != Tag.loca) {
+        fontBuilder.newTableBuilder(entry.getKey(), entry.getValue().readFontData());
+      }
+    }
+    font = fontBuilder.build();
+    try {
+      instance(900);
+      fail("Instanced a font without TrueType outlines.");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testUnknownAxis() throws IOException {
+    Instancer instancer = new Instancer(font, fontFactory);
+    instancer.setAxisValue(WDTH, 100);
+    try {
+      instancer.subset();
+      fail("Instanced a font at an axis it doesn't have.");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}